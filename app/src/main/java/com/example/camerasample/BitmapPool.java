@@ -0,0 +1,118 @@
+package com.example.camerasample;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 再利用するビットマップのプール
+ *
+ * サイズ毎にビットマップを保持し、BitmapFactory.Options.inBitmapへ渡して再利用する。
+ * 保持するバイト数が上限を超えたら、最も長く使われていないサイズのものから破棄する。
+ */
+public class BitmapPool {
+
+    private final long _maxBytes;
+    private long _currentBytes;
+
+    //サイズ毎のビットマップ (アクセス順)
+    private final LinkedHashMap<Long, ArrayDeque<Bitmap>> _bitmaps = new LinkedHashMap<>(8, 0.75f, true);
+
+    public BitmapPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Max bytes cannot be negative.");
+        }
+
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * 指定サイズのビットマップを取り出す
+     * 無い場合はnullを返す。
+     */
+    @Nullable
+    public synchronized Bitmap get(int width, int height) {
+        ArrayDeque<Bitmap> bitmaps = _bitmaps.get(key(width, height));
+        if (bitmaps == null) return null;
+
+        Bitmap bitmap = bitmaps.pollLast();
+        if (bitmaps.isEmpty()) {
+            _bitmaps.remove(key(width, height));
+        }
+        if (bitmap != null) {
+            _currentBytes -= bitmap.getAllocationByteCount();
+        }
+        return bitmap;
+    }
+
+    /**
+     * 使い終わったビットマップを戻す
+     * 再利用できないビットマップはその場で破棄する。
+     */
+    public synchronized void put(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled()) return;
+
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.ARGB_8888 || size > _maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        long key = key(bitmap.getWidth(), bitmap.getHeight());
+        ArrayDeque<Bitmap> bitmaps = _bitmaps.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            _bitmaps.put(key, bitmaps);
+        }
+        bitmaps.addLast(bitmap);
+        _currentBytes += size;
+
+        trimToSize(_maxBytes);
+    }
+
+    /**
+     * メモリ不足の通知に応じて保持量を減らす
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            clear();
+        }
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(_maxBytes / 2);
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized long getCurrentBytes() {
+        return _currentBytes;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<Long, ArrayDeque<Bitmap>>> iterator = _bitmaps.entrySet().iterator();
+        while (_currentBytes > maxBytes && iterator.hasNext()) {
+            ArrayDeque<Bitmap> bitmaps = iterator.next().getValue();
+            while (_currentBytes > maxBytes && !bitmaps.isEmpty()) {
+                Bitmap bitmap = bitmaps.pollFirst();
+                _currentBytes -= bitmap.getAllocationByteCount();
+                bitmap.recycle();
+            }
+            if (bitmaps.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long key(int width, int height) {
+        return ((long)width << 32) | (height & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.camerasample;
+
+import java.util.Locale;
+
+/**
+ * 連写の集計
+ *
+ * 要求した枚数と受け取った枚数、センサのタイムスタンプから
+ * 持続フレームレートと欠落枚数を求める。
+ */
+public class BurstStats {
+
+    private int _requested;
+    private int _received;
+    private int _dropped;
+    private long _firstTimestamp;
+    private long _lastTimestamp;
+
+    //これまでの合計
+    private long _totalDropped;
+
+    /**
+     * 連写の開始
+     */
+    public synchronized void start(int requested) {
+        _requested = requested;
+        _received = 0;
+        _dropped = 0;
+        _firstTimestamp = 0;
+        _lastTimestamp = 0;
+    }
+
+    /**
+     * 1枚受け取った
+     * 連写の全ての枚数が揃った(欠落を含む)場合はtrueを返す。連写中でなければ何もしない。
+     */
+    public synchronized boolean onFrame(long timestampNanos) {
+        if (!isActive()) return false;
+
+        if (_received == 0) {
+            _firstTimestamp = timestampNanos;
+        }
+        _lastTimestamp = timestampNanos;
+        _received++;
+        return isComplete();
+    }
+
+    /**
+     * 1枚受け取れなかった
+     */
+    public synchronized boolean onDropped() {
+        if (!isActive()) return false;
+
+        _dropped++;
+        _totalDropped++;
+        return isComplete();
+    }
+
+    public synchronized boolean isActive() {
+        return _requested > 0 && !isComplete();
+    }
+
+    public synchronized int getRequested() {
+        return _requested;
+    }
+
+    public synchronized int getReceived() {
+        return _received;
+    }
+
+    public synchronized int getDropped() {
+        return _dropped;
+    }
+
+    public synchronized long getTotalDropped() {
+        return _totalDropped;
+    }
+
+    /**
+     * 最初と最後のフレームの間隔から求めたフレームレート
+     */
+    public synchronized double getFramesPerSecond() {
+        if (_received < 2 || _lastTimestamp <= _firstTimestamp) return 0;
+
+        return (_received - 1) * 1e9 / (_lastTimestamp - _firstTimestamp);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "burst %d/%d frames, %d dropped, %.1f fps",
+                _received, _requested, _dropped, getFramesPerSecond());
+    }
+
+    private boolean isComplete() {
+        return _received + _dropped >= _requested;
+    }
+}
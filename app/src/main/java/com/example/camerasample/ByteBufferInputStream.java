@@ -0,0 +1,63 @@
+package com.example.camerasample;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBufferを読み出すストリーム
+ * バッファの内容をコピーせずにデコーダ等へ渡すために使用する。
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer _buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        _buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        if (!_buffer.hasRemaining()) return -1;
+
+        return _buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        if (!_buffer.hasRemaining()) return -1;
+
+        int count = Math.min(len, _buffer.remaining());
+        _buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) return 0;
+
+        int count = (int)Math.min(n, _buffer.remaining());
+        _buffer.position(_buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return _buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        _buffer.mark();
+    }
+
+    @Override
+    public synchronized void reset() {
+        _buffer.reset();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.camerasample;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * バイト数で上限を決める最近使った順のキャッシュ
+ *
+ * 値の大きさはSizerで求め、合計が上限を超えたら最も長く使われていないものから捨てる。
+ * 上限より大きい値は保持しない。どのスレッドからも呼び出せる。
+ */
+public class ByteLruCache<K, V> {
+
+    /**
+     * 値の大きさ (保持している間は変わらないこと)
+     */
+    public interface Sizer<V> {
+        int sizeOf(V value);
+    }
+
+    private final long _maxBytes;
+    private final Sizer<V> _sizer;
+    private long _currentBytes;
+
+    //アクセス順
+    private final LinkedHashMap<K, V> _entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long _hits;
+    private long _misses;
+    private long _evictions;
+
+    public ByteLruCache(long maxBytes, Sizer<V> sizer) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Max bytes cannot be negative.");
+        }
+
+        _maxBytes = maxBytes;
+        _sizer = sizer;
+    }
+
+    /**
+     * 値を取得する (無ければnull)
+     */
+    public synchronized V get(K key) {
+        V value = _entries.get(key);
+        if (value != null) {
+            _hits++;
+        }
+        else {
+            _misses++;
+        }
+        return value;
+    }
+
+    /**
+     * 値を保持する
+     * 同じキーの値は置き換える。上限より大きい値は保持せずにfalseを返す。
+     */
+    public synchronized boolean put(K key, V value) {
+        int size = _sizer.sizeOf(value);
+        if (size < 0) throw new IllegalArgumentException("Negative size: " + size);
+
+        V previous = _entries.remove(key);
+        if (previous != null) {
+            _currentBytes -= _sizer.sizeOf(previous);
+        }
+        if (size > _maxBytes) return false;
+
+        _entries.put(key, value);
+        _currentBytes += size;
+        trimToSize(_maxBytes);
+        return true;
+    }
+
+    public synchronized V remove(K key) {
+        V value = _entries.remove(key);
+        if (value != null) {
+            _currentBytes -= _sizer.sizeOf(value);
+        }
+        return value;
+    }
+
+    /**
+     * 合計がmaxBytes以下になるまで古いものから捨てる
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<K, V>> iterator = _entries.entrySet().iterator();
+        while (_currentBytes > maxBytes && iterator.hasNext()) {
+            V value = iterator.next().getValue();
+            iterator.remove();
+            _currentBytes -= _sizer.sizeOf(value);
+            _evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        _entries.clear();
+        _currentBytes = 0;
+    }
+
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    public synchronized long getCurrentBytes() {
+        return _currentBytes;
+    }
+
+    public long getMaxBytes() {
+        return _maxBytes;
+    }
+
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    public synchronized long getEvictions() {
+        return _evictions;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.camerasample;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 使用できる全てのカメラの設定と、前面・背面・広角のレンズの選択
+ *
+ * 開けるカメラ (CameraManager.getCameraIdList()) の設定に加えて、
+ * 論理カメラを通してのみ使える物理カメラの設定も持つ。
+ * レンズとして選ぶのは単独で開けるカメラのみで、物理カメラは一覧の出力にのみ使う。
+ */
+public final class CameraCatalog {
+
+    //保存形式のバージョン (項目を変更したら上げる)
+    static final int VERSION = 1;
+
+    //レンズ
+    public static final int LENS_FRONT = 0;
+    public static final int LENS_BACK = 1;
+    public static final int LENS_WIDE = 2;
+    public static final int LENS_COUNT = 3;
+
+    private static final String[] LENS_NAMES = { "front", "back", "wide" };
+
+    //広角とみなす画角の比 (通常の背面カメラより15%以上広いもの)
+    static final float WIDE_FIELD_OF_VIEW_RATIO = 1.15f;
+
+    //読み込み時の件数の上限
+    private static final int MAX_CAMERA_COUNT = 32;
+
+    /**
+     * 選択したレンズ
+     */
+    public static final class Selection {
+        public final int lens;
+
+        //開くカメラの設定
+        public final CameraConfig config;
+
+        Selection(int lens, CameraConfig config) {
+            this.lens = lens;
+            this.config = config;
+        }
+
+        public String getCameraId() {
+            return config.getCameraId();
+        }
+
+        /**
+         * プレビューを鏡面反転するか (前面カメラ)
+         */
+        public boolean isMirrored() {
+            return config.getLens().isFrontFacing();
+        }
+
+        @Override
+        public String toString() {
+            return getLensName(lens) + " camera " + config.getCameraId();
+        }
+    }
+
+    private final CameraConfig[] _cameras;
+    private final CameraConfig[] _physicalCameras;
+
+    private CameraCatalog(CameraConfig[] cameras, CameraConfig[] physicalCameras) {
+        _cameras = cameras;
+        _physicalCameras = physicalCameras;
+    }
+
+    /**
+     * @param cameras 開けるカメラの設定 (getCameraIdList()の順)
+     * @param physicalCameras 論理カメラを通してのみ使える物理カメラの設定
+     */
+    public static CameraCatalog create(CameraConfig[] cameras, CameraConfig[] physicalCameras) {
+        if (cameras.length == 0) {
+            throw new IllegalArgumentException("No cameras.");
+        }
+
+        return new CameraCatalog(cameras.clone(), physicalCameras.clone());
+    }
+
+    public static String getLensName(int lens) {
+        return LENS_NAMES[lens];
+    }
+
+    public int size() {
+        return _cameras.length;
+    }
+
+    public CameraConfig get(int index) {
+        return _cameras[index];
+    }
+
+    /**
+     * 論理カメラを通してのみ使える物理カメラの設定 (呼び出し側で変更しないこと)
+     */
+    public CameraConfig[] getPhysicalCameras() {
+        return _physicalCameras;
+    }
+
+    /**
+     * カメラIDから設定を探す (物理カメラを含む、無ければnull)
+     */
+    public CameraConfig find(String cameraId) {
+        for (CameraConfig config : _cameras) {
+            if (config.getCameraId().equals(cameraId)) return config;
+        }
+        for (CameraConfig config : _physicalCameras) {
+            if (config.getCameraId().equals(cameraId)) return config;
+        }
+        return null;
+    }
+
+    /**
+     * レンズを選ぶ (無ければnull)
+     *
+     * 前面と背面はそれぞれの向きの最初のカメラ (通常はそれが主のカメラ)。
+     * 広角は主の背面カメラより画角が十分に広い背面カメラのうち最も広いもの。
+     */
+    public Selection select(int lens) {
+        switch (lens) {
+            case LENS_FRONT:
+                return selectFacing(LENS_FRONT, CameraLens.FACING_FRONT);
+            case LENS_BACK:
+                return selectFacing(LENS_BACK, CameraLens.FACING_BACK);
+            case LENS_WIDE:
+                return selectWide();
+            default:
+                throw new IllegalArgumentException("Invalid lens: " + lens);
+        }
+    }
+
+    /**
+     * レンズを選び、無ければ前面、背面、最初のカメラの順に選ぶ
+     */
+    public Selection selectOrDefault(int lens) {
+        Selection selection = select(lens);
+        if (selection == null) selection = select(LENS_FRONT);
+        if (selection == null) selection = select(LENS_BACK);
+        if (selection == null) {
+            CameraConfig config = _cameras[0];
+            selection = new Selection(config.getLens().isFrontFacing() ? LENS_FRONT : LENS_BACK, config);
+        }
+        return selection;
+    }
+
+    /**
+     * 使用できるレンズ (LENS_*の昇順)
+     */
+    public int[] getAvailableLenses() {
+        int[] lenses = new int[LENS_COUNT];
+        int count = 0;
+        for (int lens = 0; lens < LENS_COUNT; lens++) {
+            if (select(lens) != null) {
+                lenses[count++] = lens;
+            }
+        }
+        return Arrays.copyOf(lenses, count);
+    }
+
+    /**
+     * 切り替え順で次のレンズ (前面、背面、広角の順に巡る、他に無ければ同じレンズ)
+     */
+    public int nextLens(int lens) {
+        for (int i = 1; i <= LENS_COUNT; i++) {
+            int next = (lens + i) % LENS_COUNT;
+            if (select(next) != null) return next;
+        }
+        return lens;
+    }
+
+    private Selection selectFacing(int lens, int facing) {
+        for (CameraConfig config : _cameras) {
+            if (config.getLens().getFacing() == facing) {
+                return new Selection(lens, config);
+            }
+        }
+        return null;
+    }
+
+    private Selection selectWide() {
+        Selection main = selectFacing(LENS_BACK, CameraLens.FACING_BACK);
+        if (main == null) return null;
+
+        CameraLens mainLens = main.config.getLens();
+        float threshold = mainLens.getFieldOfView() * WIDE_FIELD_OF_VIEW_RATIO;
+        if (threshold <= 0) return null;
+
+        CameraConfig widest = null;
+        for (CameraConfig config : _cameras) {
+            CameraLens cameraLens = config.getLens();
+            if (config == main.config || cameraLens.getFacing() != CameraLens.FACING_BACK) continue;
+            if (cameraLens.getFieldOfView() < threshold) continue;
+            if (widest == null || cameraLens.getFieldOfView() > widest.getLens().getFieldOfView()) {
+                widest = config;
+            }
+        }
+        return widest != null ? new Selection(LENS_WIDE, widest) : null;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(VERSION);
+        writeConfigs(out, _cameras);
+        writeConfigs(out, _physicalCameras);
+    }
+
+    /**
+     * writeTo()で書き込んだものを読み込む
+     * バージョンが異なる場合はnullを返す。
+     */
+    public static CameraCatalog readFrom(DataInput in) throws IOException {
+        if (in.readInt() != VERSION) return null;
+
+        CameraConfig[] cameras = readConfigs(in);
+        CameraConfig[] physicalCameras = readConfigs(in);
+        if (cameras == null || physicalCameras == null) return null;
+        if (cameras.length == 0) {
+            throw new IOException("No cameras.");
+        }
+        return new CameraCatalog(cameras, physicalCameras);
+    }
+
+    private static void writeConfigs(DataOutput out, CameraConfig[] configs) throws IOException {
+        out.writeInt(configs.length);
+        for (CameraConfig config : configs) {
+            config.writeTo(out);
+        }
+    }
+
+    private static CameraConfig[] readConfigs(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_CAMERA_COUNT) {
+            throw new IOException("Invalid camera count: " + count);
+        }
+
+        CameraConfig[] configs = new CameraConfig[count];
+        for (int i = 0; i < count; i++) {
+            configs[i] = CameraConfig.readFrom(in);
+            if (configs[i] == null) return null;
+        }
+        return configs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CameraCatalog)) return false;
+
+        CameraCatalog other = (CameraCatalog)o;
+        return Arrays.equals(_cameras, other._cameras) && Arrays.equals(_physicalCameras, other._physicalCameras);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_cameras);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CameraCatalog{");
+        for (int i = 0; i < _cameras.length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(_cameras[i].getCameraId()).append(' ').append(_cameras[i].getLens());
+        }
+        for (CameraConfig config : _physicalCameras) {
+            builder.append(", physical ").append(config.getCameraId()).append(' ').append(config.getLens());
+        }
+        return builder.append('}').toString();
+    }
+}
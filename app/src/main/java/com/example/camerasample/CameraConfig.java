@@ -0,0 +1,297 @@
+package com.example.camerasample;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 使用するカメラの設定 (CameraCharacteristicsから必要なものだけを取り出したもの)
+ *
+ * カメラを開く度にCameraManagerへ問い合わせずに済むよう、CameraConfigCacheで保持する。
+ * 出力サイズは面積の昇順に並べておく。
+ */
+public final class CameraConfig {
+
+    //保存形式のバージョン (項目を変更したら上げる)
+    static final int VERSION = 5;
+
+    private final String _cameraId;
+    private final int _sensorOrientation;
+    private final boolean _flashSupported;
+    private final boolean _timestampRealtime;
+    private final int _hardwareLevel;
+    private final StreamSizes _jpegStreams;
+    private final StreamSizes _previewStreams;
+    private final StreamSizes _yuvStreams;
+    private final FpsRange[] _aeFpsRanges;
+    private final HighSpeedConfiguration[] _highSpeedConfigurations;
+    private final StreamSizes _rawStreams;
+    private final CameraLens _lens;
+
+    //読み込み時の件数の上限
+    private static final int MAX_RANGE_COUNT = 256;
+
+    private CameraConfig(String cameraId, int sensorOrientation, boolean flashSupported, boolean timestampRealtime,
+                         int hardwareLevel, StreamSizes jpegStreams, StreamSizes previewStreams, StreamSizes yuvStreams,
+                         FpsRange[] aeFpsRanges, HighSpeedConfiguration[] highSpeedConfigurations, StreamSizes rawStreams,
+                         CameraLens lens) {
+        _cameraId = cameraId;
+        _sensorOrientation = sensorOrientation;
+        _flashSupported = flashSupported;
+        _timestampRealtime = timestampRealtime;
+        _hardwareLevel = hardwareLevel;
+        _jpegStreams = jpegStreams;
+        _previewStreams = previewStreams;
+        _yuvStreams = yuvStreams;
+        _aeFpsRanges = aeFpsRanges;
+        _highSpeedConfigurations = highSpeedConfigurations;
+        _rawStreams = rawStreams;
+        _lens = lens;
+    }
+
+    /**
+     * カメラの設定を生成する
+     * 渡した配列は変更しない。
+     *
+     * @param hardwareLevel INFO_SUPPORTED_HARDWARE_LEVEL (StreamCombinations.HARDWARE_LEVEL_*)
+     * @param aeFpsRanges CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES
+     * @param highSpeedConfigurations 高速度撮影のサイズと範囲の組 (非対応は空)
+     * @param rawStreams RAW_SENSORの出力サイズ (RAWの機能が無ければ空)
+     * @param lens レンズの向きと画角 (不明ならCameraLens.DEFAULT)
+     */
+    public static CameraConfig create(String cameraId, int sensorOrientation, boolean flashSupported, boolean timestampRealtime,
+                                      int hardwareLevel, StreamSizes jpegStreams, StreamSizes previewStreams, StreamSizes yuvStreams,
+                                      FpsRange[] aeFpsRanges, HighSpeedConfiguration[] highSpeedConfigurations, StreamSizes rawStreams,
+                                      CameraLens lens) {
+        if (jpegStreams.size() == 0) {
+            throw new IllegalArgumentException("No JPEG output sizes.");
+        }
+
+        return new CameraConfig(cameraId, sensorOrientation, flashSupported, timestampRealtime,
+                hardwareLevel, jpegStreams, previewStreams, yuvStreams,
+                aeFpsRanges.clone(), highSpeedConfigurations.clone(), rawStreams, lens);
+    }
+
+    public String getCameraId() {
+        return _cameraId;
+    }
+
+    public int getSensorOrientation() {
+        return _sensorOrientation;
+    }
+
+    public boolean isFlashSupported() {
+        return _flashSupported;
+    }
+
+    /**
+     * センサのタイムスタンプがelapsedRealtimeNanosと同じ時間軸か
+     */
+    public boolean isTimestampRealtime() {
+        return _timestampRealtime;
+    }
+
+    /**
+     * INFO_SUPPORTED_HARDWARE_LEVEL (StreamCombinations.HARDWARE_LEVEL_*)
+     */
+    public int getHardwareLevel() {
+        return _hardwareLevel;
+    }
+
+    /**
+     * 最大のJPEGのサイズ
+     */
+    public FrameSize getMaxJpegSize() {
+        return _jpegStreams.getMax();
+    }
+
+    /**
+     * SurfaceTextureの出力サイズ (面積の昇順、呼び出し側で変更しないこと)
+     */
+    public FrameSize[] getPreviewSizes() {
+        return _previewStreams.getSizes();
+    }
+
+    /**
+     * YUV_420_888の出力サイズ (面積の昇順、呼び出し側で変更しないこと)
+     */
+    public FrameSize[] getYuvSizes() {
+        return _yuvStreams.getSizes();
+    }
+
+    /**
+     * JPEGの出力サイズとフレーム間隔
+     */
+    public StreamSizes getJpegStreams() {
+        return _jpegStreams;
+    }
+
+    /**
+     * SurfaceTextureの出力サイズとフレーム間隔
+     */
+    public StreamSizes getPreviewStreams() {
+        return _previewStreams;
+    }
+
+    /**
+     * YUV_420_888の出力サイズとフレーム間隔
+     */
+    public StreamSizes getYuvStreams() {
+        return _yuvStreams;
+    }
+
+    /**
+     * CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES (呼び出し側で変更しないこと)
+     */
+    public FpsRange[] getAeFpsRanges() {
+        return _aeFpsRanges;
+    }
+
+    /**
+     * 高速度撮影のサイズと範囲の組 (非対応は空、呼び出し側で変更しないこと)
+     */
+    public HighSpeedConfiguration[] getHighSpeedConfigurations() {
+        return _highSpeedConfigurations;
+    }
+
+    /**
+     * RAW_SENSORの出力サイズとフレーム間隔 (RAWの機能が無ければ空)
+     */
+    public StreamSizes getRawStreams() {
+        return _rawStreams;
+    }
+
+    /**
+     * RAW (DNG) を撮影できるか
+     */
+    public boolean isRawSupported() {
+        return _rawStreams.size() > 0;
+    }
+
+    /**
+     * レンズの向きと画角
+     */
+    public CameraLens getLens() {
+        return _lens;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeUTF(_cameraId);
+        out.writeInt(_sensorOrientation);
+        out.writeBoolean(_flashSupported);
+        out.writeBoolean(_timestampRealtime);
+        out.writeInt(_hardwareLevel);
+        _jpegStreams.writeTo(out);
+        _previewStreams.writeTo(out);
+        _yuvStreams.writeTo(out);
+        out.writeInt(_aeFpsRanges.length);
+        for (FpsRange range : _aeFpsRanges) {
+            writeFpsRange(out, range);
+        }
+        out.writeInt(_highSpeedConfigurations.length);
+        for (HighSpeedConfiguration configuration : _highSpeedConfigurations) {
+            out.writeInt(configuration.getSize().getWidth());
+            out.writeInt(configuration.getSize().getHeight());
+            writeFpsRange(out, configuration.getFpsRange());
+        }
+        _rawStreams.writeTo(out);
+        _lens.writeTo(out);
+    }
+
+    /**
+     * writeTo()で書き込んだものを読み込む
+     * バージョンが異なる場合はnullを返す。
+     */
+    public static CameraConfig readFrom(DataInput in) throws IOException {
+        if (in.readInt() != VERSION) return null;
+
+        String cameraId = in.readUTF();
+        int sensorOrientation = in.readInt();
+        boolean flashSupported = in.readBoolean();
+        boolean timestampRealtime = in.readBoolean();
+        int hardwareLevel = in.readInt();
+        StreamSizes jpegStreams = StreamSizes.readFrom(in);
+        StreamSizes previewStreams = StreamSizes.readFrom(in);
+        StreamSizes yuvStreams = StreamSizes.readFrom(in);
+        if (jpegStreams.size() == 0) {
+            throw new IOException("No JPEG output sizes.");
+        }
+        FpsRange[] aeFpsRanges = new FpsRange[readCount(in)];
+        for (int i = 0; i < aeFpsRanges.length; i++) {
+            aeFpsRanges[i] = readFpsRange(in);
+        }
+        HighSpeedConfiguration[] highSpeedConfigurations = new HighSpeedConfiguration[readCount(in)];
+        for (int i = 0; i < highSpeedConfigurations.length; i++) {
+            FrameSize size = new FrameSize(in.readInt(), in.readInt());
+            highSpeedConfigurations[i] = new HighSpeedConfiguration(size, readFpsRange(in));
+        }
+        StreamSizes rawStreams = StreamSizes.readFrom(in);
+        CameraLens lens = CameraLens.readFrom(in);
+
+        //書き込み時に並べ替え済み
+        return new CameraConfig(cameraId, sensorOrientation, flashSupported, timestampRealtime,
+                hardwareLevel, jpegStreams, previewStreams, yuvStreams, aeFpsRanges, highSpeedConfigurations, rawStreams, lens);
+    }
+
+    private static void writeFpsRange(DataOutput out, FpsRange range) throws IOException {
+        out.writeInt(range.getLower());
+        out.writeInt(range.getUpper());
+    }
+
+    private static FpsRange readFpsRange(DataInput in) throws IOException {
+        int lower = in.readInt();
+        int upper = in.readInt();
+        try {
+            return new FpsRange(lower, upper);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Invalid fps range: " + lower + ", " + upper);
+        }
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_RANGE_COUNT) {
+            throw new IOException("Invalid range count: " + count);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CameraConfig)) return false;
+
+        CameraConfig other = (CameraConfig)o;
+        return _cameraId.equals(other._cameraId)
+                && _sensorOrientation == other._sensorOrientation
+                && _flashSupported == other._flashSupported
+                && _timestampRealtime == other._timestampRealtime
+                && _hardwareLevel == other._hardwareLevel
+                && _jpegStreams.equals(other._jpegStreams)
+                && _previewStreams.equals(other._previewStreams)
+                && _yuvStreams.equals(other._yuvStreams)
+                && Arrays.equals(_aeFpsRanges, other._aeFpsRanges)
+                && Arrays.equals(_highSpeedConfigurations, other._highSpeedConfigurations)
+                && _rawStreams.equals(other._rawStreams)
+                && _lens.equals(other._lens);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = _cameraId.hashCode();
+        result = 31 * result + _sensorOrientation;
+        result = 31 * result + _previewStreams.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CameraConfig{" + _cameraId + ", orientation " + _sensorOrientation
+                + ", flash " + _flashSupported + ", level " + _hardwareLevel + ", jpeg " + getMaxJpegSize()
+                + ", " + _previewStreams.size() + " preview sizes, fps " + Arrays.toString(_aeFpsRanges)
+                + ", " + _highSpeedConfigurations.length + " high speed, raw " + _rawStreams.getMax() + ", " + _lens + "}";
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.camerasample;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 全てのカメラの設定 (CameraCatalog) の保持
+ *
+ * 一度求めた設定はメモリに保持し、ファイルにも保存して次回の起動で使う。
+ * ファイルはビルドのフィンガープリント(Build.FINGERPRINT)毎に有効で、
+ * OSの更新などで異なる場合は読み込まずに求め直す。
+ */
+public class CameraConfigCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File _file;
+    private final String _fingerprint;
+
+    private CameraCatalog _catalog;
+    private boolean _diskChecked;
+
+    private int _memoryHits;
+    private int _diskHits;
+    private int _misses;
+
+    public CameraConfigCache(File file, String fingerprint) {
+        _file = file;
+        _fingerprint = fingerprint;
+    }
+
+    /**
+     * 保持している設定を返す
+     * メモリに無ければファイルから読み込む。どちらにも無ければnullを返す。
+     */
+    public synchronized CameraCatalog get() {
+        if (_catalog != null) {
+            _memoryHits++;
+            return _catalog;
+        }
+
+        //ファイルの確認はプロセス内で1度だけ行う
+        if (!_diskChecked) {
+            _diskChecked = true;
+            _catalog = read();
+            if (_catalog != null) {
+                _diskHits++;
+                return _catalog;
+            }
+        }
+
+        _misses++;
+        return null;
+    }
+
+    /**
+     * メモリに保持している設定を返す (ファイルは読まない)
+     * UIスレッドから呼ぶ。無ければnullを返し、getで読み込む。
+     */
+    public synchronized CameraCatalog peek() {
+        if (_catalog != null) {
+            _memoryHits++;
+        }
+        return _catalog;
+    }
+
+    /**
+     * 設定を保持してファイルへ保存する
+     * 保存に失敗してもメモリには保持する。
+     */
+    public synchronized void put(CameraCatalog catalog) {
+        _catalog = catalog;
+        _diskChecked = true;
+
+        try {
+            write(catalog);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 保持している設定を破棄する (カメラが開けなかった場合など)
+     */
+    public synchronized void invalidate() {
+        _catalog = null;
+        _diskChecked = true;
+        if (_file.exists() && !_file.delete()) {
+            _file.deleteOnExit();
+        }
+    }
+
+    public synchronized int getMemoryHits() {
+        return _memoryHits;
+    }
+
+    public synchronized int getDiskHits() {
+        return _diskHits;
+    }
+
+    public synchronized int getMisses() {
+        return _misses;
+    }
+
+    private CameraCatalog read() {
+        if (!_file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file)))) {
+            if (!_fingerprint.equals(in.readUTF())) return null;
+
+            return CameraCatalog.readFrom(in);
+        }
+        catch (IOException e) {
+            //壊れている場合は求め直して上書きする
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void write(CameraCatalog catalog) throws IOException {
+        File directory = _file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory);
+        }
+
+        //書き込み途中の状態を読まないよう一時ファイルから置き換える
+        File tempFile = new File(_file.getPath() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeUTF(_fingerprint);
+            catalog.writeTo(out);
+        }
+        Files.move(tempFile.toPath(), _file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
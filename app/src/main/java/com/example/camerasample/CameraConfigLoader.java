@@ -0,0 +1,258 @@
+package com.example.camerasample;
+
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.util.Range;
+import android.util.Size;
+import android.util.SizeF;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * CameraManagerへ問い合わせて使用できるカメラの設定を求める
+ *
+ * カメラの数 (論理カメラの物理カメラを含む) だけCameraCharacteristicsを取得するので時間がかかる。
+ * 結果はCameraConfigCacheへ保持して、次回からは呼び出さないようにする。
+ */
+public final class CameraConfigLoader {
+
+    private CameraConfigLoader() { }
+
+    /**
+     * 全てのカメラの設定を求める
+     * 使用できるカメラが無ければnullを返す。
+     */
+    @Nullable
+    public static CameraCatalog load(@NonNull CameraManager manager) throws CameraAccessException {
+        String[] cameraIds = manager.getCameraIdList();
+        List<CameraConfig> cameras = new ArrayList<>();
+        List<String> physicalCameraIds = new ArrayList<>();
+        for (String cameraId : cameraIds) {
+            CameraConfig config = load(cameraId, manager.getCameraCharacteristics(cameraId));
+            if (config == null) continue;
+
+            cameras.add(config);
+            for (String physicalCameraId : config.getLens().getPhysicalCameraIds()) {
+                if (!contains(cameraIds, physicalCameraId) && !physicalCameraIds.contains(physicalCameraId)) {
+                    physicalCameraIds.add(physicalCameraId);
+                }
+            }
+        }
+        if (cameras.isEmpty()) return null;
+
+        //単独では開けない物理カメラ
+        List<CameraConfig> physicalCameras = new ArrayList<>();
+        for (String physicalCameraId : physicalCameraIds) {
+            try {
+                CameraConfig config = load(physicalCameraId, manager.getCameraCharacteristics(physicalCameraId));
+                if (config != null) {
+                    physicalCameras.add(config);
+                }
+            }
+            catch (IllegalArgumentException e) {
+                //問い合わせに応じない機器もあるので一覧には含めない
+                e.printStackTrace();
+            }
+        }
+
+        return CameraCatalog.create(cameras.toArray(new CameraConfig[0]), physicalCameras.toArray(new CameraConfig[0]));
+    }
+
+    /**
+     * 1つのカメラの設定を求める
+     * 使用できないカメラであればnullを返す。
+     */
+    @Nullable
+    private static CameraConfig load(@NonNull String cameraId, @NonNull CameraCharacteristics characteristics) {
+        //向きが分からないカメラは使用しない
+        Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        if (facing == null) {
+            return null;
+        }
+
+        //ストリームの情報が取得できないカメラは使用しない
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            return null;
+        }
+
+        //センサの向きが取得できないカメラは使用しない
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        if (sensorOrientation == null) {
+            return null;
+        }
+
+        //JPEGを出力できないカメラは使用しない
+        Size[] jpegSizes = map.getOutputSizes(ImageFormat.JPEG);
+        if (jpegSizes == null || jpegSizes.length == 0) {
+            return null;
+        }
+
+        //センサのタイムスタンプの時間軸
+        Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        boolean timestampRealtime = timestampSource != null
+                && timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+
+        //フラッシュは使用可能か
+        Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+        boolean flashSupported = flashAvailable != null ? flashAvailable : false;
+
+        //保証された出力の組み合わせを判定するためのハードウェアレベル
+        Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+        int hardwareLevel = level != null ? level : CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
+
+        //AEが受け付けるフレームレートの範囲
+        FpsRange[] aeFpsRanges = toFpsRanges(characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES));
+
+        //高速度撮影 (120/240fps) に対応していればそのサイズと範囲
+        HighSpeedConfiguration[] highSpeedConfigurations = new HighSpeedConfiguration[0];
+        if (hasCapability(characteristics, CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_CONSTRAINED_HIGH_SPEED_VIDEO)) {
+            highSpeedConfigurations = toHighSpeedConfigurations(map);
+        }
+
+        //RAW (DNG) の機能があればRAW_SENSORのサイズ
+        StreamSizes rawStreams = StreamSizes.create(new FrameSize[0], null, null);
+        if (hasCapability(characteristics, CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_RAW)) {
+            rawStreams = toStreamSizes(map, ImageFormat.RAW_SENSOR, map.getOutputSizes(ImageFormat.RAW_SENSOR));
+        }
+
+        return CameraConfig.create(cameraId, sensorOrientation, flashSupported, timestampRealtime, hardwareLevel,
+                toStreamSizes(map, ImageFormat.JPEG, jpegSizes),
+                toPreviewStreamSizes(map, map.getOutputSizes(SurfaceTexture.class)),
+                toStreamSizes(map, ImageFormat.YUV_420_888, map.getOutputSizes(ImageFormat.YUV_420_888)),
+                aeFpsRanges, highSpeedConfigurations, rawStreams, toLens(characteristics, facing));
+    }
+
+    /**
+     * レンズの向き、画角、物理カメラ
+     */
+    @NonNull
+    private static CameraLens toLens(@NonNull CameraCharacteristics characteristics, int facing) {
+        //画角は最も広い焦点距離で求める
+        float[] focalLengths = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        SizeF physicalSize = characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+        float focalLength = 0;
+        if (focalLengths != null) {
+            for (float length : focalLengths) {
+                if (focalLength == 0 || length < focalLength) {
+                    focalLength = length;
+                }
+            }
+        }
+        float fieldOfView = physicalSize != null ? CameraLens.computeFieldOfView(focalLength, physicalSize.getWidth()) : 0;
+
+        //論理カメラであれば構成する物理カメラ
+        String[] physicalCameraIds = new String[0];
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                && hasCapability(characteristics, CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_LOGICAL_MULTI_CAMERA)) {
+            Set<String> ids = characteristics.getPhysicalCameraIds();
+            physicalCameraIds = ids.toArray(new String[0]);
+        }
+
+        //外部カメラなど前面と背面以外はEXTERNALとして扱う
+        int lensFacing;
+        switch (facing) {
+            case CameraCharacteristics.LENS_FACING_FRONT:
+                lensFacing = CameraLens.FACING_FRONT;
+                break;
+            case CameraCharacteristics.LENS_FACING_BACK:
+                lensFacing = CameraLens.FACING_BACK;
+                break;
+            default:
+                lensFacing = CameraLens.FACING_EXTERNAL;
+                break;
+        }
+        return new CameraLens(lensFacing, fieldOfView, physicalCameraIds);
+    }
+
+    private static boolean contains(@NonNull String[] values, @NonNull String value) {
+        for (String v : values) {
+            if (v.equals(value)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 出力サイズとサイズ毎の最小フレーム間隔・ストール時間
+     */
+    @NonNull
+    private static StreamSizes toStreamSizes(@NonNull StreamConfigurationMap map, int format, @Nullable Size[] sizes) {
+        if (sizes == null) return StreamSizes.create(new FrameSize[0], null, null);
+
+        long[] minFrameDurations = new long[sizes.length];
+        long[] stallDurations = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            minFrameDurations[i] = map.getOutputMinFrameDuration(format, sizes[i]);
+            stallDurations[i] = map.getOutputStallDuration(format, sizes[i]);
+        }
+        return StreamSizes.create(toFrameSizes(sizes), minFrameDurations, stallDurations);
+    }
+
+    @NonNull
+    private static StreamSizes toPreviewStreamSizes(@NonNull StreamConfigurationMap map, @Nullable Size[] sizes) {
+        if (sizes == null) return StreamSizes.create(new FrameSize[0], null, null);
+
+        long[] minFrameDurations = new long[sizes.length];
+        long[] stallDurations = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            minFrameDurations[i] = map.getOutputMinFrameDuration(SurfaceTexture.class, sizes[i]);
+            stallDurations[i] = map.getOutputStallDuration(SurfaceTexture.class, sizes[i]);
+        }
+        return StreamSizes.create(toFrameSizes(sizes), minFrameDurations, stallDurations);
+    }
+
+    private static boolean hasCapability(@NonNull CameraCharacteristics characteristics, int capability) {
+        int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        if (capabilities == null) return false;
+
+        for (int c : capabilities) {
+            if (c == capability) return true;
+        }
+        return false;
+    }
+
+    @NonNull
+    private static FpsRange[] toFpsRanges(@Nullable Range<Integer>[] ranges) {
+        if (ranges == null) return new FpsRange[0];
+
+        FpsRange[] fpsRanges = new FpsRange[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            fpsRanges[i] = new FpsRange(ranges[i].getLower(), ranges[i].getUpper());
+        }
+        return fpsRanges;
+    }
+
+    @NonNull
+    private static HighSpeedConfiguration[] toHighSpeedConfigurations(@NonNull StreamConfigurationMap map) {
+        List<HighSpeedConfiguration> configurations = new ArrayList<>();
+        for (Size size : map.getHighSpeedVideoSizes()) {
+            FrameSize frameSize = new FrameSize(size.getWidth(), size.getHeight());
+            for (Range<Integer> range : map.getHighSpeedVideoFpsRangesFor(size)) {
+                configurations.add(new HighSpeedConfiguration(frameSize, new FpsRange(range.getLower(), range.getUpper())));
+            }
+        }
+        return configurations.toArray(new HighSpeedConfiguration[0]);
+    }
+
+    @NonNull
+    private static FrameSize[] toFrameSizes(@Nullable Size[] sizes) {
+        if (sizes == null) return new FrameSize[0];
+
+        FrameSize[] frameSizes = new FrameSize[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            frameSizes[i] = new FrameSize(sizes[i].getWidth(), sizes[i].getHeight());
+        }
+        return frameSizes;
+    }
+}
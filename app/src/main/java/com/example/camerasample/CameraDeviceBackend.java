@@ -0,0 +1,59 @@
+package com.example.camerasample;
+
+import android.annotation.SuppressLint;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+
+/**
+ * CameraManager/CameraDeviceによるカメラの開閉
+ *
+ * CameraLifecycleControllerのスレッドから呼び出される。
+ * CameraDevice.StateCallbackは指定したハンドラのスレッドで受け取り、そのままコントローラへ渡す。
+ */
+public class CameraDeviceBackend implements CameraLifecycleController.Backend<CameraDevice> {
+
+    private final CameraManager _manager;
+    private final Handler _handler;
+
+    public CameraDeviceBackend(@NonNull CameraManager manager, @NonNull Handler handler) {
+        _manager = manager;
+        _handler = handler;
+    }
+
+    //権限は呼び出し元で確認している
+    @SuppressLint("MissingPermission")
+    @Override
+    public void open(String cameraId, final CameraLifecycleController.OpenCallback<CameraDevice> callback) {
+        try {
+            _manager.openCamera(cameraId, new CameraDevice.StateCallback() {
+                @Override
+                public void onOpened(@NonNull CameraDevice cameraDevice) {
+                    callback.onOpened(cameraDevice);
+                }
+
+                @Override
+                public void onDisconnected(@NonNull CameraDevice cameraDevice) {
+                    callback.onDisconnected(cameraDevice);
+                }
+
+                @Override
+                public void onError(@NonNull CameraDevice cameraDevice, int error) {
+                    callback.onError(cameraDevice, error);
+                }
+            }, _handler);
+        }
+        catch (CameraAccessException | IllegalArgumentException | SecurityException e) {
+            e.printStackTrace();
+            callback.onError(null, CameraLifecycleController.ERROR_OPEN_FAILED);
+        }
+    }
+
+    @Override
+    public void close(CameraDevice device) {
+        device.close();
+    }
+}
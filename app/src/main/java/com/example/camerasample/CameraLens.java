@@ -0,0 +1,139 @@
+package com.example.camerasample;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * カメラのレンズの情報 (向き、画角、論理カメラを構成する物理カメラ)
+ *
+ * 前面・背面・広角のどれに当たるかをCameraCatalogで判定するために使う。
+ */
+public final class CameraLens {
+
+    //LENS_FACING (CameraMetadataと同じ値)
+    public static final int FACING_FRONT = 0;
+    public static final int FACING_BACK = 1;
+    public static final int FACING_EXTERNAL = 2;
+
+    //読み込み時の件数の上限
+    private static final int MAX_PHYSICAL_COUNT = 16;
+
+    //向きと画角のみ分かっていない前面カメラ (前面カメラのみを使っていた頃の設定と同じ扱い)
+    public static final CameraLens DEFAULT = new CameraLens(FACING_FRONT, 0, new String[0]);
+
+    private final int _facing;
+    private final float _fieldOfView;
+    private final String[] _physicalCameraIds;
+
+    /**
+     * @param facing 向き (FACING_*)
+     * @param fieldOfView 横方向の画角 (度、不明は0)
+     * @param physicalCameraIds 論理カメラを構成する物理カメラのID (論理カメラでなければ空)
+     */
+    public CameraLens(int facing, float fieldOfView, String[] physicalCameraIds) {
+        if (facing < FACING_FRONT || facing > FACING_EXTERNAL) {
+            throw new IllegalArgumentException("Invalid lens facing: " + facing);
+        }
+
+        _facing = facing;
+        _fieldOfView = fieldOfView;
+        _physicalCameraIds = physicalCameraIds.clone();
+    }
+
+    /**
+     * 焦点距離とセンサの物理サイズから横方向の画角を求める (不明は0)
+     *
+     * @param focalLength LENS_INFO_AVAILABLE_FOCAL_LENGTHSの最小値 (mm)
+     * @param sensorWidth SENSOR_INFO_PHYSICAL_SIZEの幅 (mm)
+     */
+    public static float computeFieldOfView(float focalLength, float sensorWidth) {
+        if (focalLength <= 0 || sensorWidth <= 0) return 0;
+
+        return (float)Math.toDegrees(2 * Math.atan(sensorWidth / (2 * focalLength)));
+    }
+
+    public int getFacing() {
+        return _facing;
+    }
+
+    public boolean isFrontFacing() {
+        return _facing == FACING_FRONT;
+    }
+
+    public float getFieldOfView() {
+        return _fieldOfView;
+    }
+
+    /**
+     * 物理カメラのID (呼び出し側で変更しないこと)
+     */
+    public String[] getPhysicalCameraIds() {
+        return _physicalCameraIds;
+    }
+
+    public boolean isLogicalMultiCamera() {
+        return _physicalCameraIds.length > 0;
+    }
+
+    public boolean hasPhysicalCamera(String cameraId) {
+        for (String id : _physicalCameraIds) {
+            if (id.equals(cameraId)) return true;
+        }
+        return false;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(_facing);
+        out.writeFloat(_fieldOfView);
+        out.writeInt(_physicalCameraIds.length);
+        for (String id : _physicalCameraIds) {
+            out.writeUTF(id);
+        }
+    }
+
+    public static CameraLens readFrom(DataInput in) throws IOException {
+        int facing = in.readInt();
+        float fieldOfView = in.readFloat();
+        int count = in.readInt();
+        if (count < 0 || count > MAX_PHYSICAL_COUNT) {
+            throw new IOException("Invalid physical camera count: " + count);
+        }
+        String[] physicalCameraIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            physicalCameraIds[i] = in.readUTF();
+        }
+
+        try {
+            return new CameraLens(facing, fieldOfView, physicalCameraIds);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CameraLens)) return false;
+
+        CameraLens other = (CameraLens)o;
+        return _facing == other._facing
+                && Float.compare(_fieldOfView, other._fieldOfView) == 0
+                && Arrays.equals(_physicalCameraIds, other._physicalCameraIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return _facing * 31 + Float.floatToIntBits(_fieldOfView);
+    }
+
+    @Override
+    public String toString() {
+        String facing = _facing == FACING_FRONT ? "front" : _facing == FACING_BACK ? "back" : "external";
+        return String.format(Locale.US, "%s %.1fdeg", facing, _fieldOfView)
+                + (_physicalCameraIds.length > 0 ? " physical " + Arrays.toString(_physicalCameraIds) : "");
+    }
+}
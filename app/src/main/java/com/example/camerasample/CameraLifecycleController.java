@@ -0,0 +1,316 @@
+package com.example.camerasample;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * カメラを開く・閉じる処理の管理
+ *
+ * open()/close()は呼び出し元を待たせずに世代番号を進め、実際の処理は専用の直列Executorで順に行う。
+ * 処理の時点で世代が古くなっている要求は捨てるので、一時停止と再開を素早く繰り返しても
+ * 最後の要求だけが実行される。開いている途中で不要になったカメラは開き終わった時点で閉じる。
+ * 同時に開くカメラは常に1つまでで、開いている途中に次の要求が来た場合は結果を待ってから開く。
+ * ListenerはExecutorのスレッドから呼び出される。
+ */
+public class CameraLifecycleController<D> {
+
+    /**
+     * カメラを実際に開閉する処理 (CameraManager/CameraDeviceの代わりにテストでは偽物を使う)
+     */
+    public interface Backend<D> {
+        /**
+         * 開き始める (結果はcallbackへ、どのスレッドから通知してもよい)
+         * 開けなかった場合は例外を投げずにcallback.onError()を呼ぶ。
+         */
+        void open(String cameraId, OpenCallback<D> callback);
+
+        void close(D device);
+    }
+
+    /**
+     * 開いた結果の通知
+     */
+    public interface OpenCallback<D> {
+        void onOpened(D device);
+
+        void onDisconnected(D device);
+
+        /**
+         * 開けなかった場合のdeviceはnull
+         */
+        void onError(D device, int error);
+    }
+
+    /**
+     * 状態の通知 (Executorのスレッドから呼び出される)
+     */
+    public interface Listener<D> {
+        void onOpened(D device, int generation);
+
+        void onClosed(int generation);
+
+        void onDisconnected(int generation);
+
+        void onError(int generation, int error);
+    }
+
+    //開く要求自体が失敗した (CameraAccessExceptionなど)
+    public static final int ERROR_OPEN_FAILED = -1;
+
+    //状態 (Executorのスレッドからのみ参照する)
+    private static final int STATE_CLOSED = 0;
+    private static final int STATE_OPENING = 1;
+    private static final int STATE_OPENED = 2;
+
+    private final Executor _executor;
+    private final Backend<D> _backend;
+    private final Listener<D> _listener;
+
+    //最新の要求の世代
+    private final AtomicInteger _generation = new AtomicInteger();
+
+    private int _state = STATE_CLOSED;
+    private D _device;
+    private int _deviceGeneration;
+
+    //開いている途中に届いた次の要求
+    private String _pendingCameraId;
+    private int _pendingGeneration;
+
+    private final AtomicInteger _openCount = new AtomicInteger();
+    private final AtomicInteger _closeCount = new AtomicInteger();
+    private final AtomicInteger _staleCount = new AtomicInteger();
+
+    public CameraLifecycleController(Executor executor, Backend<D> backend, Listener<D> listener) {
+        _executor = executor;
+        _backend = backend;
+        _listener = listener;
+    }
+
+    /**
+     * カメラを開く
+     * すぐに戻り、この要求の世代を返す。
+     */
+    public int open(final String cameraId) {
+        final int generation = _generation.incrementAndGet();
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                requestOpen(cameraId, generation);
+            }
+        });
+        return generation;
+    }
+
+    /**
+     * カメラを閉じる
+     * すぐに戻る。releaseはカメラを閉じた後にExecutorのスレッドで実行する (ImageReaderの解放など)。
+     */
+    public int close(final Runnable release) {
+        final int generation = _generation.incrementAndGet();
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                closeDevice();
+                if (release != null) {
+                    release.run();
+                }
+            }
+        });
+        return generation;
+    }
+
+    /**
+     * 世代が最新か (古い世代の結果は使わない)
+     */
+    public boolean isCurrent(int generation) {
+        return _generation.get() == generation;
+    }
+
+    public int getGeneration() {
+        return _generation.get();
+    }
+
+    /**
+     * Backend.open()を呼び出した回数
+     */
+    public int getOpenCount() {
+        return _openCount.get();
+    }
+
+    /**
+     * Backend.close()を呼び出した回数
+     */
+    public int getCloseCount() {
+        return _closeCount.get();
+    }
+
+    /**
+     * 捨てた要求と、開き終わった時点で不要になっていたカメラの数
+     */
+    public int getStaleCount() {
+        return _staleCount.get();
+    }
+
+    private void requestOpen(String cameraId, int generation) {
+        if (!isCurrent(generation)) {
+            _staleCount.incrementAndGet();
+            return;
+        }
+
+        switch (_state) {
+            case STATE_OPENING:
+                //開き終わるのを待ってから開く
+                _pendingCameraId = cameraId;
+                _pendingGeneration = generation;
+                return;
+
+            case STATE_OPENED:
+                closeDevice();
+                break;
+        }
+        startOpen(cameraId, generation);
+    }
+
+    private void startOpen(String cameraId, final int generation) {
+        _state = STATE_OPENING;
+        _deviceGeneration = generation;
+        _openCount.incrementAndGet();
+
+        _backend.open(cameraId, new OpenCallback<D>() {
+            @Override
+            public void onOpened(final D device) {
+                post(device, new Runnable() {
+                    @Override
+                    public void run() {
+                        onDeviceOpened(device, generation);
+                    }
+                });
+            }
+
+            @Override
+            public void onDisconnected(final D device) {
+                post(device, new Runnable() {
+                    @Override
+                    public void run() {
+                        onDeviceLost(device, generation, false, 0);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final D device, final int error) {
+                post(device, new Runnable() {
+                    @Override
+                    public void run() {
+                        onDeviceLost(device, generation, true, error);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onDeviceOpened(D device, int generation) {
+        if (_state != STATE_OPENING || _deviceGeneration != generation) {
+            //既に失敗として扱った
+            closeBackend(device);
+            return;
+        }
+
+        if (!isCurrent(generation)) {
+            //開いている間に不要になった
+            _staleCount.incrementAndGet();
+            _state = STATE_CLOSED;
+            closeBackend(device);
+            startPendingOpen();
+            return;
+        }
+
+        _state = STATE_OPENED;
+        _device = device;
+        _listener.onOpened(device, generation);
+    }
+
+    private void onDeviceLost(D device, int generation, boolean error, int errorCode) {
+        boolean opening = _state == STATE_OPENING && _deviceGeneration == generation;
+        boolean opened = _state == STATE_OPENED && _device == device && device != null;
+        if (!opening && !opened) {
+            //既に閉じている
+            return;
+        }
+
+        _state = STATE_CLOSED;
+        _device = null;
+        if (device != null) {
+            closeBackend(device);
+        }
+
+        if (isCurrent(generation)) {
+            if (error) {
+                _listener.onError(generation, errorCode);
+            }
+            else {
+                _listener.onDisconnected(generation);
+            }
+        }
+        if (opening) {
+            startPendingOpen();
+        }
+    }
+
+    private void closeDevice() {
+        _pendingCameraId = null;
+
+        if (_state != STATE_OPENED) {
+            //開いている途中であれば、開き終わった時点で閉じる
+            return;
+        }
+
+        D device = _device;
+        int generation = _deviceGeneration;
+        _state = STATE_CLOSED;
+        _device = null;
+        closeBackend(device);
+        _listener.onClosed(generation);
+    }
+
+    private void startPendingOpen() {
+        String cameraId = _pendingCameraId;
+        _pendingCameraId = null;
+        if (cameraId == null) return;
+
+        if (!isCurrent(_pendingGeneration)) {
+            _staleCount.incrementAndGet();
+            return;
+        }
+        startOpen(cameraId, _pendingGeneration);
+    }
+
+    private void closeBackend(D device) {
+        _closeCount.incrementAndGet();
+        _backend.close(device);
+    }
+
+    private void execute(Runnable task) {
+        try {
+            _executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            //終了後の要求は捨てる
+            _staleCount.incrementAndGet();
+        }
+    }
+
+    private void post(D device, Runnable task) {
+        try {
+            _executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            //終了後に開き終わったカメラはその場で閉じる
+            if (device != null) {
+                closeBackend(device);
+            }
+        }
+    }
+}
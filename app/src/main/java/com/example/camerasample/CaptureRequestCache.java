@@ -0,0 +1,192 @@
+package com.example.camerasample;
+
+/**
+ * 撮影要求 (CaptureRequest) の保持
+ *
+ * 要求の種類と、要求毎に変わる設定 (AEモード、JPEGの向き、AFモード) の組毎に
+ * 生成済みの要求を保持し、シャッター毎に生成し直さない。
+ * 生成した要求は変更できないので、カメラのスレッドとUIスレッドで共有してよい。
+ * 出力先などの設定はセッション毎に異なるので、セッションを作り直したらinvalidate()する。
+ * 生成中にinvalidate()された場合、生成したものは返すが保持はしない。
+ */
+public class CaptureRequestCache<R> {
+
+    //要求の種類
+    public static final int KIND_PREVIEW = 0;           //プレビュー (繰り返し)
+    public static final int KIND_AF_TRIGGER = 1;        //フォーカスのロック開始
+    public static final int KIND_PRECAPTURE = 2;        //露出のプリキャプチャ開始
+    public static final int KIND_CANCEL = 3;            //フォーカスのロック解除
+    public static final int KIND_STILL = 4;             //静止画
+    public static final int KIND_BURST = 5;             //連写 (露出を固定した静止画)
+    public static final int KIND_VIDEO_SNAPSHOT = 6;    //録画中の静止画
+    public static final int KIND_COUNT = 7;
+
+    private static final String[] KIND_NAMES = {
+            "preview", "af_trigger", "precapture", "cancel", "still", "burst", "video_snapshot",
+    };
+
+    //保持する組の数 (種類 x 画面の向き程度)
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * 要求の生成
+     */
+    public interface Factory<R> {
+        /**
+         * 要求を生成する (生成できなければnull)
+         *
+         * @param jpegOrientation JPEGを出力しない種類では常に0
+         */
+        R create(int kind, int aeMode, int jpegOrientation, int afMode);
+    }
+
+    private final Factory<R> _factory;
+
+    //最近使った順 (キーと要求は同じ位置)
+    private final long[] _keys;
+    private final Object[] _requests;
+    private int _size;
+
+    //invalidate()の回数 (生成中に無効になったかの判定に使う)
+    private int _generation;
+
+    private int _hits;
+    private int _misses;
+
+    public CaptureRequestCache(Factory<R> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    public CaptureRequestCache(Factory<R> factory, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+        _factory = factory;
+        _keys = new long[capacity];
+        _requests = new Object[capacity];
+    }
+
+    public static String getKindName(int kind) {
+        return KIND_NAMES[kind];
+    }
+
+    /**
+     * JPEGの向きを要求に含める種類か
+     */
+    public static boolean usesJpegOrientation(int kind) {
+        return kind == KIND_STILL || kind == KIND_BURST || kind == KIND_VIDEO_SNAPSHOT;
+    }
+
+    /**
+     * 種類と設定の組を1つの値にする
+     * JPEGを出力しない種類では向きを区別しない。
+     */
+    static long key(int kind, int aeMode, int jpegOrientation, int afMode) {
+        if (kind < 0 || kind >= KIND_COUNT) throw new IllegalArgumentException("Invalid kind: " + kind);
+
+        int orientation = usesJpegOrientation(kind) ? (jpegOrientation / 90) & 3 : 0;
+        return ((long)(aeMode & 0xffff) << 32) | ((long)(afMode & 0xffff) << 16) | (orientation << 8) | kind;
+    }
+
+    /**
+     * 要求を取得する
+     * 保持していなければ生成して保持する。生成できなければnullを返す。
+     */
+    @SuppressWarnings("unchecked")
+    public R get(int kind, int aeMode, int jpegOrientation, int afMode) {
+        long key = key(kind, aeMode, jpegOrientation, afMode);
+        int generation;
+        synchronized (this) {
+            for (int i = 0; i < _size; i++) {
+                if (_keys[i] == key) {
+                    _hits++;
+                    moveToFront(i);
+                    return (R)_requests[0];
+                }
+            }
+            _misses++;
+            generation = _generation;
+        }
+
+        //生成はロックの外で行う (他のスレッドの取得を待たせない)
+        R request = _factory.create(kind, aeMode, usesJpegOrientation(kind) ? jpegOrientation : 0, afMode);
+        if (request == null) return null;
+
+        synchronized (this) {
+            if (generation == _generation) {
+                put(key, request);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * 指定の種類の要求を事前に生成しておく
+     */
+    public void prebuild(int[] kinds, int aeMode, int jpegOrientation, int afMode) {
+        for (int kind : kinds) {
+            get(kind, aeMode, jpegOrientation, afMode);
+        }
+    }
+
+    /**
+     * 保持している要求を全て破棄する (セッションを作り直した場合など)
+     */
+    public synchronized void invalidate() {
+        for (int i = 0; i < _size; i++) {
+            _requests[i] = null;
+        }
+        _size = 0;
+        _generation++;
+    }
+
+    public synchronized int size() {
+        return _size;
+    }
+
+    public synchronized int getHits() {
+        return _hits;
+    }
+
+    public synchronized int getMisses() {
+        return _misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CaptureRequestCache{size=" + _size + " hits=" + _hits + " misses=" + _misses
+                + " invalidations=" + _generation + "}";
+    }
+
+    private void put(long key, R request) {
+        //他のスレッドが先に生成していればそれを置き換える
+        int index = indexOf(key);
+        if (index < 0) {
+            //空きが無ければ最も古いものを捨てる
+            if (_size < _keys.length) {
+                _size++;
+            }
+            index = _size - 1;
+        }
+        _keys[index] = key;
+        _requests[index] = request;
+        moveToFront(index);
+    }
+
+    private int indexOf(long key) {
+        for (int i = 0; i < _size; i++) {
+            if (_keys[i] == key) return i;
+        }
+        return -1;
+    }
+
+    private void moveToFront(int index) {
+        if (index == 0) return;
+
+        long key = _keys[index];
+        Object request = _requests[index];
+        System.arraycopy(_keys, 0, _keys, 1, index);
+        System.arraycopy(_requests, 0, _requests, 1, index);
+        _keys[0] = key;
+        _requests[0] = request;
+    }
+}
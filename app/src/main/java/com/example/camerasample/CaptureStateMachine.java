@@ -0,0 +1,215 @@
+package com.example.camerasample;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 静止画撮影時の3A(AF/AE)の状態遷移
+ *
+ * プレビューの撮影結果毎に呼び出されるので、状態はintで持ち、遷移は表から引く。
+ * プレビュー中はisIdle()で何もせずに抜けられる。
+ * AF/AEが収束しないまま待ち続けないよう、待ち状態には時間制限を設ける。
+ * 撮影の完了が通知されなかった場合も、撮影済みの状態に時間制限を設けて次の撮影を受け付ける。
+ * 状態はカメラのスレッドとUIスレッドの両方から変更されるため、AtomicIntegerで持つ。
+ */
+public class CaptureStateMachine {
+
+    //状態
+    public static final int STATE_PREVIEW = 0;
+    public static final int STATE_WAITING_LOCK = 1;
+    public static final int STATE_WAITING_PRECAPTURE = 2;
+    public static final int STATE_WAITING_NON_PRECAPTURE = 3;
+    public static final int STATE_PICTURE_TAKEN = 4;
+    private static final int STATE_COUNT = 5;
+
+    //遷移時に行う処理
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_RUN_PRECAPTURE = 1;
+    public static final int ACTION_CAPTURE = 2;
+
+    //AFの状態の分類
+    private static final int AF_UNKNOWN = 0;
+    private static final int AF_LOCKED = 1;
+    private static final int AF_OTHER = 2;
+    private static final int AF_CLASS_COUNT = 3;
+
+    //AEの状態の分類
+    private static final int AE_UNKNOWN = 0;
+    private static final int AE_CONVERGED = 1;
+    private static final int AE_PRECAPTURE = 2;
+    private static final int AE_FLASH_REQUIRED = 3;
+    private static final int AE_OTHER = 4;
+    private static final int AE_CLASS_COUNT = 5;
+
+    //状態の値から分類への変換表 (添字は値+1、UNKNOWNは-1)
+    private static final int[] AF_CLASSES = {
+            AF_UNKNOWN,     //UNKNOWN
+            AF_OTHER,       //INACTIVE
+            AF_OTHER,       //PASSIVE_SCAN
+            AF_OTHER,       //PASSIVE_FOCUSED
+            AF_OTHER,       //ACTIVE_SCAN
+            AF_LOCKED,      //FOCUSED_LOCKED
+            AF_LOCKED,      //NOT_FOCUSED_LOCKED
+            AF_OTHER,       //PASSIVE_UNFOCUSED
+    };
+    private static final int[] AE_CLASSES = {
+            AE_UNKNOWN,         //UNKNOWN
+            AE_OTHER,           //INACTIVE
+            AE_OTHER,           //SEARCHING
+            AE_CONVERGED,       //CONVERGED
+            AE_OTHER,           //LOCKED
+            AE_FLASH_REQUIRED,  //FLASH_REQUIRED
+            AE_PRECAPTURE,      //PRECAPTURE
+    };
+
+    //遷移表 [状態][AF分類][AE分類] = (遷移先 << 8) | 処理
+    private static final int[][][] TRANSITIONS = new int[STATE_COUNT][AF_CLASS_COUNT][AE_CLASS_COUNT];
+    static {
+        //既定は現在の状態に留まる
+        for (int state = 0; state < STATE_COUNT; state++) {
+            for (int af = 0; af < AF_CLASS_COUNT; af++) {
+                for (int ae = 0; ae < AE_CLASS_COUNT; ae++) {
+                    TRANSITIONS[state][af][ae] = transition(state, ACTION_NONE);
+                }
+            }
+        }
+
+        //フォーカスロック待ち
+        //AFが無い機器、またはAFがロックされAEが収束していれば撮影、AEが未収束なら露出の事前測光
+        for (int ae = 0; ae < AE_CLASS_COUNT; ae++) {
+            TRANSITIONS[STATE_WAITING_LOCK][AF_UNKNOWN][ae] = transition(STATE_PICTURE_TAKEN, ACTION_CAPTURE);
+            TRANSITIONS[STATE_WAITING_LOCK][AF_LOCKED][ae] = transition(STATE_WAITING_PRECAPTURE, ACTION_RUN_PRECAPTURE);
+        }
+        TRANSITIONS[STATE_WAITING_LOCK][AF_LOCKED][AE_UNKNOWN] = transition(STATE_PICTURE_TAKEN, ACTION_CAPTURE);
+        TRANSITIONS[STATE_WAITING_LOCK][AF_LOCKED][AE_CONVERGED] = transition(STATE_PICTURE_TAKEN, ACTION_CAPTURE);
+
+        //事前測光の開始待ち
+        for (int af = 0; af < AF_CLASS_COUNT; af++) {
+            TRANSITIONS[STATE_WAITING_PRECAPTURE][af][AE_UNKNOWN] = transition(STATE_WAITING_NON_PRECAPTURE, ACTION_NONE);
+            TRANSITIONS[STATE_WAITING_PRECAPTURE][af][AE_PRECAPTURE] = transition(STATE_WAITING_NON_PRECAPTURE, ACTION_NONE);
+            TRANSITIONS[STATE_WAITING_PRECAPTURE][af][AE_FLASH_REQUIRED] = transition(STATE_WAITING_NON_PRECAPTURE, ACTION_NONE);
+        }
+
+        //事前測光の終了待ち
+        for (int af = 0; af < AF_CLASS_COUNT; af++) {
+            for (int ae = 0; ae < AE_CLASS_COUNT; ae++) {
+                if (ae != AE_PRECAPTURE) {
+                    TRANSITIONS[STATE_WAITING_NON_PRECAPTURE][af][ae] = transition(STATE_PICTURE_TAKEN, ACTION_CAPTURE);
+                }
+            }
+        }
+    }
+
+    private final long _timeoutNanos;
+    private final long _captureTimeoutNanos;
+    private final AtomicInteger _state = new AtomicInteger(STATE_PREVIEW);
+    private volatile long _stateEnteredNanos;
+    private volatile int _timeoutCount;
+
+    /**
+     * @param timeoutNanos 待ち状態の時間制限 (超えた場合は収束を待たずに撮影する)
+     * @param captureTimeoutNanos 撮影済みの状態の時間制限 (超えた場合は撮影の完了を待たずに次の撮影を受け付ける)
+     */
+    public CaptureStateMachine(long timeoutNanos, long captureTimeoutNanos) {
+        if (timeoutNanos <= 0 || captureTimeoutNanos <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive.");
+        }
+
+        _timeoutNanos = timeoutNanos;
+        _captureTimeoutNanos = captureTimeoutNanos;
+    }
+
+    /**
+     * 撮影結果を処理する必要が無い状態か
+     */
+    public boolean isIdle() {
+        int state = _state.get();
+        return state == STATE_PREVIEW || state == STATE_PICTURE_TAKEN;
+    }
+
+    public int getState() {
+        return _state.get();
+    }
+
+    /**
+     * 時間制限により撮影した回数 (撮影の完了を待たずに次の撮影を受け付けた回数を含む)
+     */
+    public int getTimeoutCount() {
+        return _timeoutCount;
+    }
+
+    /**
+     * フォーカスロックの開始
+     * 撮影中の場合は何もせずfalseを返す。撮影中のまま時間制限を超えていればやり直す。
+     */
+    public boolean startLock(long nowNanos) {
+        int state = _state.get();
+        if (state != STATE_PREVIEW) {
+            //撮影結果が届かない場合や撮影の完了が通知されない場合は、ここで時間切れとする
+            long timeout = state == STATE_PICTURE_TAKEN ? _captureTimeoutNanos : _timeoutNanos;
+            if (nowNanos - _stateEnteredNanos <= timeout) return false;
+        }
+
+        //カメラのスレッドが遷移後の状態を見た時に開始時刻が揃っているよう先に設定する
+        _stateEnteredNanos = nowNanos;
+        if (!_state.compareAndSet(state, STATE_WAITING_LOCK)) return false;
+
+        if (state != STATE_PREVIEW) {
+            _timeoutCount++;
+        }
+        return true;
+    }
+
+    /**
+     * プレビューへ戻る
+     */
+    public void reset() {
+        _state.set(STATE_PREVIEW);
+    }
+
+    /**
+     * 撮影結果を処理して行うべき処理を返す
+     *
+     * @param afState CaptureResult.CONTROL_AF_STATE (無い場合はControlState.UNKNOWN)
+     * @param aeState CaptureResult.CONTROL_AE_STATE (無い場合はControlState.UNKNOWN)
+     */
+    public int onResult(int afState, int aeState, long nowNanos) {
+        int state = _state.get();
+        if (state == STATE_PREVIEW || state == STATE_PICTURE_TAKEN) return ACTION_NONE;
+
+        int next;
+        int action;
+        boolean timedOut = nowNanos - _stateEnteredNanos > _timeoutNanos;
+        if (timedOut) {
+            //収束しないまま時間切れになったらそのまま撮影する
+            next = STATE_PICTURE_TAKEN;
+            action = ACTION_CAPTURE;
+        }
+        else {
+            int transition = TRANSITIONS[state][classify(AF_CLASSES, afState, AF_OTHER)][classify(AE_CLASSES, aeState, AE_OTHER)];
+            next = transition >> 8;
+            action = transition & 0xFF;
+        }
+
+        if (next == state) return action;
+
+        //他のスレッドが状態を変えていたら何もしない
+        if (!_state.compareAndSet(state, next)) return ACTION_NONE;
+
+        _stateEnteredNanos = nowNanos;
+        if (timedOut) {
+            _timeoutCount++;
+        }
+        return action;
+    }
+
+    private static int classify(int[] classes, int value, int otherClass) {
+        int index = value + 1;
+        if (index < 0 || index >= classes.length) return otherClass;
+
+        return classes[index];
+    }
+
+    private static int transition(int next, int action) {
+        return (next << 8) | action;
+    }
+}
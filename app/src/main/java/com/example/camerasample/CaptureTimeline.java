@@ -0,0 +1,282 @@
+package com.example.camerasample;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * フレーム毎の撮影結果 (タイムスタンプ、フレーム間隔、露出、3Aの状態) の記録
+ *
+ * onCaptureCompletedの結果を事前に確保したプリミティブの配列へ循環して書き込み、
+ * 容量を超えたら古いものから上書きする。記録ではオブジェクトを生成しない。
+ * 解析と書き出しはsnapshot()で複製したものに対して行い、記録を待たせない。
+ * 値が無い項目は、時間と感度は0、3Aの状態はControlState.UNKNOWNとする。
+ */
+public class CaptureTimeline {
+
+    //保持するフレーム数 (30fpsで約34秒)
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    //バイナリ形式の識別子 ("CTL1") とバージョン
+    static final int BINARY_MAGIC = 0x43544c31;
+    static final int BINARY_VERSION = 1;
+
+    //読み込み時の件数の上限
+    private static final int MAX_COUNT = 1 << 20;
+
+    private static final String CSV_HEADER = "frame_number,timestamp_ns,interval_ns,frame_duration_ns,exposure_time_ns,sensitivity,af_state,ae_state,awb_state";
+
+    /**
+     * 記録の複製 (古い順)
+     */
+    public static final class Snapshot {
+        private final long[] _frameNumbers;
+        private final long[] _timestamps;
+        private final long[] _frameDurations;
+        private final long[] _exposureTimes;
+        private final int[] _sensitivities;
+        private final byte[] _afStates;
+        private final byte[] _aeStates;
+        private final byte[] _awbStates;
+
+        //これまでに記録した数 (上書きされたものを含む)
+        private final long _recordedCount;
+
+        Snapshot(int size, long recordedCount) {
+            _frameNumbers = new long[size];
+            _timestamps = new long[size];
+            _frameDurations = new long[size];
+            _exposureTimes = new long[size];
+            _sensitivities = new int[size];
+            _afStates = new byte[size];
+            _aeStates = new byte[size];
+            _awbStates = new byte[size];
+            _recordedCount = recordedCount;
+        }
+
+        public int size() {
+            return _timestamps.length;
+        }
+
+        public long getRecordedCount() {
+            return _recordedCount;
+        }
+
+        public long getFrameNumber(int index) {
+            return _frameNumbers[index];
+        }
+
+        /**
+         * SENSOR_TIMESTAMP (ナノ秒)
+         */
+        public long getTimestamp(int index) {
+            return _timestamps[index];
+        }
+
+        /**
+         * SENSOR_FRAME_DURATION (ナノ秒、不明は0)
+         */
+        public long getFrameDuration(int index) {
+            return _frameDurations[index];
+        }
+
+        /**
+         * SENSOR_EXPOSURE_TIME (ナノ秒、不明は0)
+         */
+        public long getExposureTime(int index) {
+            return _exposureTimes[index];
+        }
+
+        /**
+         * SENSOR_SENSITIVITY (ISO、不明は0)
+         */
+        public int getSensitivity(int index) {
+            return _sensitivities[index];
+        }
+
+        public int getAfState(int index) {
+            return _afStates[index];
+        }
+
+        public int getAeState(int index) {
+            return _aeStates[index];
+        }
+
+        public int getAwbState(int index) {
+            return _awbStates[index];
+        }
+
+        /**
+         * 1フレーム1行のCSVで書き出す (先頭行は項目名)
+         */
+        public void writeCsv(Appendable out) throws IOException {
+            out.append(CSV_HEADER).append('\n');
+            for (int i = 0; i < size(); i++) {
+                long interval = i > 0 ? _timestamps[i] - _timestamps[i - 1] : 0;
+                out.append(String.format(Locale.US, "%d,%d,%d,%d,%d,%d,%d,%d,%d\n",
+                        _frameNumbers[i], _timestamps[i], interval, _frameDurations[i], _exposureTimes[i],
+                        _sensitivities[i], _afStates[i], _aeStates[i], _awbStates[i]));
+            }
+        }
+
+        /**
+         * バイナリ形式で書き出す (1フレーム39バイト)
+         */
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeLong(_recordedCount);
+            out.writeInt(size());
+            for (int i = 0; i < size(); i++) {
+                out.writeLong(_frameNumbers[i]);
+                out.writeLong(_timestamps[i]);
+                out.writeLong(_frameDurations[i]);
+                out.writeLong(_exposureTimes[i]);
+                out.writeInt(_sensitivities[i]);
+                out.writeByte(_afStates[i]);
+                out.writeByte(_aeStates[i]);
+                out.writeByte(_awbStates[i]);
+            }
+        }
+
+        /**
+         * writeTo()で書き出したものを読み込む
+         */
+        public static Snapshot readFrom(DataInput in) throws IOException {
+            if (in.readInt() != BINARY_MAGIC) {
+                throw new IOException("Not a capture timeline.");
+            }
+            int version = in.readInt();
+            if (version != BINARY_VERSION) {
+                throw new IOException("Unsupported version: " + version);
+            }
+
+            long recordedCount = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || count > MAX_COUNT) {
+                throw new IOException("Invalid frame count: " + count);
+            }
+
+            Snapshot snapshot = new Snapshot(count, recordedCount);
+            for (int i = 0; i < count; i++) {
+                snapshot._frameNumbers[i] = in.readLong();
+                snapshot._timestamps[i] = in.readLong();
+                snapshot._frameDurations[i] = in.readLong();
+                snapshot._exposureTimes[i] = in.readLong();
+                snapshot._sensitivities[i] = in.readInt();
+                snapshot._afStates[i] = in.readByte();
+                snapshot._aeStates[i] = in.readByte();
+                snapshot._awbStates[i] = in.readByte();
+            }
+            return snapshot;
+        }
+    }
+
+    private final long[] _frameNumbers;
+    private final long[] _timestamps;
+    private final long[] _frameDurations;
+    private final long[] _exposureTimes;
+    private final int[] _sensitivities;
+    private final byte[] _afStates;
+    private final byte[] _aeStates;
+    private final byte[] _awbStates;
+
+    //次に書き込む位置と、保持している数
+    private int _next;
+    private int _size;
+    private long _recordedCount;
+
+    public CaptureTimeline() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CaptureTimeline(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+        _frameNumbers = new long[capacity];
+        _timestamps = new long[capacity];
+        _frameDurations = new long[capacity];
+        _exposureTimes = new long[capacity];
+        _sensitivities = new int[capacity];
+        _afStates = new byte[capacity];
+        _aeStates = new byte[capacity];
+        _awbStates = new byte[capacity];
+    }
+
+    /**
+     * 1フレーム分を記録する
+     * 満杯の場合は最も古いものを上書きする。
+     */
+    public synchronized void record(long frameNumber, long timestamp, long frameDuration, long exposureTime,
+                                    int sensitivity, int afState, int aeState, int awbState) {
+        int index = _next;
+        _frameNumbers[index] = frameNumber;
+        _timestamps[index] = timestamp;
+        _frameDurations[index] = frameDuration;
+        _exposureTimes[index] = exposureTime;
+        _sensitivities[index] = sensitivity;
+        _afStates[index] = (byte)afState;
+        _aeStates[index] = (byte)aeState;
+        _awbStates[index] = (byte)awbState;
+
+        _next = index + 1 < _timestamps.length ? index + 1 : 0;
+        if (_size < _timestamps.length) {
+            _size++;
+        }
+        _recordedCount++;
+    }
+
+    /**
+     * 記録を破棄する (セッションを作り直した場合など)
+     */
+    public synchronized void clear() {
+        _next = 0;
+        _size = 0;
+    }
+
+    public synchronized int size() {
+        return _size;
+    }
+
+    public int getCapacity() {
+        return _timestamps.length;
+    }
+
+    /**
+     * これまでに記録した数 (上書きされたものを含む)
+     */
+    public synchronized long getRecordedCount() {
+        return _recordedCount;
+    }
+
+    /**
+     * 保持している記録を古い順に複製する
+     */
+    public synchronized Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(_size, _recordedCount);
+        int start = _next - _size;
+        if (start < 0) {
+            start += _timestamps.length;
+        }
+
+        //循環している場合は2回に分けて複製する
+        int first = Math.min(_size, _timestamps.length - start);
+        copy(start, snapshot, 0, first);
+        copy(0, snapshot, first, _size - first);
+        return snapshot;
+    }
+
+    private void copy(int from, Snapshot snapshot, int to, int length) {
+        if (length <= 0) return;
+
+        System.arraycopy(_frameNumbers, from, snapshot._frameNumbers, to, length);
+        System.arraycopy(_timestamps, from, snapshot._timestamps, to, length);
+        System.arraycopy(_frameDurations, from, snapshot._frameDurations, to, length);
+        System.arraycopy(_exposureTimes, from, snapshot._exposureTimes, to, length);
+        System.arraycopy(_sensitivities, from, snapshot._sensitivities, to, length);
+        System.arraycopy(_afStates, from, snapshot._afStates, to, length);
+        System.arraycopy(_aeStates, from, snapshot._aeStates, to, length);
+        System.arraycopy(_awbStates, from, snapshot._awbStates, to, length);
+    }
+}
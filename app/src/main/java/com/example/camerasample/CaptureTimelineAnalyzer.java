@@ -0,0 +1,234 @@
+package com.example.camerasample;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 撮影結果の記録 (CaptureTimeline.Snapshot) の解析
+ *
+ * プレビューのカクつきの調査に使う。直近の区間のフレームレート、
+ * タイムスタンプの間隔から推定した抜けたフレーム数、3Aが安定するまでの時間を求める。
+ */
+public final class CaptureTimelineAnalyzer {
+
+    //フレームレートを求める区間の既定値
+    public static final long DEFAULT_WINDOW_NANOS = 1000000000L;
+
+    //想定の間隔のこの倍を超えたらフレームが抜けたとみなす
+    static final double DROP_GAP_RATIO = 1.5;
+
+    //露出時間がフレーム間隔のこの割合以上であれば、露出がフレームレートを制限しているとみなす
+    static final double EXPOSURE_LIMITED_RATIO = 0.95;
+
+    /**
+     * 解析の結果
+     */
+    public static final class Summary {
+        public final int frames;
+        public final long durationNanos;
+        public final double meanFps;
+
+        //最後のフレームまでの区間と、全ての区間のうち最も低いフレームレート
+        public final double rollingFps;
+        public final double minRollingFps;
+
+        //タイムスタンプの間隔から推定した抜けたフレーム数と最大の間隔
+        public final int droppedFrames;
+        public final long maxGapNanos;
+
+        //フレーム番号が飛んでいる (撮影結果が届かなかった) 数
+        public final long missingResults;
+
+        //露出時間がフレーム間隔を決めているフレーム数
+        public final int exposureLimitedFrames;
+
+        //最初のフレームから3Aが安定するまで (安定しなければ-1)
+        public final long timeToConvergenceNanos;
+
+        //安定した後に外れて、再び安定した回数とその最大時間
+        public final int reconvergenceCount;
+        public final long maxReconvergenceNanos;
+
+        Summary(int frames, long durationNanos, double meanFps, double rollingFps, double minRollingFps,
+                int droppedFrames, long maxGapNanos, long missingResults, int exposureLimitedFrames,
+                long timeToConvergenceNanos, int reconvergenceCount, long maxReconvergenceNanos) {
+            this.frames = frames;
+            this.durationNanos = durationNanos;
+            this.meanFps = meanFps;
+            this.rollingFps = rollingFps;
+            this.minRollingFps = minRollingFps;
+            this.droppedFrames = droppedFrames;
+            this.maxGapNanos = maxGapNanos;
+            this.missingResults = missingResults;
+            this.exposureLimitedFrames = exposureLimitedFrames;
+            this.timeToConvergenceNanos = timeToConvergenceNanos;
+            this.reconvergenceCount = reconvergenceCount;
+            this.maxReconvergenceNanos = maxReconvergenceNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "Capture timeline: frames=%d duration=%.2fs fps=%.1f rolling=%.1f min_rolling=%.1f dropped=%d max_gap=%.2fms missing_results=%d exposure_limited=%d converge=%.1fms reconverge=%d max_reconverge=%.1fms",
+                    frames, durationNanos / 1e9, meanFps, rollingFps, minRollingFps, droppedFrames, maxGapNanos / 1e6,
+                    missingResults, exposureLimitedFrames, timeToConvergenceNanos / 1e6, reconvergenceCount, maxReconvergenceNanos / 1e6);
+        }
+    }
+
+    private CaptureTimelineAnalyzer() { }
+
+    /**
+     * 3Aが安定しているか
+     * 固定焦点のカメラはAFがINACTIVEのままなので、INACTIVEも安定しているとみなす。
+     * 結果に含まれていない状態は判定に使わない。
+     */
+    public static boolean is3aConverged(int afState, int aeState, int awbState) {
+        boolean af = afState == ControlState.UNKNOWN || afState == ControlState.AF_INACTIVE || ControlState.isFocused(afState);
+        boolean ae = aeState == ControlState.UNKNOWN || ControlState.isExposureConverged(aeState);
+        boolean awb = awbState == ControlState.UNKNOWN || ControlState.isWhiteBalanceConverged(awbState);
+        return af && ae && awb;
+    }
+
+    /**
+     * フレーム毎に、そのフレームまでの区間のフレームレートを求める
+     * 区間内のフレーム間隔の平均から求め、区間内に他のフレームが無ければ0とする。
+     */
+    public static double[] computeRollingFps(CaptureTimeline.Snapshot snapshot, long windowNanos) {
+        if (windowNanos <= 0) throw new IllegalArgumentException("windowNanos must be positive: " + windowNanos);
+
+        double[] fps = new double[snapshot.size()];
+        int start = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            long timestamp = snapshot.getTimestamp(i);
+            while (timestamp - snapshot.getTimestamp(start) > windowNanos) {
+                start++;
+            }
+            long span = timestamp - snapshot.getTimestamp(start);
+            fps[i] = i > start && span > 0 ? (i - start) * 1e9 / span : 0;
+        }
+        return fps;
+    }
+
+    /**
+     * フレーム間隔の中央値 (2フレーム未満は0)
+     */
+    public static long getMedianInterval(CaptureTimeline.Snapshot snapshot) {
+        if (snapshot.size() < 2) return 0;
+
+        long[] intervals = new long[snapshot.size() - 1];
+        for (int i = 1; i < snapshot.size(); i++) {
+            intervals[i - 1] = snapshot.getTimestamp(i) - snapshot.getTimestamp(i - 1);
+        }
+        Arrays.sort(intervals);
+        return intervals[intervals.length / 2];
+    }
+
+    /**
+     * タイムスタンプの間隔から抜けたフレーム数を推定する
+     * 想定の間隔はフレーム毎のSENSOR_FRAME_DURATION (不明であれば間隔の中央値) とする。
+     */
+    public static int countDroppedFrames(CaptureTimeline.Snapshot snapshot) {
+        long medianInterval = getMedianInterval(snapshot);
+        int dropped = 0;
+        for (int i = 1; i < snapshot.size(); i++) {
+            dropped += droppedBefore(snapshot, i, medianInterval);
+        }
+        return dropped;
+    }
+
+    /**
+     * 最初のフレームから3Aが安定するまでの時間 (安定しなければ-1)
+     */
+    public static long getTimeToConvergence(CaptureTimeline.Snapshot snapshot) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (is3aConverged(snapshot.getAfState(i), snapshot.getAeState(i), snapshot.getAwbState(i))) {
+                return snapshot.getTimestamp(i) - snapshot.getTimestamp(0);
+            }
+        }
+        return -1;
+    }
+
+    public static Summary analyze(CaptureTimeline.Snapshot snapshot) {
+        return analyze(snapshot, DEFAULT_WINDOW_NANOS);
+    }
+
+    public static Summary analyze(CaptureTimeline.Snapshot snapshot, long windowNanos) {
+        int frames = snapshot.size();
+        if (frames == 0) {
+            return new Summary(0, 0, 0, 0, 0, 0, 0, 0, 0, -1, 0, 0);
+        }
+
+        long duration = snapshot.getTimestamp(frames - 1) - snapshot.getTimestamp(0);
+        double meanFps = duration > 0 ? (frames - 1) * 1e9 / duration : 0;
+
+        //区間の全体が記録に含まれるものだけを最低値の対象にする
+        double[] rollingFps = computeRollingFps(snapshot, windowNanos);
+        double minRollingFps = 0;
+        boolean hasFullWindow = false;
+        for (int i = 0; i < frames; i++) {
+            if (snapshot.getTimestamp(i) - snapshot.getTimestamp(0) < windowNanos) continue;
+            if (!hasFullWindow || rollingFps[i] < minRollingFps) {
+                minRollingFps = rollingFps[i];
+                hasFullWindow = true;
+            }
+        }
+
+        long medianInterval = getMedianInterval(snapshot);
+        int dropped = 0;
+        long maxGap = 0;
+        long missingResults = 0;
+        int exposureLimited = 0;
+        for (int i = 0; i < frames; i++) {
+            long frameDuration = snapshot.getFrameDuration(i);
+            if (frameDuration > 0 && snapshot.getExposureTime(i) >= frameDuration * EXPOSURE_LIMITED_RATIO) {
+                exposureLimited++;
+            }
+            if (i == 0) continue;
+
+            maxGap = Math.max(maxGap, snapshot.getTimestamp(i) - snapshot.getTimestamp(i - 1));
+            dropped += droppedBefore(snapshot, i, medianInterval);
+            long frameNumberGap = snapshot.getFrameNumber(i) - snapshot.getFrameNumber(i - 1);
+            if (frameNumberGap > 1) {
+                missingResults += frameNumberGap - 1;
+            }
+        }
+
+        //安定してから外れ、再び安定するまでの時間
+        long timeToConvergence = getTimeToConvergence(snapshot);
+        int reconvergenceCount = 0;
+        long maxReconvergence = 0;
+        if (timeToConvergence >= 0) {
+            long lostAt = -1;
+            for (int i = 0; i < frames; i++) {
+                boolean converged = is3aConverged(snapshot.getAfState(i), snapshot.getAeState(i), snapshot.getAwbState(i));
+                long timestamp = snapshot.getTimestamp(i);
+                if (timestamp - snapshot.getTimestamp(0) < timeToConvergence) continue;
+
+                if (!converged && lostAt < 0) {
+                    lostAt = timestamp;
+                }
+                else if (converged && lostAt >= 0) {
+                    reconvergenceCount++;
+                    maxReconvergence = Math.max(maxReconvergence, timestamp - lostAt);
+                    lostAt = -1;
+                }
+            }
+        }
+
+        return new Summary(frames, duration, meanFps, rollingFps[frames - 1], minRollingFps,
+                dropped, maxGap, missingResults, exposureLimited, timeToConvergence, reconvergenceCount, maxReconvergence);
+    }
+
+    /**
+     * index番目のフレームの直前に抜けたフレーム数
+     */
+    private static int droppedBefore(CaptureTimeline.Snapshot snapshot, int index, long medianInterval) {
+        long expected = snapshot.getFrameDuration(index) > 0 ? snapshot.getFrameDuration(index) : medianInterval;
+        if (expected <= 0) return 0;
+
+        long gap = snapshot.getTimestamp(index) - snapshot.getTimestamp(index - 1);
+        if (gap <= expected * DROP_GAP_RATIO) return 0;
+
+        return (int)Math.max(1, Math.round((double)gap / expected) - 1);
+    }
+}
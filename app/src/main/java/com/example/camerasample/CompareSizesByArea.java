@@ -0,0 +1,13 @@
+package com.example.camerasample;
+
+import java.util.Comparator;
+
+/**
+ * 面積によって大小比較を行うコンパレータ
+ */
+public class CompareSizesByArea implements Comparator<FrameSize> {
+    @Override
+    public int compare(FrameSize lhs, FrameSize rhs) {
+        return Long.signum(lhs.getArea() - rhs.getArea());
+    }
+}
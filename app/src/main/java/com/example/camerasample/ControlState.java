@@ -0,0 +1,62 @@
+package com.example.camerasample;
+
+/**
+ * 3A(AF/AE)とレンズの状態の値
+ *
+ * CaptureResultの定数と同じ値を持ち、Androidに依存しない処理から参照する。
+ * 結果に含まれていない場合はUNKNOWNとする。
+ */
+public final class ControlState {
+
+    public static final int UNKNOWN = -1;
+
+    //CaptureResult.CONTROL_AF_STATE_*
+    public static final int AF_INACTIVE = 0;
+    public static final int AF_PASSIVE_SCAN = 1;
+    public static final int AF_PASSIVE_FOCUSED = 2;
+    public static final int AF_ACTIVE_SCAN = 3;
+    public static final int AF_FOCUSED_LOCKED = 4;
+    public static final int AF_NOT_FOCUSED_LOCKED = 5;
+    public static final int AF_PASSIVE_UNFOCUSED = 6;
+
+    //CaptureResult.CONTROL_AE_STATE_*
+    public static final int AE_INACTIVE = 0;
+    public static final int AE_SEARCHING = 1;
+    public static final int AE_CONVERGED = 2;
+    public static final int AE_LOCKED = 3;
+    public static final int AE_FLASH_REQUIRED = 4;
+    public static final int AE_PRECAPTURE = 5;
+
+    //CaptureResult.CONTROL_AWB_STATE_*
+    public static final int AWB_INACTIVE = 0;
+    public static final int AWB_SEARCHING = 1;
+    public static final int AWB_CONVERGED = 2;
+    public static final int AWB_LOCKED = 3;
+
+    //CaptureResult.LENS_STATE_*
+    public static final int LENS_STATIONARY = 0;
+    public static final int LENS_MOVING = 1;
+
+    private ControlState() { }
+
+    /**
+     * ピントが合っているか
+     */
+    public static boolean isFocused(int afState) {
+        return afState == AF_PASSIVE_FOCUSED || afState == AF_FOCUSED_LOCKED;
+    }
+
+    /**
+     * 露出が安定しているか
+     */
+    public static boolean isExposureConverged(int aeState) {
+        return aeState == AE_CONVERGED || aeState == AE_LOCKED;
+    }
+
+    /**
+     * ホワイトバランスが安定しているか
+     */
+    public static boolean isWhiteBalanceConverged(int awbState) {
+        return awbState == AWB_CONVERGED || awbState == AWB_LOCKED;
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.camerasample;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 色の変換表 (.cube形式の3D LUT)
+ *
+ * 値は赤が最も速く変わり、次に緑、青の順に並ぶ。
+ * GLES 2.0では3Dテクスチャを使えないので、青の各段を横に並べた2Dテクスチャ
+ * (幅 size * size、高さ size) に詰めて渡し、シェーダで青の隣り合う2段を補間する。
+ * sample()はシェーダと同じ補間をCPUで行う (確認用)。
+ */
+public final class CubeLut {
+
+    //格子の数の範囲
+    public static final int MIN_SIZE = 2;
+    public static final int MAX_SIZE = 256;
+
+    private final String _title;
+    private final int _size;
+    private final float[] _domainMin;
+    private final float[] _domainMax;
+
+    //(r, g, b) の値を size^3 * 3 で保持する
+    private final float[] _values;
+
+    CubeLut(String title, int size, float[] domainMin, float[] domainMax, float[] values) {
+        _title = title;
+        _size = size;
+        _domainMin = domainMin;
+        _domainMax = domainMax;
+        _values = values;
+    }
+
+    /**
+     * 変換しない表を生成する
+     */
+    public static CubeLut identity(int size) {
+        checkSize(size);
+
+        float[] values = new float[size * size * size * 3];
+        int index = 0;
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    values[index++] = r / (float)(size - 1);
+                    values[index++] = g / (float)(size - 1);
+                    values[index++] = b / (float)(size - 1);
+                }
+            }
+        }
+        return new CubeLut("", size, new float[] { 0, 0, 0 }, new float[] { 1, 1, 1 }, values);
+    }
+
+    public static CubeLut load(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        try {
+            return read(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * .cube形式を読み込む
+     * 1D LUTと、格子の数より先に値がある場合は読み込めない。
+     */
+    public static CubeLut read(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        String title = "";
+        int size = 0;
+        float[] domainMin = { 0, 0, 0 };
+        float[] domainMax = { 1, 1, 1 };
+        float[] values = null;
+        int count = 0;
+
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] fields = split(line);
+            String keyword = fields[0];
+            if (keyword.equals("TITLE")) {
+                title = parseTitle(line);
+            }
+            else if (keyword.equals("LUT_3D_SIZE")) {
+                if (values != null) throw new IOException("Duplicate LUT_3D_SIZE at line " + lineNumber);
+
+                size = parseInt(fields, 1, lineNumber);
+                checkSize(size, lineNumber);
+                values = new float[size * size * size * 3];
+            }
+            else if (keyword.equals("LUT_1D_SIZE")) {
+                throw new IOException("1D LUT is not supported");
+            }
+            else if (keyword.equals("DOMAIN_MIN")) {
+                domainMin = parseTriple(fields, 1, lineNumber);
+            }
+            else if (keyword.equals("DOMAIN_MAX")) {
+                domainMax = parseTriple(fields, 1, lineNumber);
+            }
+            else if (keyword.equals("LUT_3D_INPUT_RANGE")) {
+                //DaVinci Resolveの形式 (全ての色で同じ範囲)
+                float min = parseFloat(fields, 1, lineNumber);
+                float max = parseFloat(fields, 2, lineNumber);
+                domainMin = new float[] { min, min, min };
+                domainMax = new float[] { max, max, max };
+            }
+            else if (isNumber(keyword)) {
+                if (values == null) throw new IOException("Value before LUT_3D_SIZE at line " + lineNumber);
+                if (count * 3 >= values.length) throw new IOException("Too many values at line " + lineNumber);
+
+                float[] value = parseTriple(fields, 0, lineNumber);
+                System.arraycopy(value, 0, values, count * 3, 3);
+                count++;
+            }
+
+            //その他のキーワードは無視する
+        }
+
+        if (values == null) throw new IOException("LUT_3D_SIZE is missing");
+        if (count * 3 != values.length) {
+            throw new IOException("Expected " + size * size * size + " values but found " + count);
+        }
+        for (int i = 0; i < 3; i++) {
+            if (domainMax[i] <= domainMin[i]) throw new IOException("Invalid domain: " + domainMin[i] + " - " + domainMax[i]);
+        }
+        return new CubeLut(title, size, domainMin, domainMax, values);
+    }
+
+    public String getTitle() {
+        return _title;
+    }
+
+    /**
+     * 1辺の格子の数
+     */
+    public int getSize() {
+        return _size;
+    }
+
+    public float getDomainMin(int channel) {
+        return _domainMin[channel];
+    }
+
+    public float getDomainMax(int channel) {
+        return _domainMax[channel];
+    }
+
+    /**
+     * 格子の値 (channel は 0: 赤, 1: 緑, 2: 青)
+     */
+    public float getValue(int r, int g, int b, int channel) {
+        return _values[index(r, g, b) + channel];
+    }
+
+    /**
+     * 色を変換する (三線形補間、範囲外は端の値)
+     *
+     * @param out 結果を書き込む配列 (3要素)
+     */
+    public void sample(float red, float green, float blue, float[] out) {
+        float r = toGrid(red, 0);
+        float g = toGrid(green, 1);
+        float b = toGrid(blue, 2);
+        int r0 = (int)r;
+        int g0 = (int)g;
+        int b0 = (int)b;
+        int r1 = Math.min(r0 + 1, _size - 1);
+        int g1 = Math.min(g0 + 1, _size - 1);
+        int b1 = Math.min(b0 + 1, _size - 1);
+        float fr = r - r0;
+        float fg = g - g0;
+        float fb = b - b0;
+
+        for (int channel = 0; channel < 3; channel++) {
+            float c00 = lerp(getValue(r0, g0, b0, channel), getValue(r1, g0, b0, channel), fr);
+            float c10 = lerp(getValue(r0, g1, b0, channel), getValue(r1, g1, b0, channel), fr);
+            float c01 = lerp(getValue(r0, g0, b1, channel), getValue(r1, g0, b1, channel), fr);
+            float c11 = lerp(getValue(r0, g1, b1, channel), getValue(r1, g1, b1, channel), fr);
+            out[channel] = lerp(lerp(c00, c10, fg), lerp(c01, c11, fg), fb);
+        }
+    }
+
+    /**
+     * 格子の数を変えた表を生成する (テクスチャの最大サイズに収まらない場合など)
+     */
+    public CubeLut resample(int size) {
+        checkSize(size);
+        if (size == _size) return this;
+
+        float[] values = new float[size * size * size * 3];
+        float[] color = new float[3];
+        int index = 0;
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    sample(fromGrid(r, size, 0), fromGrid(g, size, 1), fromGrid(b, size, 2), color);
+                    values[index++] = color[0];
+                    values[index++] = color[1];
+                    values[index++] = color[2];
+                }
+            }
+        }
+        return new CubeLut(_title, size, _domainMin.clone(), _domainMax.clone(), values);
+    }
+
+    public int getTextureWidth() {
+        return _size * _size;
+    }
+
+    public int getTextureHeight() {
+        return _size;
+    }
+
+    /**
+     * 2Dテクスチャ (RGBA 8bit) の画素を書き込む
+     * 画素 (b * size + r, g) に格子 (r, g, b) の値を置く。0から1の範囲外の値は切り詰める。
+     *
+     * @param out 書き込み先 (getTextureWidth() * getTextureHeight() * 4バイト以上の空き)
+     */
+    public void writeTexture(ByteBuffer out) {
+        for (int g = 0; g < _size; g++) {
+            for (int b = 0; b < _size; b++) {
+                for (int r = 0; r < _size; r++) {
+                    int index = index(r, g, b);
+                    out.put(toByte(_values[index]));
+                    out.put(toByte(_values[index + 1]));
+                    out.put(toByte(_values[index + 2]));
+                    out.put((byte)0xff);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CubeLut{title=" + _title + ", size=" + _size + "}";
+    }
+
+    private int index(int r, int g, int b) {
+        return ((b * _size + g) * _size + r) * 3;
+    }
+
+    //入力の値を格子の位置 (0 - size-1) へ変換する
+    private float toGrid(float value, int channel) {
+        float normalized = (value - _domainMin[channel]) / (_domainMax[channel] - _domainMin[channel]);
+        if (normalized <= 0) return 0;
+        if (normalized >= 1) return _size - 1;
+        return normalized * (_size - 1);
+    }
+
+    private float fromGrid(int index, int size, int channel) {
+        return _domainMin[channel] + (_domainMax[channel] - _domainMin[channel]) * index / (size - 1);
+    }
+
+    private static float lerp(float a, float b, float f) {
+        return a + (b - a) * f;
+    }
+
+    private static byte toByte(float value) {
+        if (value <= 0) return 0;
+        if (value >= 1) return (byte)0xff;
+        return (byte)Math.round(value * 255);
+    }
+
+    private static void checkSize(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) throw new IllegalArgumentException("Invalid LUT size: " + size);
+    }
+
+    private static void checkSize(int size, int lineNumber) throws IOException {
+        if (size < MIN_SIZE || size > MAX_SIZE) throw new IOException("Invalid LUT_3D_SIZE " + size + " at line " + lineNumber);
+    }
+
+    private static String parseTitle(String line) {
+        String title = line.substring("TITLE".length()).trim();
+        if (title.length() >= 2 && title.startsWith("\"") && title.endsWith("\"")) {
+            title = title.substring(1, title.length() - 1);
+        }
+        return title;
+    }
+
+    //空白で区切る (値の行が大半なので正規表現は使わない)
+    private static String[] split(String line) {
+        int count = 0;
+        boolean inField = false;
+        for (int i = 0; i < line.length(); i++) {
+            boolean whitespace = Character.isWhitespace(line.charAt(i));
+            if (!whitespace && !inField) {
+                count++;
+            }
+            inField = !whitespace;
+        }
+
+        String[] fields = new String[count];
+        int index = 0;
+        int start = -1;
+        for (int i = 0; i <= line.length(); i++) {
+            boolean whitespace = i == line.length() || Character.isWhitespace(line.charAt(i));
+            if (!whitespace && start < 0) {
+                start = i;
+            }
+            else if (whitespace && start >= 0) {
+                fields[index++] = line.substring(start, i);
+                start = -1;
+            }
+        }
+        return fields;
+    }
+
+    private static boolean isNumber(String field) {
+        char c = field.charAt(0);
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+
+    private static int parseInt(String[] fields, int index, int lineNumber) throws IOException {
+        if (index >= fields.length) throw new IOException("Missing value at line " + lineNumber);
+        try {
+            return Integer.parseInt(fields[index]);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid number at line " + lineNumber + ": " + fields[index], e);
+        }
+    }
+
+    private static float parseFloat(String[] fields, int index, int lineNumber) throws IOException {
+        if (index >= fields.length) throw new IOException("Missing value at line " + lineNumber);
+        try {
+            float value = Float.parseFloat(fields[index]);
+            if (Float.isNaN(value) || Float.isInfinite(value)) throw new NumberFormatException();
+            return value;
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid number at line " + lineNumber + ": " + fields[index], e);
+        }
+    }
+
+    private static float[] parseTriple(String[] fields, int offset, int lineNumber) throws IOException {
+        return new float[] {
+                parseFloat(fields, offset, lineNumber),
+                parseFloat(fields, offset + 1, lineNumber),
+                parseFloat(fields, offset + 2, lineNumber),
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.camerasample;
+
+/**
+ * 表示先のサイズに合わせたデコードサイズの計算
+ *
+ * JPEGを縮小デコードする時の2のべき乗のinSampleSizeと、
+ * 表示先に収めるための最終的な拡大縮小率を求める。
+ * 回転(90/270度)が必要な画像は、回転後の縦横で表示先と比較する。
+ */
+public final class DecodeSizeCalculator {
+
+    /**
+     * 計算結果
+     * サイズはいずれも回転前(JPEGの画素の並び)の縦横。
+     */
+    public static final class Result {
+        public final int sampleSize;
+        public final int sampledWidth;
+        public final int sampledHeight;
+        public final int targetWidth;
+        public final int targetHeight;
+
+        //inDensity/inTargetDensityに指定する値
+        public final int density;
+        public final int targetDensity;
+
+        Result(int sampleSize, int sampledWidth, int sampledHeight, int targetWidth, int targetHeight, int density, int targetDensity) {
+            this.sampleSize = sampleSize;
+            this.sampledWidth = sampledWidth;
+            this.sampledHeight = sampledHeight;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+            this.density = density;
+            this.targetDensity = targetDensity;
+        }
+
+        /**
+         * inSampleSizeで縮小した後に必要な拡大縮小があるか
+         */
+        public boolean needsScale() {
+            return targetWidth != sampledWidth || targetHeight != sampledHeight;
+        }
+
+        @Override
+        public String toString() {
+            return "sample=" + sampleSize + " sampled=" + sampledWidth + "x" + sampledHeight
+                    + " target=" + targetWidth + "x" + targetHeight;
+        }
+    }
+
+    private DecodeSizeCalculator() { }
+
+    /**
+     * 表示先に収まるデコードサイズを計算する
+     *
+     * @param srcWidth JPEGの幅
+     * @param srcHeight JPEGの高さ
+     * @param rotation 表示時に必要な回転 (0/90/180/270)
+     * @param viewWidth 表示先の幅 (0以下なら縮小しない)
+     * @param viewHeight 表示先の高さ (0以下なら縮小しない)
+     */
+    public static Result calculate(int srcWidth, int srcHeight, int rotation, int viewWidth, int viewHeight) {
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            throw new IllegalArgumentException("Source size must be positive.");
+        }
+
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return unscaled(srcWidth, srcHeight);
+        }
+
+        //回転後の縦横で表示先と比較する
+        boolean swapped = isSwapped(rotation);
+        int orientedWidth = swapped ? srcHeight : srcWidth;
+        int orientedHeight = swapped ? srcWidth : srcHeight;
+
+        //表示先に収まる倍率 (拡大はしない)
+        double scale = Math.min((double)viewWidth / orientedWidth, (double)viewHeight / orientedHeight);
+        if (scale >= 1.0) {
+            return unscaled(srcWidth, srcHeight);
+        }
+
+        int maxWidth = swapped ? viewHeight : viewWidth;
+        int maxHeight = swapped ? viewWidth : viewHeight;
+        int targetWidth = Math.min(maxWidth, Math.max(1, (int)Math.round(srcWidth * scale)));
+        int targetHeight = Math.min(maxHeight, Math.max(1, (int)Math.round(srcHeight * scale)));
+
+        int sampleSize = calculateSampleSize(srcWidth, srcHeight, targetWidth, targetHeight);
+        int sampledWidth = sampledSize(srcWidth, sampleSize);
+        int sampledHeight = sampledSize(srcHeight, sampleSize);
+
+        //拡大縮小率は表示先に接する辺から決め、もう一方の辺はデコーダと同じ丸めで求める
+        boolean widthLimited = (double)maxWidth / srcWidth <= (double)maxHeight / srcHeight;
+        int density = widthLimited ? sampledWidth : sampledHeight;
+        int targetDensity = widthLimited ? targetWidth : targetHeight;
+        while (true) {
+            targetWidth = scaledSize(sampledWidth, targetDensity, density);
+            targetHeight = scaledSize(sampledHeight, targetDensity, density);
+            if ((targetWidth <= maxWidth && targetHeight <= maxHeight) || targetDensity <= 1) break;
+
+            //切り上げの影響で表示先からはみ出す場合は縮める
+            targetDensity--;
+        }
+
+        return new Result(sampleSize, sampledWidth, sampledHeight, targetWidth, targetHeight, density, targetDensity);
+    }
+
+    private static Result unscaled(int width, int height) {
+        return new Result(1, width, height, width, height, 1, 1);
+    }
+
+    /**
+     * 縮小後も要求サイズ以上となる最大の2のべき乗を求める
+     */
+    public static int calculateSampleSize(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) return sampleSize;
+
+        while (sampledSize(srcWidth, sampleSize * 2) >= reqWidth &&
+                sampledSize(srcHeight, sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * inSampleSizeを指定した時のデコード後のサイズ (JPEGデコーダは切り上げ)
+     */
+    public static int sampledSize(int size, int sampleSize) {
+        return (size + sampleSize - 1) / sampleSize;
+    }
+
+    /**
+     * inDensity/inTargetDensityを指定した時のデコード後のサイズ
+     */
+    public static int scaledSize(int size, int targetDensity, int density) {
+        return (int)(size * ((float)targetDensity / density) + 0.5f);
+    }
+
+    public static boolean isSwapped(int rotation) {
+        int normalized = ((rotation % 360) + 360) % 360;
+        if (normalized % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotation);
+        }
+        return normalized == 90 || normalized == 270;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.camerasample;
+
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.DngCreator;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.ExifInterface;
+import android.media.Image;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RAW_SENSORのImageをDNGファイルへ保存する
+ *
+ * TimestampMatcherで撮影結果と対応付けたImageを受け取り、専用のスレッドで
+ * DngCreator.writeImage()からファイルへ直接書き込む (カメラのスレッドでは書き込まない)。
+ * JpegFileWriterと同じく一時ファイルへ書いてfsyncしてから本来の名前へ置き換え、
+ * 待ち行列が一杯の場合はImageを閉じてsubmit()がfalseを返す。
+ */
+public class DngFileWriter {
+
+    /**
+     * 保存結果の通知 (書き込みスレッドから呼び出される)
+     */
+    public interface Listener {
+        void onWritten(File file, long size, long latencyNanos);
+
+        void onFailed(File file, IOException e);
+    }
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    //DngCreatorは少しずつ書き込むので、まとめてから書き込む
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final File _directory;
+    private final Listener _listener;
+    private final ThreadPoolExecutor _executor;
+
+    private final AtomicLong _writtenCount = new AtomicLong();
+    private final AtomicLong _writtenBytes = new AtomicLong();
+    private final AtomicLong _rejectedCount = new AtomicLong();
+    private final AtomicLong _failedCount = new AtomicLong();
+
+    public DngFileWriter(File directory, int queueCapacity, Listener listener) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+
+        _directory = directory;
+        _listener = listener;
+        _executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "DngFileWriter");
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 保存を予約する
+     * Imageは保存が終わった時点で閉じる。受け付けられなかった場合はその場で閉じてfalseを返す。
+     *
+     * @param jpegOrientation JPEG_ORIENTATIONと同じ回転 (0, 90, 180, 270)
+     */
+    public boolean submit(@NonNull final CameraCharacteristics characteristics, @NonNull final Image image,
+                          @NonNull final TotalCaptureResult result, final int jpegOrientation, String fileName) {
+        final File file = new File(_directory, fileName);
+        final long enqueueTime = System.nanoTime();
+
+        try {
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long size = write(characteristics, image, result, jpegOrientation, file);
+                        _writtenCount.incrementAndGet();
+                        _writtenBytes.addAndGet(size);
+                        if (_listener != null) {
+                            _listener.onWritten(file, size, System.nanoTime() - enqueueTime);
+                        }
+                    }
+                    catch (IOException | IllegalArgumentException | IllegalStateException e) {
+                        _failedCount.incrementAndGet();
+                        if (_listener != null) {
+                            _listener.onFailed(file, e instanceof IOException ? (IOException)e : new IOException(e));
+                        }
+                    }
+                    finally {
+                        image.close();
+                    }
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException e) {
+            _rejectedCount.incrementAndGet();
+            image.close();
+            return false;
+        }
+    }
+
+    /**
+     * 新たな保存を受け付けず、予約済みの保存が終わるまで待つ
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        _executor.shutdown();
+        return _executor.awaitTermination(timeout, unit);
+    }
+
+    public int getQueueDepth() {
+        return _executor.getQueue().size();
+    }
+
+    public long getWrittenCount() {
+        return _writtenCount.get();
+    }
+
+    public long getWrittenBytes() {
+        return _writtenBytes.get();
+    }
+
+    public long getRejectedCount() {
+        return _rejectedCount.get();
+    }
+
+    public long getFailedCount() {
+        return _failedCount.get();
+    }
+
+    private long write(CameraCharacteristics characteristics, Image image, TotalCaptureResult result,
+                       int jpegOrientation, File file) throws IOException {
+        if (!_directory.isDirectory() && !_directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + _directory);
+        }
+
+        File tempFile = new File(_directory, file.getName() + TEMP_SUFFIX);
+        try (DngCreator creator = new DngCreator(characteristics, result);
+             FileOutputStream stream = new FileOutputStream(tempFile)) {
+            creator.setOrientation(toExifOrientation(jpegOrientation));
+
+            OutputStream buffered = new BufferedOutputStream(stream, BUFFER_SIZE);
+            creator.writeImage(buffered, image);
+            buffered.flush();
+            stream.getFD().sync();
+        }
+        catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        long size = tempFile.length();
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return size;
+    }
+
+    private static int toExifOrientation(int degrees) {
+        switch (degrees) {
+            case 90:
+                return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifInterface.ORIENTATION_ROTATE_270;
+            default:
+                return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.camerasample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * エンコーダが出力した1つのサンプルの情報と、必要であればその内容のコピー
+ *
+ * MediaCodec.BufferInfoに相当するものをAndroidに依存せずに扱うためのもの。
+ * フレーム毎に生成せず、取り出し用と待ち行列の枠として使い回す。
+ */
+public final class EncodedSample {
+
+    //フラグ (MediaCodec.BUFFER_FLAG_*と同じ値)
+    public static final int FLAG_KEY_FRAME = 1;
+    public static final int FLAG_CODEC_CONFIG = 2;
+    public static final int FLAG_END_OF_STREAM = 4;
+
+    private int _offset;
+    private int _size;
+    private long _presentationTimeUs;
+    private int _flags;
+
+    //内容のコピー (待ち行列の枠のみ)
+    private ByteBuffer _data;
+
+    /**
+     * 情報のみを持つものを生成する
+     */
+    public EncodedSample() {
+        this(0);
+    }
+
+    /**
+     * 内容のコピー先を確保して生成する
+     */
+    public EncodedSample(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+
+        _data = capacity > 0 ? ByteBuffer.allocateDirect(capacity) : null;
+    }
+
+    public void set(int offset, int size, long presentationTimeUs, int flags) {
+        _offset = offset;
+        _size = size;
+        _presentationTimeUs = presentationTimeUs;
+        _flags = flags;
+    }
+
+    /**
+     * srcのinfoが示す範囲をコピーする
+     * コピー先が足りない場合のみ確保し直す (キーフレームが想定より大きかった場合など)。
+     * srcの位置と上限は元に戻す。
+     */
+    public void copyFrom(ByteBuffer src, EncodedSample info) {
+        int size = info.getSize();
+        if (_data == null || _data.capacity() < size) {
+            _data = ByteBuffer.allocateDirect(Math.max(size, _data != null ? _data.capacity() * 2 : size));
+        }
+
+        _data.clear();
+        if (size > 0) {
+            int position = src.position();
+            int limit = src.limit();
+            src.limit(info.getOffset() + size);
+            src.position(info.getOffset());
+            _data.put(src);
+            src.limit(limit);
+            src.position(position);
+        }
+        _data.flip();
+
+        set(0, size, info.getPresentationTimeUs(), info.getFlags());
+    }
+
+    public int getOffset() {
+        return _offset;
+    }
+
+    public int getSize() {
+        return _size;
+    }
+
+    public long getPresentationTimeUs() {
+        return _presentationTimeUs;
+    }
+
+    public int getFlags() {
+        return _flags;
+    }
+
+    public boolean isKeyFrame() {
+        return (_flags & FLAG_KEY_FRAME) != 0;
+    }
+
+    public boolean isCodecConfig() {
+        return (_flags & FLAG_CODEC_CONFIG) != 0;
+    }
+
+    public boolean isEndOfStream() {
+        return (_flags & FLAG_END_OF_STREAM) != 0;
+    }
+
+    /**
+     * コピーした内容 (位置0からgetSize()まで)
+     */
+    public ByteBuffer getData() {
+        return _data;
+    }
+
+    /**
+     * コピー先の大きさ
+     */
+    public int getCapacity() {
+        return _data != null ? _data.capacity() : 0;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.camerasample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * エンコーダの取り出しスレッドからMuxerのスレッドへサンプルを渡す待ち行列
+ *
+ * 枠は生成時に全て確保しておき、内容をコピーして使い回す。
+ * エンコーダのバッファはコピー後すぐに返せるので、Muxerの書き込みが遅れてもエンコーダは待たない。
+ * 取り出し側は1スレッドとし、take()で得た枠をrecycle()で返してから次を取り出す。
+ */
+public class EncodedSampleQueue {
+
+    private final EncodedSample[] _slots;
+    private int _head;
+    private int _count;
+    private int _maxDepth;
+
+    public EncodedSampleQueue(int capacity, int sampleCapacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+        _slots = new EncodedSample[capacity];
+        for (int i = 0; i < capacity; i++) {
+            _slots[i] = new EncodedSample(sampleCapacity);
+        }
+    }
+
+    /**
+     * サンプルをコピーして加える
+     * 空きが無ければ何もせずにfalseを返す。
+     */
+    public synchronized boolean offer(ByteBuffer data, EncodedSample info) {
+        if (_count == _slots.length) return false;
+
+        add(data, info);
+        return true;
+    }
+
+    /**
+     * サンプルをコピーして加える (空きができるまで待つ)
+     * 終端など捨てられないものに使う。dataがnullの場合は情報のみ加える。
+     */
+    public synchronized void put(ByteBuffer data, EncodedSample info) throws InterruptedException {
+        while (_count == _slots.length) {
+            wait();
+        }
+        add(data, info);
+    }
+
+    /**
+     * 先頭のサンプルを取得する (無ければ加えられるまで待つ)
+     * 取得した枠は使い終えたらrecycle()で返す。
+     */
+    public synchronized EncodedSample take() throws InterruptedException {
+        while (_count == 0) {
+            wait();
+        }
+        return _slots[_head];
+    }
+
+    /**
+     * take()で取得した先頭の枠を返す
+     */
+    public synchronized void recycle() {
+        if (_count == 0) throw new IllegalStateException("Queue is empty");
+
+        _head = (_head + 1) % _slots.length;
+        _count--;
+        notifyAll();
+    }
+
+    /**
+     * 書き込み待ちの数 (書き込み中のものを含む)
+     */
+    public synchronized int getDepth() {
+        return _count;
+    }
+
+    public synchronized int getMaxDepth() {
+        return _maxDepth;
+    }
+
+    public int getCapacity() {
+        return _slots.length;
+    }
+
+    private void add(ByteBuffer data, EncodedSample info) {
+        EncodedSample slot = _slots[(_head + _count) % _slots.length];
+        if (data != null) {
+            slot.copyFrom(data, info);
+        }
+        else {
+            slot.set(0, 0, info.getPresentationTimeUs(), info.getFlags());
+        }
+
+        _count++;
+        if (_count > _maxDepth) {
+            _maxDepth = _count;
+        }
+        notifyAll();
+    }
+}
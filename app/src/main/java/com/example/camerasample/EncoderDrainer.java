@@ -0,0 +1,199 @@
+package com.example.camerasample;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * エンコーダの出力を取り出してMuxerの待ち行列へ渡す
+ *
+ * フレーム毎に生成するものは無く、取り出し用の情報と待ち行列の枠を使い回す。
+ * 待ち行列が一杯の場合はそのサンプルを捨て、壊れたフレームを書き込まないよう次のキーフレームまで捨て続ける。
+ * コーデックの設定 (SPS/PPSなど) は出力形式に含まれるので書き込まない。
+ * 取り出しは1スレッドから行い、計測値はどのスレッドからも取得できる。
+ *
+ * @param <F> 出力形式 (MediaFormat)
+ */
+public class EncoderDrainer<F> {
+
+    /**
+     * 出力形式の通知 (最初のサンプルより前に呼び出される)
+     */
+    public interface Listener<F> {
+        void onOutputFormat(F format);
+    }
+
+    private final VideoEncoder<F> _encoder;
+    private final EncodedSampleQueue _queue;
+    private final Listener<F> _listener;
+    private final long _frameIntervalUs;
+
+    //取り出し用の情報
+    private final EncodedSample _info = new EncodedSample();
+
+    private boolean _waitingForKeyFrame;
+    private long _lastPresentationTimeUs = -1;
+    private boolean _endOfStream;
+
+    //カメラがエンコーダへ送ったフレーム数と、エンコーダが出力したフレーム数
+    private final AtomicLong _inputFrames = new AtomicLong();
+    private final AtomicLong _outputFrames = new AtomicLong();
+    private final AtomicLong _outputBytes = new AtomicLong();
+    private final AtomicLong _keyFrames = new AtomicLong();
+
+    //待ち行列が一杯で捨てたフレーム数と、エンコーダへ届かなかったと見られるフレーム数
+    private final AtomicLong _queueDroppedFrames = new AtomicLong();
+    private final AtomicLong _skippedFrames = new AtomicLong();
+
+    /**
+     * @param frameIntervalUs 想定するフレーム間隔 (表示時刻の間隔から抜けたフレームを数える、0は数えない)
+     */
+    public EncoderDrainer(VideoEncoder<F> encoder, EncodedSampleQueue queue, Listener<F> listener, long frameIntervalUs) {
+        _encoder = encoder;
+        _queue = queue;
+        _listener = listener;
+        _frameIntervalUs = frameIntervalUs;
+    }
+
+    /**
+     * 取り出せる出力を全て取り出す
+     * 最初の取り出しのみtimeoutUsだけ待つ。終端を取り出したらtrueを返す。
+     */
+    public boolean drain(long timeoutUs) throws InterruptedException {
+        if (_endOfStream) return true;
+
+        long timeout = timeoutUs;
+        while (true) {
+            int index = _encoder.dequeueOutputBuffer(_info, timeout);
+            timeout = 0;
+
+            if (index == VideoEncoder.INFO_TRY_AGAIN_LATER) return false;
+            if (index == VideoEncoder.INFO_OUTPUT_FORMAT_CHANGED) {
+                _listener.onOutputFormat(_encoder.getOutputFormat());
+                continue;
+            }
+            if (index < 0) continue;
+
+            try {
+                onSample(_encoder.getOutputBuffer(index));
+            }
+            finally {
+                _encoder.releaseOutputBuffer(index);
+            }
+            if (_endOfStream) return true;
+        }
+    }
+
+    /**
+     * エンコーダから終端が得られなかった場合に、終端だけを待ち行列へ渡す
+     */
+    public void endOfStream() throws InterruptedException {
+        if (_endOfStream) return;
+
+        _endOfStream = true;
+        _info.set(0, 0, _lastPresentationTimeUs, EncodedSample.FLAG_END_OF_STREAM);
+        _queue.put(null, _info);
+    }
+
+    /**
+     * カメラがエンコーダの入力へフレームを送った (onCaptureCompletedから呼び出す)
+     */
+    public void onInputFrame() {
+        _inputFrames.incrementAndGet();
+    }
+
+    private void onSample(ByteBuffer data) throws InterruptedException {
+
+        //終端は捨てずに渡す (中身があれば書き込まれる)
+        if (_info.isEndOfStream()) {
+            _endOfStream = true;
+            if (_info.isCodecConfig() || _info.getSize() == 0 || data == null) {
+                _info.set(0, 0, _info.getPresentationTimeUs(), EncodedSample.FLAG_END_OF_STREAM);
+                _queue.put(null, _info);
+            }
+            else {
+                countFrame();
+                _queue.put(data, _info);
+            }
+            return;
+        }
+
+        if (_info.isCodecConfig() || _info.getSize() == 0 || data == null) return;
+
+        countFrame();
+
+        //捨てた後は次のキーフレームまで書き込まない
+        boolean keyFrame = _info.isKeyFrame();
+        if (_waitingForKeyFrame && !keyFrame) {
+            _queueDroppedFrames.incrementAndGet();
+            return;
+        }
+        if (!_queue.offer(data, _info)) {
+            _queueDroppedFrames.incrementAndGet();
+            _waitingForKeyFrame = true;
+            return;
+        }
+        _waitingForKeyFrame = false;
+    }
+
+    private void countFrame() {
+        _outputFrames.incrementAndGet();
+        _outputBytes.addAndGet(_info.getSize());
+        if (_info.isKeyFrame()) {
+            _keyFrames.incrementAndGet();
+        }
+
+        //表示時刻が想定の1.5倍以上空いていれば、その間のフレームはエンコーダへ届いていない
+        long presentationTimeUs = _info.getPresentationTimeUs();
+        if (_frameIntervalUs > 0 && _lastPresentationTimeUs >= 0) {
+            long interval = presentationTimeUs - _lastPresentationTimeUs;
+            if (interval * 2 > _frameIntervalUs * 3) {
+                _skippedFrames.addAndGet((interval + _frameIntervalUs / 2) / _frameIntervalUs - 1);
+            }
+        }
+        _lastPresentationTimeUs = presentationTimeUs;
+    }
+
+    /**
+     * エンコーダへ送ったがまだ出力されていないフレーム数
+     */
+    public long getEncoderQueueDepth() {
+        return Math.max(0, _inputFrames.get() - _outputFrames.get());
+    }
+
+    public long getInputFrames() {
+        return _inputFrames.get();
+    }
+
+    public long getOutputFrames() {
+        return _outputFrames.get();
+    }
+
+    public long getOutputBytes() {
+        return _outputBytes.get();
+    }
+
+    public long getKeyFrames() {
+        return _keyFrames.get();
+    }
+
+    /**
+     * 書き込みが追いつかずに捨てたフレーム数
+     */
+    public long getQueueDroppedFrames() {
+        return _queueDroppedFrames.get();
+    }
+
+    /**
+     * 表示時刻の間隔から求めた、エンコーダへ届かなかったフレーム数
+     */
+    public long getSkippedFrames() {
+        return _skippedFrames.get();
+    }
+
+    /**
+     * 録画から抜けたフレーム数
+     */
+    public long getDroppedFrames() {
+        return _queueDroppedFrames.get() + _skippedFrames.get();
+    }
+}
@@ -0,0 +1,363 @@
+package com.example.camerasample;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * JPEGへ書き込むEXIFの項目
+ *
+ * 必要な項目だけを設定し、toApp1Payload()でAPP1セグメントの中身 ("Exif\0\0" + TIFF) を作る。
+ * TIFFはビッグエンディアンで、IFD0とExif IFDの2つだけを持つ (サムネイルは持たない)。
+ * 設定しなかった項目は書き込まない。
+ */
+public final class ExifData {
+
+    //Orientationの値
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_FLIP_VERTICAL = 4;
+    public static final int ORIENTATION_TRANSPOSE = 5;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_TRANSVERSE = 7;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    //タグ
+    static final int TAG_MAKE = 0x010f;
+    static final int TAG_MODEL = 0x0110;
+    static final int TAG_ORIENTATION = 0x0112;
+    static final int TAG_DATE_TIME = 0x0132;
+    static final int TAG_EXIF_IFD_POINTER = 0x8769;
+    static final int TAG_EXPOSURE_TIME = 0x829a;
+    static final int TAG_F_NUMBER = 0x829d;
+    static final int TAG_ISO_SPEED_RATINGS = 0x8827;
+    static final int TAG_EXIF_VERSION = 0x9000;
+    static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    static final int TAG_FLASH = 0x9209;
+    static final int TAG_FOCAL_LENGTH = 0x920a;
+    static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+    static final int TAG_PIXEL_X_DIMENSION = 0xa002;
+    static final int TAG_PIXEL_Y_DIMENSION = 0xa003;
+
+    //型
+    static final int TYPE_ASCII = 2;
+    static final int TYPE_SHORT = 3;
+    static final int TYPE_LONG = 4;
+    static final int TYPE_RATIONAL = 5;
+    static final int TYPE_UNDEFINED = 7;
+
+    static final byte[] EXIF_HEADER = { 'E', 'x', 'i', 'f', 0, 0 };
+    private static final byte[] EXIF_VERSION = { '0', '2', '3', '0' };
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int TIFF_HEADER_SIZE = 8;
+    private static final int IFD_ENTRY_SIZE = 12;
+
+    private int _orientation = ORIENTATION_UNDEFINED;
+    private String _make;
+    private String _model;
+    private String _dateTime;
+    private String _subSecTime;
+    private long _exposureTimeNanos = -1;
+    private float _fNumber = -1;
+    private int _iso = -1;
+    private float _focalLength = -1;
+    private int _flash = -1;
+    private int _pixelWidth = -1;
+    private int _pixelHeight = -1;
+
+    /**
+     * 向き (ORIENTATION_*)
+     */
+    public ExifData setOrientation(int orientation) {
+        if (orientation < ORIENTATION_NORMAL || orientation > ORIENTATION_ROTATE_270) {
+            throw new IllegalArgumentException("Invalid orientation: " + orientation);
+        }
+
+        _orientation = orientation;
+        return this;
+    }
+
+    public ExifData setMake(String make) {
+        _make = make;
+        return this;
+    }
+
+    public ExifData setModel(String model) {
+        _model = model;
+        return this;
+    }
+
+    /**
+     * 撮影日時 ("yyyy:MM:dd HH:mm:ss"、DateTimeとDateTimeOriginalの両方に書き込む)
+     *
+     * @param subSecTime 秒未満 (ミリ秒の3桁など、nullは書き込まない)
+     */
+    public ExifData setDateTime(String dateTime, String subSecTime) {
+        if (dateTime.length() != 19) throw new IllegalArgumentException("Invalid date time: " + dateTime);
+
+        _dateTime = dateTime;
+        _subSecTime = subSecTime;
+        return this;
+    }
+
+    /**
+     * 露光時間 (SENSOR_EXPOSURE_TIME、ナノ秒)
+     */
+    public ExifData setExposureTimeNanos(long exposureTimeNanos) {
+        _exposureTimeNanos = exposureTimeNanos;
+        return this;
+    }
+
+    /**
+     * 絞り値 (LENS_APERTURE)
+     */
+    public ExifData setFNumber(float fNumber) {
+        _fNumber = fNumber;
+        return this;
+    }
+
+    /**
+     * ISO感度 (SENSOR_SENSITIVITY)
+     */
+    public ExifData setIso(int iso) {
+        _iso = iso;
+        return this;
+    }
+
+    /**
+     * 焦点距離 (LENS_FOCAL_LENGTH、mm)
+     */
+    public ExifData setFocalLength(float focalLength) {
+        _focalLength = focalLength;
+        return this;
+    }
+
+    public ExifData setFlashFired(boolean fired) {
+        _flash = fired ? 1 : 0;
+        return this;
+    }
+
+    /**
+     * 画像の幅と高さ (画素)
+     */
+    public ExifData setPixelSize(int width, int height) {
+        _pixelWidth = width;
+        _pixelHeight = height;
+        return this;
+    }
+
+    public int getOrientation() {
+        return _orientation;
+    }
+
+    /**
+     * 時計回りの回転と、回転後の左右反転の有無からOrientationの値を求める
+     */
+    public static int toOrientation(int degrees, boolean mirror) {
+        switch (((degrees % 360) + 360) % 360) {
+            case 0:
+                return mirror ? ORIENTATION_FLIP_HORIZONTAL : ORIENTATION_NORMAL;
+            case 90:
+                return mirror ? ORIENTATION_TRANSPOSE : ORIENTATION_ROTATE_90;
+            case 180:
+                return mirror ? ORIENTATION_FLIP_VERTICAL : ORIENTATION_ROTATE_180;
+            case 270:
+                return mirror ? ORIENTATION_TRANSVERSE : ORIENTATION_ROTATE_270;
+            default:
+                throw new IllegalArgumentException("Rotation must be a multiple of 90: " + degrees);
+        }
+    }
+
+    /**
+     * Orientationの値から時計回りの回転を求める (不明は0)
+     */
+    public static int toDegrees(int orientation) {
+        switch (orientation) {
+            case ORIENTATION_ROTATE_90:
+            case ORIENTATION_TRANSPOSE:
+                return 90;
+            case ORIENTATION_ROTATE_180:
+            case ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ORIENTATION_ROTATE_270:
+            case ORIENTATION_TRANSVERSE:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Orientationの値が回転後の左右反転を含むか
+     */
+    public static boolean isMirrored(int orientation) {
+        return orientation == ORIENTATION_FLIP_HORIZONTAL || orientation == ORIENTATION_FLIP_VERTICAL
+                || orientation == ORIENTATION_TRANSPOSE || orientation == ORIENTATION_TRANSVERSE;
+    }
+
+    /**
+     * APP1セグメントの中身を作る (マーカーと長さは含まない)
+     */
+    public byte[] toApp1Payload() {
+        Ifd exif = new Ifd();
+        if (_exposureTimeNanos >= 0) exif.addRational(TAG_EXPOSURE_TIME, _exposureTimeNanos, 1000000000L);
+        if (_fNumber >= 0) exif.addRational(TAG_F_NUMBER, Math.round(_fNumber * 100), 100);
+        if (_iso >= 0) exif.addShort(TAG_ISO_SPEED_RATINGS, Math.min(_iso, 0xffff));
+        exif.add(TAG_EXIF_VERSION, TYPE_UNDEFINED, EXIF_VERSION.length, EXIF_VERSION);
+        if (_dateTime != null) exif.addAscii(TAG_DATE_TIME_ORIGINAL, _dateTime);
+        if (_flash >= 0) exif.addShort(TAG_FLASH, _flash);
+        if (_focalLength >= 0) exif.addRational(TAG_FOCAL_LENGTH, Math.round(_focalLength * 1000), 1000);
+        if (_subSecTime != null) exif.addAscii(TAG_SUB_SEC_TIME_ORIGINAL, _subSecTime);
+        if (_pixelWidth >= 0) exif.addLong(TAG_PIXEL_X_DIMENSION, _pixelWidth);
+        if (_pixelHeight >= 0) exif.addLong(TAG_PIXEL_Y_DIMENSION, _pixelHeight);
+
+        Ifd ifd0 = new Ifd();
+        if (_make != null) ifd0.addAscii(TAG_MAKE, _make);
+        if (_model != null) ifd0.addAscii(TAG_MODEL, _model);
+        if (_orientation != ORIENTATION_UNDEFINED) ifd0.addShort(TAG_ORIENTATION, _orientation);
+        if (_dateTime != null) ifd0.addAscii(TAG_DATE_TIME, _dateTime);
+        ifd0.addLong(TAG_EXIF_IFD_POINTER, 0);
+
+        //IFD0、Exif IFDの順に並べ、各IFDの直後にその値を置く
+        int ifd0Offset = TIFF_HEADER_SIZE;
+        int exifOffset = ifd0Offset + ifd0.size();
+        ifd0.setLong(TAG_EXIF_IFD_POINTER, exifOffset);
+
+        ByteBuffer buffer = ByteBuffer.allocate(EXIF_HEADER.length + exifOffset + exif.size()).order(ByteOrder.BIG_ENDIAN);
+        buffer.put(EXIF_HEADER);
+        int tiffStart = buffer.position();
+        buffer.put((byte)'M').put((byte)'M').putShort((short)42).putInt(ifd0Offset);
+        ifd0.write(buffer, tiffStart, ifd0Offset);
+        exif.write(buffer, tiffStart, exifOffset);
+        return buffer.array();
+    }
+
+    /**
+     * 1つのIFDの項目 (タグの昇順に並べて書き込む)
+     */
+    private static final class Ifd {
+        private int _count;
+        private int[] _tags = new int[16];
+        private int[] _types = new int[16];
+        private int[] _counts = new int[16];
+        private byte[][] _values = new byte[16][];
+
+        void addAscii(int tag, String value) {
+            byte[] bytes = value.getBytes(ASCII);
+            byte[] terminated = new byte[bytes.length + 1];
+            System.arraycopy(bytes, 0, terminated, 0, bytes.length);
+            add(tag, TYPE_ASCII, terminated.length, terminated);
+        }
+
+        void addShort(int tag, int value) {
+            add(tag, TYPE_SHORT, 1, new byte[] { (byte)(value >> 8), (byte)value });
+        }
+
+        void addLong(int tag, long value) {
+            add(tag, TYPE_LONG, 1, ByteBuffer.allocate(4).putInt((int)value).array());
+        }
+
+        void addRational(int tag, long numerator, long denominator) {
+            //32ビットに収まるまで約分して精度を落とす
+            long gcd = gcd(numerator, denominator);
+            if (gcd > 1) {
+                numerator /= gcd;
+                denominator /= gcd;
+            }
+            while (numerator > 0xffffffffL || denominator > 0xffffffffL) {
+                numerator >>= 1;
+                denominator >>= 1;
+            }
+            add(tag, TYPE_RATIONAL, 1, ByteBuffer.allocate(8).putInt((int)numerator).putInt((int)Math.max(1, denominator)).array());
+        }
+
+        void setLong(int tag, long value) {
+            for (int i = 0; i < _count; i++) {
+                if (_tags[i] == tag) {
+                    _values[i] = ByteBuffer.allocate(4).putInt((int)value).array();
+                    return;
+                }
+            }
+        }
+
+        void add(int tag, int type, int count, byte[] value) {
+            if (_count == _tags.length) {
+                throw new IllegalStateException("Too many tags");
+            }
+
+            //挿入ソート
+            int i = _count;
+            while (i > 0 && _tags[i - 1] > tag) {
+                _tags[i] = _tags[i - 1];
+                _types[i] = _types[i - 1];
+                _counts[i] = _counts[i - 1];
+                _values[i] = _values[i - 1];
+                i--;
+            }
+            _tags[i] = tag;
+            _types[i] = type;
+            _counts[i] = count;
+            _values[i] = value;
+            _count++;
+        }
+
+        /**
+         * 項目と、4バイトを超える値を合わせた大きさ
+         */
+        int size() {
+            int size = 2 + _count * IFD_ENTRY_SIZE + 4;
+            for (int i = 0; i < _count; i++) {
+                if (_values[i].length > 4) {
+                    size += align(_values[i].length);
+                }
+            }
+            return size;
+        }
+
+        void write(ByteBuffer buffer, int tiffStart, int offset) {
+            buffer.position(tiffStart + offset);
+            buffer.putShort((short)_count);
+            int dataOffset = offset + 2 + _count * IFD_ENTRY_SIZE + 4;
+            for (int i = 0; i < _count; i++) {
+                buffer.putShort((short)_tags[i]);
+                buffer.putShort((short)_types[i]);
+                buffer.putInt(_counts[i]);
+                byte[] value = _values[i];
+                if (value.length <= 4) {
+                    //4バイト以下は左詰めで項目に入れる
+                    buffer.put(value);
+                    for (int j = value.length; j < 4; j++) {
+                        buffer.put((byte)0);
+                    }
+                }
+                else {
+                    buffer.putInt(dataOffset);
+                    int position = buffer.position();
+                    buffer.position(tiffStart + dataOffset);
+                    buffer.put(value);
+                    buffer.position(position);
+                    dataOffset += align(value.length);
+                }
+            }
+            //次のIFDは無い
+            buffer.putInt(0);
+            buffer.position(tiffStart + dataOffset);
+        }
+
+        private static int align(int length) {
+            return (length + 1) & ~1;
+        }
+
+        private static long gcd(long a, long b) {
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.camerasample;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * JPEGのEXIFを画像をデコードせずに書き換える
+ *
+ * セグメントを先頭から順に読み、既存のEXIF (APP1 "Exif\0\0") を除いてSOIの直後に新しいEXIFを置く。
+ * 他のセグメントとSOS以降の圧縮データはそのまま写すので、画質は変わらない。
+ * 読み込みと書き込みは固定長のバッファを通して行い、ファイル全体は保持しない。
+ */
+public final class ExifRewriter {
+
+    //マーカー
+    static final int MARKER_SOI = 0xd8;
+    static final int MARKER_EOI = 0xd9;
+    static final int MARKER_SOS = 0xda;
+    static final int MARKER_APP1 = 0xe1;
+    static final int MARKER_TEM = 0x01;
+    static final int MARKER_RST0 = 0xd0;
+    static final int MARKER_RST7 = 0xd7;
+
+    //セグメントの最大長 (長さ自身の2バイトを含む)
+    static final int MAX_SEGMENT_LENGTH = 0xffff;
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    /**
+     * デコードせずに分かる画像の情報
+     */
+    public static final class JpegInfo {
+        public final int width;
+        public final int height;
+
+        //既存のEXIFのOrientation (無ければORIENTATION_UNDEFINED)
+        public final int orientation;
+
+        JpegInfo(int width, int height, int orientation) {
+            this.width = width;
+            this.height = height;
+            this.orientation = orientation;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + " orientation " + orientation;
+        }
+    }
+
+    private ExifRewriter() { }
+
+    /**
+     * SOFから画像のサイズを、EXIFからOrientationを読み取る
+     * バッファの位置は変更しない。
+     */
+    public static JpegInfo readInfo(ByteBuffer jpeg) throws IOException {
+        ByteBuffer buffer = jpeg.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < 4 || (buffer.get() & 0xff) != 0xff || (buffer.get() & 0xff) != MARKER_SOI) {
+            throw new IOException("Not a JPEG");
+        }
+
+        int orientation = ExifData.ORIENTATION_UNDEFINED;
+        while (buffer.remaining() >= 2) {
+            int marker = nextMarker(buffer);
+            if (marker < 0) break;
+            if (!hasLength(marker)) continue;
+            if (marker == MARKER_SOS || marker == MARKER_EOI) break;
+
+            if (buffer.remaining() < 2) break;
+            int length = buffer.getShort() & 0xffff;
+            if (length < 2 || length - 2 > buffer.remaining()) {
+                throw new IOException("Truncated segment: marker " + Integer.toHexString(marker));
+            }
+            int start = buffer.position();
+            int end = start + length - 2;
+
+            if (isSof(marker)) {
+                //精度 (1), 高さ (2), 幅 (2)
+                if (length < 7) throw new IOException("Invalid SOF");
+                int height = buffer.getShort(start + 1) & 0xffff;
+                int width = buffer.getShort(start + 3) & 0xffff;
+                return new JpegInfo(width, height, orientation);
+            }
+            if (marker == MARKER_APP1 && isExif(buffer, start, end)) {
+                orientation = readOrientation(buffer, start + ExifData.EXIF_HEADER.length, end);
+            }
+            buffer.position(end);
+        }
+        throw new IOException("No SOF segment");
+    }
+
+    /**
+     * EXIFを置き換えたJPEGを書き込む
+     *
+     * @return 書き込んだバイト数
+     */
+    public static long rewrite(InputStream in, OutputStream out, ExifData exif) throws IOException {
+        byte[] payload = exif.toApp1Payload();
+        if (payload.length + 2 > MAX_SEGMENT_LENGTH) {
+            throw new IOException("EXIF too large: " + payload.length);
+        }
+
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        if (readByte(in) != 0xff || readByte(in) != MARKER_SOI) {
+            throw new IOException("Not a JPEG");
+        }
+
+        //SOIの直後にEXIFを置く
+        out.write(0xff);
+        out.write(MARKER_SOI);
+        out.write(0xff);
+        out.write(MARKER_APP1);
+        writeShort(out, payload.length + 2);
+        out.write(payload);
+        long written = 2 + 4 + payload.length;
+
+        while (true) {
+            //詰め物の0xffを読み飛ばす
+            int b = readByte(in);
+            if (b != 0xff) throw new IOException("Marker expected: " + Integer.toHexString(b));
+            int marker;
+            do {
+                marker = readByte(in);
+            } while (marker == 0xff);
+
+            if (!hasLength(marker)) {
+                out.write(0xff);
+                out.write(marker);
+                written += 2;
+                if (marker == MARKER_EOI) return written;
+                continue;
+            }
+
+            int length = (readByte(in) << 8) | readByte(in);
+            if (length < 2) throw new IOException("Invalid segment length: " + length);
+
+            //既存のEXIFは除く
+            if (marker == MARKER_APP1 && length - 2 >= ExifData.EXIF_HEADER.length) {
+                readFully(in, buffer, ExifData.EXIF_HEADER.length);
+                boolean exifSegment = startsWithExifHeader(buffer);
+                if (exifSegment) {
+                    skipFully(in, length - 2 - ExifData.EXIF_HEADER.length);
+                    continue;
+                }
+                out.write(0xff);
+                out.write(marker);
+                writeShort(out, length);
+                out.write(buffer, 0, ExifData.EXIF_HEADER.length);
+                copy(in, out, buffer, length - 2 - ExifData.EXIF_HEADER.length);
+                written += 2 + length;
+                continue;
+            }
+
+            out.write(0xff);
+            out.write(marker);
+            writeShort(out, length);
+            copy(in, out, buffer, length - 2);
+            written += 2 + length;
+
+            //SOS以降は圧縮データなので終わりまでそのまま写す
+            if (marker == MARKER_SOS) {
+                int count;
+                while ((count = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, count);
+                    written += count;
+                }
+                return written;
+            }
+        }
+    }
+
+    /**
+     * EXIFのTIFFからIFD0のOrientationを読み取る (無ければORIENTATION_UNDEFINED)
+     */
+    static int readOrientation(ByteBuffer buffer, int tiffStart, int end) {
+        if (end - tiffStart < 8) return ExifData.ORIENTATION_UNDEFINED;
+
+        ByteBuffer tiff = buffer.duplicate();
+        int byteOrder = tiff.getShort(tiffStart) & 0xffff;
+        if (byteOrder == 0x4949) {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        else if (byteOrder == 0x4d4d) {
+            tiff.order(ByteOrder.BIG_ENDIAN);
+        }
+        else {
+            return ExifData.ORIENTATION_UNDEFINED;
+        }
+
+        long ifdOffset = tiff.getInt(tiffStart + 4) & 0xffffffffL;
+        long ifdStart = tiffStart + ifdOffset;
+        if (ifdOffset < 8 || ifdStart + 2 > end) return ExifData.ORIENTATION_UNDEFINED;
+
+        int count = tiff.getShort((int)ifdStart) & 0xffff;
+        for (int i = 0; i < count; i++) {
+            int entry = (int)ifdStart + 2 + i * 12;
+            if (entry + 12 > end) break;
+
+            int tag = tiff.getShort(entry) & 0xffff;
+            int type = tiff.getShort(entry + 2) & 0xffff;
+            if (tag == ExifData.TAG_ORIENTATION && type == ExifData.TYPE_SHORT) {
+                int value = tiff.getShort(entry + 8) & 0xffff;
+                return value >= ExifData.ORIENTATION_NORMAL && value <= ExifData.ORIENTATION_ROTATE_270
+                        ? value : ExifData.ORIENTATION_UNDEFINED;
+            }
+        }
+        return ExifData.ORIENTATION_UNDEFINED;
+    }
+
+    /**
+     * 次のマーカーを読む (詰め物の0xffは読み飛ばす、無ければ-1)
+     */
+    private static int nextMarker(ByteBuffer buffer) throws IOException {
+        int b = buffer.get() & 0xff;
+        if (b != 0xff) throw new IOException("Marker expected: " + Integer.toHexString(b));
+
+        while (buffer.hasRemaining()) {
+            int marker = buffer.get() & 0xff;
+            if (marker != 0xff) return marker;
+        }
+        return -1;
+    }
+
+    /**
+     * 長さを持つセグメントか (SOI、EOI、RSTn、TEMは持たない)
+     */
+    private static boolean hasLength(int marker) {
+        return marker != MARKER_SOI && marker != MARKER_EOI && marker != MARKER_TEM
+                && (marker < MARKER_RST0 || marker > MARKER_RST7);
+    }
+
+    /**
+     * SOF0〜SOF15 (DHT、JPG、DACを除く)
+     */
+    private static boolean isSof(int marker) {
+        return marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc;
+    }
+
+    private static boolean isExif(ByteBuffer buffer, int start, int end) {
+        if (end - start < ExifData.EXIF_HEADER.length) return false;
+
+        for (int i = 0; i < ExifData.EXIF_HEADER.length; i++) {
+            if (buffer.get(start + i) != ExifData.EXIF_HEADER[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean startsWithExifHeader(byte[] bytes) {
+        for (int i = 0; i < ExifData.EXIF_HEADER.length; i++) {
+            if (bytes[i] != ExifData.EXIF_HEADER[i]) return false;
+        }
+        return true;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("Unexpected end of JPEG");
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = in.read(buffer, offset, length - offset);
+            if (count < 0) throw new EOFException("Unexpected end of JPEG");
+            offset += count;
+        }
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                readByte(in);
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, byte[] buffer, int length) throws IOException {
+        while (length > 0) {
+            int count = in.read(buffer, 0, Math.min(buffer.length, length));
+            if (count < 0) throw new EOFException("Unexpected end of JPEG");
+            out.write(buffer, 0, count);
+            length -= count;
+        }
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write((value >> 8) & 0xff);
+        out.write(value & 0xff);
+    }
+}
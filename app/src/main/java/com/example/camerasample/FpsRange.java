@@ -0,0 +1,54 @@
+package com.example.camerasample;
+
+/**
+ * フレームレートの範囲 (CONTROL_AE_TARGET_FPS_RANGEなど)
+ * android.util.Rangeに依存せずに計算を行うために使用する。
+ */
+public final class FpsRange {
+
+    private final int _lower;
+    private final int _upper;
+
+    public FpsRange(int lower, int upper) {
+        if (lower <= 0 || upper < lower) {
+            throw new IllegalArgumentException("Invalid fps range: [" + lower + ", " + upper + "]");
+        }
+
+        _lower = lower;
+        _upper = upper;
+    }
+
+    public int getLower() {
+        return _lower;
+    }
+
+    public int getUpper() {
+        return _upper;
+    }
+
+    /**
+     * 固定フレームレートか
+     */
+    public boolean isFixed() {
+        return _lower == _upper;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof FpsRange)) return false;
+
+        FpsRange other = (FpsRange)obj;
+        return _lower == other._lower && _upper == other._upper;
+    }
+
+    @Override
+    public int hashCode() {
+        return _lower * 31 + _upper;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + _lower + ", " + _upper + "]";
+    }
+}
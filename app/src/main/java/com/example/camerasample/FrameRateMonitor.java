@@ -0,0 +1,197 @@
+package com.example.camerasample;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * 実際に届いたフレームのフレームレートと間隔の揺らぎの計測
+ *
+ * onCaptureCompletedのセンサのタイムスタンプ (SENSOR_TIMESTAMP) を渡す。
+ * 1秒毎の区間で届いたフレーム数と、フレーム間隔の平均・標準偏差・最大を求める。
+ * 区間を跨ぐ間隔は次の区間に含める。全体のフレーム間隔はLatencyHistogramにも記録する。
+ */
+public class FrameRateMonitor {
+
+    /**
+     * 1つの区間の結果
+     */
+    public static final class Window {
+        private final int _frames;
+        private final double _fps;
+        private final double _meanIntervalNanos;
+        private final double _jitterNanos;
+        private final long _maxIntervalNanos;
+
+        Window(int frames, double fps, double meanIntervalNanos, double jitterNanos, long maxIntervalNanos) {
+            _frames = frames;
+            _fps = fps;
+            _meanIntervalNanos = meanIntervalNanos;
+            _jitterNanos = jitterNanos;
+            _maxIntervalNanos = maxIntervalNanos;
+        }
+
+        public int getFrames() {
+            return _frames;
+        }
+
+        /**
+         * 区間で届いたフレームレート
+         */
+        public double getFps() {
+            return _fps;
+        }
+
+        public double getMeanIntervalNanos() {
+            return _meanIntervalNanos;
+        }
+
+        /**
+         * フレーム間隔の標準偏差
+         */
+        public double getJitterNanos() {
+            return _jitterNanos;
+        }
+
+        public long getMaxIntervalNanos() {
+            return _maxIntervalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.1f fps (%d frames), interval mean=%.2fms jitter=%.2fms max=%.2fms",
+                    _fps, _frames, _meanIntervalNanos / 1e6, _jitterNanos / 1e6, _maxIntervalNanos / 1e6);
+        }
+    }
+
+    public static final long DEFAULT_WINDOW_NANOS = 1000000000L;
+
+    private final long _windowNanos;
+    private final LatencyHistogram _intervals = new LatencyHistogram();
+
+    //区間の開始時刻と直前のフレーム (未開始は0)
+    private long _windowStart;
+    private long _lastTimestamp;
+
+    //区間内の集計 (Welfordの方法)
+    private int _frames;
+    private int _intervalCount;
+    private double _mean;
+    private double _m2;
+    private long _maxInterval;
+
+    private Window _lastWindow;
+    private int _windowCount;
+    private double _minFps = Double.MAX_VALUE;
+
+    public FrameRateMonitor() {
+        this(DEFAULT_WINDOW_NANOS);
+    }
+
+    public FrameRateMonitor(long windowNanos) {
+        if (windowNanos <= 0) throw new IllegalArgumentException("windowNanos must be positive: " + windowNanos);
+
+        _windowNanos = windowNanos;
+    }
+
+    /**
+     * フレームが届いた
+     * 区間が終わった場合はその結果を返す (それ以外はnull)。時刻が戻ったフレームは無視する。
+     */
+    public synchronized Window onFrame(long timestampNanos) {
+        if (_lastTimestamp != 0 && timestampNanos <= _lastTimestamp) return null;
+
+        Window completed = null;
+        if (_windowStart == 0) {
+            _windowStart = timestampNanos;
+        }
+        else {
+            //区間の終わりを過ぎていれば締める (フレームが途絶えた区間は0fps)
+            while (timestampNanos - _windowStart >= _windowNanos) {
+                completed = closeWindow();
+                _windowStart += _windowNanos;
+            }
+
+            long interval = timestampNanos - _lastTimestamp;
+            _intervals.record(interval);
+            _intervalCount++;
+            double delta = interval - _mean;
+            _mean += delta / _intervalCount;
+            _m2 += delta * (interval - _mean);
+            if (interval > _maxInterval) {
+                _maxInterval = interval;
+            }
+        }
+
+        _frames++;
+        _lastTimestamp = timestampNanos;
+        return completed;
+    }
+
+    /**
+     * 計測をやり直す (セッションを作り直した場合など)
+     * これまでのフレーム間隔の分布は残す。
+     */
+    public synchronized void reset() {
+        _windowStart = 0;
+        _lastTimestamp = 0;
+        clearWindow();
+    }
+
+    /**
+     * 直近に終わった区間 (無ければnull)
+     */
+    public synchronized Window getLastWindow() {
+        return _lastWindow;
+    }
+
+    public synchronized int getWindowCount() {
+        return _windowCount;
+    }
+
+    /**
+     * これまでの区間で最も低いフレームレート (区間が無ければ0)
+     */
+    public synchronized double getMinFps() {
+        return _windowCount > 0 ? _minFps : 0;
+    }
+
+    /**
+     * これまでの全てのフレーム間隔
+     */
+    public LatencyHistogram.Snapshot getIntervals() {
+        return _intervals.snapshot();
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        LatencyHistogram.Snapshot intervals = getIntervals();
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "Frame rate: last=%s min=%.1ffps windows=%d interval_p50=%.2fms interval_p99=%.2fms",
+                _lastWindow != null ? _lastWindow : "-",
+                getMinFps(),
+                _windowCount,
+                intervals.getValueAtPercentile(50) / 1e6,
+                intervals.getValueAtPercentile(99) / 1e6));
+        writer.flush();
+    }
+
+    private Window closeWindow() {
+        double jitter = _intervalCount > 1 ? Math.sqrt(_m2 / _intervalCount) : 0;
+        Window window = new Window(_frames, _frames * 1e9 / _windowNanos, _mean, jitter, _maxInterval);
+
+        _lastWindow = window;
+        _windowCount++;
+        if (window.getFps() < _minFps) {
+            _minFps = window.getFps();
+        }
+        clearWindow();
+        return window;
+    }
+
+    private void clearWindow() {
+        _frames = 0;
+        _intervalCount = 0;
+        _mean = 0;
+        _m2 = 0;
+        _maxInterval = 0;
+    }
+}
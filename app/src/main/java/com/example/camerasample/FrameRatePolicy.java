@@ -0,0 +1,106 @@
+package com.example.camerasample;
+
+/**
+ * プレビューのフレームレートの方針
+ *
+ * CONTROL_AE_AVAILABLE_TARGET_FPS_RANGESの中から方針に合う範囲を選ぶ。
+ * 範囲を指定しないとHALが選ぶので、暗所では露光を伸ばすためにフレームレートが落ちることがある。
+ * 高速度撮影 (createConstrainedHighSpeedCaptureSession) のサイズと範囲もここで選ぶ。
+ */
+public final class FrameRatePolicy {
+
+    //方針
+    public static final int PROFILE_FIXED_HIGH = 0;     //下限が最も高い範囲 (暗所でも落とさない)
+    public static final int PROFILE_LOW_LIGHT = 1;      //上限が最も高く下限が最も低い範囲 (暗所では露光を優先)
+    public static final int PROFILE_POWER_SAVING = 2;   //POWER_SAVING_MIN_FPS以上で上限が最も低い範囲
+
+    //省電力でも保つフレームレート
+    public static final int POWER_SAVING_MIN_FPS = 15;
+
+    private FrameRatePolicy() { }
+
+    /**
+     * 方針に合う範囲を選ぶ
+     * 上限がmaxFps以下の範囲から選び、無ければ全ての範囲から選ぶ。範囲が無ければnullを返す。
+     *
+     * @param maxFps 出力の最小フレーム間隔から求めたフレームレートの上限 (0以下は制限しない)
+     */
+    public static FpsRange choose(FpsRange[] available, int profile, int maxFps) {
+        FpsRange best = choose(available, profile, maxFps, true);
+        return best != null ? best : choose(available, profile, maxFps, false);
+    }
+
+    private static FpsRange choose(FpsRange[] available, int profile, int maxFps, boolean capped) {
+        FpsRange best = null;
+        for (FpsRange range : available) {
+            if (capped && maxFps > 0 && range.getUpper() > maxFps) continue;
+            if (best == null || isBetter(range, best, profile)) {
+                best = range;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isBetter(FpsRange range, FpsRange best, int profile) {
+        switch (profile) {
+            case PROFILE_FIXED_HIGH:
+                //下限が高いもの、同じであれば変動の小さいもの
+                if (range.getLower() != best.getLower()) return range.getLower() > best.getLower();
+                return range.getUpper() < best.getUpper();
+
+            case PROFILE_LOW_LIGHT:
+                //上限が高いもの、同じであれば下限が低いもの
+                if (range.getUpper() != best.getUpper()) return range.getUpper() > best.getUpper();
+                return range.getLower() < best.getLower();
+
+            case PROFILE_POWER_SAVING: {
+                //POWER_SAVING_MIN_FPS以上で上限が低いもの、同じであれば下限が低いもの
+                boolean enough = range.getUpper() >= POWER_SAVING_MIN_FPS;
+                boolean bestEnough = best.getUpper() >= POWER_SAVING_MIN_FPS;
+                if (enough != bestEnough) return enough;
+                if (range.getUpper() != best.getUpper()) {
+                    return enough ? range.getUpper() < best.getUpper() : range.getUpper() > best.getUpper();
+                }
+                return range.getLower() < best.getLower();
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown profile: " + profile);
+        }
+    }
+
+    /**
+     * 高速度撮影の構成を選ぶ
+     * 上限がtargetFpsの範囲を持つもののうち、固定フレームレートを優先し、上限のサイズに収まる最大のものを選ぶ。
+     * 無ければnullを返す。
+     */
+    public static HighSpeedConfiguration chooseHighSpeed(HighSpeedConfiguration[] configurations, int targetFps, FrameSize bound) {
+        HighSpeedConfiguration best = null;
+        for (HighSpeedConfiguration configuration : configurations) {
+            FrameSize size = configuration.getSize();
+            FpsRange range = configuration.getFpsRange();
+            if (range.getUpper() != targetFps) continue;
+            if (size.getWidth() > bound.getWidth() || size.getHeight() > bound.getHeight()) continue;
+
+            if (best == null
+                    || (range.isFixed() && !best.getFpsRange().isFixed())
+                    || (range.isFixed() == best.getFpsRange().isFixed() && size.getArea() > best.getSize().getArea())) {
+                best = configuration;
+            }
+        }
+        return best;
+    }
+
+    public static String getProfileName(int profile) {
+        switch (profile) {
+            case PROFILE_FIXED_HIGH:
+                return "fixed_high";
+            case PROFILE_LOW_LIGHT:
+                return "low_light";
+            case PROFILE_POWER_SAVING:
+                return "power_saving";
+            default:
+                return "unknown";
+        }
+    }
+}
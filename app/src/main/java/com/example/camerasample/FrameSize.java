@@ -0,0 +1,47 @@
+package com.example.camerasample;
+
+/**
+ * 幅と高さ
+ * android.util.Sizeに依存せずにサイズの計算を行うために使用する。
+ */
+public final class FrameSize {
+
+    private final int _width;
+    private final int _height;
+
+    public FrameSize(int width, int height) {
+        _width = width;
+        _height = height;
+    }
+
+    public int getWidth() {
+        return _width;
+    }
+
+    public int getHeight() {
+        return _height;
+    }
+
+    public long getArea() {
+        return (long)_width * _height;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof FrameSize)) return false;
+
+        FrameSize other = (FrameSize)obj;
+        return _width == other._width && _height == other._height;
+    }
+
+    @Override
+    public int hashCode() {
+        return _height ^ ((_width << (Integer.SIZE / 2)) | (_width >>> (Integer.SIZE / 2)));
+    }
+
+    @Override
+    public String toString() {
+        return _width + "x" + _height;
+    }
+}
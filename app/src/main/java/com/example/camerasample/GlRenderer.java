@@ -0,0 +1,794 @@
+package com.example.camerasample;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * カメラのフレームをOpenGL ESで描画する処理
+ *
+ * カメラの出力はSurfaceTextureのOESテクスチャで受け取り、回転と鏡面反転、色の変換表、補助線をシェーダで反映して
+ * 画面とエンコーダへ描画する。カメラのストリームは1つなので、描画先を増やしてもセッションは作り直さない。
+ * GLの処理は全て専用のスレッドで行う。公開メソッドはどのスレッドから呼び出してもよく、
+ * detachDisplayAndWait()以外はGLのスレッドを待たない。
+ */
+public class GlRenderer implements SurfaceTexture.OnFrameAvailableListener {
+
+    //描画先
+    public static final int SINK_DISPLAY = 0;
+    public static final int SINK_ENCODER = 1;
+    private static final int SINK_COUNT = 2;
+
+    //画面の描画先を外し終わるのを待つ最大時間
+    private static final long WAIT_TIMEOUT_MILLIS = 2000;
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uMvpMatrix;\n"
+            + "uniform mat4 uTexMatrix;\n"
+            + "attribute vec4 aPosition;\n"
+            + "attribute vec4 aTextureCoord;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "void main() {\n"
+            + "    gl_Position = uMvpMatrix * aPosition;\n"
+            + "    vTextureCoord = (uTexMatrix * aTextureCoord).xy;\n"
+            + "}\n";
+
+    //色の変換表は青の各段を横に並べた2Dテクスチャ (CubeLut.writeTexture()) から、青の隣り合う2段を補間する
+    //補助線は描画先を縦横に3等分する線
+    private static final String FRAGMENT_SHADER =
+            "#extension GL_OES_EGL_image_external : require\n"
+            + "#ifdef GL_FRAGMENT_PRECISION_HIGH\n"
+            + "precision highp float;\n"
+            + "#else\n"
+            + "precision mediump float;\n"
+            + "#endif\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "uniform samplerExternalOES sTexture;\n"
+            + "uniform sampler2D sLut;\n"
+            + "uniform float uLutSize;\n"
+            + "uniform vec3 uLutDomainMin;\n"
+            + "uniform vec3 uLutDomainScale;\n"
+            + "uniform vec2 uGridSize;\n"
+            + "void main() {\n"
+            + "    vec4 color = texture2D(sTexture, vTextureCoord);\n"
+            + "    if (uLutSize > 0.0) {\n"
+            + "        vec3 c = clamp((color.rgb - uLutDomainMin) * uLutDomainScale, 0.0, 1.0) * (uLutSize - 1.0);\n"
+            + "        float b0 = floor(c.b);\n"
+            + "        float b1 = min(b0 + 1.0, uLutSize - 1.0);\n"
+            + "        float y = (c.g + 0.5) / uLutSize;\n"
+            + "        vec3 lo = texture2D(sLut, vec2((b0 * uLutSize + c.r + 0.5) / (uLutSize * uLutSize), y)).rgb;\n"
+            + "        vec3 hi = texture2D(sLut, vec2((b1 * uLutSize + c.r + 0.5) / (uLutSize * uLutSize), y)).rgb;\n"
+            + "        color.rgb = mix(lo, hi, c.b - b0);\n"
+            + "    }\n"
+            + "    if (uGridSize.x > 0.0) {\n"
+            + "        vec2 third = uGridSize / 3.0;\n"
+            + "        vec2 d = min(abs(gl_FragCoord.xy - third), abs(gl_FragCoord.xy - 2.0 * third));\n"
+            + "        if (min(d.x, d.y) < 1.0) {\n"
+            + "            color.rgb = mix(color.rgb, vec3(1.0), 0.5);\n"
+            + "        }\n"
+            + "    }\n"
+            + "    gl_FragColor = color;\n"
+            + "}\n";
+
+    //(-1, -1)から(1, 1)の四角形 (x, y, s, t)
+    private static final float[] QUAD = {
+            -1, -1, 0, 0,
+            1, -1, 1, 0,
+            -1, 1, 0, 1,
+            1, 1, 1, 1,
+    };
+    private static final int QUAD_STRIDE = 4 * 4;
+
+    /**
+     * 生成の通知 (create()に渡したHandlerのスレッド)
+     */
+    public interface CreateCallback {
+        void onCreated(@NonNull GlRenderer renderer);
+
+        void onFailed(@NonNull IOException e);
+    }
+
+    /**
+     * エンコーダへの描画の通知 (GLのスレッド)
+     */
+    public interface EncoderListener {
+        void onEncoderFrame(long timestampNanos);
+    }
+
+    private static class Sink {
+        final Surface surface;
+        final boolean ownsSurface;
+        final EGLSurface eglSurface;
+        int width;
+        int height;
+        int rotationDegrees;
+        boolean mirror;
+        boolean grid;
+        EncoderListener listener;
+        final float[] mvpMatrix = new float[16];
+
+        Sink(Surface surface, boolean ownsSurface, EGLSurface eglSurface) {
+            this.surface = surface;
+            this.ownsSurface = ownsSurface;
+            this.eglSurface = eglSurface;
+        }
+    }
+
+    private final HandlerThread _thread;
+    private final Handler _handler;
+
+    //SurfaceTextureの変換を反映したカメラの画像の大きさ
+    private final int _contentWidth;
+    private final int _contentHeight;
+
+    //以下はGLのスレッドからのみ使用する
+    private EGLDisplay _eglDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext _eglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLConfig _eglConfig;
+    private EGLSurface _pbufferSurface = EGL14.EGL_NO_SURFACE;
+    private EGLSurface _currentSurface = EGL14.EGL_NO_SURFACE;
+    private int _program;
+    private int _mvpMatrixLocation;
+    private int _texMatrixLocation;
+    private int _positionLocation;
+    private int _textureCoordLocation;
+    private int _lutSizeLocation;
+    private int _lutDomainMinLocation;
+    private int _lutDomainScaleLocation;
+    private int _gridSizeLocation;
+    private int _cameraTextureId;
+    private int _lutTextureId;
+    private CubeLut _lut;
+    private final FloatBuffer _quad;
+    private final float[] _texMatrix = new float[16];
+    private final Sink[] _sinks = new Sink[SINK_COUNT];
+    private boolean _released;
+
+    //カメラの出力先
+    private SurfaceTexture _cameraTexture;
+    private Surface _inputSurface;
+
+    //計測
+    private volatile long _receivedFrames;
+    private volatile long _displayFrames;
+    private volatile long _encodedFrames;
+    private final LatencyHistogram _drawLatency = new LatencyHistogram();
+
+    private GlRenderer(int contentWidth, int contentHeight) {
+        _contentWidth = contentWidth;
+        _contentHeight = contentHeight;
+        _quad = ByteBuffer.allocateDirect(QUAD.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        _quad.put(QUAD).position(0);
+
+        _thread = new HandlerThread("GlRendererThread");
+        _thread.start();
+        _handler = new Handler(_thread.getLooper());
+    }
+
+    /**
+     * 描画処理を生成する (待たない)
+     * GLの初期化はGLのスレッドで行い、終わったらhandlerのスレッドへ通知する。
+     *
+     * @param bufferWidth カメラの出力の幅
+     * @param bufferHeight カメラの出力の高さ
+     * @param sensorOrientation センサの向き
+     */
+    public static void create(final int bufferWidth, final int bufferHeight, int sensorOrientation,
+                              @NonNull final CreateCallback callback, @NonNull final Handler handler) {
+        final GlRenderer renderer = new GlRenderer(
+                GlTransform.getNaturalWidth(bufferWidth, bufferHeight, sensorOrientation),
+                GlTransform.getNaturalHeight(bufferWidth, bufferHeight, sensorOrientation));
+
+        renderer._handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    renderer.initialize(bufferWidth, bufferHeight);
+                }
+                catch (final IOException e) {
+                    renderer.release();
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onFailed(e);
+                        }
+                    });
+                    return;
+                }
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCreated(renderer);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * カメラのセッションへ加える出力のSurface
+     */
+    @NonNull
+    public Surface getInputSurface() {
+        return _inputSurface;
+    }
+
+    /**
+     * 画面への描画先を設定する (nullで外す)
+     *
+     * @param surfaceTexture TextureViewのSurfaceTexture
+     */
+    public void setDisplay(@Nullable final SurfaceTexture surfaceTexture) {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                replaceDisplay(surfaceTexture);
+            }
+        });
+    }
+
+    /**
+     * 画面への描画先を外し、外し終わるまで待つ
+     * TextureViewのSurfaceTextureが破棄される前に呼び出す。
+     */
+    public void detachDisplayAndWait() {
+        runAndWait(new Runnable() {
+            @Override
+            public void run() {
+                replaceDisplay(null);
+            }
+        });
+    }
+
+    /**
+     * 画面へ描画する大きさと向きを設定する
+     *
+     * @param rotationDegrees 反時計回りの回転 (OrientationMath.toDegrees())
+     * @param mirror 左右反転するか
+     */
+    public void setDisplayTransform(final int width, final int height, final int rotationDegrees, final boolean mirror) {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Sink sink = _sinks[SINK_DISPLAY];
+                if (sink == null) return;
+
+                sink.width = width;
+                sink.height = height;
+                sink.rotationDegrees = rotationDegrees;
+                sink.mirror = mirror;
+                updateMvpMatrix(sink);
+            }
+        });
+    }
+
+    /**
+     * 画面に補助線を重ねるか (エンコーダには描画しない)
+     */
+    public void setDisplayGrid(final boolean grid) {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Sink sink = _sinks[SINK_DISPLAY];
+                if (sink != null) {
+                    sink.grid = grid;
+                }
+            }
+        });
+    }
+
+    /**
+     * エンコーダへの描画先を設定する
+     *
+     * @param rotationDegrees 反時計回りの回転 (GlTransform.getEncoderRotationDegrees())
+     */
+    public void setEncoder(@NonNull final Surface surface, final int width, final int height, final int rotationDegrees,
+                           @Nullable final EncoderListener listener) {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Sink sink = createSink(surface, false);
+                if (sink == null) return;
+
+                sink.width = width;
+                sink.height = height;
+                sink.rotationDegrees = rotationDegrees;
+                sink.listener = listener;
+                updateMvpMatrix(sink);
+                replaceSink(SINK_ENCODER, sink);
+            }
+        });
+    }
+
+    /**
+     * エンコーダへの描画先を外す (待たない)
+     * onDetachedは外した後にGLのスレッドで実行するので、そこでエンコーダを終えてよい。
+     * 解放済みの場合は呼び出したスレッドで実行する。
+     */
+    public void detachEncoder(@NonNull final Runnable onDetached) {
+        boolean posted = _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                replaceSink(SINK_ENCODER, null);
+                onDetached.run();
+            }
+        });
+        if (!posted) {
+            onDetached.run();
+        }
+    }
+
+    /**
+     * 色の変換表を読み込んで設定する
+     * 読み込みはGLのスレッドで行うので、フレームが届き始める前に呼び出す。
+     */
+    public void loadLut(@NonNull final File file) {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (_released) return;
+
+                try {
+                    uploadLut(CubeLut.load(file));
+                    Log.d(GlRenderer.class.getSimpleName(), "LUT: " + _lut);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * 色の変換表を設定する (nullで外す)
+     */
+    public void setLut(@Nullable final CubeLut lut) {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!_released) {
+                    uploadLut(lut);
+                }
+            }
+        });
+    }
+
+    /**
+     * 解放する (カメラを閉じてから呼び出す、待たない)
+     * 先に呼び出した処理を終えてから解放する。
+     */
+    public void release() {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                releaseOnGlThread();
+            }
+        });
+        _thread.quitSafely();
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        if (_released) return;
+
+        long start = System.nanoTime();
+        try {
+            surfaceTexture.updateTexImage();
+        }
+        catch (RuntimeException e) {
+            //解放済みなど
+            e.printStackTrace();
+            return;
+        }
+        surfaceTexture.getTransformMatrix(_texMatrix);
+        long timestamp = surfaceTexture.getTimestamp();
+        _receivedFrames++;
+
+        for (int i = 0; i < SINK_COUNT; i++) {
+            Sink sink = _sinks[i];
+            if (sink == null) continue;
+
+            if (!makeCurrent(sink.eglSurface)) {
+                Log.w(GlRenderer.class.getSimpleName(), "eglMakeCurrent failed: " + EGL14.eglGetError());
+                replaceSink(i, null);
+                continue;
+            }
+            draw(sink);
+
+            //エンコーダにはセンサのタイムスタンプを渡す (カメラから直接受け取る場合と同じ)
+            if (i == SINK_ENCODER) {
+                EGLExt.eglPresentationTimeANDROID(_eglDisplay, sink.eglSurface, timestamp);
+            }
+
+            //描画先が破棄された場合は外す
+            if (!EGL14.eglSwapBuffers(_eglDisplay, sink.eglSurface)) {
+                Log.w(GlRenderer.class.getSimpleName(), "eglSwapBuffers failed: " + EGL14.eglGetError());
+                replaceSink(i, null);
+                continue;
+            }
+            if (i == SINK_DISPLAY) {
+                _displayFrames++;
+            }
+            else {
+                _encodedFrames++;
+                if (sink.listener != null) {
+                    sink.listener.onEncoderFrame(timestamp);
+                }
+            }
+        }
+        _drawLatency.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public String toString() {
+        LatencyHistogram.Snapshot drawLatency = _drawLatency.snapshot();
+        return String.format(Locale.US, "GL renderer: content=%dx%d frames=%d display=%d encoded=%d draw_p50=%.2fms draw_p99=%.2fms",
+                _contentWidth, _contentHeight, _receivedFrames, _displayFrames, _encodedFrames,
+                drawLatency.getValueAtPercentile(50) / 1e6, drawLatency.getValueAtPercentile(99) / 1e6);
+    }
+
+    private void initialize(int bufferWidth, int bufferHeight) throws IOException {
+        _eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (_eglDisplay == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(_eglDisplay, version, 0, version, 1)) {
+            throw new IOException("eglInitialize failed: " + EGL14.eglGetError());
+        }
+
+        //エンコーダのSurfaceにも描画できる設定にする
+        int[] configAttributes = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT | EGL14.EGL_PBUFFER_BIT,
+                EGLExt.EGL_RECORDABLE_ANDROID, 1,
+                EGL14.EGL_NONE,
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configCount = new int[1];
+        if (!EGL14.eglChooseConfig(_eglDisplay, configAttributes, 0, configs, 0, 1, configCount, 0) || configCount[0] == 0) {
+            throw new IOException("eglChooseConfig failed: " + EGL14.eglGetError());
+        }
+        _eglConfig = configs[0];
+
+        int[] contextAttributes = { EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE };
+        _eglContext = EGL14.eglCreateContext(_eglDisplay, _eglConfig, EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        if (_eglContext == EGL14.EGL_NO_CONTEXT) {
+            throw new IOException("eglCreateContext failed: " + EGL14.eglGetError());
+        }
+
+        //描画先が無い間もテクスチャを更新できるよう、1x1のPbufferを用意する
+        int[] pbufferAttributes = { EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE };
+        _pbufferSurface = EGL14.eglCreatePbufferSurface(_eglDisplay, _eglConfig, pbufferAttributes, 0);
+        if (_pbufferSurface == EGL14.EGL_NO_SURFACE || !makeCurrent(_pbufferSurface)) {
+            throw new IOException("eglCreatePbufferSurface failed: " + EGL14.eglGetError());
+        }
+
+        _program = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        _mvpMatrixLocation = GLES20.glGetUniformLocation(_program, "uMvpMatrix");
+        _texMatrixLocation = GLES20.glGetUniformLocation(_program, "uTexMatrix");
+        _positionLocation = GLES20.glGetAttribLocation(_program, "aPosition");
+        _textureCoordLocation = GLES20.glGetAttribLocation(_program, "aTextureCoord");
+        _lutSizeLocation = GLES20.glGetUniformLocation(_program, "uLutSize");
+        _lutDomainMinLocation = GLES20.glGetUniformLocation(_program, "uLutDomainMin");
+        _lutDomainScaleLocation = GLES20.glGetUniformLocation(_program, "uLutDomainScale");
+        _gridSizeLocation = GLES20.glGetUniformLocation(_program, "uGridSize");
+
+        GLES20.glUseProgram(_program);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(_program, "sTexture"), 0);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(_program, "sLut"), 1);
+        GLES20.glUniform1f(_lutSizeLocation, 0);
+
+        //カメラの出力を受け取るテクスチャ
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        _cameraTextureId = textures[0];
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, _cameraTextureId);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        checkGlError("camera texture");
+
+        //フレームの通知はGLのスレッドで受け取る
+        _cameraTexture = new SurfaceTexture(_cameraTextureId);
+        _cameraTexture.setDefaultBufferSize(bufferWidth, bufferHeight);
+        _cameraTexture.setOnFrameAvailableListener(this, _handler);
+        _inputSurface = new Surface(_cameraTexture);
+    }
+
+    private void replaceDisplay(@Nullable SurfaceTexture surfaceTexture) {
+        Sink sink = _sinks[SINK_DISPLAY];
+        Sink newSink = null;
+        if (surfaceTexture != null) {
+            newSink = createSink(new Surface(surfaceTexture), true);
+            if (newSink == null) return;
+
+            //向きと大きさは引き継ぐ
+            if (sink != null) {
+                newSink.width = sink.width;
+                newSink.height = sink.height;
+                newSink.rotationDegrees = sink.rotationDegrees;
+                newSink.mirror = sink.mirror;
+                newSink.grid = sink.grid;
+                updateMvpMatrix(newSink);
+            }
+        }
+        replaceSink(SINK_DISPLAY, newSink);
+    }
+
+    @Nullable
+    private Sink createSink(Surface surface, boolean ownsSurface) {
+        if (_released) {
+            if (ownsSurface) {
+                surface.release();
+            }
+            return null;
+        }
+
+        int[] attributes = { EGL14.EGL_NONE };
+        EGLSurface eglSurface;
+        try {
+            eglSurface = EGL14.eglCreateWindowSurface(_eglDisplay, _eglConfig, surface, attributes, 0);
+        }
+        catch (IllegalArgumentException e) {
+            //Surfaceが既に破棄されている
+            eglSurface = EGL14.EGL_NO_SURFACE;
+        }
+        if (eglSurface == EGL14.EGL_NO_SURFACE) {
+            Log.e(GlRenderer.class.getSimpleName(), "eglCreateWindowSurface failed: " + EGL14.eglGetError());
+            if (ownsSurface) {
+                surface.release();
+            }
+            return null;
+        }
+        return new Sink(surface, ownsSurface, eglSurface);
+    }
+
+    private void replaceSink(int index, @Nullable Sink sink) {
+        Sink oldSink = _sinks[index];
+        _sinks[index] = sink;
+        if (oldSink == null) return;
+
+        //描画中のSurfaceは外してから破棄する
+        if (_currentSurface == oldSink.eglSurface) {
+            makeCurrent(_pbufferSurface);
+        }
+        EGL14.eglDestroySurface(_eglDisplay, oldSink.eglSurface);
+        if (oldSink.ownsSurface) {
+            oldSink.surface.release();
+        }
+    }
+
+    private void updateMvpMatrix(Sink sink) {
+        GlTransform.computeMvp(sink.width, sink.height, _contentWidth, _contentHeight,
+                sink.rotationDegrees, sink.mirror, GlTransform.SCALE_FILL, sink.mvpMatrix);
+    }
+
+    private void draw(Sink sink) {
+        GLES20.glViewport(0, 0, sink.width, sink.height);
+        GLES20.glClearColor(0, 0, 0, 1);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        GLES20.glUseProgram(_program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, _cameraTextureId);
+        if (_lut != null) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, _lutTextureId);
+        }
+
+        GLES20.glUniformMatrix4fv(_mvpMatrixLocation, 1, false, sink.mvpMatrix, 0);
+        GLES20.glUniformMatrix4fv(_texMatrixLocation, 1, false, _texMatrix, 0);
+        GLES20.glUniform2f(_gridSizeLocation, sink.grid ? sink.width : 0, sink.grid ? sink.height : 0);
+
+        _quad.position(0);
+        GLES20.glVertexAttribPointer(_positionLocation, 2, GLES20.GL_FLOAT, false, QUAD_STRIDE, _quad);
+        GLES20.glEnableVertexAttribArray(_positionLocation);
+        _quad.position(2);
+        GLES20.glVertexAttribPointer(_textureCoordLocation, 2, GLES20.GL_FLOAT, false, QUAD_STRIDE, _quad);
+        GLES20.glEnableVertexAttribArray(_textureCoordLocation);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+
+    private void uploadLut(@Nullable CubeLut lut) {
+        if (lut == null) {
+            if (_lutTextureId != 0) {
+                GLES20.glDeleteTextures(1, new int[] { _lutTextureId }, 0);
+                _lutTextureId = 0;
+            }
+            _lut = null;
+            GLES20.glUseProgram(_program);
+            GLES20.glUniform1f(_lutSizeLocation, 0);
+            return;
+        }
+
+        //青の段を横に並べた幅がテクスチャの最大サイズを超える場合は格子を減らす
+        int[] maxTextureSize = new int[1];
+        GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, maxTextureSize, 0);
+        int maxSize = (int)Math.sqrt(maxTextureSize[0]);
+        if (lut.getSize() > maxSize) {
+            lut = lut.resample(maxSize);
+        }
+
+        ByteBuffer pixels = ByteBuffer.allocateDirect(lut.getTextureWidth() * lut.getTextureHeight() * 4).order(ByteOrder.nativeOrder());
+        lut.writeTexture(pixels);
+        pixels.position(0);
+
+        if (_lutTextureId == 0) {
+            int[] textures = new int[1];
+            GLES20.glGenTextures(1, textures, 0);
+            _lutTextureId = textures[0];
+        }
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, _lutTextureId);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, lut.getTextureWidth(), lut.getTextureHeight(), 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        if (!checkGlError("LUT texture")) {
+            uploadLut(null);
+            return;
+        }
+
+        GLES20.glUseProgram(_program);
+        GLES20.glUniform1f(_lutSizeLocation, lut.getSize());
+        GLES20.glUniform3f(_lutDomainMinLocation, lut.getDomainMin(0), lut.getDomainMin(1), lut.getDomainMin(2));
+        GLES20.glUniform3f(_lutDomainScaleLocation,
+                1 / (lut.getDomainMax(0) - lut.getDomainMin(0)),
+                1 / (lut.getDomainMax(1) - lut.getDomainMin(1)),
+                1 / (lut.getDomainMax(2) - lut.getDomainMin(2)));
+        _lut = lut;
+    }
+
+    private void releaseOnGlThread() {
+        if (_released) return;
+        _released = true;
+
+        for (int i = 0; i < SINK_COUNT; i++) {
+            replaceSink(i, null);
+        }
+        if (_cameraTexture != null) {
+            _cameraTexture.setOnFrameAvailableListener(null);
+            _cameraTexture.release();
+        }
+        if (_inputSurface != null) {
+            _inputSurface.release();
+        }
+
+        if (_eglDisplay != EGL14.EGL_NO_DISPLAY) {
+            //テクスチャとプログラムはコンテキストと共に破棄される
+            EGL14.eglMakeCurrent(_eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            if (_pbufferSurface != EGL14.EGL_NO_SURFACE) {
+                EGL14.eglDestroySurface(_eglDisplay, _pbufferSurface);
+            }
+            if (_eglContext != EGL14.EGL_NO_CONTEXT) {
+                EGL14.eglDestroyContext(_eglDisplay, _eglContext);
+            }
+            EGL14.eglReleaseThread();
+            EGL14.eglTerminate(_eglDisplay);
+        }
+        _eglDisplay = EGL14.EGL_NO_DISPLAY;
+        _eglContext = EGL14.EGL_NO_CONTEXT;
+        _pbufferSurface = EGL14.EGL_NO_SURFACE;
+        _currentSurface = EGL14.EGL_NO_SURFACE;
+        _lut = null;
+    }
+
+    private boolean makeCurrent(EGLSurface surface) {
+        if (surface == _currentSurface) return true;
+
+        if (!EGL14.eglMakeCurrent(_eglDisplay, surface, surface, _eglContext)) return false;
+        _currentSurface = surface;
+        return true;
+    }
+
+    /**
+     * GLのスレッドで実行して終わるまで待つ (GLのスレッドから呼び出した場合はそのまま実行する)
+     *
+     * @return 時間内に終わったか
+     */
+    private boolean runAndWait(final Runnable task) {
+        if (Looper.myLooper() == _thread.getLooper()) {
+            task.run();
+            return true;
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        boolean posted = _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                }
+                finally {
+                    latch.countDown();
+                }
+            }
+        });
+        if (!posted) return false;
+
+        try {
+            return latch.await(WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource) throws IOException {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+
+        //リンク後はシェーダを残す必要は無い
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new IOException("Failed to link program: " + log);
+        }
+        return program;
+    }
+
+    private static int loadShader(int type, String source) throws IOException {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IOException("Failed to compile shader: " + log);
+        }
+        return shader;
+    }
+
+    private static boolean checkGlError(String operation) {
+        int error = GLES20.glGetError();
+        if (error == GLES20.GL_NO_ERROR) return true;
+
+        Log.e(GlRenderer.class.getSimpleName(), operation + ": glError " + error);
+        return false;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.camerasample;
+
+/**
+ * GLで描画する際の頂点の変換行列の計算
+ *
+ * android.opengl.Matrixと同じ列優先のfloat[16]で計算する。
+ * 頂点は(-1, -1)から(1, 1)の四角形とし、テクスチャ座標はSurfaceTexture.getTransformMatrix()で変換する。
+ * SurfaceTextureの変換を反映したカメラの画像は端末の自然な向き (縦持ちの端末では縦長) になるので、
+ * この行列は画面や録画の向きへの回転、鏡面反転、表示先の縦横比への拡大のみを行う。
+ */
+public final class GlTransform {
+
+    //表示先を隙間なく埋める (はみ出した部分は切り取る)
+    public static final int SCALE_FILL = 0;
+
+    //全体を表示先に収める (余白ができる)
+    public static final int SCALE_FIT = 1;
+
+    private GlTransform() { }
+
+    /**
+     * SurfaceTextureの変換を反映した画像の幅 (端末の自然な向き)
+     */
+    public static int getNaturalWidth(int bufferWidth, int bufferHeight, int sensorOrientation) {
+        return sensorOrientation == 90 || sensorOrientation == 270 ? bufferHeight : bufferWidth;
+    }
+
+    /**
+     * SurfaceTextureの変換を反映した画像の高さ (端末の自然な向き)
+     */
+    public static int getNaturalHeight(int bufferWidth, int bufferHeight, int sensorOrientation) {
+        return sensorOrientation == 90 || sensorOrientation == 270 ? bufferWidth : bufferHeight;
+    }
+
+    /**
+     * エンコーダへ描画する際の回転 (反時計回りの角度)
+     * 再生時はorientationHintだけ時計回りに回転されるので、その分を先に戻しておく。
+     *
+     * @param displayRotation 録画開始時の画面の回転 (Surface.ROTATION_*)
+     * @param orientationHint MediaMuxer.setOrientationHint()に渡す角度
+     */
+    public static int getEncoderRotationDegrees(int displayRotation, int orientationHint) {
+        return normalizeDegrees(OrientationMath.toDegrees(displayRotation) + orientationHint);
+    }
+
+    /**
+     * 頂点の変換行列を計算する
+     *
+     * @param viewWidth 描画先の幅 (画素)
+     * @param viewHeight 描画先の高さ (画素)
+     * @param contentWidth 回転前の画像の幅 (getNaturalWidth())
+     * @param contentHeight 回転前の画像の高さ (getNaturalHeight())
+     * @param rotationDegrees 反時計回りの回転 (90度単位、画面へはOrientationMath.toDegrees())
+     * @param mirror 回転後に左右反転するか
+     * @param scaleMode SCALE_FILL / SCALE_FIT
+     * @param out 結果を書き込む配列 (16要素)
+     */
+    public static void computeMvp(int viewWidth, int viewHeight, int contentWidth, int contentHeight,
+                                  int rotationDegrees, boolean mirror, int scaleMode, float[] out) {
+        int degrees = normalizeDegrees(rotationDegrees);
+        if (degrees % 90 != 0) throw new IllegalArgumentException("rotationDegrees must be a multiple of 90: " + rotationDegrees);
+
+        setIdentity(out);
+        if (viewWidth <= 0 || viewHeight <= 0 || contentWidth <= 0 || contentHeight <= 0) return;
+
+        //90度単位なので三角関数は使わずに正確な値にする
+        float cos = degrees == 0 ? 1 : degrees == 180 ? -1 : 0;
+        float sin = degrees == 90 ? 1 : degrees == 270 ? -1 : 0;
+
+        //回転後の画像の大きさを表示先の縦横比に合わせる
+        float rotatedWidth = degrees == 90 || degrees == 270 ? contentHeight : contentWidth;
+        float rotatedHeight = degrees == 90 || degrees == 270 ? contentWidth : contentHeight;
+        float scaleX = viewWidth / rotatedWidth;
+        float scaleY = viewHeight / rotatedHeight;
+        float scale = scaleMode == SCALE_FIT ? Math.min(scaleX, scaleY) : Math.max(scaleX, scaleY);
+        float sx = rotatedWidth * scale / viewWidth;
+        float sy = rotatedHeight * scale / viewHeight;
+        if (mirror) {
+            sx = -sx;
+        }
+
+        //S * R (列優先)
+        out[0] = sx * cos;
+        out[1] = sy * sin;
+        out[4] = -sx * sin;
+        out[5] = sy * cos;
+    }
+
+    public static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = i % 5 == 0 ? 1 : 0;
+        }
+    }
+
+    /**
+     * 座標を変換する (points は x, y の並び、z = 0, w = 1とする)
+     */
+    public static void mapPoints(float[] m, float[] points) {
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            float x = points[i];
+            float y = points[i + 1];
+            float w = m[3] * x + m[7] * y + m[15];
+            points[i] = (m[0] * x + m[4] * y + m[12]) / w;
+            points[i + 1] = (m[1] * x + m[5] * y + m[13]) / w;
+        }
+    }
+
+    private static int normalizeDegrees(int degrees) {
+        int normalized = degrees % 360;
+        return normalized < 0 ? normalized + 360 : normalized;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.camerasample;
+
+/**
+ * 高速度撮影のサイズとフレームレートの範囲の組
+ * (StreamConfigurationMap.getHighSpeedVideoSizes()/getHighSpeedVideoFpsRangesFor()から求める)
+ */
+public final class HighSpeedConfiguration {
+
+    private final FrameSize _size;
+    private final FpsRange _fpsRange;
+
+    public HighSpeedConfiguration(FrameSize size, FpsRange fpsRange) {
+        _size = size;
+        _fpsRange = fpsRange;
+    }
+
+    public FrameSize getSize() {
+        return _size;
+    }
+
+    public FpsRange getFpsRange() {
+        return _fpsRange;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof HighSpeedConfiguration)) return false;
+
+        HighSpeedConfiguration other = (HighSpeedConfiguration)obj;
+        return _size.equals(other._size) && _fpsRange.equals(other._fpsRange);
+    }
+
+    @Override
+    public int hashCode() {
+        return _size.hashCode() * 31 + _fpsRange.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _size + "@" + _fpsRange;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.camerasample;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 撮影したJPEGをファイルへ保存する
+ *
+ * 専用のスレッドでJpegFrameのバッファをFileChannelから直接書き込み、
+ * fsyncしてから一時ファイルを本来の名前へ置き換える。
+ * 待ち行列が一杯の場合は呼び出し元を待たせずにsubmit()がfalseを返す。
+ */
+public class JpegFileWriter {
+
+    /**
+     * 保存結果の通知 (書き込みスレッドから呼び出される)
+     */
+    public interface Listener {
+        void onWritten(File file, int size, long latencyNanos);
+
+        void onFailed(File file, IOException e);
+    }
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File _directory;
+    private final Listener _listener;
+    private final ThreadPoolExecutor _executor;
+
+    private final AtomicLong _writtenCount = new AtomicLong();
+    private final AtomicLong _writtenBytes = new AtomicLong();
+    private final AtomicLong _rejectedCount = new AtomicLong();
+    private final AtomicLong _failedCount = new AtomicLong();
+
+    public JpegFileWriter(File directory, int queueCapacity, Listener listener) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+
+        _directory = directory;
+        _listener = listener;
+        _executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "JpegFileWriter");
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 保存を予約する
+     * 保存が終わるまでフレームを保持する。受け付けられなかった場合はfalseを返す。
+     */
+    public boolean submit(JpegFrame frame, String fileName) {
+        final JpegFrame retained = frame.retain();
+        final File file = new File(_directory, fileName);
+        final long enqueueTime = System.nanoTime();
+
+        try {
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int size = write(retained, file);
+                        _writtenCount.incrementAndGet();
+                        _writtenBytes.addAndGet(size);
+                        if (_listener != null) {
+                            _listener.onWritten(file, size, System.nanoTime() - enqueueTime);
+                        }
+                    }
+                    catch (IOException e) {
+                        _failedCount.incrementAndGet();
+                        if (_listener != null) {
+                            _listener.onFailed(file, e);
+                        }
+                    }
+                    finally {
+                        retained.release();
+                    }
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException e) {
+            _rejectedCount.incrementAndGet();
+            retained.release();
+            return false;
+        }
+    }
+
+    /**
+     * 新たな保存を受け付けず、予約済みの保存が終わるまで待つ
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        _executor.shutdown();
+        return _executor.awaitTermination(timeout, unit);
+    }
+
+    public int getQueueDepth() {
+        return _executor.getQueue().size();
+    }
+
+    public long getWrittenCount() {
+        return _writtenCount.get();
+    }
+
+    public long getWrittenBytes() {
+        return _writtenBytes.get();
+    }
+
+    public long getRejectedCount() {
+        return _rejectedCount.get();
+    }
+
+    public long getFailedCount() {
+        return _failedCount.get();
+    }
+
+    private int write(JpegFrame frame, File file) throws IOException {
+        if (!_directory.isDirectory() && !_directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + _directory);
+        }
+
+        File tempFile = new File(_directory, file.getName() + TEMP_SUFFIX);
+        ByteBuffer buffer = frame.getBuffer();
+        int size = buffer.remaining();
+
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+
+        return size;
+    }
+
+    private void syncDirectory() {
+        //名前の変更を確定させる (ディレクトリを開けない環境では諦める)
+        try (FileChannel channel = FileChannel.open(_directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException e) {
+            //何もしない
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.camerasample;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 撮影したJPEGデータ
+ *
+ * Imageのプレーンが持つダイレクトバッファをコピーせずに保持する。
+ * 参照カウントで所有権を管理し、最後のrelease()で元のImageを閉じる。
+ * 受け取った処理の外でデータを使う場合はretain()してから保持し、使い終わったらrelease()すること。
+ */
+public final class JpegFrame {
+
+    /**
+     * 参照が無くなった時に呼び出される解放処理
+     */
+    public interface Releaser {
+        void release();
+    }
+
+    private final ByteBuffer _buffer;
+    private final long _timestamp;
+    private final Releaser _releaser;
+    private final AtomicInteger _refCount = new AtomicInteger(1);
+
+    public JpegFrame(ByteBuffer buffer, long timestamp, Releaser releaser) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null.");
+        }
+
+        _buffer = buffer;
+        _timestamp = timestamp;
+        _releaser = releaser;
+    }
+
+    /**
+     * JPEGデータを参照するバッファを返す
+     * 位置は呼び出し毎に独立しているので、複数の処理から同時に読み出してよい。
+     */
+    public ByteBuffer getBuffer() {
+        checkAlive();
+        return _buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * JPEGデータを読み出すストリームを返す
+     */
+    public InputStream openStream() {
+        return new ByteBufferInputStream(getBuffer());
+    }
+
+    public int getSize() {
+        return _buffer.remaining();
+    }
+
+    public long getTimestamp() {
+        return _timestamp;
+    }
+
+    public boolean isReleased() {
+        return _refCount.get() <= 0;
+    }
+
+    public JpegFrame retain() {
+        while (true) {
+            int count = _refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Frame is already released.");
+            }
+            if (_refCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    public void release() {
+        int count = _refCount.decrementAndGet();
+        if (count == 0) {
+            if (_releaser != null) {
+                _releaser.release();
+            }
+        }
+        else if (count < 0) {
+            throw new IllegalStateException("Frame is released too many times.");
+        }
+    }
+
+    private void checkAlive() {
+        if (_refCount.get() <= 0) {
+            throw new IllegalStateException("Frame is already released.");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.camerasample;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 撮影したJPEGデータを後段の処理へ配る
+ *
+ * 各処理には同じJpegFrameをそのまま渡す。
+ * 全ての処理の呼び出しが終わった時点で配信側の参照を解放するので、
+ * 非同期に使う処理はonJpegFrame()の中でretain()しておくこと。
+ */
+public class JpegFrameDispatcher {
+
+    /**
+     * JPEGデータを受け取る処理
+     */
+    public interface Consumer {
+        void onJpegFrame(JpegFrame frame);
+    }
+
+    private final CopyOnWriteArrayList<Consumer> _consumers = new CopyOnWriteArrayList<>();
+
+    public void addConsumer(Consumer consumer) {
+        _consumers.addIfAbsent(consumer);
+    }
+
+    public void removeConsumer(Consumer consumer) {
+        _consumers.remove(consumer);
+    }
+
+    /**
+     * フレームを配信して配信側の参照を解放する
+     */
+    public void dispatch(JpegFrame frame) {
+        try {
+            for (Consumer consumer : _consumers) {
+                consumer.onJpegFrame(frame);
+            }
+        }
+        finally {
+            frame.release();
+        }
+    }
+}
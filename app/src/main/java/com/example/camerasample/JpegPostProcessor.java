@@ -0,0 +1,311 @@
+package com.example.camerasample;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 撮影したJPEGからアップロード用のJPEGを作る
+ *
+ * 少数のスレッドで、長辺の上限に収める縮小と回転・鏡面反転を行って再エンコードし、
+ * 撮影結果 (TotalCaptureResult) から作ったEXIFへ書き換えて保存する。
+ * 画素を変更する必要が無ければデコードせず、元のJPEGのEXIFだけを書き換える。
+ * 待ち行列が一杯の場合は呼び出し元を待たせずにsubmit()がfalseを返す。
+ */
+public class JpegPostProcessor {
+
+    /**
+     * 処理結果の通知 (処理スレッドから呼び出される)
+     */
+    public interface Listener {
+        void onProcessed(File file, JpegTransformPlan plan, long size, long latencyNanos);
+
+        void onFailed(File file, IOException e);
+    }
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    //同時に処理する最大数 (デコード中のビットマップを保持するので少なくする)
+    private static final int MAX_THREADS = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File _directory;
+    private final int _maxLongSide;
+    private final boolean _bakeOrientation;
+    private final int _quality;
+    private final Listener _listener;
+    private final ThreadPoolExecutor _executor;
+
+    private final AtomicLong _processedCount = new AtomicLong();
+    private final AtomicLong _reencodedCount = new AtomicLong();
+    private final AtomicLong _rejectedCount = new AtomicLong();
+    private final AtomicLong _failedCount = new AtomicLong();
+
+    /**
+     * @param maxLongSide 出力の長辺の上限 (0以下なら縮小しない)
+     * @param bakeOrientation 回転と反転を画素へ反映するか (falseならEXIFのOrientationで表す)
+     * @param quality 再エンコードの画質
+     */
+    public JpegPostProcessor(File directory, int maxLongSide, boolean bakeOrientation, int quality,
+                             int queueCapacity, Listener listener) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+
+        _directory = directory;
+        _maxLongSide = maxLongSide;
+        _bakeOrientation = bakeOrientation;
+        _quality = quality;
+        _listener = listener;
+
+        int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        final AtomicInteger threadCount = new AtomicInteger();
+        _executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "JpegPostProcessor-" + threadCount.incrementAndGet());
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 処理を予約する
+     * 処理が終わるまでフレームを保持する。受け付けられなかった場合はfalseを返す。
+     *
+     * @param jpegOrientation JPEGにOrientationが無い場合に使う回転 (JPEG_ORIENTATIONと同じ0, 90, 180, 270)
+     * @param mirror 表示の向きにした後さらに左右反転するか
+     * @param captureTime 撮影した時刻 (System.currentTimeMillisと同じ時間軸、EXIFのDateTimeに使う)
+     */
+    public boolean submit(@NonNull JpegFrame frame, @NonNull final TotalCaptureResult result,
+                          final int jpegOrientation, final boolean mirror, final long captureTime, String fileName) {
+        final JpegFrame retained = frame.retain();
+        final File file = new File(_directory, fileName);
+        final long enqueueTime = System.nanoTime();
+
+        try {
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        File tempFile = new File(_directory, file.getName() + TEMP_SUFFIX);
+                        JpegTransformPlan plan = process(retained, result, jpegOrientation, mirror, captureTime, tempFile);
+                        long size = tempFile.length();
+                        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+                        _processedCount.incrementAndGet();
+                        if (plan.reencode) {
+                            _reencodedCount.incrementAndGet();
+                        }
+                        if (_listener != null) {
+                            _listener.onProcessed(file, plan, size, System.nanoTime() - enqueueTime);
+                        }
+                    }
+                    catch (IOException e) {
+                        _failedCount.incrementAndGet();
+                        if (_listener != null) {
+                            _listener.onFailed(file, e);
+                        }
+                    }
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException e) {
+            _rejectedCount.incrementAndGet();
+            retained.release();
+            return false;
+        }
+    }
+
+    /**
+     * 新たな処理を受け付けず、予約済みの処理が終わるまで待つ
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        _executor.shutdown();
+        return _executor.awaitTermination(timeout, unit);
+    }
+
+    public int getQueueDepth() {
+        return _executor.getQueue().size();
+    }
+
+    public long getProcessedCount() {
+        return _processedCount.get();
+    }
+
+    public long getReencodedCount() {
+        return _reencodedCount.get();
+    }
+
+    /**
+     * 再エンコードせずにEXIFだけを書き換えた数
+     */
+    public long getSkippedCount() {
+        return _processedCount.get() - _reencodedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return _rejectedCount.get();
+    }
+
+    public long getFailedCount() {
+        return _failedCount.get();
+    }
+
+    /**
+     * アップロード用のJPEGを一時ファイルへ書き込む
+     * フレームは再エンコードする場合はデコードした時点で、しない場合は書き込み後に解放する。
+     */
+    private JpegTransformPlan process(JpegFrame frame, TotalCaptureResult result, int jpegOrientation, boolean mirror,
+                                      long captureTime, File tempFile) throws IOException {
+        boolean released = false;
+        try {
+            if (!_directory.isDirectory() && !_directory.mkdirs()) {
+                throw new IOException("Cannot create directory: " + _directory);
+            }
+
+            //HALが画素を回転した場合はOrientationが1になっているので、無い場合だけ指定の回転を使う
+            ExifRewriter.JpegInfo info = ExifRewriter.readInfo(frame.getBuffer());
+            int srcOrientation = info.orientation != ExifData.ORIENTATION_UNDEFINED
+                    ? info.orientation : ExifData.toOrientation(jpegOrientation, false);
+            JpegTransformPlan plan = JpegTransformPlan.plan(info.width, info.height, srcOrientation, mirror, _maxLongSide, _bakeOrientation);
+            ExifData exif = createExif(result, captureTime).setOrientation(plan.outputOrientation);
+
+            InputStream source;
+            if (plan.reencode) {
+                Bitmap decoded = decode(frame, plan);
+                frame.release();
+                released = true;
+
+                byte[] jpeg = encode(decoded, plan);
+                exif.setPixelSize(plan.outputWidth, plan.outputHeight);
+                source = new ByteArrayInputStream(jpeg);
+            }
+            else {
+                exif.setPixelSize(info.width, info.height);
+                source = frame.openStream();
+            }
+
+            try (FileOutputStream stream = new FileOutputStream(tempFile)) {
+                OutputStream buffered = new BufferedOutputStream(stream, BUFFER_SIZE);
+                ExifRewriter.rewrite(source, buffered, exif);
+                buffered.flush();
+                stream.getFD().sync();
+            }
+            catch (IOException e) {
+                tempFile.delete();
+                throw e;
+            }
+            return plan;
+        }
+        finally {
+            if (!released) {
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * inSampleSizeで縮小してデコードする
+     */
+    private static Bitmap decode(JpegFrame frame, JpegTransformPlan plan) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = plan.sampleSize;
+        Bitmap decoded = BitmapFactory.decodeStream(frame.openStream(), null, options);
+        if (decoded == null) throw new IOException("Decode failed");
+        return decoded;
+    }
+
+    /**
+     * 縮小の残りと回転・反転をしてからエンコードする
+     */
+    private byte[] encode(Bitmap decoded, JpegTransformPlan plan) throws IOException {
+        Matrix matrix = new Matrix();
+        matrix.postScale((float)plan.scaledWidth / decoded.getWidth(), (float)plan.scaledHeight / decoded.getHeight());
+        matrix.postRotate(plan.rotation);
+        if (plan.mirror) {
+            matrix.postScale(-1, 1);
+        }
+
+        Bitmap transformed = matrix.isIdentity() ? decoded
+                : Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+        if (transformed != decoded) {
+            decoded.recycle();
+        }
+
+        try {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream(plan.outputWidth * plan.outputHeight / 4);
+            if (!transformed.compress(Bitmap.CompressFormat.JPEG, _quality, stream)) {
+                throw new IOException("Encode failed");
+            }
+            return stream.toByteArray();
+        }
+        finally {
+            transformed.recycle();
+        }
+    }
+
+    /**
+     * 撮影結果からEXIFを作る
+     */
+    private static ExifData createExif(TotalCaptureResult result, long captureTime) {
+        Date date = new Date(captureTime);
+        ExifData exif = new ExifData()
+                .setMake(Build.MANUFACTURER)
+                .setModel(Build.MODEL)
+                .setDateTime(new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US).format(date),
+                        String.format(Locale.US, "%03d", captureTime % 1000));
+
+        Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        if (exposureTime != null) {
+            exif.setExposureTimeNanos(exposureTime);
+        }
+        Integer sensitivity = result.get(CaptureResult.SENSOR_SENSITIVITY);
+        if (sensitivity != null) {
+            exif.setIso(sensitivity);
+        }
+        Float aperture = result.get(CaptureResult.LENS_APERTURE);
+        if (aperture != null) {
+            exif.setFNumber(aperture);
+        }
+        Float focalLength = result.get(CaptureResult.LENS_FOCAL_LENGTH);
+        if (focalLength != null) {
+            exif.setFocalLength(focalLength);
+        }
+        Integer flashState = result.get(CaptureResult.FLASH_STATE);
+        if (flashState != null) {
+            exif.setFlashFired(flashState == CaptureResult.FLASH_STATE_FIRED);
+        }
+        return exif;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.camerasample;
+
+/**
+ * アップロード用のJPEGの変換内容
+ *
+ * 元のJPEGのサイズと向き (EXIFのOrientation) から、長辺の上限に収める縮小と、
+ * 回転・鏡面反転を画素へ反映するかどうかを決める。
+ * 画素を変更する必要が無ければ再エンコードせず、EXIFの書き換えだけで済ませる。
+ */
+public final class JpegTransformPlan {
+
+    //再エンコードが必要か
+    public final boolean reencode;
+
+    //デコード時のinSampleSize
+    public final int sampleSize;
+
+    //縮小後の幅と高さ (回転前、元のJPEGの画素の並び)
+    public final int scaledWidth;
+    public final int scaledHeight;
+
+    //画素へ反映する回転 (0/90/180/270) と、回転後の左右反転
+    public final int rotation;
+    public final boolean mirror;
+
+    //出力するJPEGの幅と高さ
+    public final int outputWidth;
+    public final int outputHeight;
+
+    //出力するEXIFのOrientation
+    public final int outputOrientation;
+
+    private JpegTransformPlan(boolean reencode, int sampleSize, int scaledWidth, int scaledHeight,
+                              int rotation, boolean mirror, int outputWidth, int outputHeight, int outputOrientation) {
+        this.reencode = reencode;
+        this.sampleSize = sampleSize;
+        this.scaledWidth = scaledWidth;
+        this.scaledHeight = scaledHeight;
+        this.rotation = rotation;
+        this.mirror = mirror;
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+        this.outputOrientation = outputOrientation;
+    }
+
+    /**
+     * 変換内容を決める
+     *
+     * @param srcWidth JPEGの幅
+     * @param srcHeight JPEGの高さ
+     * @param srcOrientation 元のEXIFのOrientation (ORIENTATION_UNDEFINEDは回転なし)
+     * @param mirror 表示の向きにした後さらに左右反転するか (前面カメラのプレビューと同じ見た目にする場合)
+     * @param maxLongSide 出力の長辺の上限 (0以下なら縮小しない)
+     * @param bakeOrientation 回転と反転を画素へ反映するか (falseならEXIFのOrientationで表す)
+     */
+    public static JpegTransformPlan plan(int srcWidth, int srcHeight, int srcOrientation, boolean mirror,
+                                         int maxLongSide, boolean bakeOrientation) {
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            throw new IllegalArgumentException("Source size must be positive.");
+        }
+
+        //元の向きに反転を重ねる (反転した向きをさらに反転すると回転だけになる)
+        int degrees = ExifData.toDegrees(srcOrientation);
+        boolean flip = ExifData.isMirrored(srcOrientation) != mirror;
+        boolean identity = degrees == 0 && !flip;
+
+        //長辺を上限に収める (拡大はしない)
+        int scaledWidth = srcWidth;
+        int scaledHeight = srcHeight;
+        int sampleSize = 1;
+        int longSide = Math.max(srcWidth, srcHeight);
+        boolean resize = maxLongSide > 0 && longSide > maxLongSide;
+        if (resize) {
+            double scale = (double)maxLongSide / longSide;
+            scaledWidth = Math.min(maxLongSide, Math.max(1, (int)Math.round(srcWidth * scale)));
+            scaledHeight = Math.min(maxLongSide, Math.max(1, (int)Math.round(srcHeight * scale)));
+            sampleSize = DecodeSizeCalculator.calculateSampleSize(srcWidth, srcHeight, scaledWidth, scaledHeight);
+        }
+
+        boolean bake = bakeOrientation && !identity;
+        boolean reencode = resize || bake;
+        boolean swapped = bake && DecodeSizeCalculator.isSwapped(degrees);
+        int outputWidth = swapped ? scaledHeight : scaledWidth;
+        int outputHeight = swapped ? scaledWidth : scaledHeight;
+        int outputOrientation = bake ? ExifData.ORIENTATION_NORMAL : ExifData.toOrientation(degrees, flip);
+
+        return new JpegTransformPlan(reencode, sampleSize, scaledWidth, scaledHeight,
+                bake ? degrees : 0, bake && flip, outputWidth, outputHeight, outputOrientation);
+    }
+
+    @Override
+    public String toString() {
+        return (reencode ? "reencode" : "rewrite") + " sample=" + sampleSize
+                + " scaled=" + scaledWidth + "x" + scaledHeight
+                + " rotation=" + rotation + (mirror ? " mirror" : "")
+                + " output=" + outputWidth + "x" + outputHeight + " orientation=" + outputOrientation;
+    }
+}
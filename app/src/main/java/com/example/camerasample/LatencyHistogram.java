@@ -0,0 +1,153 @@
+package com.example.camerasample;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間の分布 (ナノ秒)
+ *
+ * HdrHistogramと同じく、2の冪毎の区間を32個に等分した対数線形の区間で数える。
+ * 値の誤差は約3%以内で、記録はロックを使わずにAtomicLongArrayの加算のみで行う。
+ * 複数のスレッドから同時に記録できる。
+ */
+public class LatencyHistogram {
+
+    //2の冪の区間を分割する数 (2^SUB_BUCKET_BITS)
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    //記録できる最大値 (これを超える値は最大値として数える、約73分)
+    public static final long MAX_VALUE = (1L << 42) - 1;
+
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong _totalCount = new AtomicLong();
+    private final AtomicLong _totalValue = new AtomicLong();
+    private final AtomicLong _minValue = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong _maxValue = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * 1件記録する
+     * 負の値は0、MAX_VALUEを超える値はMAX_VALUEとして数える。
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+
+        _counts.incrementAndGet(bucketIndex(value));
+        _totalValue.addAndGet(value);
+        _totalCount.incrementAndGet();
+
+        long min;
+        while (value < (min = _minValue.get())) {
+            if (_minValue.compareAndSet(min, value)) break;
+        }
+        long max;
+        while (value > (max = _maxValue.get())) {
+            if (_maxValue.compareAndSet(max, value)) break;
+        }
+    }
+
+    /**
+     * 現在の分布を複製する
+     * 記録中に呼び出した場合、各値は呼び出し中のどこかの時点のものになる。
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long totalCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = _counts.get(i);
+            totalCount += counts[i];
+        }
+        return new Snapshot(counts, totalCount, _totalValue.get(), _minValue.get(), _maxValue.get());
+    }
+
+    /**
+     * 値の属する区間
+     * 2*SUB_BUCKET_COUNT未満は1刻み、それ以上は2の冪毎にSUB_BUCKET_COUNT個へ分ける。
+     */
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) return (int)value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int)(value >>> shift);
+    }
+
+    /**
+     * 区間に含まれる最小の値
+     */
+    static long lowestValue(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) return index;
+
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+        return mantissa << shift;
+    }
+
+    /**
+     * 区間に含まれる最大の値
+     */
+    static long highestValue(int index) {
+        return lowestValue(index + 1) - 1;
+    }
+
+    /**
+     * ある時点の分布
+     */
+    public static class Snapshot {
+
+        private final long[] _counts;
+        private final long _totalCount;
+        private final long _totalValue;
+        private final long _minValue;
+        private final long _maxValue;
+
+        Snapshot(long[] counts, long totalCount, long totalValue, long minValue, long maxValue) {
+            _counts = counts;
+            _totalCount = totalCount;
+            _totalValue = totalValue;
+            _minValue = minValue;
+            _maxValue = maxValue;
+        }
+
+        public long getCount() {
+            return _totalCount;
+        }
+
+        public long getMin() {
+            return _totalCount > 0 ? _minValue : 0;
+        }
+
+        public long getMax() {
+            return _totalCount > 0 ? _maxValue : 0;
+        }
+
+        public double getMean() {
+            return _totalCount > 0 ? (double)_totalValue / _totalCount : 0;
+        }
+
+        /**
+         * 指定した百分位の値 (区間内の最大値、ただし記録された最大値を超えない)
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (_totalCount == 0) return 0;
+
+            double clamped = Math.min(Math.max(percentile, 0), 100);
+            long rank = Math.max(1, (long)Math.ceil(clamped / 100 * _totalCount));
+
+            long seen = 0;
+            for (int i = 0; i < _counts.length; i++) {
+                seen += _counts[i];
+                if (seen >= rank) {
+                    return Math.max(Math.min(highestValue(i), getMax()), getMin());
+                }
+            }
+            return getMax();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.camerasample;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * シャッターから表示までの各段階の処理時間の記録
+ *
+ * 段階毎にLatencyHistogramを持つ。段階の開始と終了が別のスレッドになる場合は
+ * start()/stop()を使い、開始時刻が手元にある場合はrecordSince()を使う。
+ * 時刻はClockから取得するので、センサのタイムスタンプと同じ時間軸にできる。
+ */
+public class LatencyRecorder {
+
+    /**
+     * 時刻の取得
+     */
+    public interface Clock {
+        long nanoTime();
+    }
+
+    /**
+     * 段階の開始と終了の通知 (systraceへの出力用)
+     */
+    public interface Tracer {
+        void begin(String stageName, int cookie);
+
+        void end(String stageName, int cookie);
+    }
+
+    //段階
+    public static final int STAGE_SHUTTER_TO_CAPTURE = 0;     //シャッターから撮影要求まで (3Aの収束を含む)
+    public static final int STAGE_CAPTURE_TO_RESULT = 1;      //撮影要求から撮影結果まで
+    public static final int STAGE_SENSOR_TO_IMAGE = 2;        //露光開始からImageReaderで受け取るまで
+    public static final int STAGE_IMAGE_TO_DECODE = 3;        //受け取ってからデコード開始まで
+    public static final int STAGE_DECODE = 4;                 //デコード
+    public static final int STAGE_DISPLAY_POST = 5;           //UIスレッドへのpostから表示まで
+    public static final int STAGE_SHUTTER_TO_DISPLAY = 6;     //シャッターから表示まで
+    public static final int STAGE_LENS_SWITCH_WARM = 7;       //レンズ切り替えから最初のフレームまで (事前に準備済み)
+    public static final int STAGE_LENS_SWITCH_COLD = 8;       //レンズ切り替えから最初のフレームまで (準備なし)
+    public static final int STAGE_COUNT = 9;
+
+    private static final String[] STAGE_NAMES = {
+            "shutter_to_capture",
+            "capture_to_result",
+            "sensor_to_image",
+            "image_to_decode",
+            "decode",
+            "display_post",
+            "shutter_to_display",
+            "lens_switch_warm",
+            "lens_switch_cold",
+    };
+
+    //出力する百分位
+    private static final double[] PERCENTILES = { 50, 95, 99 };
+
+    private static final Tracer NO_TRACER = new Tracer() {
+        @Override
+        public void begin(String stageName, int cookie) { }
+
+        @Override
+        public void end(String stageName, int cookie) { }
+    };
+
+    private final Clock _clock;
+    private final Tracer _tracer;
+    private final LatencyHistogram[] _histograms = new LatencyHistogram[STAGE_COUNT];
+
+    //start()した時刻 (未開始は0)
+    private final AtomicLongArray _startTimes = new AtomicLongArray(STAGE_COUNT);
+
+    public LatencyRecorder(Clock clock) {
+        this(clock, NO_TRACER);
+    }
+
+    public LatencyRecorder(Clock clock, Tracer tracer) {
+        _clock = clock;
+        _tracer = tracer;
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            _histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public long now() {
+        return _clock.nanoTime();
+    }
+
+    /**
+     * 段階の開始
+     * 終了していない開始があれば破棄して開始し直す。
+     */
+    public void start(int stage) {
+        long previous = _startTimes.getAndSet(stage, toStartTime(now()));
+        if (previous != 0) {
+            _tracer.end(STAGE_NAMES[stage], stage);
+        }
+        _tracer.begin(STAGE_NAMES[stage], stage);
+    }
+
+    /**
+     * 段階の終了
+     * 開始されていない場合は何もせずに-1を返す。連写では最初の1枚のみが記録される。
+     */
+    public long stop(int stage) {
+        long start = _startTimes.getAndSet(stage, 0);
+        if (start == 0) return -1;
+
+        _tracer.end(STAGE_NAMES[stage], stage);
+        return recordSince(stage, start);
+    }
+
+    /**
+     * 開始時刻から現在までを記録する
+     */
+    public long recordSince(int stage, long startNanos) {
+        long elapsed = now() - startNanos;
+        _histograms[stage].record(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * 処理時間を記録する
+     */
+    public void record(int stage, long elapsedNanos) {
+        _histograms[stage].record(elapsedNanos);
+    }
+
+    public LatencyHistogram.Snapshot snapshot(int stage) {
+        return _histograms[stage].snapshot();
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * 全ての段階の件数と百分位をミリ秒で出力する
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Latency (ms):");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            LatencyHistogram.Snapshot snapshot = snapshot(stage);
+            StringBuilder line = new StringBuilder(prefix)
+                    .append("  ")
+                    .append(String.format(Locale.US, "%-20s n=%-6d", STAGE_NAMES[stage], snapshot.getCount()));
+            for (double percentile : PERCENTILES) {
+                line.append(String.format(Locale.US, " p%.0f=%.2f", percentile,
+                        snapshot.getValueAtPercentile(percentile) / 1e6));
+            }
+            line.append(String.format(Locale.US, " max=%.2f", snapshot.getMax() / 1e6));
+            writer.println(line);
+        }
+        writer.flush();
+    }
+
+    private static long toStartTime(long nanos) {
+        //0は未開始を表すので避ける
+        return nanos != 0 ? nanos : 1;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.camerasample;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 解析用フレームの受け渡し
+ *
+ * カメラのスレッドからoffer()されたフレームを解析用のExecutorでFrameAnalyzerへ渡す。
+ * 待ちのフレームは常に1枚だけで、解析が追いつかない場合は古い方を捨てて最新のものを残す。
+ * offer()はロックも待ちも行わないので、解析が遅れてもカメラは止まらない。
+ */
+public class LatestFrameDispatcher<F> {
+
+    /**
+     * フレームの解析 (解析用のExecutorから1枚ずつ呼び出される)
+     */
+    public interface FrameAnalyzer<F> {
+        void analyze(F frame, long timestampNanos);
+    }
+
+    /**
+     * 不要になったフレームの解放処理
+     */
+    public interface Recycler<F> {
+        void recycle(F frame);
+    }
+
+    //待ちのフレーム
+    private static final class Pending<F> {
+        final F frame;
+        final long timestampNanos;
+        final long offerTime;
+
+        Pending(F frame, long timestampNanos, long offerTime) {
+            this.frame = frame;
+            this.timestampNanos = timestampNanos;
+            this.offerTime = offerTime;
+        }
+    }
+
+    private final Executor _executor;
+    private final FrameAnalyzer<F> _analyzer;
+    private final Recycler<F> _recycler;
+    private final LatencyRecorder.Clock _clock;
+
+    private final AtomicReference<Pending<F>> _pending = new AtomicReference<>();
+    private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+    private final AtomicLong _offeredCount = new AtomicLong();
+    private final AtomicLong _analyzedCount = new AtomicLong();
+    private final AtomicLong _droppedCount = new AtomicLong();
+    private final AtomicLong _failedCount = new AtomicLong();
+
+    //offer()から解析開始まで、解析自体の時間
+    private final LatencyHistogram _queueLatency = new LatencyHistogram();
+    private final LatencyHistogram _analyzeLatency = new LatencyHistogram();
+
+    private final Runnable _drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public LatestFrameDispatcher(Executor executor, FrameAnalyzer<F> analyzer, Recycler<F> recycler, LatencyRecorder.Clock clock) {
+        _executor = executor;
+        _analyzer = analyzer;
+        _recycler = recycler;
+        _clock = clock;
+    }
+
+    /**
+     * フレームを渡す
+     * 解析待ちのフレームがあれば捨てて置き換える。渡したフレームの解放はこのクラスが行う。
+     */
+    public void offer(F frame, long timestampNanos) {
+        _offeredCount.incrementAndGet();
+
+        Pending<F> previous = _pending.getAndSet(new Pending<>(frame, timestampNanos, _clock.nanoTime()));
+        if (previous != null) {
+            _droppedCount.incrementAndGet();
+            _recycler.recycle(previous.frame);
+        }
+
+        schedule();
+    }
+
+    /**
+     * 解析待ちのフレームを捨てる
+     * 解析中のフレームは解析が終わってから解放される。
+     */
+    public void clear() {
+        Pending<F> pending = _pending.getAndSet(null);
+        if (pending != null) {
+            _droppedCount.incrementAndGet();
+            _recycler.recycle(pending.frame);
+        }
+    }
+
+    public long getOfferedCount() {
+        return _offeredCount.get();
+    }
+
+    public long getAnalyzedCount() {
+        return _analyzedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return _droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return _failedCount.get();
+    }
+
+    public LatencyHistogram.Snapshot getQueueLatency() {
+        return _queueLatency.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getAnalyzeLatency() {
+        return _analyzeLatency.snapshot();
+    }
+
+    private void schedule() {
+        //解析用のスレッドへは同時に1つだけ依頼する
+        if (!_scheduled.compareAndSet(false, true)) return;
+
+        try {
+            _executor.execute(_drain);
+        }
+        catch (RejectedExecutionException e) {
+            //停止済みであれば待ちのフレームを捨てる
+            _scheduled.set(false);
+            clear();
+        }
+    }
+
+    private void drain() {
+        try {
+            Pending<F> pending;
+            while ((pending = _pending.getAndSet(null)) != null) {
+                analyze(pending);
+            }
+        }
+        finally {
+            _scheduled.set(false);
+        }
+
+        //依頼を終える直前に届いたフレームを取りこぼさない
+        if (_pending.get() != null) {
+            schedule();
+        }
+    }
+
+    private void analyze(Pending<F> pending) {
+        long start = _clock.nanoTime();
+        _queueLatency.record(start - pending.offerTime);
+        try {
+            _analyzer.analyze(pending.frame, pending.timestampNanos);
+            _analyzedCount.incrementAndGet();
+        }
+        catch (RuntimeException e) {
+            _failedCount.incrementAndGet();
+            e.printStackTrace();
+        }
+        finally {
+            _recycler.recycle(pending.frame);
+            _analyzeLatency.record(_clock.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.camerasample;
+
+/**
+ * レンズの切り替えと、次に切り替えるレンズの出力の事前準備
+ *
+ * 現在のレンズと、次のレンズ用に事前に求めた出力の構成 (P) を1つだけ持つ。
+ * 事前の準備は画面のサイズと回転 (layoutKey) 毎に有効で、異なる場合や
+ * 別のレンズへ切り替えた場合は使わずに求め直す。
+ * カメラのスレッドと準備用のスレッドから呼び出されるので同期する。
+ */
+public class LensSwitcher<P> {
+
+    private CameraCatalog _catalog;
+    private CameraCatalog.Selection _current;
+
+    //事前に準備した出力 (無ければnull)
+    private int _preparedLens = -1;
+    private long _preparedLayoutKey;
+    private P _prepared;
+
+    private int _switchCount;
+    private int _preparedHits;
+    private int _preparedMisses;
+
+    /**
+     * 画面のサイズと回転を1つの値にする
+     */
+    public static long layoutKey(int viewWidth, int viewHeight, int displayRotation) {
+        return ((long)viewWidth << 32) | ((long)(viewHeight & 0x3fffffff) << 2) | (displayRotation & 3);
+    }
+
+    /**
+     * 使用するカメラの一覧を設定し、指定のレンズ (無ければ既定のレンズ) を選ぶ
+     */
+    public synchronized CameraCatalog.Selection setCatalog(CameraCatalog catalog, int lens) {
+        _catalog = catalog;
+        _current = catalog.selectOrDefault(lens);
+        clearPrepared();
+        return _current;
+    }
+
+    /**
+     * カメラの一覧を破棄する (カメラが無くなった場合など、次に開く際に設定し直す)
+     */
+    public synchronized void clearCatalog() {
+        _catalog = null;
+        _current = null;
+        clearPrepared();
+    }
+
+    public synchronized CameraCatalog getCatalog() {
+        return _catalog;
+    }
+
+    /**
+     * 現在のレンズ (一覧が無ければnull)
+     */
+    public synchronized CameraCatalog.Selection getCurrent() {
+        return _current;
+    }
+
+    /**
+     * 次に切り替えるレンズ (他に無ければnull)
+     */
+    public synchronized CameraCatalog.Selection getNext() {
+        if (_catalog == null || _current == null) return null;
+
+        int next = _catalog.nextLens(_current.lens);
+        return next != _current.lens ? _catalog.select(next) : null;
+    }
+
+    /**
+     * 次のレンズへ切り替える
+     * 切り替えられない場合はnullを返す。
+     */
+    public synchronized CameraCatalog.Selection switchToNext() {
+        CameraCatalog.Selection next = getNext();
+        if (next == null) return null;
+
+        _current = next;
+        _switchCount++;
+        return next;
+    }
+
+    /**
+     * 次のレンズ用に準備した出力を保持する
+     * 準備している間に切り替えられた場合など、次のレンズでなければ保持しない。
+     */
+    public synchronized boolean putPrepared(int lens, long layoutKey, P prepared) {
+        CameraCatalog.Selection next = getNext();
+        if (next == null || next.lens != lens) return false;
+
+        _preparedLens = lens;
+        _preparedLayoutKey = layoutKey;
+        _prepared = prepared;
+        return true;
+    }
+
+    /**
+     * 現在のレンズ用に準備した出力を取り出す (無ければnull)
+     * 取り出したものは保持しない。
+     */
+    public synchronized P takePrepared(long layoutKey) {
+        P prepared = null;
+        if (_current != null && _prepared != null && _preparedLens == _current.lens && _preparedLayoutKey == layoutKey) {
+            prepared = _prepared;
+            _preparedHits++;
+        }
+        else {
+            _preparedMisses++;
+        }
+        clearPrepared();
+        return prepared;
+    }
+
+    /**
+     * 次のレンズ用の準備が済んでいるか
+     */
+    public synchronized boolean isNextPrepared(long layoutKey) {
+        CameraCatalog.Selection next = getNext();
+        return next != null && _prepared != null && _preparedLens == next.lens && _preparedLayoutKey == layoutKey;
+    }
+
+    public synchronized void clearPrepared() {
+        _preparedLens = -1;
+        _preparedLayoutKey = 0;
+        _prepared = null;
+    }
+
+    public synchronized int getSwitchCount() {
+        return _switchCount;
+    }
+
+    public synchronized int getPreparedHits() {
+        return _preparedHits;
+    }
+
+    public synchronized int getPreparedMisses() {
+        return _preparedMisses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Lens: " + _current + " next=" + getNext() + " switches=" + _switchCount
+                + " prepared_hits=" + _preparedHits + " prepared_misses=" + _preparedMisses;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.camerasample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 輝度(Y)平面の統計
+ *
+ * 解析用フレームの露出の確認に使う。全画素は読まずにstep画素毎に間引いて数える。
+ */
+public final class LumaStatistics {
+
+    private LumaStatistics() { }
+
+    /**
+     * 平均輝度 (0〜255)
+     * バッファの位置は変更しない。
+     */
+    public static double mean(ByteBuffer plane, int width, int height, int rowStride, int pixelStride, int step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("Step must be positive.");
+        }
+        if (width <= 0 || height <= 0) return 0;
+
+        int base = plane.position();
+        long sum = 0;
+        int count = 0;
+        for (int y = 0; y < height; y += step) {
+            int row = base + y * rowStride;
+            for (int x = 0; x < width; x += step) {
+                sum += plane.get(row + x * pixelStride) & 0xff;
+                count++;
+            }
+        }
+        return (double)sum / count;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.camerasample;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -10,73 +11,217 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Point;
-import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraConstrainedHighSpeedCaptureSession;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.hardware.display.DisplayManager;
 import android.media.Image;
 import android.media.ImageReader;
+import android.media.MediaFormat;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
-import android.util.SparseIntArray;
+import android.view.Display;
 import android.view.Surface;
 import android.view.TextureView;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
-
+import android.widget.LinearLayout;
+import android.widget.Toast;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MainActivity extends AppCompatActivity {
 
+    //フレームレートの方針 (FrameRatePolicy.PROFILE_*)
+    public static final String EXTRA_FRAME_RATE_PROFILE = "com.example.camerasample.FRAME_RATE_PROFILE";
+
+    //高速度プレビューのフレームレート (120/240、0は使用しない)
+    public static final String EXTRA_HIGH_SPEED_FPS = "com.example.camerasample.HIGH_SPEED_FPS";
+
+    //録画のビットレート (0以下はサイズから求める)
+    public static final String EXTRA_VIDEO_BIT_RATE = "com.example.camerasample.VIDEO_BIT_RATE";
+
+    //録画のキーフレームの間隔 (秒)
+    public static final String EXTRA_VIDEO_I_FRAME_INTERVAL = "com.example.camerasample.VIDEO_I_FRAME_INTERVAL";
+
+    //録画をHEVCで行うか
+    public static final String EXTRA_VIDEO_HEVC = "com.example.camerasample.VIDEO_HEVC";
+
+    //撮影時にRAW (DNG) も保存するか (RAWの機能がある機器のみ)
+    public static final String EXTRA_RAW = "com.example.camerasample.RAW";
+
+    //アップロード用に保存するJPEGの長辺の上限 (0はアップロード用を作らない)
+    public static final String EXTRA_UPLOAD_MAX_SIZE = "com.example.camerasample.UPLOAD_MAX_SIZE";
+
+    //起動時のレンズ (CameraCatalog.LENS_*)
+    public static final String EXTRA_LENS = "com.example.camerasample.LENS";
+
+    //次に切り替えるレンズの出力を事前に準備するか
+    public static final String EXTRA_PREWARM_LENS = "com.example.camerasample.PREWARM_LENS";
+
+    //プレビューと録画をOpenGL ESで描画するか (高速度撮影では使わない)
+    public static final String EXTRA_GL_PREVIEW = "com.example.camerasample.GL_PREVIEW";
+
+    //GLで描画する際に適用する色の変換表 (.cubeファイルのパス)
+    public static final String EXTRA_GL_LUT = "com.example.camerasample.GL_LUT";
+
+    //GLで描画する際にプレビューへ補助線を重ねるか
+    public static final String EXTRA_GL_GRID = "com.example.camerasample.GL_GRID";
+
+    //画面の再生成で引き継ぐレンズ
+    private static final String STATE_LENS = "lens";
+
     private static final int REQUEST_CAMERA_PERMISSION = 1;
 
     //最大プレビューサイズ
     private static final int MAX_PREVIEW_WIDTH = 1920;
     private static final int MAX_PREVIEW_HEIGHT = 1080;
 
-    //画像回転調整テーブル
-    private static final SparseIntArray ORIENTATIONS = new SparseIntArray();
-    static {
-        ORIENTATIONS.append(Surface.ROTATION_0, 90);
-        ORIENTATIONS.append(Surface.ROTATION_90, 0);
-        ORIENTATIONS.append(Surface.ROTATION_180, 270);
-        ORIENTATIONS.append(Surface.ROTATION_270, 180);
-    }
+    //撮影写真の保存先
+    private static final String PICTURE_DIRECTORY = "pictures";
+
+    //録画の保存先
+    private static final String VIDEO_DIRECTORY = "videos";
+
+    //RAWの保存先
+    private static final String RAW_DIRECTORY = "raw";
+
+    //アップロード用のJPEGの保存先
+    private static final String UPLOAD_DIRECTORY = "uploads";
+
+    //録画を分割する長さ
+    private static final long VIDEO_SEGMENT_DURATION_US = TimeUnit.MINUTES.toMicros(1);
+
+    //カメラの設定の保存先
+    private static final String CAMERA_CONFIG_FILE = "camera_config";
+
+    //再利用するビットマップの最大保持量
+    private static final long BITMAP_POOL_MAX_BYTES = Runtime.getRuntime().maxMemory() / 8;
+
+    //サムネイルのメモリとファイルの最大保持量
+    private static final long THUMBNAIL_MEMORY_MAX_BYTES = Runtime.getRuntime().maxMemory() / 32;
+    private static final long THUMBNAIL_DISK_MAX_BYTES = 16 * 1024 * 1024;
+
+    //一覧に並べるサムネイルの最大数
+    private static final int GALLERY_MAX_COUNT = 30;
+
+    //連写枚数
+    private static final int BURST_COUNT = 5;
+
+    //保存待ちの最大数 (連写の全ての枚数を待たせられるようにする)
+    private static final int JPEG_WRITE_QUEUE_CAPACITY = BURST_COUNT;
+
+    //JPEGの同時保持数 (保存待ち、書き込み中、表示用デコード中)
+    private static final int JPEG_MAX_IMAGES = JPEG_WRITE_QUEUE_CAPACITY + 2;
+
+    //RAWの保存待ちの最大数と、撮影結果を待つ最大数
+    private static final int RAW_WRITE_QUEUE_CAPACITY = 2;
+    private static final int RAW_MATCHER_CAPACITY = 2;
+
+    //RAWの同時保持数 (撮影結果待ち、保存待ち、書き込み中)
+    private static final int RAW_MAX_IMAGES = RAW_MATCHER_CAPACITY + RAW_WRITE_QUEUE_CAPACITY + 1;
+
+    //アップロード用の処理待ちの最大数と、撮影結果を待つ最大数
+    private static final int UPLOAD_QUEUE_CAPACITY = BURST_COUNT;
+    private static final int UPLOAD_MATCHER_CAPACITY = 2;
+
+    //アップロード用のJPEGの画質と、回転と反転を画素へ反映するか
+    //(EXIFのOrientationを見ないサービスもあるので画素を回転する)
+    private static final int UPLOAD_JPEG_QUALITY = 90;
+    private static final boolean UPLOAD_BAKE_ORIENTATION = true;
+
+    //プレビュー開始時に生成しておく撮影要求
+    private static final int[] PREBUILT_REQUEST_KINDS = {
+            CaptureRequestCache.KIND_AF_TRIGGER,
+            CaptureRequestCache.KIND_PRECAPTURE,
+            CaptureRequestCache.KIND_CANCEL,
+            CaptureRequestCache.KIND_STILL,
+    };
 
-    //ステータス
-    private State _state = State.Preview;
+    //ゼロシャッターラグで保持する直近のフレーム数
+    private static final int ZSL_RING_CAPACITY = 6;
+
+    //ゼロシャッターラグのJPEG画質
+    private static final int ZSL_JPEG_QUALITY = 95;
+
+    //解析用フレームの最大サイズ
+    private static final int ANALYSIS_MAX_WIDTH = 640;
+    private static final int ANALYSIS_MAX_HEIGHT = 480;
+
+    //維持するプレビューのフレームレート
+    private static final int PREVIEW_TARGET_FPS = 30;
+
+    //解析用フレームの保持数 (解析中、解析待ち、受け取り中)
+    private static final int ANALYSIS_MAX_IMAGES = 3;
+
+    //輝度を数える間隔 (画素)
+    private static final int ANALYSIS_LUMA_STEP = 8;
+
+    //撮影結果の記録の書き出し先 (dumpsysの引数で書き出す)
+    private static final String CAPTURE_TRACE_FILE = "capture_trace.bin";
+    private static final String DUMP_ARG_CAPTURE_TRACE = "--capture-trace";
+    private static final String DUMP_ARG_CAPTURE_TRACE_FILE = "--capture-trace-file";
+
+    //フォーカスと露出の収束を待つ最大時間
+    private static final long CONVERGENCE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    //撮影の完了の通知を待つ最大時間 (連写全体)
+    private static final long CAPTURE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
 
     //バックグラウンドスレッド
     private HandlerThread _backgroundThread;
     private Handler _backgroundHandler;
 
-    //カメラ
-    private final Semaphore _cameraOpenCloseLock = new Semaphore(1);
+    //カメラ (開閉はUIスレッドを待たせないよう専用のスレッドで行う)
+    private final ExecutorService _cameraExecutor = Executors.newSingleThreadExecutor();
+    private CameraLifecycleController<CameraDevice> _cameraController;
 
-    private CameraDevice _cameraDevice;
+    //開閉の要求の世代と開いたカメラ
+    //(開き終わった時点での世代の確認と_cameraDeviceの書き込みを、閉じる要求と同じロックで行う)
+    private final Object _cameraLock = new Object();
+    private int _cameraGeneration;
+    private volatile CameraDevice _cameraDevice;
     private ImageReader _imageReader;
     private CameraCaptureSession _captureSession;
 
@@ -84,72 +229,314 @@ public class MainActivity extends AppCompatActivity {
     private int _sensorOrientation;
     private Size _previewSize;
     private boolean _flashSupported;
-    private CaptureRequest.Builder _previewRequestBuilder;
-    private CaptureRequest _previewRequest;
 
-    //キャプチャコールバック
-    private CameraCaptureSession.CaptureCallback _captureCallback = new CameraCaptureSession.CaptureCallback() {
+    //撮影要求 (セッション毎に生成したものを使い回す)
+    private final CaptureRequestCache<CaptureRequest> _requestCache = new CaptureRequestCache<>(new CaptureRequestCache.Factory<CaptureRequest>() {
+        @Override
+        public CaptureRequest create(int kind, int aeMode, int jpegOrientation, int afMode) {
+            return createCaptureRequest(kind, aeMode, jpegOrientation, afMode);
+        }
+    });
+
+    //出力サイズの決定
+    private final StreamNegotiator _streamNegotiator = new StreamNegotiator();
+
+    //フレームレート
+    private int _frameRateProfile = FrameRatePolicy.PROFILE_FIXED_HIGH;
+    private int _highSpeedFps;
+    private FpsRange _aeFpsRange;
+    private volatile HighSpeedConfiguration _highSpeedConfiguration;
+    private final FrameRateMonitor _frameRateMonitor = new FrameRateMonitor();
+
+    //フレーム毎の撮影結果 (プレビューのカクつきの調査用)
+    private final CaptureTimeline _captureTimeline = new CaptureTimeline();
+
+    //RAW (撮影結果と対応付けてから保存する)
+    private boolean _rawRequested;
+    private ImageReader _rawImageReader;
+    private volatile CameraCharacteristics _rawCharacteristics;
+    private volatile int _rawOrientation;
+    private DngFileWriter _dngFileWriter;
+    private final TimestampMatcher<Image, TotalCaptureResult> _rawMatcher = new TimestampMatcher<>(RAW_MATCHER_CAPACITY, new TimestampMatcher.Listener<Image, TotalCaptureResult>() {
+        @Override
+        public void onMatched(long timestamp, Image image, TotalCaptureResult result) {
+            CameraCharacteristics characteristics = _rawCharacteristics;
+            if (characteristics == null) {
+                image.close();
+                return;
+            }
 
-        private void process(@NonNull CaptureResult result) {
-            switch (_state) {
-                case Preview: {
+            //保存はI/O用のスレッドで行い、カメラのスレッドは待たない
+            if (!_dngFileWriter.submit(characteristics, image, result, _rawOrientation, createRawFileName(timestamp))) {
+                Log.w(MainActivity.class.getSimpleName(), "RAW save queue is full");
+            }
+        }
+
+        @Override
+        public void onImageDropped(long timestamp, Image image) {
+            Log.w(MainActivity.class.getSimpleName(), "RAW image without capture result: " + timestamp);
+            image.close();
+        }
+    });
+
+    //アップロード用のJPEG (撮影結果と対応付けてから処理する)
+    private int _uploadMaxSize;
+    private JpegPostProcessor _jpegPostProcessor;
+    private final TimestampMatcher<JpegFrame, TotalCaptureResult> _uploadMatcher = new TimestampMatcher<>(UPLOAD_MATCHER_CAPACITY, new TimestampMatcher.Listener<JpegFrame, TotalCaptureResult>() {
+        @Override
+        public void onMatched(long timestamp, JpegFrame frame, TotalCaptureResult result) {
+            JpegPostProcessor postProcessor = _jpegPostProcessor;
+            try {
+                //JPEG_ORIENTATIONが無い撮影結果は現在の画面の向きを使う (ゼロシャッターラグのJPEGはEXIFの向きが優先される)
+                Integer jpegOrientation = result.get(CaptureResult.JPEG_ORIENTATION);
+                int rotation = jpegOrientation != null ? jpegOrientation : getOrientation(_displayRotation);
+                if (postProcessor != null && !postProcessor.submit(frame, result, rotation, _mirror, getCaptureTimeMillis(timestamp), createUploadFileName(timestamp))) {
+                    Log.w(MainActivity.class.getSimpleName(), "Upload queue is full");
                 }
-                break;
+            }
+            finally {
+                frame.release();
+            }
+        }
 
-                case WaitingLock: {
-                    Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
-                    if (afState == null) {
-                        captureStillPicture();
-                    }
-                    else if (afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
-                            afState == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
+        @Override
+        public void onImageDropped(long timestamp, JpegFrame frame) {
+            Log.w(MainActivity.class.getSimpleName(), "JPEG without capture result: " + timestamp);
+            frame.release();
+        }
+    });
 
-                        Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
-                        if (aeState == null ||
-                                aeState == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
+    //撮影時の3Aの状態
+    private final CaptureStateMachine _captureStateMachine = new CaptureStateMachine(CONVERGENCE_TIMEOUT_NANOS, CAPTURE_TIMEOUT_NANOS);
 
-                            _state = State.PictureTaken;
-                            captureStillPicture();
-                        }
-                        else {
-                            runPrecaptureSequence();
-                        }
-                    }
-                }
-                break;
+    //ゼロシャッターラグ
+    private ImageReader _zslImageReader;
+    private final ZslRingBuffer<Image, TotalCaptureResult> _zslRingBuffer = new ZslRingBuffer<>(ZSL_RING_CAPACITY, new ZslRingBuffer.Recycler<Image>() {
+        @Override
+        public void recycle(Image frame) {
+            frame.close();
+        }
+    });
+    private final ZslJpegEncoder _zslJpegEncoder = new ZslJpegEncoder(ZSL_JPEG_QUALITY);
 
-                case WaitingPreCapture: {
+    //処理時間の計測に使う時刻
+    //(センサのタイムスタンプと比較できるようelapsedRealtimeNanosを使う)
+    private final LatencyRecorder.Clock _clock = new LatencyRecorder.Clock() {
+        @Override
+        public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    };
+    private final LatencyRecorder.Tracer _tracer = new LatencyRecorder.Tracer() {
+        @Override
+        public void begin(String stageName, int cookie) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.beginAsyncSection(stageName, cookie);
+            }
+        }
 
-                    Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
-                    if (aeState == null ||
-                            aeState == CaptureResult.CONTROL_AE_STATE_PRECAPTURE ||
-                            aeState == CaptureRequest.CONTROL_AE_STATE_FLASH_REQUIRED) {
-                        _state = State.WaitingNonPreCapture;
-                    }
-                }
-                break;
+        @Override
+        public void end(String stageName, int cookie) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.endAsyncSection(stageName, cookie);
+            }
+        }
+    };
 
-                case WaitingNonPreCapture: {
-                    Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
-                    if (aeState == null ||
-                            aeState != CaptureResult.CONTROL_AE_STATE_PRECAPTURE) {
+    //シャッターから表示までの処理時間
+    private final LatencyRecorder _latencyRecorder = new LatencyRecorder(_clock, _tracer);
 
-                        _state = State.PictureTaken;
-                        captureStillPicture();
-                    }
-                }
-                break;
+    //カメラ起動の段取りと経過時間
+    private final StartupCoordinator _startupCoordinator = new StartupCoordinator();
+    private final StartupTrace _startupTrace = new StartupTrace(_clock, _tracer);
+
+    //プレビュー表示の変換行列 (画面の回転とサイズの組毎に保持)
+    private final PreviewTransformCache _previewTransformCache = new PreviewTransformCache();
+    private final Matrix _previewTransformMatrix = new Matrix();
+    private float[] _appliedPreviewTransform;
+    private volatile int _displayRotation;
+
+    //プレビューとアップロード用の写真を鏡面反転するか (前面カメラのみ反転する)
+    private volatile boolean _mirror = true;
+
+    //レンズの切り替え (次のレンズの出力は準備用のスレッドで事前に求める)
+    private int _initialLens = CameraCatalog.LENS_FRONT;
+    private boolean _prewarmLens;
+    private final LensSwitcher<PreparedOutputs> _lensSwitcher = new LensSwitcher<>();
+    private final ExecutorService _prewarmExecutor = Executors.newSingleThreadExecutor();
+    private boolean _lensSwitching;
+    private volatile boolean _awaitingFirstFrame;
+
+    //画面の回転 (180度の回転ではActivityは作り直されないので画面の変化を監視する)
+    private final DisplayManager.DisplayListener _displayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) { }
+
+        @Override
+        public void onDisplayRemoved(int displayId) { }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            Display display = getWindowManager().getDefaultDisplay();
+            if (displayId != display.getDisplayId()) return;
+
+            int rotation = display.getRotation();
+            if (rotation == _displayRotation) return;
+
+            _displayRotation = rotation;
+            configureTransform(_previewTextureView.getWidth(), _previewTextureView.getHeight());
+        }
+    };
+
+    //プレビューのSurface (テクスチャビューの準備ができてから生成する)
+    //GLで描画する場合は描画処理の入力のSurfaceで、テクスチャビューと録画へは描画処理から描く
+    private volatile Surface _previewSurface;
+    private boolean _glPreviewRequested;
+    private volatile GlRenderer _glRenderer;
+
+    //GLの描画処理の生成の通知 (onPause()で取り消されないよう_handlerとは分ける)
+    private final Handler _glRendererHandler = new Handler();
+    private OutputConfiguration _previewOutputConfiguration;
+    private boolean _sessionHasAnalysis;
+    private volatile boolean _sessionHasRaw;
+
+    //解析用フレーム
+    private ImageReader _analysisImageReader;
+    private final ExecutorService _analysisExecutor = Executors.newSingleThreadExecutor();
+    private final LatestFrameDispatcher<Image> _analysisDispatcher = new LatestFrameDispatcher<>(_analysisExecutor, new LatestFrameDispatcher.FrameAnalyzer<Image>() {
+        @Override
+        public void analyze(Image frame, long timestampNanos) {
+            try {
+                Image.Plane plane = frame.getPlanes()[0];
+                _meanLuma = LumaStatistics.mean(plane.getBuffer(), frame.getWidth(), frame.getHeight(),
+                        plane.getRowStride(), plane.getPixelStride(), ANALYSIS_LUMA_STEP);
+            }
+            catch (IllegalStateException e) {
+                //カメラを閉じる際にImageReaderと共に閉じられた
+            }
+        }
+    }, new LatestFrameDispatcher.Recycler<Image>() {
+        @Override
+        public void recycle(Image frame) {
+            frame.close();
+        }
+    }, _clock);
+    private volatile double _meanLuma;
+
+    //カメラの設定 (プロセス内で共有し、ファイルにも保存する)
+    private static CameraConfigCache _cameraConfigCache;
+    //読み込み中か (一時停止で取り消した読み込みの結果は使わない)
+    private boolean _catalogLoading;
+    private int _catalogRequest;
+
+    //センサのタイムスタンプがelapsedRealtimeNanosと同じ時間軸か
+    private boolean _sensorTimestampRealtime;
+
+    //キャプチャコールバック
+    private CameraCaptureSession.CaptureCallback _captureCallback = new CameraCaptureSession.CaptureCallback() {
+
+        private void process(@NonNull CaptureResult result) {
+
+            //プレビュー中は何もしない
+            if (_captureStateMachine.isIdle()) return;
+
+            int action = _captureStateMachine.onResult(
+                    getState(result, CaptureResult.CONTROL_AF_STATE),
+                    getState(result, CaptureResult.CONTROL_AE_STATE),
+                    _latencyRecorder.now());
+            switch (action) {
+                case CaptureStateMachine.ACTION_RUN_PRECAPTURE:
+                    runPrecaptureSequence();
+                    break;
+
+                case CaptureStateMachine.ACTION_CAPTURE:
+                    captureStillPicture();
+                    break;
             }
         }
 
         @Override
         public void onCaptureProgressed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull CaptureResult partialResult) {
+
+            //途中結果に3Aの状態が含まれていない場合は完了を待つ
+            if (partialResult.get(CaptureResult.CONTROL_AF_STATE) == null ||
+                    partialResult.get(CaptureResult.CONTROL_AE_STATE) == null) {
+                return;
+            }
             process(partialResult);
         }
 
         @Override
         public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
             process(result);
+
+            //再開後の最初のフレーム
+            long firstFrame = _startupTrace.mark(StartupTrace.FIRST_FRAME);
+            if (firstFrame >= 0) {
+                Log.d(MainActivity.class.getSimpleName(), "Resume to first frame: " + firstFrame / 1000000 + " ms");
+            }
+            if (_awaitingFirstFrame) {
+                _awaitingFirstFrame = false;
+                onFirstFrame();
+            }
+
+            //エンコーダへ送ったフレームを数える
+            VideoRecorder<MediaFormat> videoRecorder = _videoRecorder;
+            MediaCodecVideoEncoder videoEncoder = _videoEncoder;
+            if (videoRecorder != null && videoEncoder != null && _glRenderer == null && request.containsTarget(videoEncoder.getInputSurface())) {
+                videoRecorder.onInputFrame();
+            }
+
+            //実際に届いたフレームレートを計測する
+            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (timestamp != null) {
+                FrameRateMonitor.Window window = _frameRateMonitor.onFrame(timestamp);
+                if (window != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    Trace.setCounter("preview_fps", Math.round(window.getFps()));
+                }
+
+                //露出と3Aの状態もフレーム毎に記録する
+                _captureTimeline.record(result.getFrameNumber(), timestamp,
+                        getLong(result, CaptureResult.SENSOR_FRAME_DURATION),
+                        getLong(result, CaptureResult.SENSOR_EXPOSURE_TIME),
+                        getSensitivity(result),
+                        getState(result, CaptureResult.CONTROL_AF_STATE),
+                        getState(result, CaptureResult.CONTROL_AE_STATE),
+                        getState(result, CaptureResult.CONTROL_AWB_STATE));
+            }
+
+            //録画中の静止画はアップロード用のJPEGと対応付ける
+            offerUploadResult(_imageReader, request, result);
+
+            //ゼロシャッターラグ用のフレームと対応付ける
+            offerZslResult(_zslImageReader, request, result, timestamp);
+        }
+
+        //ゼロシャッターラグ用のフレームを出力したリクエストの結果のみ記録する
+        //(AFの開始やプリキャプチャ、録画や高速度撮影のセッションの結果は除く)
+        private void offerZslResult(@Nullable ImageReader zslImageReader, @NonNull CaptureRequest request,
+                                    @NonNull TotalCaptureResult result, @Nullable Long timestamp) {
+            if (zslImageReader == null || timestamp == null || !request.containsTarget(zslImageReader.getSurface())) return;
+
+            _zslRingBuffer.addResult(timestamp, result,
+                    getState(result, CaptureResult.CONTROL_AF_STATE),
+                    getState(result, CaptureResult.CONTROL_AE_STATE),
+                    getState(result, CaptureResult.LENS_STATE));
+        }
+
+        private int getState(@NonNull CaptureResult result, @NonNull CaptureResult.Key<Integer> key) {
+            Integer state = result.get(key);
+            return state != null ? state : ControlState.UNKNOWN;
+        }
+
+        private long getLong(@NonNull CaptureResult result, @NonNull CaptureResult.Key<Long> key) {
+            Long value = result.get(key);
+            return value != null ? value : 0;
+        }
+
+        private int getSensitivity(@NonNull CaptureResult result) {
+            Integer sensitivity = result.get(CaptureResult.SENSOR_SENSITIVITY);
+            return sensitivity != null ? sensitivity : 0;
         }
     };
 
@@ -158,11 +545,78 @@ public class MainActivity extends AppCompatActivity {
 
     //撮影写真
     private Bitmap _picture;
+    private final JpegFrameDispatcher _jpegFrameDispatcher = new JpegFrameDispatcher();
+    private final BitmapPool _bitmapPool = new BitmapPool(BITMAP_POOL_MAX_BYTES);
+    private final PictureDecoder _pictureDecoder = new PictureDecoder(_bitmapPool);
+    private JpegFileWriter _jpegFileWriter;
+    private final AtomicInteger _pictureSequence = new AtomicInteger();
+
+    //保存の待ち行列が一杯の間は静止画の撮影ボタンを無効にする (UIスレッドで参照)
+    private boolean _captureButtonsEnabled = true;
+    private boolean _pictureSaveBusy;
+
+    //撮影した写真のサムネイル
+    private ThumbnailCache _thumbnailCache;
+
+    //表示待ちの撮影写真 (連写中は最新のもののみ表示する)
+    private final AtomicReference<JpegFrame> _pendingDisplayFrame = new AtomicReference<>();
+    private final ExecutorService _pictureExecutor = Executors.newSingleThreadExecutor();
+
+    //連写
+    private volatile int _requestedShotCount = 1;
+    private final BurstStats _burstStats = new BurstStats();
+
+    //全てのImageが使用中で受け取れなかったJPEGがあるか
+    private volatile boolean _jpegImagesPending;
+
+    //録画 (カメラのスレッドで開始と終了を行う)
+    private volatile VideoRecorder<MediaFormat> _videoRecorder;
+    private volatile MediaCodecVideoEncoder _videoEncoder;
+    private boolean _sessionRestart;
+
+    /**
+     * 表示先のサイズとプレビューサイズの上限 (縦横はセンサの向き)
+     */
+    private static final class OutputBounds {
+        final int viewWidth;
+        final int viewHeight;
+        final FrameSize previewBound;
+
+        //画面のサイズと回転 (準備した出力を使えるかの判定に使う)
+        final long layoutKey;
+
+        OutputBounds(int viewWidth, int viewHeight, FrameSize previewBound, long layoutKey) {
+            this.viewWidth = viewWidth;
+            this.viewHeight = viewHeight;
+            this.previewBound = previewBound;
+            this.layoutKey = layoutKey;
+        }
+    }
+
+    /**
+     * カメラを開かずに求められる出力の構成
+     */
+    private static final class PreparedOutputs {
+        final CameraConfig config;
+        final StreamNegotiator.Result streams;
+        final FpsRange aeFpsRange;
+
+        PreparedOutputs(CameraConfig config, StreamNegotiator.Result streams, FpsRange aeFpsRange) {
+            this.config = config;
+            this.streams = streams;
+            this.aeFpsRange = aeFpsRange;
+        }
+    }
 
     //ビュー
     AutoFitTextureView _previewTextureView;
     ImageView _pictureImageView;
     Button _takePictureButton;
+    Button _burstButton;
+    Button _zslButton;
+    Button _recordButton;
+    Button _lensButton;
+    LinearLayout _galleryLayout;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -173,6 +627,89 @@ public class MainActivity extends AppCompatActivity {
         _previewTextureView = findViewById(R.id.preview);
         _pictureImageView = findViewById(R.id.picture);
         _takePictureButton = findViewById(R.id.takePicture);
+        _burstButton = findViewById(R.id.burst);
+        _zslButton = findViewById(R.id.zsl);
+        _recordButton = findViewById(R.id.record);
+        _lensButton = findViewById(R.id.lens);
+        _galleryLayout = findViewById(R.id.gallery);
+
+        //フレームレートの方針
+        _frameRateProfile = getIntent().getIntExtra(EXTRA_FRAME_RATE_PROFILE, FrameRatePolicy.PROFILE_FIXED_HIGH);
+        _highSpeedFps = getIntent().getIntExtra(EXTRA_HIGH_SPEED_FPS, 0);
+        _rawRequested = getIntent().getBooleanExtra(EXTRA_RAW, false);
+        _uploadMaxSize = getIntent().getIntExtra(EXTRA_UPLOAD_MAX_SIZE, 0);
+
+        //レンズ (画面の再生成では切り替えたレンズを引き継ぐ)
+        _initialLens = getIntent().getIntExtra(EXTRA_LENS, CameraCatalog.LENS_FRONT);
+        if (savedInstanceState != null) {
+            _initialLens = savedInstanceState.getInt(STATE_LENS, _initialLens);
+        }
+        if (_initialLens < 0 || _initialLens >= CameraCatalog.LENS_COUNT) {
+            _initialLens = CameraCatalog.LENS_FRONT;
+        }
+        _prewarmLens = getIntent().getBooleanExtra(EXTRA_PREWARM_LENS, true);
+        _glPreviewRequested = getIntent().getBooleanExtra(EXTRA_GL_PREVIEW, false);
+
+        //カメラの設定の保持
+        if (_cameraConfigCache == null) {
+            _cameraConfigCache = new CameraConfigCache(new File(getNoBackupFilesDir(), CAMERA_CONFIG_FILE), Build.FINGERPRINT);
+        }
+
+        //バックグラウンドスレッド開始
+        //(カメラを閉じ終えるまで使うので、一時停止では止めない)
+        startBackgroundThread();
+
+        //カメラの開閉
+        CameraManager manager = (CameraManager)getSystemService(Context.CAMERA_SERVICE);
+        _cameraController = new CameraLifecycleController<>(_cameraExecutor, new CameraDeviceBackend(manager, _backgroundHandler), new CameraLifecycleController.Listener<CameraDevice>() {
+            @Override
+            public void onOpened(CameraDevice device, int generation) {
+                int actions;
+                synchronized (_cameraLock) {
+                    //閉じる要求が後から来ていれば使わない (コントローラが閉じる)
+                    if (!_cameraController.isCurrent(generation)) return;
+
+                    _cameraDevice = device;
+                    actions = _startupCoordinator.onCameraOpened(generation);
+                }
+
+                //DngCreatorに渡すCameraCharacteristicsは保存できないので、RAWを使う場合だけカメラのスレッドで取得する
+                //(取得できなければRAWは保存しない)
+                _rawCharacteristics = _rawRequested ? getRawCharacteristics(device.getId()) : null;
+                _startupTrace.mark(StartupTrace.CAMERA_OPENED);
+                runStartupActions(actions);
+            }
+
+            @Override
+            public void onClosed(int generation) {
+                Log.d(MainActivity.class.getSimpleName(), "Camera closed: generation=" + generation);
+            }
+
+            @Override
+            public void onDisconnected(int generation) {
+                _cameraDevice = null;
+            }
+
+            @Override
+            public void onError(int generation, int error) {
+                _cameraDevice = null;
+
+                if (error == CameraLifecycleController.ERROR_OPEN_FAILED) {
+                    //保持していたカメラが無くなった場合は次回求め直す
+                    _cameraConfigCache.invalidate();
+                    _lensSwitcher.clearCatalog();
+                    return;
+                }
+
+                //エラーにより終了
+                _handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finishAndRemoveTask();
+                    }
+                });
+            }
+        });
 
         //撮影ボタン
         _takePictureButton.setOnClickListener(new View.OnClickListener() {
@@ -182,70 +719,378 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        //連写ボタン
+        _burstButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                takeBurst();
+            }
+        });
+
+        //ゼロシャッターラグ撮影ボタン
+        _zslButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                takeZslPicture();
+            }
+        });
+
+        //録画ボタン
+        _recordButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                toggleRecording();
+            }
+        });
+
+        //レンズの切り替えボタン
+        _lensButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                switchLens();
+            }
+        });
+
         //撮影写真クリア
         _pictureImageView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 if (_picture != null) {
                     _pictureImageView.setImageBitmap(null);
-                    _picture.recycle();
+                    _pictureDecoder.recycle(_picture);
                     _picture = null;
                 }
             }
         });
-    }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
+        //撮影写真の保存
+        _jpegFileWriter = new JpegFileWriter(new File(getFilesDir(), PICTURE_DIRECTORY), JPEG_WRITE_QUEUE_CAPACITY, new JpegFileWriter.Listener() {
+            @Override
+            public void onWritten(File file, int size, long latencyNanos) {
+                Log.d(MainActivity.class.getSimpleName(), "Picture saved: " + file + " (" + size + " bytes, " + latencyNanos / 1000000 + " ms)");
+                showThumbnail(file);
 
-        //権限要求
-        requestPermission();
+                //連写1回分が入る空きができたら撮影を再開する
+                if (_jpegFileWriter.getQueueDepth() == 0) {
+                    postPictureSaveBusy(false);
+                }
+            }
 
-        //バックグラウンドスレッド開始
-        startBackgroundThread();
+            @Override
+            public void onFailed(File file, IOException e) {
+                Log.e(MainActivity.class.getSimpleName(), "Picture save failed: " + file, e);
+            }
+        });
+        _dngFileWriter = new DngFileWriter(new File(getFilesDir(), RAW_DIRECTORY), RAW_WRITE_QUEUE_CAPACITY, new DngFileWriter.Listener() {
+            @Override
+            public void onWritten(File file, long size, long latencyNanos) {
+                Log.d(MainActivity.class.getSimpleName(), "RAW saved: " + file + " (" + size + " bytes, " + latencyNanos / 1000000 + " ms)");
+            }
 
-        //テクスチャビューの準備ができたらカメラを開く
-        if (_previewTextureView.isAvailable()) {
-            //カメラを開く
-            openCamera(_previewTextureView.getWidth(), _previewTextureView.getHeight());
-        }
-        else {
-            _previewTextureView.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
-                @Override
-                public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
-                    //カメラを開く
-                    openCamera(width, height);
+            @Override
+            public void onFailed(File file, IOException e) {
+                Log.e(MainActivity.class.getSimpleName(), "RAW save failed: " + file, e);
+            }
+        });
+        _jpegFrameDispatcher.addConsumer(new JpegFrameDispatcher.Consumer() {
+            @Override
+            public void onJpegFrame(JpegFrame frame) {
+                if (!_jpegFileWriter.submit(frame, createPictureFileName())) {
+                    Log.w(MainActivity.class.getSimpleName(), "Picture save queue is full");
+                    onJpegFrameDropped();
+                    onPictureSaveRejected();
                 }
+                else if (_jpegFileWriter.getQueueDepth() >= JPEG_WRITE_QUEUE_CAPACITY) {
+                    postPictureSaveBusy(true);
+                }
+            }
+        });
 
+        //アップロード用のJPEG (撮影結果と対応付けてから処理する)
+        if (_uploadMaxSize > 0) {
+            _jpegPostProcessor = new JpegPostProcessor(new File(getFilesDir(), UPLOAD_DIRECTORY), _uploadMaxSize,
+                    UPLOAD_BAKE_ORIENTATION, UPLOAD_JPEG_QUALITY, UPLOAD_QUEUE_CAPACITY, new JpegPostProcessor.Listener() {
                 @Override
-                public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) { }
+                public void onProcessed(File file, JpegTransformPlan plan, long size, long latencyNanos) {
+                    Log.d(MainActivity.class.getSimpleName(), "Upload saved: " + file + " (" + plan + ", " + size + " bytes, " + latencyNanos / 1000000 + " ms)");
+                }
 
                 @Override
-                public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
-                    return true;
+                public void onFailed(File file, IOException e) {
+                    Log.e(MainActivity.class.getSimpleName(), "Upload save failed: " + file, e);
                 }
-
+            });
+            _jpegFrameDispatcher.addConsumer(new JpegFrameDispatcher.Consumer() {
                 @Override
-                public void onSurfaceTextureUpdated(SurfaceTexture surface) { }
+                public void onJpegFrame(JpegFrame frame) {
+                    //撮影結果待ちと処理待ちの間Imageを保持しないよう、データをコピーして渡す
+                    _uploadMatcher.offerImage(frame.getTimestamp(), copyJpegFrame(frame));
+                }
             });
         }
+
+        //撮影写真のサムネイル
+        try {
+            _thumbnailCache = new ThumbnailCache(getCacheDir(), THUMBNAIL_MEMORY_MAX_BYTES, THUMBNAIL_DISK_MAX_BYTES);
+            loadGallery();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        //撮影写真の表示
+        _jpegFrameDispatcher.addConsumer(new JpegFrameDispatcher.Consumer() {
+            @Override
+            public void onJpegFrame(JpegFrame frame) {
+                //表示待ちのものがあれば置き換え、無ければ表示用スレッドでデコードする
+                JpegFrame previous = _pendingDisplayFrame.getAndSet(frame.retain());
+                if (previous != null) {
+                    previous.release();
+                    return;
+                }
+
+                final long dispatchTime = _latencyRecorder.now();
+                _pictureExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        JpegFrame pending = _pendingDisplayFrame.getAndSet(null);
+                        if (pending == null) return;
+
+                        _latencyRecorder.recordSince(LatencyRecorder.STAGE_IMAGE_TO_DECODE, dispatchTime);
+
+                        try {
+                            showPicture(pending);
+                        }
+                        finally {
+                            pending.release();
+                        }
+                    }
+                });
+            }
+        });
     }
 
     @Override
-    protected void onPause() {
-        //カメラを閉じる
-        closeCamera();
+    protected void onDestroy() {
+        //新たな保存は受け付けず、保存待ちの写真は書き終える
+        try {
+            _jpegFileWriter.shutdown(0, TimeUnit.MILLISECONDS);
+            _dngFileWriter.shutdown(0, TimeUnit.MILLISECONDS);
+            if (_jpegPostProcessor != null) {
+                _jpegPostProcessor.shutdown(0, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        _pictureExecutor.shutdown();
+        _analysisExecutor.shutdown();
+        _prewarmExecutor.shutdown();
+        if (_thumbnailCache != null) {
+            _thumbnailCache.close();
+        }
 
         //バックグラウンドスレッド停止
         stopBackgroundThread();
 
-        //ハンドラ処理をキャンセル
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        CameraCatalog.Selection selection = _lensSwitcher.getCurrent();
+        if (selection != null) {
+            outState.putInt(STATE_LENS, selection.lens);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        _startupTrace.begin();
+
+        //権限要求
+        requestPermission();
+
+        //画面の回転の監視
+        _displayRotation = getWindowManager().getDefaultDisplay().getRotation();
+        DisplayManager displayManager = (DisplayManager)getSystemService(Context.DISPLAY_SERVICE);
+        if (displayManager != null) {
+            displayManager.registerDisplayListener(_displayListener, _handler);
+        }
+
+        //テクスチャビューの準備を待たずにカメラを開く
+        openCamera();
+
+        //テクスチャビューの準備ができたらプレビューのSurfaceを渡す
+        _previewTextureView.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+            @Override
+            public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+                onPreviewSurfaceAvailable(width, height);
+            }
+
+            @Override
+            public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+                configureTransform(width, height);
+            }
+
+            @Override
+            public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+                //ここで戻るとSurfaceTextureが破棄されるので、描画先から外し終わるのを待つ
+                GlRenderer glRenderer = _glRenderer;
+                if (glRenderer != null) {
+                    glRenderer.detachDisplayAndWait();
+                }
+                return true;
+            }
+
+            @Override
+            public void onSurfaceTextureUpdated(SurfaceTexture surface) { }
+        });
+        if (_previewTextureView.isAvailable()) {
+            onPreviewSurfaceAvailable(_previewTextureView.getWidth(), _previewTextureView.getHeight());
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        //画面の回転の監視を終了
+        DisplayManager displayManager = (DisplayManager)getSystemService(Context.DISPLAY_SERVICE);
+        if (displayManager != null) {
+            displayManager.unregisterDisplayListener(_displayListener);
+        }
+
+        //カメラを閉じる (閉じ終わるのは待たない)
+        closeCamera();
+
+        //ハンドラ処理をキャンセル
         _handler.removeCallbacksAndMessages(null);
+        _catalogRequest++;
+        _catalogLoading = false;
 
         super.onPause();
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+
+        //adb shell dumpsys activity com.example.camerasample で出力される
+        _latencyRecorder.dump(prefix, writer);
+        _startupTrace.dump(prefix, writer);
+
+        LatencyHistogram.Snapshot analyzeLatency = _analysisDispatcher.getAnalyzeLatency();
+        writer.print(prefix);
+        writer.println(String.format(Locale.US,
+                "Analysis: offered=%d analyzed=%d dropped=%d failed=%d queue_p99=%.2fms analyze_p50=%.2fms analyze_p99=%.2fms luma=%.1f",
+                _analysisDispatcher.getOfferedCount(),
+                _analysisDispatcher.getAnalyzedCount(),
+                _analysisDispatcher.getDroppedCount(),
+                _analysisDispatcher.getFailedCount(),
+                _analysisDispatcher.getQueueLatency().getValueAtPercentile(99) / 1e6,
+                analyzeLatency.getValueAtPercentile(50) / 1e6,
+                analyzeLatency.getValueAtPercentile(99) / 1e6,
+                _meanLuma));
+
+        writer.print(prefix);
+        writer.println("Frame rate policy: " + FrameRatePolicy.getProfileName(_frameRateProfile)
+                + " range=" + _aeFpsRange + " high_speed=" + _highSpeedConfiguration);
+        _frameRateMonitor.dump(prefix, writer);
+        dumpCaptureTimeline(prefix, writer, args);
+
+        VideoRecorder<MediaFormat> videoRecorder = _videoRecorder;
+        if (videoRecorder != null) {
+            writer.print(prefix);
+            writer.println(videoRecorder);
+        }
+
+        GlRenderer glRenderer = _glRenderer;
+        if (glRenderer != null) {
+            writer.print(prefix);
+            writer.println(glRenderer);
+        }
+
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "RAW: matched=%d backlog=%d max_backlog=%d dropped_images=%d dropped_results=%d queue=%d written=%d rejected=%d failed=%d",
+                _rawMatcher.getMatchedCount(), _rawMatcher.getBacklog(), _rawMatcher.getMaxBacklog(),
+                _rawMatcher.getDroppedImages(), _rawMatcher.getDroppedResults(), _dngFileWriter.getQueueDepth(),
+                _dngFileWriter.getWrittenCount(), _dngFileWriter.getRejectedCount(), _dngFileWriter.getFailedCount()));
+
+        JpegPostProcessor postProcessor = _jpegPostProcessor;
+        if (postProcessor != null) {
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "Upload: matched=%d dropped_images=%d dropped_results=%d queue=%d processed=%d reencoded=%d skipped=%d rejected=%d failed=%d",
+                    _uploadMatcher.getMatchedCount(), _uploadMatcher.getDroppedImages(), _uploadMatcher.getDroppedResults(),
+                    postProcessor.getQueueDepth(), postProcessor.getProcessedCount(), postProcessor.getReencodedCount(),
+                    postProcessor.getSkippedCount(), postProcessor.getRejectedCount(), postProcessor.getFailedCount()));
+        }
+
+        if (_thumbnailCache != null) {
+            writer.print(prefix);
+            writer.println(_thumbnailCache);
+        }
+
+        writer.print(prefix);
+        writer.println(_requestCache);
+
+        writer.print(prefix);
+        writer.println(_lensSwitcher);
+        CameraCatalog catalog = _lensSwitcher.getCatalog();
+        if (catalog != null) {
+            writer.print(prefix);
+            writer.println(catalog);
+        }
+
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "Camera config cache: memory=%d disk=%d miss=%d",
+                _cameraConfigCache.getMemoryHits(), _cameraConfigCache.getDiskHits(), _cameraConfigCache.getMisses()));
+        writer.flush();
+    }
+
+    /**
+     * 撮影結果の記録を解析して出力する
+     * 引数に--capture-traceがあればCSVを、--capture-trace-fileがあればバイナリをファイルへ書き出す。
+     */
+    private void dumpCaptureTimeline(String prefix, PrintWriter writer, String[] args) {
+        CaptureTimeline.Snapshot snapshot = _captureTimeline.snapshot();
+        writer.print(prefix);
+        writer.println(CaptureTimelineAnalyzer.analyze(snapshot));
+
+        List<String> arguments = args != null ? Arrays.asList(args) : Collections.<String>emptyList();
+        if (arguments.contains(DUMP_ARG_CAPTURE_TRACE)) {
+            try {
+                snapshot.writeCsv(writer);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (arguments.contains(DUMP_ARG_CAPTURE_TRACE_FILE)) {
+            File file = new File(getCacheDir(), CAPTURE_TRACE_FILE);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                snapshot.writeTo(out);
+                writer.print(prefix);
+                writer.println("Capture trace written: " + file + " (" + snapshot.size() + " frames)");
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        //再利用待ちのビットマップを解放
+        _bitmapPool.trimMemory(level);
+        if (_thumbnailCache != null) {
+            _thumbnailCache.trimMemory(level);
+        }
+    }
+
     private void requestPermission() {
 
         //カメラは許可されていないか
@@ -282,471 +1127,1657 @@ public class MainActivity extends AppCompatActivity {
         _backgroundHandler = new Handler(_backgroundThread.getLooper());
     }
 
-    private void stopBackgroundThread() {
-        _backgroundThread.quitSafely();
+    private void stopBackgroundThread() {
+        //カメラを閉じ終えてから終了する (UIスレッドは待たない)
+        final HandlerThread backgroundThread = _backgroundThread;
+        _cameraExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                backgroundThread.quitSafely();
+            }
+        });
+        _cameraExecutor.shutdown();
+    }
+
+    private void openCamera() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) return;
+
+        CameraManager manager = (CameraManager)getSystemService(Context.CAMERA_SERVICE);
+        if (manager == null) return;
+
+        //カメラIDが分かればすぐに開き始める
+        //(設定がメモリに無ければカメラのスレッドで読み込み、終わってから開く)
+        CameraCatalog.Selection selection = getLensSelection(manager);
+        if (selection == null) return;
+        CameraConfig config = selection.config;
+        _mirror = selection.isMirrored();
+        _lensButton.setEnabled(_lensSwitcher.getNext() != null);
+        _startupTrace.mark(StartupTrace.CONFIG_READY);
+
+        //カメラのスレッドで開く (UIスレッドは待たない)
+        _awaitingFirstFrame = true;
+        synchronized (_cameraLock) {
+            _cameraGeneration = _cameraController.open(config.getCameraId());
+        }
+        _startupTrace.mark(StartupTrace.OPEN_REQUESTED);
+
+        //カメラが開くのと並行して出力を準備する
+        //(テクスチャビューは全画面なので画面サイズから求める)
+        Point displaySize = new Point();
+        getWindowManager().getDefaultDisplay().getSize(displaySize);
+        setupCameraOutputs(config, displaySize.x, displaySize.y);
+
+        //高速度撮影のセッションはSurfaceを後から渡せないので、プレビューのSurfaceができるのを待つ
+        if (_highSpeedConfiguration != null) return;
+        _startupTrace.mark(StartupTrace.OUTPUTS_READY);
+        runStartupActions(_startupCoordinator.onOutputsReady(_cameraGeneration));
+    }
+
+    private void onPreviewSurfaceAvailable(int width, int height) {
+        SurfaceTexture texture = _previewTextureView.getSurfaceTexture();
+        if (texture == null || _previewSize == null) return;
+
+        //GLで描画する場合はカメラの出力を描画処理で受け取り、テクスチャビューへ描画する
+        //(テクスチャビューのバッファはビューと同じ大きさのままにする)
+        if (isGlPreview()) {
+            createGlRenderer(texture);
+            return;
+        }
+
+        configureTransform(width, height);
+        texture.setDefaultBufferSize(_previewSize.getWidth(), _previewSize.getHeight());
+        _previewSurface = new Surface(texture);
+        onPreviewSurfaceReady();
+    }
+
+    private void onPreviewSurfaceReady() {
+        _startupTrace.mark(StartupTrace.SURFACE_READY);
+        runStartupActions(_startupCoordinator.onSurfaceReady(_cameraGeneration));
+
+        if (_highSpeedConfiguration != null) {
+            _startupTrace.mark(StartupTrace.OUTPUTS_READY);
+            runStartupActions(_startupCoordinator.onOutputsReady(_cameraGeneration));
+        }
+    }
+
+    private boolean isGlPreview() {
+        return _glPreviewRequested && _highSpeedConfiguration == null;
+    }
+
+    /**
+     * GLの描画処理を生成する (UIスレッドは待たない)
+     * 初期化が終わったら描画処理の入力をプレビューのSurfaceとする。
+     */
+    private void createGlRenderer(@NonNull final SurfaceTexture displayTexture) {
+        final int generation = _cameraGeneration;
+        GlRenderer.create(_previewSize.getWidth(), _previewSize.getHeight(), _sensorOrientation, new GlRenderer.CreateCallback() {
+            @Override
+            public void onCreated(@NonNull GlRenderer glRenderer) {
+                //生成中にカメラを閉じた場合やテクスチャビューが破棄された場合は使わない
+                if (generation != _cameraGeneration || _previewSize == null || _glRenderer != null
+                        || _previewTextureView.getSurfaceTexture() != displayTexture) {
+                    glRenderer.release();
+                    return;
+                }
+
+                _glRenderer = glRenderer;
+                glRenderer.setDisplay(displayTexture);
+                glRenderer.setDisplayGrid(getIntent().getBooleanExtra(EXTRA_GL_GRID, false));
+                String lutPath = getIntent().getStringExtra(EXTRA_GL_LUT);
+                if (lutPath != null) {
+                    glRenderer.loadLut(new File(lutPath));
+                }
+                configureTransform(_previewTextureView.getWidth(), _previewTextureView.getHeight());
+                _previewSurface = glRenderer.getInputSurface();
+                onPreviewSurfaceReady();
+            }
+
+            @Override
+            public void onFailed(@NonNull IOException e) {
+                e.printStackTrace();
+            }
+        }, _glRendererHandler);
+    }
+
+    private void runStartupActions(int actions) {
+        if (actions == StartupCoordinator.ACTION_NONE) return;
+
+        Handler backgroundHandler = _backgroundHandler;
+        if (backgroundHandler == null) return;
+
+        if ((actions & StartupCoordinator.ACTION_CREATE_SESSION) != 0) {
+            backgroundHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    createCameraPreviewSession(true);
+                }
+            });
+        }
+        if ((actions & StartupCoordinator.ACTION_START_PREVIEW) != 0) {
+            backgroundHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    startPreview();
+                }
+            });
+        }
+    }
+
+    private void closeCamera() {
+        //出力はカメラを閉じ終えてからカメラのスレッドで解放する
+        final ImageReader imageReader = _imageReader;
+        final ImageReader zslImageReader = _zslImageReader;
+        final ImageReader analysisImageReader = _analysisImageReader;
+        final ImageReader rawImageReader = _rawImageReader;
+        final Surface previewSurface = _previewSurface;
+        final GlRenderer glRenderer = _glRenderer;
+        Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                _uploadMatcher.clear();
+                if (imageReader != null) {
+                    imageReader.close();
+                }
+                _zslRingBuffer.clear();
+                if (zslImageReader != null) {
+                    zslImageReader.close();
+                }
+                _analysisDispatcher.clear();
+                if (analysisImageReader != null) {
+                    analysisImageReader.close();
+                }
+                _rawMatcher.clear();
+                if (rawImageReader != null) {
+                    rawImageReader.close();
+                }
+                //GLで描画する場合のプレビューのSurfaceは描画処理のもの
+                if (glRenderer != null) {
+                    glRenderer.release();
+                }
+                else if (previewSurface != null) {
+                    previewSurface.release();
+                }
+            }
+        };
+
+        //先に世代を進めてから段取りをやり直す
+        //(同時に開き終わったカメラは世代が古くなるので、_cameraDeviceにも段取りにも使われない)
+        synchronized (_cameraLock) {
+            _cameraGeneration = _cameraController.close(release);
+            _cameraDevice = null;
+            _startupCoordinator.reset(_cameraGeneration);
+        }
+
+        //以降のセッション作成やプレビュー開始は行わない
+        //(撮影中に閉じた場合は完了が通知されないので、撮影の状態も戻す)
+        _captureSession = null;
+        _sessionRestart = false;
+        _captureStateMachine.reset();
+
+        //録画中であれば終える (エンコーダは書き込みを終えてから解放する)
+        VideoRecorder<MediaFormat> videoRecorder = _videoRecorder;
+        _videoRecorder = null;
+        _videoEncoder = null;
+        _glRenderer = null;
+        if (videoRecorder != null) {
+            stopVideoRecorder(videoRecorder, glRenderer);
+            _recordButton.setText("録画");
+        }
+
+        //テクスチャビューは次のカメラでも使うので、描画先からはすぐに外す (外し終わるのは待たない)
+        if (glRenderer != null) {
+            glRenderer.setDisplay(null);
+        }
+
+        _imageReader = null;
+        _zslImageReader = null;
+        _analysisImageReader = null;
+        _rawImageReader = null;
+        _previewSurface = null;
+        _previewOutputConfiguration = null;
+        _appliedPreviewTransform = null;
+
+        _cameraId = null;
+        _sensorOrientation = 0;
+        _previewSize = null;
+        _flashSupported = false;
+        _requestCache.invalidate();
+        _aeFpsRange = null;
+        _highSpeedConfiguration = null;
+    }
+
+    private void setupCameraOutputs(@NonNull CameraConfig config, int width, int height) {
+        _sensorOrientation = config.getSensorOrientation();
+        _sensorTimestampRealtime = config.isTimestampRealtime();
+        _flashSupported = config.isFlashSupported();
+
+        //レンズの切り替えでは事前に準備した出力を使う
+        boolean lensSwitching = _lensSwitching;
+        _lensSwitching = false;
+
+        OutputBounds bounds = getOutputBounds(_sensorOrientation, width, height);
+
+        //高速度撮影はプレビューのみで行う
+        //(高速度撮影のセッションはプレビューと録画のSurface以外を受け付けない)
+        _highSpeedConfiguration = null;
+        if (_highSpeedFps > 0) {
+            HighSpeedConfiguration highSpeed = FrameRatePolicy.chooseHighSpeed(config.getHighSpeedConfigurations(),
+                    _highSpeedFps, bounds.previewBound);
+            if (highSpeed != null) {
+                Log.d(MainActivity.class.getSimpleName(), "High speed: " + highSpeed);
+                _highSpeedConfiguration = highSpeed;
+                _aeFpsRange = highSpeed.getFpsRange();
+                _previewSize = new Size(highSpeed.getSize().getWidth(), highSpeed.getSize().getHeight());
+                setPreviewAspectRatio();
+                setCaptureButtonsEnabled(false);
+                _cameraId = config.getCameraId();
+                return;
+            }
+            Log.w(MainActivity.class.getSimpleName(), "High speed " + _highSpeedFps + " fps is not supported");
+        }
+        setCaptureButtonsEnabled(true);
+
+        //出力サイズとフレームレートの範囲 (準備済みでなければここで求める)
+        PreparedOutputs prepared = lensSwitching ? _lensSwitcher.takePrepared(bounds.layoutKey) : null;
+        if (prepared == null || prepared.config != config) {
+            prepared = prepareOutputs(config, bounds);
+        }
+        StreamNegotiator.Result streams = prepared.streams;
+        Log.d(MainActivity.class.getSimpleName(), "Streams: " + streams);
+        FrameSize jpegSize = streams.getJpegSize();
+        FrameSize previewSize = streams.getPreviewSize();
+        _previewSize = new Size(previewSize.getWidth(), previewSize.getHeight());
+        _aeFpsRange = prepared.aeFpsRange;
+        Log.d(MainActivity.class.getSimpleName(), "Fps range: " + _aeFpsRange);
+
+        //イメージリーダの生成
+        //(アップロード用の処理はデータをコピーして保持するので、同時保持数には含めない)
+        _imageReader = ImageReader.newInstance(jpegSize.getWidth(), jpegSize.getHeight(), ImageFormat.JPEG, JPEG_MAX_IMAGES);
+        _imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+
+                //
+                // 撮影完了時に呼び出される
+                //
+
+                drainJpegImages(reader);
+            }
+        }, _backgroundHandler);
+
+        //RAWのイメージリーダの生成 (RAWの出力サイズは保持している設定から求める)
+        FrameSize rawSize = streams.getRawSize();
+        if (rawSize != null) {
+            _rawImageReader = ImageReader.newInstance(rawSize.getWidth(), rawSize.getHeight(), ImageFormat.RAW_SENSOR, RAW_MAX_IMAGES);
+            _rawImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+                @Override
+                public void onImageAvailable(ImageReader reader) {
+                    Image image;
+                    try {
+                        image = reader.acquireNextImage();
+                    }
+                    catch (IllegalStateException e) {
+                        //全て保存待ちの場合は受け取れない
+                        Log.w(MainActivity.class.getSimpleName(), "RAW images are exhausted");
+                        return;
+                    }
+                    if (image == null) return;
+
+                    //撮影結果が届いていれば保存用のスレッドへ渡す
+                    _rawMatcher.offerImage(image.getTimestamp(), image);
+                    traceRawBacklog();
+                }
+            }, _backgroundHandler);
+        }
+
+        //ゼロシャッターラグ用のイメージリーダの生成
+        //(PRIV PREVIEW + YUV PREVIEW + JPEG MAXIMUMは全ての機器で使用できる)
+        //(RAWと同時に保証されない場合は作らない)
+        FrameSize zslSize = streams.getZslSize() != null ? streams.getZslSize() : previewSize;
+        if (streams.getZslSize() != null || streams.getRawSize() == null) {
+            _zslImageReader = ImageReader.newInstance(zslSize.getWidth(), zslSize.getHeight(), ImageFormat.YUV_420_888, ZSL_RING_CAPACITY + 2);
+            _zslImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+                @Override
+                public void onImageAvailable(ImageReader reader) {
+                    Image image;
+                    try {
+                        image = reader.acquireLatestImage();
+                    }
+                    catch (IllegalStateException e) {
+                        //保持数の上限に達している場合は次のフレームを待つ
+                        return;
+                    }
+                    if (image == null) return;
+
+                    _zslRingBuffer.addFrame(image.getTimestamp(), image);
+                }
+            }, _backgroundHandler);
+        }
+
+        //解析用のイメージリーダの生成
+        FrameSize analysisSize = streams.getAnalysisSize();
+        if (analysisSize != null) {
+            _analysisImageReader = ImageReader.newInstance(analysisSize.getWidth(), analysisSize.getHeight(), ImageFormat.YUV_420_888, ANALYSIS_MAX_IMAGES);
+            _analysisImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+                @Override
+                public void onImageAvailable(ImageReader reader) {
+                    Image image;
+                    try {
+                        image = reader.acquireLatestImage();
+                    }
+                    catch (IllegalStateException e) {
+                        //解析中と解析待ちで使い切っている場合は次のフレームを待つ
+                        return;
+                    }
+                    if (image == null) return;
+
+                    //解析が追いつかない場合は古いフレームが捨てられ、カメラのスレッドは待たない
+                    _analysisDispatcher.offer(image, image.getTimestamp());
+                }
+            }, _backgroundHandler);
+        }
+
+        //テクスチャビューにアスペクト比を設定
+        setPreviewAspectRatio();
+
+        //カメラIDを保持
+        _cameraId = config.getCameraId();
+    }
+
+    /**
+     * 表示先のサイズとプレビューサイズの上限を求める
+     */
+    @NonNull
+    private OutputBounds getOutputBounds(int sensorOrientation, int width, int height) {
+
+        //センサと画面の向きにより縦横回転が必要か判定
+        int displayRotation = getWindowManager().getDefaultDisplay().getRotation();
+        boolean swappedDimensions = OrientationMath.isDimensionSwapped(displayRotation, sensorOrientation);
+
+        //画面サイズを取得
+        Point displaySize = new Point();
+        getWindowManager().getDefaultDisplay().getSize(displaySize);
+
+        //プレビューサイズの上限
+        int viewWidth = width;
+        int viewHeight = height;
+        int maxPreviewWidth = displaySize.x;
+        int maxPreviewHeight = displaySize.y;
+        if (swappedDimensions) {
+            viewWidth = height;
+            viewHeight = width;
+            maxPreviewWidth = displaySize.y;
+            maxPreviewHeight = displaySize.x;
+        }
+        if (maxPreviewWidth > MAX_PREVIEW_WIDTH) {
+            maxPreviewWidth = MAX_PREVIEW_WIDTH;
+        }
+        if (maxPreviewHeight > MAX_PREVIEW_HEIGHT) {
+            maxPreviewHeight = MAX_PREVIEW_HEIGHT;
+        }
+        return new OutputBounds(viewWidth, viewHeight, new FrameSize(maxPreviewWidth, maxPreviewHeight),
+                LensSwitcher.layoutKey(width, height, displayRotation));
+    }
+
+    /**
+     * 出力サイズとフレームレートの範囲を求める
+     * カメラを開かずに求められるので、準備用のスレッドから呼び出してもよい。
+     */
+    @NonNull
+    private PreparedOutputs prepareOutputs(@NonNull CameraConfig config, @NonNull OutputBounds bounds) {
+
+        //出力サイズの決定
+        //(プレビューのフレームレートを保てない場合は解析の出力を外す)
+        StreamNegotiator.Result streams = _streamNegotiator.negotiate(config,
+                new StreamNegotiator.Request(bounds.viewWidth, bounds.viewHeight, bounds.previewBound)
+                        .setTargetFps(PREVIEW_TARGET_FPS)
+                        .setZsl(true)
+                        .setAnalysisBound(new FrameSize(ANALYSIS_MAX_WIDTH, ANALYSIS_MAX_HEIGHT))
+                        .setRaw(_rawRequested));
+
+        //フレームレートの範囲 (出力の最小フレーム間隔で保てる範囲から選ぶ)
+        int maxFps = (int)Math.round(streams.getSustainedFps());
+        FpsRange aeFpsRange = FrameRatePolicy.choose(config.getAeFpsRanges(), _frameRateProfile, maxFps);
+        return new PreparedOutputs(config, streams, aeFpsRange);
+    }
+
+    private void setPreviewAspectRatio() {
+        int orientation = getResources().getConfiguration().orientation;
+        if (orientation == Configuration.ORIENTATION_LANDSCAPE) {
+            _previewTextureView.setAspectRatio(_previewSize.getWidth(), _previewSize.getHeight());
+        }
+        else {
+            _previewTextureView.setAspectRatio(_previewSize.getHeight(), _previewSize.getWidth());
+        }
+    }
+
+    private void setCaptureButtonsEnabled(boolean enabled) {
+        _captureButtonsEnabled = enabled;
+        updateCaptureButtons();
+    }
+
+    private void updateCaptureButtons() {
+        boolean pictureEnabled = _captureButtonsEnabled && !_pictureSaveBusy;
+        _takePictureButton.setEnabled(pictureEnabled);
+        _burstButton.setEnabled(pictureEnabled);
+        _zslButton.setEnabled(pictureEnabled);
+        _recordButton.setEnabled(_captureButtonsEnabled);
+    }
+
+    private void postPictureSaveBusy(final boolean busy) {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (_pictureSaveBusy == busy) return;
+
+                _pictureSaveBusy = busy;
+                updateCaptureButtons();
+            }
+        });
+    }
+
+    //保存できなかった写真を知らせる (撮影済みの連写などは撮影ボタンを無効にしても届く)
+    private void onPictureSaveRejected() {
+        postPictureSaveBusy(true);
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(MainActivity.this, R.string.picture_save_queue_full, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @Nullable
+    private CameraCharacteristics getRawCharacteristics(@NonNull String cameraId) {
+        try {
+            CameraManager manager = (CameraManager)getSystemService(Context.CAMERA_SERVICE);
+            return manager.getCameraCharacteristics(cameraId);
+        }
+        catch (CameraAccessException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Nullable
+    private CameraCatalog.Selection getLensSelection(@NonNull CameraManager manager) {
+        CameraCatalog.Selection selection = _lensSwitcher.getCurrent();
+        if (selection != null) return selection;
+
+        CameraCatalog catalog = _cameraConfigCache.peek();
+        if (catalog != null) return _lensSwitcher.setCatalog(catalog, _initialLens);
+
+        loadCameraCatalog(manager);
+        return null;
+    }
+
+    /**
+     * カメラの設定を読み込み、終わったらカメラを開く (カメラのスレッド)
+     * ファイルの読み書きとCameraManagerへの問い合わせをUIスレッドで行わない。
+     */
+    private void loadCameraCatalog(@NonNull final CameraManager manager) {
+        if (_catalogLoading) return;
+        _catalogLoading = true;
+        final int request = _catalogRequest;
+
+        _cameraExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final CameraCatalog catalog = getCameraCatalog(manager);
+                _handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (request != _catalogRequest) return;
+                        _catalogLoading = false;
+                        if (catalog == null || _lensSwitcher.getCurrent() != null) return;
+
+                        _lensSwitcher.setCatalog(catalog, _initialLens);
+                        openCamera();
+                        if (_previewTextureView.isAvailable()) {
+                            onPreviewSurfaceAvailable(_previewTextureView.getWidth(), _previewTextureView.getHeight());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Nullable
+    private CameraCatalog getCameraCatalog(@NonNull CameraManager manager) {
+
+        //2回目以降はCameraManagerへ問い合わせない
+        CameraCatalog catalog = _cameraConfigCache.get();
+        if (catalog != null) return catalog;
+
+        try {
+            catalog = CameraConfigLoader.load(manager);
+        }
+        catch (CameraAccessException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (catalog != null) {
+            _cameraConfigCache.put(catalog);
+        }
+        return catalog;
+    }
+
+    /**
+     * 次のレンズへ切り替える
+     * 次のレンズの出力を準備済みであれば、出力を求め直さずにカメラを開き直す。
+     */
+    private void switchLens() {
+        if (_lensSwitcher.getNext() == null) return;
+
+        //録画中は切り替えない
+        if (_videoRecorder != null) return;
+
+        //切り替えから最初のフレームまでを、準備済みかどうかで分けて計測する
+        Point displaySize = new Point();
+        getWindowManager().getDefaultDisplay().getSize(displaySize);
+        long layoutKey = LensSwitcher.layoutKey(displaySize.x, displaySize.y, getWindowManager().getDefaultDisplay().getRotation());
+        _latencyRecorder.start(_lensSwitcher.isNextPrepared(layoutKey)
+                ? LatencyRecorder.STAGE_LENS_SWITCH_WARM : LatencyRecorder.STAGE_LENS_SWITCH_COLD);
+
+        closeCamera();
+        CameraCatalog.Selection selection = _lensSwitcher.switchToNext();
+        Log.d(MainActivity.class.getSimpleName(), "Switch to " + selection);
+        _lensSwitching = true;
+        openCamera();
+        if (_previewTextureView.isAvailable()) {
+            onPreviewSurfaceAvailable(_previewTextureView.getWidth(), _previewTextureView.getHeight());
+        }
+    }
+
+    /**
+     * カメラを開いてから最初のフレーム (カメラのスレッド)
+     * レンズの切り替えの計測を終え、次のレンズの出力を準備する。
+     */
+    private void onFirstFrame() {
+        long warm = _latencyRecorder.stop(LatencyRecorder.STAGE_LENS_SWITCH_WARM);
+        if (warm >= 0) {
+            Log.d(MainActivity.class.getSimpleName(), "Lens switch (prepared): " + warm / 1000000 + " ms");
+        }
+        long cold = _latencyRecorder.stop(LatencyRecorder.STAGE_LENS_SWITCH_COLD);
+        if (cold >= 0) {
+            Log.d(MainActivity.class.getSimpleName(), "Lens switch: " + cold / 1000000 + " ms");
+        }
+
+        //起動中のカメラと競合しないよう、最初のフレームが届いてから準備する
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                prewarmNextLens();
+            }
+        });
+    }
+
+    /**
+     * 次のレンズの出力を準備用のスレッドで求めておく
+     */
+    private void prewarmNextLens() {
+        if (!_prewarmLens || _highSpeedConfiguration != null || _prewarmExecutor.isShutdown()) return;
+
+        final CameraCatalog.Selection next = _lensSwitcher.getNext();
+        if (next == null) return;
+
+        //画面のサイズと回転はUIスレッドで求める
+        Point displaySize = new Point();
+        getWindowManager().getDefaultDisplay().getSize(displaySize);
+        final OutputBounds bounds = getOutputBounds(next.config.getSensorOrientation(), displaySize.x, displaySize.y);
+        if (_lensSwitcher.isNextPrepared(bounds.layoutKey)) return;
+
+        _prewarmExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PreparedOutputs prepared = prepareOutputs(next.config, bounds);
+                if (!_lensSwitcher.putPrepared(next.lens, bounds.layoutKey, prepared)) {
+                    Log.d(MainActivity.class.getSimpleName(), "Prepared outputs for " + next + " are stale");
+                }
+            }
+        });
+    }
+
+    private void drainJpegImages(@NonNull final ImageReader reader) {
+
+        //連写中に取りこぼさないよう、溜まっているものを全て受け取る
+        boolean marked = false;
+        while (true) {
+            final Image image;
+            try {
+                image = reader.acquireNextImage();
+            }
+            catch (IllegalStateException e) {
+                //全て使用中の場合は解放された後に受け取る
+                //(印を付ける前に解放されたものは解放時に受け取られないので、印を付けてからもう一度試す)
+                if (marked) return;
+
+                _jpegImagesPending = true;
+                marked = true;
+                continue;
+            }
+            if (image == null) return;
+            marked = false;
+
+            if (_sensorTimestampRealtime) {
+                _latencyRecorder.recordSince(LatencyRecorder.STAGE_SENSOR_TO_IMAGE, image.getTimestamp());
+            }
+
+            if (_burstStats.onFrame(image.getTimestamp())) {
+                Log.i(MainActivity.class.getSimpleName(), _burstStats.toString());
+            }
+
+            //バッファはコピーせずに渡し、全ての処理が解放した時点でImageを閉じる
+            JpegFrame frame = new JpegFrame(image.getPlanes()[0].getBuffer(), image.getTimestamp(), new JpegFrame.Releaser() {
+                @Override
+                public void release() {
+                    image.close();
+                    onJpegImageReleased(reader);
+                }
+            });
+            _jpegFrameDispatcher.dispatch(frame);
+        }
+    }
+
+    /**
+     * センサのタイムスタンプから撮影した時刻 (System.currentTimeMillisの時間軸) を求める
+     * 時間軸がelapsedRealtimeNanosと異なるカメラでは、撮影結果と対応付けた時点の時刻を使う。
+     */
+    private long getCaptureTimeMillis(long sensorTimestamp) {
+        long now = System.currentTimeMillis();
+        if (!_sensorTimestampRealtime) return now;
+
+        return now - TimeUnit.NANOSECONDS.toMillis(SystemClock.elapsedRealtimeNanos() - sensorTimestamp);
+    }
+
+    @NonNull
+    private static JpegFrame copyJpegFrame(@NonNull JpegFrame frame) {
+        ByteBuffer copy = ByteBuffer.allocate(frame.getSize());
+        copy.put(frame.getBuffer());
+        copy.flip();
+        return new JpegFrame(copy, frame.getTimestamp(), null);
+    }
+
+    private void onJpegImageReleased(@NonNull final ImageReader reader) {
+        if (!_jpegImagesPending) return;
+
+        Handler backgroundHandler = _backgroundHandler;
+        if (backgroundHandler == null) return;
+
+        _jpegImagesPending = false;
+        backgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (reader == _imageReader) {
+                    drainJpegImages(reader);
+                }
+            }
+        });
+    }
+
+    private void onJpegFrameDropped() {
+        if (_burstStats.onDropped()) {
+            Log.i(MainActivity.class.getSimpleName(), _burstStats.toString());
+        }
+    }
+
+    private void showPicture(@NonNull JpegFrame frame) {
+
+        //Imageのバッファから表示サイズに合わせて直接デコードする
+        final Bitmap bitmap;
+        long decodeStart = _latencyRecorder.now();
+        Trace.beginSection("decode");
+        try {
+            bitmap = _pictureDecoder.decode(frame, _pictureImageView.getWidth(), _pictureImageView.getHeight());
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        finally {
+            Trace.endSection();
+        }
+        if (bitmap == null) return;
+        _latencyRecorder.recordSince(LatencyRecorder.STAGE_DECODE, decodeStart);
+
+        final long postTime = _latencyRecorder.now();
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (_picture != null) {
+                    _pictureImageView.setImageBitmap(null);
+                    _pictureDecoder.recycle(_picture);
+                    _picture = null;
+                }
+
+                _pictureImageView.setImageBitmap(bitmap);
+                _picture = bitmap;
+
+                _latencyRecorder.recordSince(LatencyRecorder.STAGE_DISPLAY_POST, postTime);
+                long total = _latencyRecorder.stop(LatencyRecorder.STAGE_SHUTTER_TO_DISPLAY);
+                if (total >= 0) {
+                    Log.d(MainActivity.class.getSimpleName(), "Shutter to display: " + total / 1000000 + " ms");
+                }
+            }
+        });
+    }
+
+    /**
+     * 保存済みの写真のサムネイルを新しい順に並べる
+     */
+    private void loadGallery() {
+        final File directory = new File(getFilesDir(), PICTURE_DIRECTORY);
+        _pictureExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = directory.listFiles();
+                if (files == null) return;
+
+                //ファイル名は撮影時刻の順
+                Arrays.sort(files);
+                int start = Math.max(0, files.length - GALLERY_MAX_COUNT);
+                for (int i = start; i < files.length; i++) {
+                    final File file = files[i];
+                    if (!file.getName().endsWith(".jpg")) continue;
+
+                    _handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            showThumbnail(file);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * 一覧の先頭にサムネイルを追加する
+     * どのスレッドから呼び出してもよい。
+     */
+    private void showThumbnail(final File file) {
+        if (_thumbnailCache == null) return;
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            _handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    showThumbnail(file);
+                }
+            });
+            return;
+        }
+
+        final ImageView imageView = new ImageView(this);
+        int size = _galleryLayout.getLayoutParams().height;
+        imageView.setLayoutParams(new LinearLayout.LayoutParams(size, size));
+        imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        imageView.setTag(file);
+        _galleryLayout.addView(imageView, 0);
+        while (_galleryLayout.getChildCount() > GALLERY_MAX_COUNT) {
+            _galleryLayout.removeViewAt(_galleryLayout.getChildCount() - 1);
+        }
+
+        _thumbnailCache.load(file, new ThumbnailCache.Callback() {
+            @Override
+            public void onThumbnail(@NonNull File file, @Nullable Bitmap thumbnail) {
+                //読み込み中に一覧から外れていれば何もしない
+                if (imageView.getTag() != file || imageView.getParent() == null) return;
+
+                if (thumbnail != null) {
+                    imageView.setImageBitmap(thumbnail);
+                }
+                else {
+                    _galleryLayout.removeView(imageView);
+                }
+            }
+        });
+    }
+
+    /**
+     * RAWを出力した撮影の結果を対応付けへ渡す
+     */
+    private void offerRawResult(@Nullable ImageReader rawImageReader, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+        if (rawImageReader == null || !request.containsTarget(rawImageReader.getSurface())) return;
+
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null) return;
+
+        _rawMatcher.offerResult(timestamp, result);
+        traceRawBacklog();
+    }
+
+    /**
+     * JPEGを出力した撮影の結果をアップロード用の対応付けへ渡す
+     */
+    private void offerUploadResult(@Nullable ImageReader imageReader, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+        if (_jpegPostProcessor == null || imageReader == null || !request.containsTarget(imageReader.getSurface())) return;
+
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null) return;
+
+        _uploadMatcher.offerResult(timestamp, result);
+    }
+
+    private void traceRawBacklog() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.setCounter("raw_backlog", _rawMatcher.getBacklog());
+        }
+    }
+
+    @NonNull
+    private String createRawFileName(long timestamp) {
+        //同じ撮影のJPEGと並ぶよう撮影時刻の名前にし、センサのタイムスタンプで重複を避ける
+        return new SimpleDateFormat("'RAW_'yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date())
+                + String.format(Locale.US, "_%d.dng", timestamp % 1000000);
+    }
+
+    @NonNull
+    private String createUploadFileName(long timestamp) {
+        return new SimpleDateFormat("'UP_'yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date())
+                + String.format(Locale.US, "_%d.jpg", timestamp % 1000000);
+    }
+
+    @NonNull
+    private String createPictureFileName() {
+        //連写で同じ時刻になっても重複しないよう連番を付ける
+        return new SimpleDateFormat("'IMG_'yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date())
+                + String.format(Locale.US, "_%03d.jpg", _pictureSequence.getAndIncrement() % 1000);
+    }
+
+    private void configureTransform(int viewWidth, int viewHeight) {
+        if (_previewTextureView == null || _previewSize == null ) return;
+
+        //GLで描画する場合はシェーダで回転と鏡面反転を行う (テクスチャビューは変換しない)
+        //(描画処理の生成中は、生成後に設定する)
+        if (isGlPreview()) {
+            GlRenderer glRenderer = _glRenderer;
+            if (glRenderer != null) {
+                glRenderer.setDisplayTransform(viewWidth, viewHeight, OrientationMath.toDegrees(_displayRotation), _mirror);
+            }
+            return;
+        }
+
+        //鏡面反転と画面の向きに応じた表示調整
+        //(同じ組であれば計算済みの行列を使い、設定済みであれば何もしない)
+        float[] values = _previewTransformCache.get(viewWidth, viewHeight, _previewSize.getWidth(), _previewSize.getHeight(),
+                _sensorOrientation, _displayRotation, _mirror);
+        if (values == _appliedPreviewTransform) return;
+
+        _previewTransformMatrix.setValues(values);
+        _previewTextureView.setTransform(_previewTransformMatrix);
+        _appliedPreviewTransform = values;
+    }
+
+    private void createCameraPreviewSession(boolean withAnalysis) {
+        if (_highSpeedConfiguration != null) {
+            createHighSpeedPreviewSession();
+            return;
+        }
+
+        //閉じた後に実行された場合は何もしない
+        final CameraDevice cameraDevice;
+        final int generation;
+        synchronized (_cameraLock) {
+            cameraDevice = _cameraDevice;
+            generation = _cameraGeneration;
+        }
+        ImageReader imageReader = _imageReader;
+        ImageReader zslImageReader = _zslImageReader;
+        ImageReader analysisImageReader = _analysisImageReader;
+        ImageReader rawImageReader = _rawImageReader;
+        if (cameraDevice == null || _previewSize == null || imageReader == null) return;
+
+        //録画中はゼロシャッターラグと解析の出力を外し、エンコーダの入力を加える
+        //(PRIV PREVIEW + PRIV RECORD + JPEGの組み合わせにする)
+        //GLで描画する場合はプレビューのストリームから録画するので、セッションは変えない
+        Surface cameraEncoderSurface = getCameraEncoderSurface();
+        final boolean recording = cameraEncoderSurface != null;
+
+        //解析の出力はフレームレートを保てない場合は作られていない
+        final boolean sessionHasAnalysis = withAnalysis && analysisImageReader != null && !recording;
+
+        //プレビューのSurfaceがまだ無ければ、サイズだけ指定して後から渡す
+        Surface previewSurface = _previewSurface;
+        if (previewSurface != null) {
+            _previewOutputConfiguration = new OutputConfiguration(previewSurface);
+        }
+        else {
+            _previewOutputConfiguration = new OutputConfiguration(_previewSize, SurfaceTexture.class);
+        }
+
+        List<OutputConfiguration> outputs = new ArrayList<>(Arrays.asList(
+                _previewOutputConfiguration,
+                new OutputConfiguration(imageReader.getSurface())));
+        if (recording) {
+            outputs.add(new OutputConfiguration(cameraEncoderSurface));
+        }
+        else {
+            if (zslImageReader != null) {
+                outputs.add(new OutputConfiguration(zslImageReader.getSurface()));
+            }
+
+            //RAWは撮影時のみ出力する (PRIV PREVIEW + JPEG MAXIMUM + RAW MAXIMUMはRAWの機能があれば使用できる)
+            if (rawImageReader != null) {
+                outputs.add(new OutputConfiguration(rawImageReader.getSurface()));
+            }
+        }
+        _sessionHasRaw = !recording && rawImageReader != null;
+
+        //解析用のフレームも受け取る
+        //(4つ目のストリームは全ての機器で使用できる組み合わせではないので、失敗したら外して作り直す)
+        if (sessionHasAnalysis) {
+            outputs.add(new OutputConfiguration(analysisImageReader.getSurface()));
+        }
+        _sessionHasAnalysis = sessionHasAnalysis;
+
+        try {
+            cameraDevice.createCaptureSessionByOutputConfigurations(outputs, new CameraCaptureSession.StateCallback() {
+
+                        @Override
+                        public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
+                            //既に閉じたカメラのセッションは使わない
+                            if (cameraCaptureSession.getDevice() != _cameraDevice) {
+                                cameraCaptureSession.close();
+                                return;
+                            }
+
+                            _captureSession = cameraCaptureSession;
+                            _requestCache.invalidate();
 
-        try {
-            _backgroundThread.join();
+                            //録画の開始と終了で作り直した場合はすぐにプレビューを再開する
+                            if (_sessionRestart) {
+                                _sessionRestart = false;
+                                startPreview();
+                                return;
+                            }
+                            _startupTrace.mark(StartupTrace.SESSION_CONFIGURED);
+                            runStartupActions(_startupCoordinator.onSessionConfigured(generation));
+                        }
+
+                        @Override
+                        public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                            if (recording) {
+                                Log.e(getClass().getSimpleName(), "Recording session configure failed");
+                                stopRecording();
+                                return;
+                            }
+                            if (sessionHasAnalysis && _cameraDevice != null) {
+                                Log.w(getClass().getSimpleName(), "Capture session configure failed, retrying without analysis stream");
+                                createCameraPreviewSession(false);
+                                return;
+                            }
+                            Log.e(getClass().getSimpleName(), "Capture session configure failed");
+                        }
+                    }, _backgroundHandler);
         }
-        catch (InterruptedException e) {
+        catch (CameraAccessException | IllegalStateException e) {
             e.printStackTrace();
         }
-
-        _backgroundThread = null;
-        _backgroundHandler = null;
     }
 
-    private void openCamera(int width, int height) {
-        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) return;
-
-        CameraManager manager = (CameraManager)getSystemService(Context.CAMERA_SERVICE);
-        if (manager == null) return;
+    private void createHighSpeedPreviewSession() {
+        //閉じた後に実行された場合は何もしない
+        final CameraDevice cameraDevice;
+        final int generation;
+        synchronized (_cameraLock) {
+            cameraDevice = _cameraDevice;
+            generation = _cameraGeneration;
+        }
+        Surface previewSurface = _previewSurface;
+        if (cameraDevice == null || previewSurface == null) return;
 
-        setupCameraOutputs(width, height);
-        configureTransform(width, height);
+        _previewOutputConfiguration = new OutputConfiguration(previewSurface);
+        _sessionHasAnalysis = false;
 
         try {
-            if (!_cameraOpenCloseLock.tryAcquire(2500, TimeUnit.MILLISECONDS)) {
-                throw new RuntimeException("Time out waiting to lock camera opening.");
-            }
+            cameraDevice.createConstrainedHighSpeedCaptureSession(Collections.singletonList(previewSurface), new CameraCaptureSession.StateCallback() {
 
-            manager.openCamera(_cameraId, new CameraDevice.StateCallback() {
-                @Override
-                public void onOpened(@NonNull CameraDevice cameraDevice) {
-                    _cameraOpenCloseLock.release();
-                    _cameraDevice = cameraDevice;
-
-                    createCameraPreviewSession();
-                }
-
-                @Override
-                public void onDisconnected(@NonNull CameraDevice cameraDevice) {
-                    _cameraOpenCloseLock.release();
-                    cameraDevice.close();
-                    _cameraDevice = null;
-                }
+                        @Override
+                        public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
+                            //既に閉じたカメラのセッションは使わない
+                            if (cameraCaptureSession.getDevice() != _cameraDevice) {
+                                cameraCaptureSession.close();
+                                return;
+                            }
 
-                @Override
-                public void onError(@NonNull CameraDevice cameraDevice, int error) {
-                    _cameraOpenCloseLock.release();
-                    cameraDevice.close();
-                    _cameraDevice = null;
+                            _captureSession = cameraCaptureSession;
+                            _requestCache.invalidate();
+                            _startupTrace.mark(StartupTrace.SESSION_CONFIGURED);
+                            runStartupActions(_startupCoordinator.onSessionConfigured(generation));
+                        }
 
-                    //エラーにより終了
-                    finishAndRemoveTask();
-                }
-            }, _backgroundHandler);
+                        @Override
+                        public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                            Log.e(getClass().getSimpleName(), "High speed capture session configure failed");
+                        }
+                    }, _backgroundHandler);
         }
-        catch (CameraAccessException e) {
+        catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
             e.printStackTrace();
         }
-        catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to lock camera opening.", e);
-        }
     }
 
-    private void closeCamera() {
-        try {
-            _cameraOpenCloseLock.acquire();
+    private void startPreview() {
+        //計測はセッション毎にやり直す
+        _frameRateMonitor.reset();
+        _captureTimeline.clear();
+
+        if (_highSpeedConfiguration != null) {
+            startHighSpeedPreview();
+            return;
+        }
 
-            if (_captureSession != null) {
-                _captureSession.close();
-                _captureSession = null;
+        //閉じた後に実行された場合は何もしない
+        Surface previewSurface = _previewSurface;
+        CameraDevice cameraDevice = _cameraDevice;
+        CameraCaptureSession captureSession = _captureSession;
+        OutputConfiguration previewOutputConfiguration = _previewOutputConfiguration;
+        if (cameraDevice == null || captureSession == null || previewSurface == null
+                || previewOutputConfiguration == null) return;
+
+        try {
+            //サイズだけ指定していた場合はここでSurfaceを渡す
+            if (previewOutputConfiguration.getSurface() == null) {
+                previewOutputConfiguration.addSurface(previewSurface);
+                captureSession.finalizeOutputConfigurations(Collections.singletonList(previewOutputConfiguration));
             }
-            if (_cameraDevice != null) {
-                _cameraDevice.close();
-                _cameraDevice = null;
+
+            CaptureRequest previewRequest = _requestCache.get(CaptureRequestCache.KIND_PREVIEW, getAeMode(), 0, getPreviewAfMode());
+            if (previewRequest == null) return;
+            captureSession.setRepeatingRequest(previewRequest, _captureCallback, _backgroundHandler);
+
+            //シャッター時に生成しないよう、撮影に使う要求を生成しておく
+            //(録画中の静止画は録画のフレームと同時に撮る)
+            if (_videoEncoder != null) {
+                _requestCache.get(CaptureRequestCache.KIND_VIDEO_SNAPSHOT, CaptureRequest.CONTROL_AE_MODE_ON,
+                        getOrientation(_displayRotation), CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
             }
-            if (_imageReader != null) {
-                _imageReader.close();
-                _imageReader = null;
+            else {
+                _requestCache.prebuild(PREBUILT_REQUEST_KINDS, getAeMode(), getOrientation(_displayRotation), getPreviewAfMode());
             }
-
-            _cameraId = null;
-            _sensorOrientation = 0;
-            _previewSize = null;
-            _flashSupported = false;
-            _previewRequestBuilder = null;
-            _previewRequest = null;
-        }
-        catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to lock camera closing.", e);
         }
-        finally {
-            _cameraOpenCloseLock.release();
+        catch (CameraAccessException | IllegalStateException e) {
+            e.printStackTrace();
         }
     }
 
-    private void setupCameraOutputs(int width, int height) {
-        CameraManager manager = (CameraManager)getSystemService(Context.CAMERA_SERVICE);
-        if (manager == null) return;
+    private void startHighSpeedPreview() {
+        //閉じた後に実行された場合は何もしない
+        Surface previewSurface = _previewSurface;
+        CameraDevice cameraDevice = _cameraDevice;
+        CameraCaptureSession captureSession = _captureSession;
+        if (cameraDevice == null || previewSurface == null
+                || !(captureSession instanceof CameraConstrainedHighSpeedCaptureSession)) return;
 
         try {
-            for (String cameraId : manager.getCameraIdList()) {
-                CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+            //高速度撮影ではTEMPLATE_RECORDを元にし、フレームレートの範囲を必ず指定する
+            CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            builder.addTarget(previewSurface);
+            setFpsRange(builder);
+
+            //1回の要求で複数フレーム分をまとめて送る
+            CameraConstrainedHighSpeedCaptureSession highSpeedSession = (CameraConstrainedHighSpeedCaptureSession)captureSession;
+            List<CaptureRequest> requests = highSpeedSession.createHighSpeedRequestList(builder.build());
+            highSpeedSession.setRepeatingBurst(requests, _captureCallback, _backgroundHandler);
+        }
+        catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
+            e.printStackTrace();
+        }
+    }
 
-                //前面カメラ以外は使用しない
-                Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
-                if (facing != null && facing != CameraCharacteristics.LENS_FACING_FRONT) {
-                    continue;
-                }
+    private void setFpsRange(@NonNull CaptureRequest.Builder requestBuilder) {
+        FpsRange range = _aeFpsRange;
+        if (range != null) {
+            requestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(range.getLower(), range.getUpper()));
+        }
+    }
 
-                //ストリームの情報が取得できないカメラは使用しない
-                StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-                if (map == null) {
-                    continue;
-                }
+    /**
+     * 撮影要求のAEモード (フラッシュがあれば自動発光)
+     */
+    private int getAeMode() {
+        return _flashSupported ? CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH : CaptureRequest.CONTROL_AE_MODE_ON;
+    }
 
-                //センサの向きが取得できないカメラは使用しない
-                Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
-                if (sensorOrientation == null) {
-                    continue;
-                }
-                _sensorOrientation = sensorOrientation;
+    /**
+     * プレビューと撮影のAFモード (録画中は動画用)
+     */
+    private int getPreviewAfMode() {
+        return _videoEncoder != null ? CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO : CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+    }
 
-                //フラッシュは使用可能か
-                Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
-                _flashSupported = flashAvailable != null ? flashAvailable : false;
+    /**
+     * 撮影要求を生成する (閉じた後などで生成できなければnull)
+     * 出力先は現在のセッションのものを使う。
+     */
+    @Nullable
+    private CaptureRequest createCaptureRequest(int kind, int aeMode, int jpegOrientation, int afMode) {
+        CameraDevice cameraDevice = _cameraDevice;
+        Surface previewSurface = _previewSurface;
+        ImageReader imageReader = _imageReader;
+        MediaCodecVideoEncoder videoEncoder = _videoEncoder;
+        Surface cameraEncoderSurface = getCameraEncoderSurface();
+        if (cameraDevice == null || previewSurface == null || imageReader == null) return null;
 
-                //JPEGのサイズを取得
-                Size jpegSize = Collections.max(
-                        Arrays.asList(map.getOutputSizes(ImageFormat.JPEG)), new CompareSizesByArea());
+        try {
+            CaptureRequest.Builder builder;
+            switch (kind) {
+                case CaptureRequestCache.KIND_STILL:
+                case CaptureRequestCache.KIND_BURST:
+                    builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+                    builder.addTarget(imageReader.getSurface());
+
+                    //RAWも同じ撮影で出力する
+                    ImageReader rawImageReader = _sessionHasRaw ? _rawImageReader : null;
+                    if (rawImageReader != null) {
+                        builder.addTarget(rawImageReader.getSurface());
+                    }
+                    builder.set(CaptureRequest.JPEG_ORIENTATION, jpegOrientation);
 
-                //イメージリーダの生成
-                _imageReader = ImageReader.newInstance(jpegSize.getWidth(), jpegSize.getHeight(), ImageFormat.JPEG,1);
-                _imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
-                    @Override
-                    public void onImageAvailable(ImageReader reader) {
-
-                        //
-                        // 撮影完了時に呼び出される
-                        //
-
-                        try(Image image = reader.acquireLatestImage()) {
-
-                            ByteBuffer imageBuf = image.getPlanes()[0].getBuffer();
-                            final byte[] imageBytes = new byte[imageBuf.remaining()];
-                            imageBuf.get(imageBytes);
-                            image.close();
-
-                            final Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-                            _handler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    if (_picture != null) {
-                                        _pictureImageView.setImageBitmap(null);
-                                        _picture.recycle();
-                                        _picture = null;
-                                    }
-
-                                    _pictureImageView.setImageBitmap(bitmap);
-                                    _picture = bitmap;
-                                }
-                            });
-                        }
+                    //連写中は露出を固定し、ロック済みのフォーカスのまま全ての枚数を撮影する
+                    if (kind == CaptureRequestCache.KIND_BURST) {
+                        builder.set(CaptureRequest.CONTROL_AE_LOCK, true);
                     }
-                }, _backgroundHandler);
-
-                //センサと画面の向きにより縦横回転が必要か判定
-                int displayRotation = getWindowManager().getDefaultDisplay().getRotation();
-                boolean swappedDimensions = false;
-                switch (displayRotation) {
-                    case Surface.ROTATION_0:
-                    case Surface.ROTATION_180:
-                        if (_sensorOrientation == 90 || _sensorOrientation == 270) {
-                            swappedDimensions = true;
-                        }
-                        break;
-                    case Surface.ROTATION_90:
-                    case Surface.ROTATION_270:
-                        if (_sensorOrientation == 0 || _sensorOrientation == 180) {
-                            swappedDimensions = true;
-                        }
-                        break;
-                    default:
-                        Log.e(getClass().getSimpleName(), "Display rotation is invalid: " + displayRotation);
-                }
-
-                //画面サイズを取得
-                Point displaySize = new Point();
-                getWindowManager().getDefaultDisplay().getSize(displaySize);
-
-                //プレビューサイズを計算
-                int viewWidth = width;
-                int viewHeight = height;
-                int maxPreviewWidth = displaySize.x;
-                int maxPreviewHeight = displaySize.y;
-                if (swappedDimensions) {
-                    viewWidth = height;
-                    viewHeight = width;
-                    maxPreviewWidth = displaySize.y;
-                    maxPreviewHeight = displaySize.x;
-                }
-                if (maxPreviewWidth > MAX_PREVIEW_WIDTH) {
-                    maxPreviewWidth = MAX_PREVIEW_WIDTH;
-                }
-                if (maxPreviewHeight > MAX_PREVIEW_HEIGHT) {
-                    maxPreviewHeight = MAX_PREVIEW_HEIGHT;
-                }
-                _previewSize = getPreviewSize(
-                        map.getOutputSizes(SurfaceTexture.class),
-                        viewWidth,
-                        viewHeight,
-                        maxPreviewWidth,
-                        maxPreviewHeight,
-                        jpegSize);
-
-                //テクスチャビューにアスペクト比を設定
-                int orientation = getResources().getConfiguration().orientation;
-                if (orientation == Configuration.ORIENTATION_LANDSCAPE) {
-                    _previewTextureView.setAspectRatio(_previewSize.getWidth(), _previewSize.getHeight());
-                }
-                else {
-                    _previewTextureView.setAspectRatio(_previewSize.getHeight(), _previewSize.getWidth());
-                }
+                    break;
 
-                //カメラIDを保持
-                _cameraId = cameraId;
+                case CaptureRequestCache.KIND_VIDEO_SNAPSHOT:
+                    if (videoEncoder == null) return null;
 
-                return;
+                    //録画のフレームを抜かないよう、プレビューとエンコーダへも同じフレームを送る
+                    builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_VIDEO_SNAPSHOT);
+                    builder.addTarget(imageReader.getSurface());
+                    builder.addTarget(previewSurface);
+                    if (cameraEncoderSurface != null) {
+                        builder.addTarget(cameraEncoderSurface);
+                    }
+                    setFpsRange(builder);
+                    builder.set(CaptureRequest.JPEG_ORIENTATION, jpegOrientation);
+                    break;
+
+                default:
+                    //トリガーはプレビューと同じ出力と設定で送る
+                    builder = createPreviewRequestBuilder(cameraDevice, previewSurface, videoEncoder != null, cameraEncoderSurface);
+                    setFpsRange(builder);
+                    if (kind == CaptureRequestCache.KIND_AF_TRIGGER) {
+                        builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
+                    }
+                    else if (kind == CaptureRequestCache.KIND_PRECAPTURE) {
+                        builder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_START);
+                    }
+                    else if (kind == CaptureRequestCache.KIND_CANCEL) {
+                        builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+                    }
+                    break;
             }
+            builder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
+            builder.set(CaptureRequest.CONTROL_AE_MODE, aeMode);
+            return builder.build();
         }
-        catch (CameraAccessException e) {
+        catch (CameraAccessException | IllegalStateException e) {
             e.printStackTrace();
+            return null;
         }
     }
 
-    private void configureTransform(int viewWidth, int viewHeight) {
-        if (_previewTextureView == null || _previewSize == null ) return;
-
-        RectF bufferRect;
-        if (_sensorOrientation == 0 || _sensorOrientation == 180) {
-            bufferRect = new RectF(0, 0, _previewSize.getWidth(), _previewSize.getHeight());
-        }
-        else {
-            bufferRect = new RectF(0, 0, _previewSize.getHeight(), _previewSize.getWidth());
+    @NonNull
+    private CaptureRequest.Builder createPreviewRequestBuilder(@NonNull CameraDevice cameraDevice, @NonNull Surface previewSurface,
+                                                               boolean recording, @Nullable Surface cameraEncoderSurface) throws CameraAccessException {
+
+        //録画中はプレビューと同時にエンコーダへ送る
+        if (cameraEncoderSurface != null) {
+            CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            builder.addTarget(previewSurface);
+            builder.addTarget(cameraEncoderSurface);
+            return builder;
         }
 
-        RectF viewRect = new RectF(0, 0, viewWidth, viewHeight);
-        float centerX = viewRect.centerX();
-        float centerY = viewRect.centerY();
+        //GLで描画する場合は録画中もセッションの出力は変わらない
+        CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(recording ? CameraDevice.TEMPLATE_RECORD : CameraDevice.TEMPLATE_PREVIEW);
+        builder.addTarget(previewSurface);
 
-        Matrix matrix = new Matrix();
+        //ゼロシャッターラグ用のフレームをプレビューと同時に受け取る
+        ImageReader zslImageReader = _zslImageReader;
+        ImageReader analysisImageReader = _analysisImageReader;
+        if (zslImageReader != null) {
+            builder.addTarget(zslImageReader.getSurface());
+        }
+        if (_sessionHasAnalysis && analysisImageReader != null) {
+            builder.addTarget(analysisImageReader.getSurface());
+        }
+        return builder;
+    }
 
-        //鏡面反転
-        matrix.preScale(-1.0f, 1.0f, centerX, centerY);
+    /**
+     * カメラから直接エンコーダへ送る場合のエンコーダの入力 (録画中でない場合とGLで描画する場合はnull)
+     */
+    @Nullable
+    private Surface getCameraEncoderSurface() {
+        MediaCodecVideoEncoder videoEncoder = _videoEncoder;
+        return videoEncoder != null && _glRenderer == null ? videoEncoder.getInputSurface() : null;
+    }
 
-        //画面の向きに応じた表示調整
-        int rotation = getWindowManager().getDefaultDisplay().getRotation();
-        if (rotation == Surface.ROTATION_90 || rotation == Surface.ROTATION_270) {
+    private int getOrientation(int rotation) {
+        return OrientationMath.getJpegOrientation(rotation, _sensorOrientation);
+    }
 
-            bufferRect.offset(centerX - bufferRect.centerX(), centerY - bufferRect.centerY());
-            matrix.setRectToRect(viewRect, bufferRect, Matrix.ScaleToFit.FILL);
+    private void takePicture() {
+        //高速度撮影のセッションでは静止画を撮影できない
+        if (_highSpeedConfiguration != null) return;
 
-            float viewLongEdge = viewWidth > viewHeight ? viewWidth : viewHeight;
-            float viewShortEdge = viewWidth <= viewHeight ? viewWidth : viewHeight;
-            float scale = Math.max(viewShortEdge / _previewSize.getHeight(), viewLongEdge / _previewSize.getWidth());
-            matrix.postScale(scale, scale, centerX, centerY);
+        //録画中は録画を止めずに撮影する
+        if (_videoRecorder != null) {
+            Handler backgroundHandler = _backgroundHandler;
+            if (backgroundHandler == null) return;
 
-            matrix.postRotate(90 * (rotation - 2), centerX, centerY);
-        }
-        else if (rotation == Surface.ROTATION_180) {
-            matrix.postRotate(180, centerX, centerY);
+            backgroundHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    captureVideoSnapshot();
+                }
+            });
+            return;
         }
 
-        _previewTextureView.setTransform(matrix);
+        lockFocus(1);
     }
 
-    @NonNull
-    private Size getPreviewSize(@NonNull Size[] choices, int textureViewWidth, int textureViewHeight, int maxWidth, int maxHeight, @NonNull Size aspectRatio) {
-        if (choices.length == 0) return new Size(textureViewWidth, textureViewHeight);
-
-        List<Size> bigEnough = new ArrayList<>();
-        List<Size> notBigEnough = new ArrayList<>();
+    private void takeZslPicture() {
+        if (_highSpeedConfiguration != null) return;
 
-        int w = aspectRatio.getWidth();
-        int h = aspectRatio.getHeight();
+        //直近のピントと露出が安定したフレームを使用する
+        final ZslRingBuffer.Entry<Image, TotalCaptureResult> entry = _zslRingBuffer.select(Long.MAX_VALUE);
+        if (entry == null) {
+            //使えるフレームが無ければ通常の撮影を行う
+            takePicture();
+            return;
+        }
 
-        for (Size option : choices) {
-            if (option.getWidth() <= maxWidth &&
-                    option.getHeight() <= maxHeight &&
-                    option.getHeight() == option.getWidth() * h / w) {
+        //向きはシャッターを押した時点の画面の回転で決める
+        final int orientation = getOrientation(_displayRotation);
 
-                if (option.getWidth() >= textureViewWidth &&
-                        option.getHeight() >= textureViewHeight) {
-                    bigEnough.add(option);
+        _latencyRecorder.start(LatencyRecorder.STAGE_SHUTTER_TO_DISPLAY);
+        _pictureExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                JpegFrame frame;
+                try {
+                    frame = _zslJpegEncoder.encode(entry.frame, orientation);
                 }
-                else {
-                    notBigEnough.add(option);
+                catch (IOException e) {
+                    e.printStackTrace();
+                    onJpegFrameDropped();
+                    return;
+                }
+
+                //JPEGは選んだフレームから作るので、そのフレームの撮影結果と対応付ける
+                if (_jpegPostProcessor != null && entry.result != null) {
+                    _uploadMatcher.offerResult(entry.timestamp, entry.result);
                 }
+                _jpegFrameDispatcher.dispatch(frame);
             }
-        }
+        });
+    }
+
+    private void takeBurst() {
+        if (_highSpeedConfiguration != null || _videoRecorder != null) return;
+
+        //フォーカスと露出のロックは連写全体で1度だけ行う
+        lockFocus(BURST_COUNT);
+    }
+
+    private void lockFocus(int shotCount) {
+        CameraCaptureSession captureSession = _captureSession;
+        if (captureSession == null) return;
 
-        if (bigEnough.size() > 0) {
-            return Collections.min(bigEnough, new CompareSizesByArea());
+        //撮影中は受け付けない
+        if (!_captureStateMachine.startLock(_latencyRecorder.now())) return;
+        _requestedShotCount = shotCount;
+        _latencyRecorder.start(LatencyRecorder.STAGE_SHUTTER_TO_DISPLAY);
+        _latencyRecorder.start(LatencyRecorder.STAGE_SHUTTER_TO_CAPTURE);
+
+        CaptureRequest request = _requestCache.get(CaptureRequestCache.KIND_AF_TRIGGER, getAeMode(), 0, getPreviewAfMode());
+        if (request == null) {
+            _captureStateMachine.reset();
+            return;
         }
-        else if (notBigEnough.size() > 0) {
-            return Collections.max(notBigEnough, new CompareSizesByArea());
+
+        try {
+            captureSession.capture(request, _captureCallback, _backgroundHandler);
         }
-        else {
-            return choices[0];
+        catch (CameraAccessException | IllegalStateException e) {
+            _captureStateMachine.reset();
+            e.printStackTrace();
         }
     }
 
-    private void createCameraPreviewSession() {
-        if (_cameraDevice == null || _previewSize == null) return;
+    private void unlockFocus() {
+        //プレビューを再開できない場合も、次の撮影を受け付けるよう状態は戻す
+        CameraCaptureSession captureSession = _captureSession;
+        if (captureSession == null) {
+            _captureStateMachine.reset();
+            return;
+        }
 
-        SurfaceTexture texture = _previewTextureView.getSurfaceTexture();
-        if (texture == null) return;
+        int aeMode = getAeMode();
+        int afMode = getPreviewAfMode();
+        CaptureRequest cancelRequest = _requestCache.get(CaptureRequestCache.KIND_CANCEL, aeMode, 0, afMode);
+        CaptureRequest previewRequest = _requestCache.get(CaptureRequestCache.KIND_PREVIEW, aeMode, 0, afMode);
+        if (cancelRequest == null || previewRequest == null) {
+            _captureStateMachine.reset();
+            return;
+        }
 
         try {
-            _previewRequestBuilder = _cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-
-            texture.setDefaultBufferSize(_previewSize.getWidth(), _previewSize.getHeight());
-            Surface surface = new Surface(texture);
-            _previewRequestBuilder.addTarget(surface);
+            captureSession.capture(cancelRequest, _captureCallback, _backgroundHandler);
 
-            _cameraDevice.createCaptureSession(Arrays.asList(surface, _imageReader.getSurface()), new CameraCaptureSession.StateCallback() {
-
-                        @Override
-                        public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-                            if (_cameraDevice == null) return;
+            _captureStateMachine.reset();
+            captureSession.setRepeatingRequest(previewRequest, _captureCallback, _backgroundHandler);
+        }
+        catch (CameraAccessException | IllegalStateException e) {
+            _captureStateMachine.reset();
+            e.printStackTrace();
+        }
+    }
 
-                            _captureSession = cameraCaptureSession;
-                            try {
-                                _previewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-                                setAutoFlash(_previewRequestBuilder);
+    private void runPrecaptureSequence() {
+        CameraCaptureSession captureSession = _captureSession;
+        if (captureSession == null) return;
 
-                                _previewRequest = _previewRequestBuilder.build();
-                                _captureSession.setRepeatingRequest(_previewRequest, _captureCallback, _backgroundHandler);
-                            }
-                            catch (CameraAccessException e) {
-                                e.printStackTrace();
-                            }
-                        }
+        CaptureRequest request = _requestCache.get(CaptureRequestCache.KIND_PRECAPTURE, getAeMode(), 0, getPreviewAfMode());
+        if (request == null) return;
 
-                        @Override
-                        public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                            Log.e(getClass().getSimpleName(), "Capture session configure failed");
-                        }
-                    }, null);
+        try {
+            captureSession.capture(request, _captureCallback, _backgroundHandler);
         }
-        catch (CameraAccessException e) {
+        catch (CameraAccessException | IllegalStateException e) {
             e.printStackTrace();
         }
     }
 
-    private void setAutoFlash(@NonNull CaptureRequest.Builder requestBuilder) {
-        if (_flashSupported) {
-            requestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
+    private void captureVideoSnapshot() {
+        //閉じた後に実行された場合は何もしない
+        CameraDevice cameraDevice = _cameraDevice;
+        CameraCaptureSession captureSession = _captureSession;
+        ImageReader imageReader = _imageReader;
+        Surface previewSurface = _previewSurface;
+        MediaCodecVideoEncoder videoEncoder = _videoEncoder;
+        if (cameraDevice == null || captureSession == null || imageReader == null || previewSurface == null
+                || videoEncoder == null) return;
+
+        //録画中はフラッシュを使わない
+        CaptureRequest request = _requestCache.get(CaptureRequestCache.KIND_VIDEO_SNAPSHOT, CaptureRequest.CONTROL_AE_MODE_ON,
+                getOrientation(_displayRotation), CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+        if (request == null) return;
+
+        try {
+            _latencyRecorder.start(LatencyRecorder.STAGE_SHUTTER_TO_DISPLAY);
+            captureSession.capture(request, _captureCallback, _backgroundHandler);
+        }
+        catch (CameraAccessException | IllegalStateException e) {
+            e.printStackTrace();
         }
     }
 
-    private int getOrientation(int rotation) {
-        return (ORIENTATIONS.get(rotation) + _sensorOrientation + 270) % 360;
-    }
+    private void toggleRecording() {
+        Handler backgroundHandler = _backgroundHandler;
+        if (backgroundHandler == null) return;
 
-    private void takePicture() {
-        lockFocus();
+        backgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (_videoRecorder == null) {
+                    startRecording();
+                }
+                else {
+                    stopRecording();
+                }
+            }
+        });
     }
 
-    private void lockFocus() {
-        if (_previewRequestBuilder == null || _captureSession == null) return;
+    private void startRecording() {
+        //高速度撮影中と撮影中は録画しない
+        if (_highSpeedConfiguration != null || !_captureStateMachine.isIdle()) return;
 
-        try {
-            _previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
+        CameraDevice cameraDevice = _cameraDevice;
+        Size previewSize = _previewSize;
+        if (cameraDevice == null || previewSize == null || _previewSurface == null || _captureSession == null) return;
 
-            _state = State.WaitingLock;
-            _captureSession.capture(_previewRequestBuilder.build(), _captureCallback, _backgroundHandler);
+        //プレビューと同じサイズで録画する (プレビューは1920x1080以下なのでRECORDの範囲に収まる)
+        String mime = getIntent().getBooleanExtra(EXTRA_VIDEO_HEVC, false) ? VideoEncoderConfig.MIME_HEVC : VideoEncoderConfig.MIME_AVC;
+        FpsRange fpsRange = _aeFpsRange;
+        VideoEncoderConfig config = new VideoEncoderConfig(mime, previewSize.getWidth(), previewSize.getHeight())
+                .setFrameRate(fpsRange != null ? fpsRange.getUpper() : PREVIEW_TARGET_FPS)
+                .setBitRate(getIntent().getIntExtra(EXTRA_VIDEO_BIT_RATE, 0))
+                .setIFrameIntervalSeconds(getIntent().getIntExtra(EXTRA_VIDEO_I_FRAME_INTERVAL, VideoEncoderConfig.DEFAULT_I_FRAME_INTERVAL_SECONDS))
+                .setSegmentDurationUs(VIDEO_SEGMENT_DURATION_US);
+
+        final MediaCodecVideoEncoder encoder;
+        try {
+            encoder = MediaCodecVideoEncoder.create(config);
         }
-        catch (CameraAccessException e) {
+        catch (IOException e) {
             e.printStackTrace();
+            return;
         }
-    }
 
-    private void unlockFocus() {
-        if (_previewRequestBuilder == null || _captureSession == null) return;
+        //分割したファイルには連番を付ける
+        final File directory = new File(getFilesDir(), VIDEO_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(MainActivity.class.getSimpleName(), "Failed to create " + directory);
+            encoder.release();
+            return;
+        }
+        final String baseName = new SimpleDateFormat("'VID_'yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        final int orientation = getOrientation(_displayRotation);
 
-        try {
-            _previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
-            setAutoFlash(_previewRequestBuilder);
-            _captureSession.capture(_previewRequestBuilder.build(), _captureCallback, _backgroundHandler);
+        final VideoRecorder<MediaFormat> recorder = new VideoRecorder<>(encoder, new SampleMuxer.Factory<MediaFormat>() {
+            @Override
+            public SampleMuxer<MediaFormat> create(int segmentIndex) throws IOException {
+                File file = new File(directory, baseName + String.format(Locale.US, "_%03d.mp4", segmentIndex));
+                return new MediaMuxerSampleMuxer(file, orientation);
+            }
+        }, config, new VideoRecorder.Listener() {
+            @Override
+            public void onFinished() {
+                encoder.release();
+            }
 
-            _state = State.Preview;
-            _captureSession.setRepeatingRequest(_previewRequest, _captureCallback, _backgroundHandler);
-        }
-        catch (CameraAccessException e) {
-            e.printStackTrace();
+            @Override
+            public void onFailed(IOException e) {
+                e.printStackTrace();
+            }
+        });
+        Log.d(MainActivity.class.getSimpleName(), "Recording: " + config);
+
+        _videoEncoder = encoder;
+        _videoRecorder = recorder;
+        recorder.start();
+
+        //GLで描画する場合はプレビューと同じフレームをエンコーダへも描画する
+        //(セッションは作り直さず、撮影要求のみ録画用に切り替える)
+        GlRenderer glRenderer = _glRenderer;
+        if (glRenderer != null) {
+            glRenderer.setEncoder(encoder.getInputSurface(), config.getWidth(), config.getHeight(),
+                    GlTransform.getEncoderRotationDegrees(_displayRotation, orientation), new GlRenderer.EncoderListener() {
+                        @Override
+                        public void onEncoderFrame(long timestampNanos) {
+                            recorder.onInputFrame();
+                        }
+                    });
+            startPreview();
+            setRecordButtonText(true);
+            return;
         }
+
+        //録画中はゼロシャッターラグのフレームを受け取らない
+        _zslRingBuffer.clear();
+        restartSession();
+        setRecordButtonText(true);
     }
 
-    private void runPrecaptureSequence() {
-        if (_previewRequestBuilder == null || _captureSession == null) return;
+    private void stopRecording() {
+        VideoRecorder<MediaFormat> recorder = _videoRecorder;
+        if (recorder == null) return;
 
-        try {
-            _previewRequestBuilder.set(
-                    CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
-                    CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
+        _videoRecorder = null;
+        _videoEncoder = null;
 
-            _state = State.WaitingPreCapture;
-            _captureSession.capture(
-                    _previewRequestBuilder.build(),
-                    _captureCallback,
-                    _backgroundHandler);
+        GlRenderer glRenderer = _glRenderer;
+        stopVideoRecorder(recorder, glRenderer);
+
+        if (glRenderer != null) {
+            startPreview();
+            setRecordButtonText(false);
+            return;
         }
-        catch (CameraAccessException e) {
-            e.printStackTrace();
+
+        //エンコーダを外したセッションでプレビューを続ける
+        if (_cameraDevice != null) {
+            restartSession();
+        }
+        setRecordButtonText(false);
+    }
+
+    /**
+     * 録画を終える (待たない)
+     * GLで描画する場合はエンコーダへの描画を止めてから、GLのスレッドで終える。
+     */
+    private void stopVideoRecorder(@NonNull final VideoRecorder<MediaFormat> recorder, @Nullable GlRenderer glRenderer) {
+        Runnable stop = new Runnable() {
+            @Override
+            public void run() {
+                recorder.stop();
+                Log.i(MainActivity.class.getSimpleName(), recorder.toString());
+            }
+        };
+        if (glRenderer != null) {
+            glRenderer.detachEncoder(stop);
+        }
+        else {
+            stop.run();
         }
     }
 
+    private void restartSession() {
+        _sessionRestart = true;
+        createCameraPreviewSession(true);
+    }
+
+    private void setRecordButtonText(final boolean recording) {
+        _handler.post(new Runnable() {
+            @Override
+            public void run() {
+                _recordButton.setText(recording ? "停止" : "録画");
+            }
+        });
+    }
+
     private void captureStillPicture() {
-        if (_captureSession == null) return;
+        CameraCaptureSession captureSession = _captureSession;
+        if (captureSession == null) {
+            _captureStateMachine.reset();
+            return;
+        }
+
+        final ImageReader rawImageReader = _sessionHasRaw ? _rawImageReader : null;
+        final ImageReader imageReader = _imageReader;
+        int orientation = getOrientation(_displayRotation);
+        int shotCount = _requestedShotCount;
+        CaptureRequest stillRequest = _requestCache.get(shotCount <= 1 ? CaptureRequestCache.KIND_STILL : CaptureRequestCache.KIND_BURST,
+                getAeMode(), orientation, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        if (stillRequest == null) {
+            unlockFocus();
+            return;
+        }
+        _rawOrientation = orientation;
 
         try {
-            final CaptureRequest.Builder captureBuilder = _cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            captureBuilder.addTarget(_imageReader.getSurface());
+            captureSession.stopRepeating();
+            captureSession.abortCaptures();
+
+            _latencyRecorder.stop(LatencyRecorder.STAGE_SHUTTER_TO_CAPTURE);
+            _latencyRecorder.start(LatencyRecorder.STAGE_CAPTURE_TO_RESULT);
+
+            if (shotCount <= 1) {
+                captureSession.capture(stillRequest, new CameraCaptureSession.CaptureCallback() {
+
+                    @Override
+                    public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+                        super.onCaptureCompleted(session, request, result);
+
+                        _latencyRecorder.stop(LatencyRecorder.STAGE_CAPTURE_TO_RESULT);
+                        offerRawResult(rawImageReader, request, result);
+                        offerUploadResult(imageReader, request, result);
+                        unlockFocus();
+                    }
+
+                    @Override
+                    public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+                        super.onCaptureFailed(session, request, failure);
+
+                        if (!failure.wasImageCaptured()) {
+                            onJpegFrameDropped();
+                        }
+                        unlockFocus();
+                    }
 
-            captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-            setAutoFlash(captureBuilder);
+                    @Override
+                    public void onCaptureSequenceAborted(@NonNull CameraCaptureSession session, int sequenceId) {
+                        super.onCaptureSequenceAborted(session, sequenceId);
+
+                        unlockFocus();
+                    }
+                }, null);
+                return;
+            }
 
-            int rotation = getWindowManager().getDefaultDisplay().getRotation();
-            captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getOrientation(rotation));
+            //連写は同じ要求を枚数分送る
+            List<CaptureRequest> requests = new ArrayList<>(shotCount);
+            for (int i = 0; i < shotCount; i++) {
+                requests.add(stillRequest);
+            }
 
-            _captureSession.stopRepeating();
-            _captureSession.abortCaptures();
-            _captureSession.capture(captureBuilder.build(), new CameraCaptureSession.CaptureCallback() {
+            _burstStats.start(shotCount);
+            captureSession.captureBurst(requests, new CameraCaptureSession.CaptureCallback() {
 
                 @Override
                 public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
                     super.onCaptureCompleted(session, request, result);
 
+                    //連写は最初の1枚までを記録する
+                    _latencyRecorder.stop(LatencyRecorder.STAGE_CAPTURE_TO_RESULT);
+                    offerRawResult(rawImageReader, request, result);
+                    offerUploadResult(imageReader, request, result);
+                }
+
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+                    super.onCaptureFailed(session, request, failure);
+
+                    if (!failure.wasImageCaptured()) {
+                        onJpegFrameDropped();
+                    }
+                }
+
+                @Override
+                public void onCaptureSequenceCompleted(@NonNull CameraCaptureSession session, int sequenceId, long frameNumber) {
+                    super.onCaptureSequenceCompleted(session, sequenceId, frameNumber);
+
                     unlockFocus();
                 }
-            }, null);
-        }
-        catch (CameraAccessException e) {
-            e.printStackTrace();
-        }
-    }
 
-    /**
-     * ステータスを表す列挙型
-     */
-    private enum State {
-        Preview,
-        WaitingLock,
-        WaitingPreCapture,
-        WaitingNonPreCapture,
-        PictureTaken
-    };
+                @Override
+                public void onCaptureSequenceAborted(@NonNull CameraCaptureSession session, int sequenceId) {
+                    super.onCaptureSequenceAborted(session, sequenceId);
 
-    /**
-     * 面積によって大小比較を行うコンパレータ
-     */
-    private class CompareSizesByArea implements Comparator<Size> {
-        @Override
-        public int compare(Size lhs, Size rhs) {
-            return Long.signum((long) lhs.getWidth() * lhs.getHeight() - (long) rhs.getWidth() * rhs.getHeight());
+                    unlockFocus();
+                }
+            }, _backgroundHandler);
+        }
+        catch (CameraAccessException | IllegalStateException e) {
+            _captureStateMachine.reset();
+            e.printStackTrace();
         }
     }
 }
@@ -0,0 +1,112 @@
+package com.example.camerasample;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MediaCodecによるエンコーダ (入力はSurface)
+ *
+ * カメラのセッションの出力にgetInputSurface()を加えると、フレームはコピーされずに直接エンコードされる。
+ */
+public class MediaCodecVideoEncoder implements VideoEncoder<MediaFormat> {
+
+    private final MediaCodec _codec;
+    private final Surface _inputSurface;
+
+    //取り出し用 (フレーム毎に生成しない)
+    private final MediaCodec.BufferInfo _bufferInfo = new MediaCodec.BufferInfo();
+
+    private MediaCodecVideoEncoder(MediaCodec codec, Surface inputSurface) {
+        _codec = codec;
+        _inputSurface = inputSurface;
+    }
+
+    /**
+     * エンコーダを生成して開始する
+     */
+    @NonNull
+    public static MediaCodecVideoEncoder create(@NonNull VideoEncoderConfig config) throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(config.getMime(), config.getWidth(), config.getHeight());
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, config.getBitRate());
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, config.getFrameRate());
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, config.getIFrameIntervalSeconds());
+
+        MediaCodec codec = MediaCodec.createEncoderByType(config.getMime());
+        try {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            Surface inputSurface = codec.createInputSurface();
+            codec.start();
+            return new MediaCodecVideoEncoder(codec, inputSurface);
+        }
+        catch (IllegalArgumentException | IllegalStateException e) {
+            //MediaCodec.CodecExceptionもIllegalStateException
+            codec.release();
+            throw new IOException("Failed to configure encoder: " + config, e);
+        }
+    }
+
+    /**
+     * カメラのセッションへ加える入力のSurface
+     */
+    @NonNull
+    public Surface getInputSurface() {
+        return _inputSurface;
+    }
+
+    @Override
+    public int dequeueOutputBuffer(EncodedSample info, long timeoutUs) {
+        int index = _codec.dequeueOutputBuffer(_bufferInfo, timeoutUs);
+        if (index >= 0) {
+            info.set(_bufferInfo.offset, _bufferInfo.size, _bufferInfo.presentationTimeUs, _bufferInfo.flags);
+        }
+        return index;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return _codec.getOutputBuffer(index);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        _codec.releaseOutputBuffer(index, false);
+    }
+
+    @Override
+    public MediaFormat getOutputFormat() {
+        return _codec.getOutputFormat();
+    }
+
+    @Override
+    public void signalEndOfInputStream() {
+        try {
+            _codec.signalEndOfInputStream();
+        }
+        catch (IllegalStateException e) {
+            //既にエラーで停止している (VideoRecorderは時間切れで終える)
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * エンコーダを解放する (取り出しが終わってから呼び出す)
+     */
+    public void release() {
+        try {
+            _codec.stop();
+        }
+        catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+        _codec.release();
+        _inputSurface.release();
+    }
+}
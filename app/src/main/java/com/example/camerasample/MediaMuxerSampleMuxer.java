@@ -0,0 +1,56 @@
+package com.example.camerasample;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MediaMuxerによるMP4ファイルへの書き込み
+ */
+public class MediaMuxerSampleMuxer implements SampleMuxer<MediaFormat> {
+
+    private final MediaMuxer _muxer;
+
+    //書き込み用 (サンプル毎に生成しない)
+    private final MediaCodec.BufferInfo _bufferInfo = new MediaCodec.BufferInfo();
+
+    /**
+     * @param orientationDegrees 再生時の回転 (0, 90, 180, 270)
+     */
+    public MediaMuxerSampleMuxer(@NonNull File file, int orientationDegrees) throws IOException {
+        _muxer = new MediaMuxer(file.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        _muxer.setOrientationHint(orientationDegrees);
+    }
+
+    @Override
+    public int addTrack(MediaFormat format) {
+        return _muxer.addTrack(format);
+    }
+
+    @Override
+    public void start() {
+        _muxer.start();
+    }
+
+    @Override
+    public void writeSampleData(int track, ByteBuffer data, EncodedSample info) {
+        _bufferInfo.set(info.getOffset(), info.getSize(), info.getPresentationTimeUs(), info.getFlags());
+        _muxer.writeSampleData(track, data, _bufferInfo);
+    }
+
+    @Override
+    public void stop() {
+        _muxer.stop();
+    }
+
+    @Override
+    public void release() {
+        _muxer.release();
+    }
+}
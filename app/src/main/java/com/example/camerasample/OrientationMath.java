@@ -0,0 +1,43 @@
+package com.example.camerasample;
+
+/**
+ * 画面の回転とセンサの向きに関する計算
+ * 画面の回転はSurface.ROTATION_0～ROTATION_270 (0～3) で指定する。
+ */
+public final class OrientationMath {
+
+    //画像回転調整テーブル (添字は画面の回転)
+    private static final int[] ORIENTATIONS = { 90, 0, 270, 180 };
+
+    private OrientationMath() { }
+
+    /**
+     * JPEG_ORIENTATIONに指定する向き
+     */
+    public static int getJpegOrientation(int displayRotation, int sensorOrientation) {
+        return (ORIENTATIONS[displayRotation & 3] + sensorOrientation + 270) % 360;
+    }
+
+    /**
+     * 画面の回転を角度へ変換する
+     */
+    public static int toDegrees(int displayRotation) {
+        return (displayRotation & 3) * 90;
+    }
+
+    /**
+     * センサと画面の向きにより縦横の入れ替えが必要か
+     */
+    public static boolean isDimensionSwapped(int displayRotation, int sensorOrientation) {
+        switch (displayRotation) {
+            case 0:
+            case 2:
+                return sensorOrientation == 90 || sensorOrientation == 270;
+            case 1:
+            case 3:
+                return sensorOrientation == 0 || sensorOrientation == 180;
+            default:
+                throw new IllegalArgumentException("Display rotation is invalid: " + displayRotation);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.camerasample;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.ExifInterface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 撮影したJPEGを表示用のビットマップへデコードする
+ *
+ * 表示先のサイズに合わせて縮小デコードし、BitmapPoolのビットマップをinBitmapとして再利用する。
+ * 拡大表示する場合はdecodeRegion()で必要な範囲のみデコードする。
+ * 回転もプールのビットマップへ描画して行い、結果は常に再利用できるビットマップとする。
+ */
+public class PictureDecoder {
+
+    private final BitmapPool _bitmapPool;
+
+    public PictureDecoder(@NonNull BitmapPool bitmapPool) {
+        _bitmapPool = bitmapPool;
+    }
+
+    /**
+     * 表示先に収まるサイズでデコードする
+     * 表示先のサイズが0の場合は元のサイズでデコードする。
+     */
+    @Nullable
+    public Bitmap decode(@NonNull JpegFrame frame, int viewWidth, int viewHeight) throws IOException {
+
+        //サイズのみ取得
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream stream = frame.openStream()) {
+            BitmapFactory.decodeStream(stream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        //デコードサイズを計算
+        int rotation = readRotation(frame);
+        DecodeSizeCalculator.Result size = DecodeSizeCalculator.calculate(
+                options.outWidth, options.outHeight, rotation, viewWidth, viewHeight);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = size.sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        if (size.needsScale()) {
+            options.inScaled = true;
+            options.inDensity = size.density;
+            options.inTargetDensity = size.targetDensity;
+        }
+
+        Bitmap bitmap = decodeWithPool(frame, options, size.targetWidth, size.targetHeight);
+        if (bitmap == null || rotation == 0) return bitmap;
+
+        //表示サイズまで縮小した後で回転する
+        return transform(bitmap, rotation, bitmap.getWidth(), bitmap.getHeight());
+    }
+
+    /**
+     * 拡大表示のため、指定範囲のみを表示先に収まるサイズでデコードする
+     *
+     * @param region JPEGの画素の座標 (回転前) での範囲
+     */
+    @Nullable
+    public Bitmap decodeRegion(@NonNull JpegFrame frame, @NonNull Rect region, int viewWidth, int viewHeight) throws IOException {
+        if (region.isEmpty()) return null;
+
+        int rotation = readRotation(frame);
+        BitmapRegionDecoder decoder;
+        try (InputStream stream = frame.openStream()) {
+            decoder = BitmapRegionDecoder.newInstance(stream, false);
+        }
+
+        Bitmap bitmap;
+        DecodeSizeCalculator.Result size;
+        try {
+            Rect bounds = new Rect(0, 0, decoder.getWidth(), decoder.getHeight());
+            if (!bounds.intersect(region)) return null;
+
+            size = DecodeSizeCalculator.calculate(bounds.width(), bounds.height(), rotation, viewWidth, viewHeight);
+
+            //範囲のデコードではinDensityによる拡大縮小が効かないので、inSampleSizeまでを行う
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = size.sampleSize;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inMutable = true;
+            bitmap = decodeRegionWithPool(decoder, bounds, options, size.sampledWidth, size.sampledHeight);
+        }
+        finally {
+            decoder.recycle();
+        }
+        if (bitmap == null || (rotation == 0 && !size.needsScale())) return bitmap;
+
+        //表示先に収まる大きさへの縮小と回転をまとめて行う
+        return transform(bitmap, rotation, size.targetWidth, size.targetHeight);
+    }
+
+    /**
+     * 表示し終わったビットマップをプールへ戻す
+     */
+    public void recycle(@NonNull Bitmap bitmap) {
+        _bitmapPool.put(bitmap);
+    }
+
+    @Nullable
+    private Bitmap decodeWithPool(@NonNull JpegFrame frame, @NonNull BitmapFactory.Options options, int width, int height) throws IOException {
+
+        //同じサイズのビットマップがあれば再利用してデコード
+        Bitmap reusable = _bitmapPool.get(width, height);
+        options.inBitmap = reusable;
+
+        try (InputStream stream = frame.openStream()) {
+            return BitmapFactory.decodeStream(stream, null, options);
+        }
+        catch (IllegalArgumentException e) {
+            //再利用できなかった場合は新たに確保する
+            if (reusable == null) throw e;
+
+            reusable.recycle();
+            options.inBitmap = null;
+            try (InputStream stream = frame.openStream()) {
+                return BitmapFactory.decodeStream(stream, null, options);
+            }
+        }
+    }
+
+    @Nullable
+    private Bitmap decodeRegionWithPool(@NonNull BitmapRegionDecoder decoder, @NonNull Rect bounds, @NonNull BitmapFactory.Options options,
+                                        int width, int height) {
+        Bitmap reusable = _bitmapPool.get(width, height);
+        options.inBitmap = reusable;
+
+        try {
+            return decoder.decodeRegion(bounds, options);
+        }
+        catch (IllegalArgumentException e) {
+            //再利用できなかった場合は新たに確保する
+            if (reusable == null) throw e;
+
+            reusable.recycle();
+            options.inBitmap = null;
+            return decoder.decodeRegion(bounds, options);
+        }
+    }
+
+    /**
+     * 回転と拡大縮小をプールのビットマップへ描画して行う
+     * Bitmap.createBitmap()で回転した結果は変更できずプールへ戻せないため。元のビットマップはプールへ戻す。
+     *
+     * @param width 回転前の出力の幅
+     * @param height 回転前の出力の高さ
+     */
+    @NonNull
+    private Bitmap transform(@NonNull Bitmap source, int rotation, int width, int height) {
+        boolean swapped = DecodeSizeCalculator.isSwapped(rotation);
+        int outWidth = swapped ? height : width;
+        int outHeight = swapped ? width : height;
+
+        Bitmap target = _bitmapPool.get(outWidth, outHeight);
+        if (target == null) {
+            target = Bitmap.createBitmap(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+        }
+        else {
+            target.eraseColor(Color.TRANSPARENT);
+        }
+
+        //中心を原点として回転前の出力の大きさへ拡大縮小し、回転してから出力の中心へ移す
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(-source.getWidth() / 2f, -source.getHeight() / 2f);
+        matrix.postScale((float)width / source.getWidth(), (float)height / source.getHeight());
+        matrix.postRotate(rotation);
+        matrix.postTranslate(outWidth / 2f, outHeight / 2f);
+
+        Canvas canvas = new Canvas(target);
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        _bitmapPool.put(source);
+        return target;
+    }
+
+    private static int readRotation(@NonNull JpegFrame frame) throws IOException {
+        try (InputStream stream = frame.openStream()) {
+            ExifInterface exif = new ExifInterface(stream);
+            switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        }
+    }
+}
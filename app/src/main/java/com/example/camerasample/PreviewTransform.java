@@ -0,0 +1,198 @@
+package com.example.camerasample;
+
+/**
+ * プレビュー表示の変換行列の計算
+ *
+ * android.graphics.Matrixと同じ並びのfloat[9]
+ * (SCALE_X, SKEW_X, TRANS_X, SKEW_Y, SCALE_Y, TRANS_Y, PERSP_0, PERSP_1, PERSP_2) で計算する。
+ * 結果はMatrix.setValues()でそのまま設定できる。
+ */
+public final class PreviewTransform {
+
+    public static final int MSCALE_X = 0;
+    public static final int MSKEW_X = 1;
+    public static final int MTRANS_X = 2;
+    public static final int MSKEW_Y = 3;
+    public static final int MSCALE_Y = 4;
+    public static final int MTRANS_Y = 5;
+    public static final int MPERSP_0 = 6;
+    public static final int MPERSP_1 = 7;
+    public static final int MPERSP_2 = 8;
+
+    //Skiaが三角関数の結果を0とみなす閾値
+    private static final float NEARLY_ZERO = 1.0f / (1 << 12);
+
+    private PreviewTransform() { }
+
+    /**
+     * TextureViewに設定する変換行列を計算する
+     *
+     * @param displayRotation 画面の回転 (Surface.ROTATION_*)
+     * @param out 結果を書き込む配列 (9要素)
+     */
+    public static void compute(int viewWidth, int viewHeight, int previewWidth, int previewHeight,
+                               int sensorOrientation, int displayRotation, float[] out) {
+        compute(viewWidth, viewHeight, previewWidth, previewHeight, sensorOrientation, displayRotation, true, out);
+    }
+
+    /**
+     * TextureViewに設定する変換行列を計算する
+     *
+     * @param displayRotation 画面の回転 (Surface.ROTATION_*)
+     * @param mirror 鏡面反転するか
+     * @param out 結果を書き込む配列 (9要素)
+     */
+    public static void compute(int viewWidth, int viewHeight, int previewWidth, int previewHeight,
+                               int sensorOrientation, int displayRotation, boolean mirror, float[] out) {
+
+        float bufferWidth;
+        float bufferHeight;
+        if (sensorOrientation == 0 || sensorOrientation == 180) {
+            bufferWidth = previewWidth;
+            bufferHeight = previewHeight;
+        }
+        else {
+            bufferWidth = previewHeight;
+            bufferHeight = previewWidth;
+        }
+
+        float centerX = viewWidth / 2.0f;
+        float centerY = viewHeight / 2.0f;
+
+        setIdentity(out);
+
+        //鏡面反転
+        if (mirror) {
+            preScale(out, -1.0f, 1.0f, centerX, centerY);
+        }
+
+        //画面の向きに応じた表示調整
+        //(setRectToRectは行列を置き換えるので、90度/270度では鏡面反転は残らない)
+        if (displayRotation == 1 || displayRotation == 3) {
+
+            //バッファを表示先の中心へ移動して表示先から写す
+            float bufferLeft = centerX - bufferWidth / 2.0f;
+            float bufferTop = centerY - bufferHeight / 2.0f;
+            setRectToRect(out, 0, 0, viewWidth, viewHeight, bufferLeft, bufferTop, bufferLeft + bufferWidth, bufferTop + bufferHeight);
+
+            float viewLongEdge = viewWidth > viewHeight ? viewWidth : viewHeight;
+            float viewShortEdge = viewWidth <= viewHeight ? viewWidth : viewHeight;
+            float scale = Math.max(viewShortEdge / previewHeight, viewLongEdge / previewWidth);
+            postScale(out, scale, scale, centerX, centerY);
+
+            postRotate(out, 90 * (displayRotation - 2), centerX, centerY);
+        }
+        else if (displayRotation == 2) {
+            postRotate(out, 180, centerX, centerY);
+        }
+    }
+
+    public static void setIdentity(float[] m) {
+        m[MSCALE_X] = 1; m[MSKEW_X] = 0; m[MTRANS_X] = 0;
+        m[MSKEW_Y] = 0; m[MSCALE_Y] = 1; m[MTRANS_Y] = 0;
+        m[MPERSP_0] = 0; m[MPERSP_1] = 0; m[MPERSP_2] = 1;
+    }
+
+    /**
+     * Matrix.preScale(sx, sy, px, py) (m = m * S)
+     */
+    public static void preScale(float[] m, float sx, float sy, float px, float py) {
+        //S = T(px, py) * scale * T(-px, -py)
+        float tx = px - sx * px;
+        float ty = py - sy * py;
+        concatAffine(m, sx, 0, tx, 0, sy, ty, true);
+    }
+
+    /**
+     * Matrix.postScale(sx, sy, px, py) (m = S * m)
+     */
+    public static void postScale(float[] m, float sx, float sy, float px, float py) {
+        float tx = px - sx * px;
+        float ty = py - sy * py;
+        concatAffine(m, sx, 0, tx, 0, sy, ty, false);
+    }
+
+    /**
+     * Matrix.postRotate(degrees, px, py) (m = R * m)
+     */
+    public static void postRotate(float[] m, float degrees, float px, float py) {
+        double radians = Math.toRadians(degrees);
+        float sin = snapToZero((float)Math.sin(radians));
+        float cos = snapToZero((float)Math.cos(radians));
+
+        float tx = px - cos * px + sin * py;
+        float ty = py - sin * px - cos * py;
+        concatAffine(m, cos, -sin, tx, sin, cos, ty, false);
+    }
+
+    /**
+     * Matrix.setRectToRect(src, dst, ScaleToFit.FILL)
+     */
+    public static void setRectToRect(float[] m,
+                                     float srcLeft, float srcTop, float srcRight, float srcBottom,
+                                     float dstLeft, float dstTop, float dstRight, float dstBottom) {
+        float srcWidth = srcRight - srcLeft;
+        float srcHeight = srcBottom - srcTop;
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            setIdentity(m);
+            m[MSCALE_X] = 0;
+            m[MSCALE_Y] = 0;
+            return;
+        }
+
+        float sx = (dstRight - dstLeft) / srcWidth;
+        float sy = (dstBottom - dstTop) / srcHeight;
+
+        setIdentity(m);
+        m[MSCALE_X] = sx;
+        m[MSCALE_Y] = sy;
+        m[MTRANS_X] = dstLeft - srcLeft * sx;
+        m[MTRANS_Y] = dstTop - srcTop * sy;
+    }
+
+    /**
+     * 座標を変換する (points は x, y の並び)
+     */
+    public static void mapPoints(float[] m, float[] points) {
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            float x = points[i];
+            float y = points[i + 1];
+            float w = m[MPERSP_0] * x + m[MPERSP_1] * y + m[MPERSP_2];
+            points[i] = (m[MSCALE_X] * x + m[MSKEW_X] * y + m[MTRANS_X]) / w;
+            points[i + 1] = (m[MSKEW_Y] * x + m[MSCALE_Y] * y + m[MTRANS_Y]) / w;
+        }
+    }
+
+    /**
+     * アフィン行列Aを掛ける (pre: m = m * A, post: m = A * m)
+     */
+    private static void concatAffine(float[] m, float a, float b, float c, float d, float e, float f, boolean pre) {
+        float m0 = m[MSCALE_X], m1 = m[MSKEW_X], m2 = m[MTRANS_X];
+        float m3 = m[MSKEW_Y], m4 = m[MSCALE_Y], m5 = m[MTRANS_Y];
+        float m6 = m[MPERSP_0], m7 = m[MPERSP_1], m8 = m[MPERSP_2];
+
+        if (pre) {
+            m[MSCALE_X] = m0 * a + m1 * d;
+            m[MSKEW_X] = m0 * b + m1 * e;
+            m[MTRANS_X] = m0 * c + m1 * f + m2;
+            m[MSKEW_Y] = m3 * a + m4 * d;
+            m[MSCALE_Y] = m3 * b + m4 * e;
+            m[MTRANS_Y] = m3 * c + m4 * f + m5;
+            m[MPERSP_0] = m6 * a + m7 * d;
+            m[MPERSP_1] = m6 * b + m7 * e;
+            m[MPERSP_2] = m6 * c + m7 * f + m8;
+        }
+        else {
+            m[MSCALE_X] = a * m0 + b * m3 + c * m6;
+            m[MSKEW_X] = a * m1 + b * m4 + c * m7;
+            m[MTRANS_X] = a * m2 + b * m5 + c * m8;
+            m[MSKEW_Y] = d * m0 + e * m3 + f * m6;
+            m[MSCALE_Y] = d * m1 + e * m4 + f * m7;
+            m[MTRANS_Y] = d * m2 + e * m5 + f * m8;
+        }
+    }
+
+    private static float snapToZero(float value) {
+        return Math.abs(value) <= NEARLY_ZERO ? 0 : value;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.camerasample;
+
+/**
+ * プレビュー表示の変換行列の保持
+ *
+ * (画面の回転, 表示先のサイズ, プレビューのサイズ, センサの向き, 鏡面反転) の組毎に
+ * PreviewTransform.compute()の結果を保持し、同じ組では計算し直さない。
+ * 組の数は画面の回転と表示先のサイズの変化程度なので、少数を最近使った順に持つ。
+ * 取得した配列は保持しているものなので書き換えてはならない。
+ * 同じ配列が返れば結果も同じなので、呼び出し元は参照の比較で設定済みか判定できる。
+ * UIスレッドから呼び出すことを想定し、同期はしない。
+ */
+public class PreviewTransformCache {
+
+    //保持する組の数 (4方向 x 縦横のサイズ)
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private static class Entry {
+        int viewWidth;
+        int viewHeight;
+        int previewWidth;
+        int previewHeight;
+        int sensorOrientation;
+        int displayRotation;
+        boolean mirror;
+        final float[] values = new float[9];
+
+        boolean matches(int viewWidth, int viewHeight, int previewWidth, int previewHeight,
+                        int sensorOrientation, int displayRotation, boolean mirror) {
+            return this.viewWidth == viewWidth
+                    && this.viewHeight == viewHeight
+                    && this.previewWidth == previewWidth
+                    && this.previewHeight == previewHeight
+                    && this.sensorOrientation == sensorOrientation
+                    && this.displayRotation == displayRotation
+                    && this.mirror == mirror;
+        }
+    }
+
+    //最近使った順
+    private final Entry[] _entries;
+    private int _size;
+
+    private int _hits;
+    private int _misses;
+
+    public PreviewTransformCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PreviewTransformCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+        _entries = new Entry[capacity];
+    }
+
+    /**
+     * 変換行列を取得する
+     * 保持していなければ計算して保持する。
+     */
+    public float[] get(int viewWidth, int viewHeight, int previewWidth, int previewHeight,
+                       int sensorOrientation, int displayRotation, boolean mirror) {
+        for (int i = 0; i < _size; i++) {
+            Entry entry = _entries[i];
+            if (entry.matches(viewWidth, viewHeight, previewWidth, previewHeight, sensorOrientation, displayRotation, mirror)) {
+                _hits++;
+                moveToFront(i);
+                return entry.values;
+            }
+        }
+
+        //空きが無ければ最も古いものを捨てる
+        //(配列は使い回さないので、同じ配列であれば同じ組の結果とみなせる)
+        _misses++;
+        Entry entry = new Entry();
+        if (_size < _entries.length) {
+            _size++;
+        }
+        _entries[_size - 1] = entry;
+        entry.viewWidth = viewWidth;
+        entry.viewHeight = viewHeight;
+        entry.previewWidth = previewWidth;
+        entry.previewHeight = previewHeight;
+        entry.sensorOrientation = sensorOrientation;
+        entry.displayRotation = displayRotation;
+        entry.mirror = mirror;
+        PreviewTransform.compute(viewWidth, viewHeight, previewWidth, previewHeight,
+                sensorOrientation, displayRotation, mirror, entry.values);
+        moveToFront(_size - 1);
+        return entry.values;
+    }
+
+    public void clear() {
+        for (int i = 0; i < _size; i++) {
+            _entries[i] = null;
+        }
+        _size = 0;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public int getHits() {
+        return _hits;
+    }
+
+    public int getMisses() {
+        return _misses;
+    }
+
+    private void moveToFront(int index) {
+        if (index == 0) return;
+
+        Entry entry = _entries[index];
+        System.arraycopy(_entries, 0, _entries, 1, index);
+        _entries[0] = entry;
+    }
+}
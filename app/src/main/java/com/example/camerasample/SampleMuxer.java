@@ -0,0 +1,29 @@
+package com.example.camerasample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * エンコード済みのサンプルをファイルへ書き込む (MediaMuxerを抽象化したもの)
+ *
+ * @param <F> 出力形式 (MediaFormat)
+ */
+public interface SampleMuxer<F> {
+
+    /**
+     * 分割したファイル毎に生成する
+     */
+    interface Factory<F> {
+        SampleMuxer<F> create(int segmentIndex) throws IOException;
+    }
+
+    int addTrack(F format);
+
+    void start();
+
+    void writeSampleData(int track, ByteBuffer data, EncodedSample info);
+
+    void stop();
+
+    void release();
+}
@@ -0,0 +1,159 @@
+package com.example.camerasample;
+
+import java.io.IOException;
+
+/**
+ * サンプルを分割したファイルへ書き込む
+ *
+ * 各ファイルがキーフレームから始まるよう、最初のキーフレームまでは書き込まず、
+ * 長さか大きさが上限に達した後の最初のキーフレームで次のファイルへ切り替える。
+ * Muxerのスレッドからのみ呼び出す (出力形式の設定は取り出しスレッドから行える)。
+ *
+ * @param <F> 出力形式 (MediaFormat)
+ */
+public class SegmentedMuxer<F> {
+
+    private final SampleMuxer.Factory<F> _factory;
+    private final long _segmentDurationUs;
+    private final long _maxSegmentBytes;
+
+    private volatile F _format;
+
+    private SampleMuxer<F> _muxer;
+    private int _track;
+    private int _segmentIndex;
+    private long _segmentStartUs;
+    private long _segmentBytes;
+
+    private int _finishedSegments;
+    private long _writtenSamples;
+    private long _skippedSamples;
+
+    /**
+     * @param segmentDurationUs ファイルを分割する長さ (0は分割しない)
+     * @param maxSegmentBytes ファイルを分割する大きさ (0は分割しない)
+     */
+    public SegmentedMuxer(SampleMuxer.Factory<F> factory, long segmentDurationUs, long maxSegmentBytes) {
+        _factory = factory;
+        _segmentDurationUs = segmentDurationUs;
+        _maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * 出力形式を設定する (次のファイルから使われる)
+     */
+    public void setFormat(F format) {
+        _format = format;
+    }
+
+    /**
+     * サンプルを書き込む
+     * sampleの内容は位置0から書き込む。
+     */
+    public void write(EncodedSample sample) throws IOException {
+        if (sample.getSize() == 0) return;
+
+        boolean keyFrame = sample.isKeyFrame();
+        if (_muxer == null) {
+            //キーフレーム以外からは始めない
+            if (!keyFrame) {
+                _skippedSamples++;
+                return;
+            }
+            open(sample.getPresentationTimeUs());
+        }
+        else if (keyFrame && isSegmentFull(sample.getPresentationTimeUs())) {
+            close();
+            open(sample.getPresentationTimeUs());
+        }
+
+        _muxer.writeSampleData(_track, sample.getData(), sample);
+        _segmentBytes += sample.getSize();
+        _writtenSamples++;
+    }
+
+    /**
+     * 書き込み中のファイルを閉じる
+     */
+    public void finish() {
+        if (_muxer != null) {
+            close();
+        }
+    }
+
+    /**
+     * 書き込み中のファイルがあれば解放する (書き込みに失敗した場合や中断した場合)
+     * 閉じられなくてもMuxerは解放する。
+     */
+    public void release() {
+        SampleMuxer<F> muxer = _muxer;
+        if (muxer == null) return;
+
+        _muxer = null;
+        try {
+            muxer.stop();
+        }
+        catch (RuntimeException e) {
+            //失敗したMuxerはstop()でも例外を投げる
+            e.printStackTrace();
+        }
+        finally {
+            muxer.release();
+        }
+    }
+
+    private boolean isSegmentFull(long presentationTimeUs) {
+        if (_segmentDurationUs > 0 && presentationTimeUs - _segmentStartUs >= _segmentDurationUs) return true;
+        return _maxSegmentBytes > 0 && _segmentBytes >= _maxSegmentBytes;
+    }
+
+    private void open(long presentationTimeUs) throws IOException {
+        F format = _format;
+        if (format == null) throw new IllegalStateException("Output format is not set");
+
+        SampleMuxer<F> muxer = _factory.create(_segmentIndex);
+        try {
+            _track = muxer.addTrack(format);
+            muxer.start();
+        }
+        catch (RuntimeException e) {
+            muxer.release();
+            throw e;
+        }
+
+        _muxer = muxer;
+        _segmentIndex++;
+        _segmentStartUs = presentationTimeUs;
+        _segmentBytes = 0;
+    }
+
+    private void close() {
+        SampleMuxer<F> muxer = _muxer;
+        _muxer = null;
+        try {
+            muxer.stop();
+        }
+        finally {
+            muxer.release();
+        }
+        _finishedSegments++;
+    }
+
+    /**
+     * 書き終えたファイル数
+     */
+    public int getFinishedSegments() {
+        return _finishedSegments;
+    }
+
+    public long getWrittenSamples() {
+        return _writtenSamples;
+    }
+
+    /**
+     * 最初のキーフレームより前で書き込まなかったサンプル数
+     */
+    public long getSkippedSamples() {
+        return _skippedSamples;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.camerasample;
+
+/**
+ * カメラ起動の段取り
+ *
+ * カメラを開く処理、ImageReaderなど出力の準備、プレビューのSurfaceの準備は互いに待たずに並行して進める。
+ * それぞれの完了を通知すると、揃った時点で次に行う処理を返す。
+ * ・カメラが開き出力が揃ったら、プレビューのSurfaceを待たずにセッションを作成する (SurfaceはOutputConfigurationで後から渡す)
+ * ・セッションが構成されSurfaceが揃ったら、プレビューを開始する
+ * 各処理は1回の起動につき1度だけ返す。通知はどのスレッドから行ってもよい。
+ * 通知にはCameraLifecycleControllerの世代を添える。閉じた後に届いた古い世代の通知
+ * (閉じる要求と前後して開き終わったカメラなど) は、次の起動の準備として数えない。
+ */
+public class StartupCoordinator {
+
+    //次に行う処理 (ビットの組み合わせ)
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_CREATE_SESSION = 1;
+    public static final int ACTION_START_PREVIEW = 1 << 1;
+
+    //揃った準備
+    private static final int CAMERA_OPENED = 1;
+    private static final int OUTPUTS_READY = 1 << 1;
+    private static final int SURFACE_READY = 1 << 2;
+    private static final int SESSION_CONFIGURED = 1 << 3;
+
+    private int _ready;
+    private int _issued;
+
+    //最後に閉じた世代 (これより古い世代の通知は無視する)
+    private int _generation;
+
+    public synchronized int onCameraOpened(int generation) {
+        return update(generation, CAMERA_OPENED);
+    }
+
+    public synchronized int onOutputsReady(int generation) {
+        return update(generation, OUTPUTS_READY);
+    }
+
+    public synchronized int onSurfaceReady(int generation) {
+        return update(generation, SURFACE_READY);
+    }
+
+    public synchronized int onSessionConfigured(int generation) {
+        return update(generation, SESSION_CONFIGURED);
+    }
+
+    /**
+     * カメラを閉じた
+     *
+     * @param generation 閉じる要求の世代 (CameraLifecycleController.close()の戻り値)
+     */
+    public synchronized void reset(int generation) {
+        _generation = generation;
+        _ready = 0;
+        _issued = 0;
+    }
+
+    private int update(int generation, int ready) {
+        if (generation < _generation) return ACTION_NONE;
+
+        _ready |= ready;
+
+        int actions = ACTION_NONE;
+        if (has(CAMERA_OPENED | OUTPUTS_READY)) {
+            actions |= ACTION_CREATE_SESSION;
+        }
+        if (has(SESSION_CONFIGURED | SURFACE_READY)) {
+            actions |= ACTION_START_PREVIEW;
+        }
+
+        //返すのは1度だけ
+        actions &= ~_issued;
+        _issued |= actions;
+        return actions;
+    }
+
+    private boolean has(int ready) {
+        return (_ready & ready) == ready;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.camerasample;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * カメラ起動の経過時間の記録
+ *
+ * begin()からの経過時間を節目毎に記録する。節目は1回の起動につき最初の1度だけ記録する。
+ * 直近の起動の値と、これまでの起動の分布(LatencyHistogram)を持つ。
+ * 最初のプレビューのフレームまでを1つの区間としてTracerへ通知する。
+ */
+public class StartupTrace {
+
+    //節目
+    public static final int CONFIG_READY = 0;           //カメラの設定の取得
+    public static final int OPEN_REQUESTED = 1;         //openCamera()の呼び出し
+    public static final int OUTPUTS_READY = 2;          //ImageReaderの準備
+    public static final int CAMERA_OPENED = 3;          //カメラが開いた
+    public static final int SURFACE_READY = 4;          //プレビューのSurfaceの準備
+    public static final int SESSION_CONFIGURED = 5;     //セッションの構成
+    public static final int FIRST_FRAME = 6;            //プレビューの最初のフレーム
+    public static final int MILESTONE_COUNT = 7;
+
+    private static final String[] MILESTONE_NAMES = {
+            "config_ready",
+            "open_requested",
+            "outputs_ready",
+            "camera_opened",
+            "surface_ready",
+            "session_configured",
+            "first_frame",
+    };
+
+    private static final String SECTION_NAME = "camera_startup";
+
+    private final LatencyRecorder.Clock _clock;
+    private final LatencyRecorder.Tracer _tracer;
+    private final LatencyHistogram[] _histograms = new LatencyHistogram[MILESTONE_COUNT];
+
+    //直近の起動 (未記録は-1)
+    private final long[] _elapsed = new long[MILESTONE_COUNT];
+    private long _beginTime;
+    private boolean _active;
+    private int _count;
+
+    public StartupTrace(LatencyRecorder.Clock clock, LatencyRecorder.Tracer tracer) {
+        _clock = clock;
+        _tracer = tracer;
+        for (int i = 0; i < MILESTONE_COUNT; i++) {
+            _histograms[i] = new LatencyHistogram();
+        }
+        Arrays.fill(_elapsed, -1);
+    }
+
+    /**
+     * 起動の開始
+     * 前回の起動が最初のフレームまで達していなければ打ち切る。
+     */
+    public synchronized void begin() {
+        if (_active) {
+            _tracer.end(SECTION_NAME, _count);
+        }
+
+        _count++;
+        _active = true;
+        _beginTime = _clock.nanoTime();
+        Arrays.fill(_elapsed, -1);
+        _tracer.begin(SECTION_NAME, _count);
+    }
+
+    /**
+     * 節目に達した
+     * 開始からの経過時間を返す。起動中でないか、記録済みの場合は-1を返す。
+     */
+    public synchronized long mark(int milestone) {
+        if (!_active || _elapsed[milestone] >= 0) return -1;
+
+        long elapsed = _clock.nanoTime() - _beginTime;
+        _elapsed[milestone] = elapsed;
+        _histograms[milestone].record(elapsed);
+
+        if (milestone == FIRST_FRAME) {
+            _active = false;
+            _tracer.end(SECTION_NAME, _count);
+        }
+        return elapsed;
+    }
+
+    public synchronized boolean isActive() {
+        return _active;
+    }
+
+    /**
+     * 直近の起動での経過時間 (未記録は-1)
+     */
+    public synchronized long getElapsed(int milestone) {
+        return _elapsed[milestone];
+    }
+
+    public LatencyHistogram.Snapshot snapshot(int milestone) {
+        return _histograms[milestone].snapshot();
+    }
+
+    public static String getMilestoneName(int milestone) {
+        return MILESTONE_NAMES[milestone];
+    }
+
+    /**
+     * 直近の起動と、これまでの中央値・p95をミリ秒で出力する
+     */
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "Startup (ms, %d runs):", _count));
+        for (int milestone = 0; milestone < MILESTONE_COUNT; milestone++) {
+            LatencyHistogram.Snapshot snapshot = snapshot(milestone);
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "  %-20s last=%8s p50=%8.2f p95=%8.2f",
+                    MILESTONE_NAMES[milestone],
+                    _elapsed[milestone] >= 0 ? String.format(Locale.US, "%.2f", _elapsed[milestone] / 1e6) : "-",
+                    snapshot.getValueAtPercentile(50) / 1e6,
+                    snapshot.getValueAtPercentile(95) / 1e6));
+        }
+        writer.flush();
+    }
+}
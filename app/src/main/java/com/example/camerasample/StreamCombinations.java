@@ -0,0 +1,176 @@
+package com.example.camerasample;
+
+/**
+ * ハードウェアレベル毎に保証されている出力の組み合わせ
+ *
+ * CameraDevice.createCaptureSession()の説明にある表を、形式とサイズの区分の組で持つ。
+ * 表にある区分より小さいサイズも保証されているものとして扱う。
+ * 組み合わせの一部だけを使う場合 (出力が表より少ない場合) も保証されているものとする。
+ */
+public final class StreamCombinations {
+
+    //INFO_SUPPORTED_HARDWARE_LEVEL (CameraMetadataと同じ値)
+    public static final int HARDWARE_LEVEL_LIMITED = 0;
+    public static final int HARDWARE_LEVEL_FULL = 1;
+    public static final int HARDWARE_LEVEL_LEGACY = 2;
+    public static final int HARDWARE_LEVEL_3 = 3;
+    public static final int HARDWARE_LEVEL_EXTERNAL = 4;
+
+    //出力形式
+    public static final int FORMAT_PRIV = 0;    //SurfaceTextureなど
+    public static final int FORMAT_YUV = 1;     //YUV_420_888
+    public static final int FORMAT_JPEG = 2;
+    public static final int FORMAT_RAW = 3;     //RAW_SENSOR
+
+    //サイズの区分 (小さい順)
+    public static final int SIZE_VGA = 0;       //640x480
+    public static final int SIZE_PREVIEW = 1;   //画面サイズと1920x1080の小さい方
+    public static final int SIZE_RECORD = 2;    //録画の最大サイズ
+    public static final int SIZE_MAXIMUM = 3;   //その形式の最大サイズ
+
+    public static final FrameSize VGA = new FrameSize(640, 480);
+
+    //各行は形式とサイズの区分の組の並び
+    private static final int[][] LEGACY_COMBINATIONS = {
+            { FORMAT_PRIV, SIZE_MAXIMUM },
+            { FORMAT_JPEG, SIZE_MAXIMUM },
+            { FORMAT_YUV, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM },
+            { FORMAT_YUV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_PREVIEW },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM },
+    };
+
+    private static final int[][] LIMITED_COMBINATIONS = {
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_RECORD },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_RECORD },
+            { FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_RECORD },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_RECORD, FORMAT_JPEG, SIZE_RECORD },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_RECORD, FORMAT_JPEG, SIZE_RECORD },
+            { FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM },
+    };
+
+    private static final int[][] FULL_COMBINATIONS = {
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_MAXIMUM },
+            { FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM },
+            { FORMAT_YUV, SIZE_VGA, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_MAXIMUM },
+            { FORMAT_YUV, SIZE_VGA, FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_MAXIMUM },
+    };
+
+    private static final int[][] LEVEL_3_COMBINATIONS = {
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_VGA, FORMAT_YUV, SIZE_MAXIMUM, FORMAT_RAW, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_VGA, FORMAT_JPEG, SIZE_MAXIMUM, FORMAT_RAW, SIZE_MAXIMUM },
+    };
+
+    //RAWの機能がある場合に加わる組み合わせ (ハードウェアレベルによらない)
+    private static final int[][] RAW_COMBINATIONS = {
+            { FORMAT_RAW, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_RAW, SIZE_MAXIMUM },
+            { FORMAT_YUV, SIZE_PREVIEW, FORMAT_RAW, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_RAW, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_RAW, SIZE_MAXIMUM },
+            { FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_RAW, SIZE_MAXIMUM },
+            { FORMAT_PRIV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM, FORMAT_RAW, SIZE_MAXIMUM },
+            { FORMAT_YUV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM, FORMAT_RAW, SIZE_MAXIMUM },
+    };
+
+    //レベルの順位毎の表 (上位は下位の表も使える)
+    private static final int[][][] COMBINATIONS_BY_RANK = {
+            LEGACY_COMBINATIONS,
+            LIMITED_COMBINATIONS,
+            FULL_COMBINATIONS,
+            LEVEL_3_COMBINATIONS,
+    };
+
+    private StreamCombinations() { }
+
+    /**
+     * ハードウェアレベルの順位 (LEGACY < LIMITED < FULL < LEVEL_3)
+     * EXTERNALはLIMITEDの一部を満たさないことがあるので、確実なLEGACYとして扱う。
+     */
+    public static int getRank(int hardwareLevel) {
+        switch (hardwareLevel) {
+            case HARDWARE_LEVEL_LIMITED:
+                return 1;
+            case HARDWARE_LEVEL_FULL:
+                return 2;
+            case HARDWARE_LEVEL_3:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * サイズの区分を求める
+     * 区分の上限のサイズは縦横ともセンサの向き (横長) で渡す。
+     */
+    public static int classify(FrameSize size, FrameSize previewBound, FrameSize recordBound) {
+        if (fits(size, VGA)) return SIZE_VGA;
+        if (fits(size, previewBound)) return SIZE_PREVIEW;
+        if (fits(size, recordBound)) return SIZE_RECORD;
+        return SIZE_MAXIMUM;
+    }
+
+    /**
+     * 出力の組み合わせが保証されているか
+     *
+     * @param formats 出力毎の形式 (FORMAT_*)
+     * @param sizeClasses 出力毎のサイズの区分 (SIZE_*)
+     */
+    public static boolean isGuaranteed(int hardwareLevel, int[] formats, int[] sizeClasses) {
+        return isGuaranteed(hardwareLevel, false, formats, sizeClasses);
+    }
+
+    /**
+     * RAWの機能 (REQUEST_AVAILABLE_CAPABILITIES_RAW) の表も含めて、出力の組み合わせが保証されているか
+     */
+    public static boolean isGuaranteed(int hardwareLevel, boolean rawCapable, int[] formats, int[] sizeClasses) {
+        if (formats.length != sizeClasses.length) {
+            throw new IllegalArgumentException("formats and sizeClasses differ in length");
+        }
+        if (formats.length == 0) return true;
+
+        int rank = getRank(hardwareLevel);
+        for (int r = 0; r <= rank; r++) {
+            for (int[] combination : COMBINATIONS_BY_RANK[r]) {
+                if (formats.length <= combination.length / 2 && assign(combination, formats, sizeClasses, 0, 0)) {
+                    return true;
+                }
+            }
+        }
+        if (rawCapable) {
+            for (int[] combination : RAW_COMBINATIONS) {
+                if (formats.length <= combination.length / 2 && assign(combination, formats, sizeClasses, 0, 0)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 出力を1つずつ表の空いている枠へ割り当てる (usedは使用済みの枠のビット)
+     */
+    private static boolean assign(int[] combination, int[] formats, int[] sizeClasses, int stream, int used) {
+        if (stream == formats.length) return true;
+
+        for (int slot = 0; slot < combination.length / 2; slot++) {
+            if ((used & (1 << slot)) != 0) continue;
+            if (combination[slot * 2] != formats[stream]) continue;
+            if (combination[slot * 2 + 1] < sizeClasses[stream]) continue;
+
+            if (assign(combination, formats, sizeClasses, stream + 1, used | (1 << slot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean fits(FrameSize size, FrameSize bound) {
+        return bound != null && size.getWidth() <= bound.getWidth() && size.getHeight() <= bound.getHeight();
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.camerasample;
+
+/**
+ * プレビュー・ゼロシャッターラグ・解析・JPEGの出力サイズの決定
+ *
+ * 出力毎に候補のサイズを採点し、最も費用の小さいものを選ぶ。費用は
+ * ・縦横比の誤差 (許容範囲を超えるものは、許容範囲内の候補が無い場合だけ使う)
+ * ・画素数と必要な画素数の差 (不足は拡大でぼやけるので、超過より重くみる)
+ * ・最小フレーム間隔が目標のフレームレートを満たすか (満たさないものは、満たす候補が無い場合だけ使う)
+ * で求める。JPEGはストール時間の上限を満たす最大のものを選ぶ。
+ * 繰り返し要求のフレーム間隔は出力の最小フレーム間隔の最大値になるので、
+ * 解析の出力を加えると目標を満たさなくなる場合は解析を外す。
+ * 最後に組み合わせがハードウェアレベルで保証されているかをStreamCombinationsで判定し、
+ * 保証されなければ解析、ゼロシャッターラグの順に外す (RAWを要求した場合はRAWの機能の表も使い、RAWは残す)。
+ */
+public class StreamNegotiator {
+
+    /**
+     * 要求 (サイズは縦横ともセンサの向き、横長で渡す)
+     */
+    public static final class Request {
+        final int viewWidth;
+        final int viewHeight;
+        final FrameSize previewBound;
+        int targetFps = 30;
+        boolean zsl;
+        FrameSize analysisBound;
+        long maxStillStallNanos;
+        FrameSize recordBound = DEFAULT_RECORD_BOUND;
+        boolean raw;
+
+        /**
+         * @param previewBound プレビューの上限 (画面サイズと1920x1080の小さい方)
+         */
+        public Request(int viewWidth, int viewHeight, FrameSize previewBound) {
+            this.viewWidth = viewWidth;
+            this.viewHeight = viewHeight;
+            this.previewBound = previewBound;
+        }
+
+        /**
+         * 維持するプレビューのフレームレート (既定は30)
+         */
+        public Request setTargetFps(int targetFps) {
+            if (targetFps <= 0) throw new IllegalArgumentException("targetFps must be positive: " + targetFps);
+
+            this.targetFps = targetFps;
+            return this;
+        }
+
+        /**
+         * プレビューと同じ大きさのYUVの出力を加える
+         */
+        public Request setZsl(boolean zsl) {
+            this.zsl = zsl;
+            return this;
+        }
+
+        /**
+         * 解析用のYUVの出力を加える (nullは加えない)
+         */
+        public Request setAnalysisBound(FrameSize analysisBound) {
+            this.analysisBound = analysisBound;
+            return this;
+        }
+
+        /**
+         * JPEGのストール時間の上限 (0は制限しない)
+         */
+        public Request setMaxStillStallNanos(long maxStillStallNanos) {
+            this.maxStillStallNanos = maxStillStallNanos;
+            return this;
+        }
+
+        /**
+         * 録画の最大サイズ (保証された組み合わせの判定に使う)
+         */
+        public Request setRecordBound(FrameSize recordBound) {
+            this.recordBound = recordBound;
+            return this;
+        }
+
+        /**
+         * 最大のRAW_SENSORの出力を加える (RAWの機能が無ければ加えない)
+         */
+        public Request setRaw(boolean raw) {
+            this.raw = raw;
+            return this;
+        }
+    }
+
+    /**
+     * 決定した出力サイズ
+     */
+    public static final class Result {
+        private final FrameSize _previewSize;
+        private final FrameSize _zslSize;
+        private final FrameSize _analysisSize;
+        private final FrameSize _jpegSize;
+        private final FrameSize _rawSize;
+        private final long _frameDurationNanos;
+        private final long _stillStallNanos;
+        private final boolean _guaranteed;
+        private final double _cost;
+
+        Result(FrameSize previewSize, FrameSize zslSize, FrameSize analysisSize, FrameSize jpegSize, FrameSize rawSize,
+               long frameDurationNanos, long stillStallNanos, boolean guaranteed, double cost) {
+            _previewSize = previewSize;
+            _zslSize = zslSize;
+            _analysisSize = analysisSize;
+            _jpegSize = jpegSize;
+            _rawSize = rawSize;
+            _frameDurationNanos = frameDurationNanos;
+            _stillStallNanos = stillStallNanos;
+            _guaranteed = guaranteed;
+            _cost = cost;
+        }
+
+        public FrameSize getPreviewSize() {
+            return _previewSize;
+        }
+
+        /**
+         * ゼロシャッターラグのYUVのサイズ (要求していないか、保証された組み合わせにするため外した場合はnull)
+         */
+        public FrameSize getZslSize() {
+            return _zslSize;
+        }
+
+        /**
+         * 解析のYUVのサイズ (要求していないか、フレームレートを満たせないか保証された組み合わせにするため外した場合はnull)
+         */
+        public FrameSize getAnalysisSize() {
+            return _analysisSize;
+        }
+
+        public FrameSize getJpegSize() {
+            return _jpegSize;
+        }
+
+        /**
+         * RAW_SENSORのサイズ (要求していないか、RAWの機能が無ければnull)
+         */
+        public FrameSize getRawSize() {
+            return _rawSize;
+        }
+
+        /**
+         * 繰り返し要求の最小フレーム間隔 (ナノ秒、不明は0)
+         */
+        public long getFrameDurationNanos() {
+            return _frameDurationNanos;
+        }
+
+        /**
+         * 維持できるフレームレート (不明は0)
+         */
+        public double getSustainedFps() {
+            return _frameDurationNanos > 0 ? 1e9 / _frameDurationNanos : 0;
+        }
+
+        /**
+         * 撮影時のJPEGのストール時間 (ナノ秒、不明は0)
+         */
+        public long getStillStallNanos() {
+            return _stillStallNanos;
+        }
+
+        /**
+         * 組み合わせがハードウェアレベルで保証されているか
+         */
+        public boolean isGuaranteed() {
+            return _guaranteed;
+        }
+
+        public double getCost() {
+            return _cost;
+        }
+
+        @Override
+        public String toString() {
+            return "preview " + _previewSize + ", zsl " + _zslSize + ", analysis " + _analysisSize
+                    + ", jpeg " + _jpegSize + (_rawSize != null ? ", raw " + _rawSize : "") + ", frame " + _frameDurationNanos / 1000 + "us"
+                    + ", stall " + _stillStallNanos / 1000 + "us" + (_guaranteed ? "" : ", not guaranteed");
+        }
+    }
+
+    //録画の最大サイズの既定値 (CamcorderProfileを調べない場合)
+    public static final FrameSize DEFAULT_RECORD_BOUND = new FrameSize(1920, 1080);
+
+    //縦横比の許容誤差の既定値 (比の対数の差、約2%)
+    //(4208x3120のように4:3から僅かにずれたセンサでも1440x1080などを同じ縦横比とみなす)
+    public static final double DEFAULT_ASPECT_TOLERANCE = 0.02;
+
+    //費用の重み
+    private static final double UNDERSIZE_WEIGHT = 4.0;
+    private static final double OVERSIZE_WEIGHT = 1.0;
+    private static final double ASPECT_WEIGHT = 20.0;
+
+    //候補の優先度 (小さいほど良い)
+    private static final int TIER_ALL = 0;          //縦横比とフレームレートを満たす
+    private static final int TIER_RATE = 1;         //フレームレートのみ満たす
+    private static final int TIER_ANY = 2;
+
+    private final double _aspectTolerance;
+
+    public StreamNegotiator() {
+        this(DEFAULT_ASPECT_TOLERANCE);
+    }
+
+    public StreamNegotiator(double aspectTolerance) {
+        _aspectTolerance = aspectTolerance;
+    }
+
+    public Result negotiate(CameraConfig config, Request request) {
+        long targetDuration = 1000000000L / request.targetFps;
+
+        //JPEGは最大のサイズの縦横比に他の出力を合わせる
+        StreamSizes jpegStreams = config.getJpegStreams();
+        FrameSize aspect = jpegStreams.getMax();
+        int jpeg = chooseJpeg(jpegStreams, aspect, request.maxStillStallNanos);
+
+        //プレビューは表示先の画素数に近いもの
+        StreamSizes previewStreams = config.getPreviewStreams();
+        long viewPixels = (long)request.viewWidth * request.viewHeight;
+        int preview = choose(previewStreams, request.previewBound, viewPixels, aspect, targetDuration);
+        if (preview < 0) {
+            //候補が無ければ表示先のサイズ (従来と同じ)
+            FrameSize viewSize = new FrameSize(request.viewWidth, request.viewHeight);
+            return new Result(viewSize, null, null, jpegStreams.get(jpeg), null, 0, jpegStreams.getStallDuration(jpeg), false, 0);
+        }
+        FrameSize previewSize = previewStreams.get(preview);
+        double cost = cost(previewStreams, preview, viewPixels, aspect);
+        long frameDuration = previewStreams.getMinFrameDuration(preview);
+
+        //ゼロシャッターラグはプレビューと同じ画素数に近いもの
+        StreamSizes yuvStreams = config.getYuvStreams();
+        int zsl = -1;
+        if (request.zsl) {
+            zsl = choose(yuvStreams, request.previewBound, previewSize.getArea(), aspect, targetDuration);
+            if (zsl >= 0) {
+                cost += cost(yuvStreams, zsl, previewSize.getArea(), aspect);
+                frameDuration = Math.max(frameDuration, yuvStreams.getMinFrameDuration(zsl));
+            }
+        }
+
+        //解析は上限に近いもの (フレームレートを落とすなら外す)
+        int analysis = -1;
+        if (request.analysisBound != null) {
+            analysis = choose(yuvStreams, request.analysisBound, request.analysisBound.getArea(), aspect, targetDuration);
+            if (analysis >= 0 && Math.max(frameDuration, yuvStreams.getMinFrameDuration(analysis)) > targetDuration
+                    && frameDuration <= targetDuration) {
+                analysis = -1;
+            }
+            if (analysis >= 0) {
+                cost += cost(yuvStreams, analysis, request.analysisBound.getArea(), aspect);
+                frameDuration = Math.max(frameDuration, yuvStreams.getMinFrameDuration(analysis));
+            }
+        }
+
+        //RAWは最大のもの (撮影時のみ使い、繰り返し要求のフレーム間隔には含めない)
+        StreamSizes rawStreams = config.getRawStreams();
+        FrameSize rawSize = request.raw && config.isRawSupported() ? rawStreams.getMax() : null;
+
+        //保証された組み合わせか
+        FrameSize jpegSize = jpegStreams.get(jpeg);
+        FrameSize zslSize = zsl >= 0 ? yuvStreams.get(zsl) : null;
+        FrameSize analysisSize = analysis >= 0 ? yuvStreams.get(analysis) : null;
+        boolean guaranteed = isGuaranteed(config, request, previewSize, jpegSize, zslSize, analysisSize, rawSize);
+
+        //保証されるまで解析、ゼロシャッターラグの順に外す (RAWは外さない)
+        //(保証されない組み合わせは機器によってセッションの構成に失敗する)
+        boolean dropped = false;
+        if (!guaranteed && analysisSize != null) {
+            cost -= cost(yuvStreams, analysis, request.analysisBound.getArea(), aspect);
+            analysisSize = null;
+            dropped = true;
+            guaranteed = isGuaranteed(config, request, previewSize, jpegSize, zslSize, null, rawSize);
+        }
+        if (!guaranteed && zslSize != null) {
+            cost -= cost(yuvStreams, zsl, previewSize.getArea(), aspect);
+            zslSize = null;
+            dropped = true;
+            guaranteed = isGuaranteed(config, request, previewSize, jpegSize, null, null, rawSize);
+        }
+        if (dropped) {
+            frameDuration = previewStreams.getMinFrameDuration(preview);
+            if (zslSize != null) {
+                frameDuration = Math.max(frameDuration, yuvStreams.getMinFrameDuration(zsl));
+            }
+            if (analysisSize != null) {
+                frameDuration = Math.max(frameDuration, yuvStreams.getMinFrameDuration(analysis));
+            }
+        }
+
+        return new Result(previewSize,
+                zslSize,
+                analysisSize,
+                jpegSize,
+                rawSize,
+                frameDuration,
+                jpegStreams.getStallDuration(jpeg),
+                guaranteed,
+                cost);
+    }
+
+    /**
+     * 出力の組み合わせが保証されているか (nullの出力は含めない)
+     */
+    private static boolean isGuaranteed(CameraConfig config, Request request, FrameSize previewSize, FrameSize jpegSize,
+                                        FrameSize zslSize, FrameSize analysisSize, FrameSize rawSize) {
+        int count = 2 + (zslSize != null ? 1 : 0) + (analysisSize != null ? 1 : 0) + (rawSize != null ? 1 : 0);
+        int[] formats = new int[count];
+        int[] sizeClasses = new int[count];
+        int n = 0;
+        formats[n] = StreamCombinations.FORMAT_PRIV;
+        sizeClasses[n++] = StreamCombinations.classify(previewSize, request.previewBound, request.recordBound);
+        formats[n] = StreamCombinations.FORMAT_JPEG;
+        sizeClasses[n++] = StreamCombinations.classify(jpegSize, request.previewBound, request.recordBound);
+        if (zslSize != null) {
+            formats[n] = StreamCombinations.FORMAT_YUV;
+            sizeClasses[n++] = StreamCombinations.classify(zslSize, request.previewBound, request.recordBound);
+        }
+        if (analysisSize != null) {
+            formats[n] = StreamCombinations.FORMAT_YUV;
+            sizeClasses[n++] = StreamCombinations.classify(analysisSize, request.previewBound, request.recordBound);
+        }
+        if (rawSize != null) {
+            formats[n] = StreamCombinations.FORMAT_RAW;
+            sizeClasses[n] = StreamCombinations.SIZE_MAXIMUM;
+        }
+        return StreamCombinations.isGuaranteed(config.getHardwareLevel(), config.isRawSupported(), formats, sizeClasses);
+    }
+
+    /**
+     * 上限に収まる候補のうち、優先度が最も高く費用が最も小さいものを選ぶ (無ければ-1)
+     */
+    int choose(StreamSizes streams, FrameSize bound, long desiredPixels, FrameSize aspect, long targetDuration) {
+        int best = -1;
+        int bestTier = Integer.MAX_VALUE;
+        double bestCost = Double.MAX_VALUE;
+
+        for (int i = 0; i < streams.size(); i++) {
+            FrameSize size = streams.get(i);
+            if (size.getWidth() > bound.getWidth() || size.getHeight() > bound.getHeight()) continue;
+
+            long duration = streams.getMinFrameDuration(i);
+            boolean meetsRate = duration <= targetDuration;
+            boolean meetsAspect = aspectError(size, aspect) <= _aspectTolerance;
+            int tier = meetsRate ? (meetsAspect ? TIER_ALL : TIER_RATE) : TIER_ANY;
+
+            double cost = cost(streams, i, desiredPixels, aspect);
+            if (tier < bestTier || (tier == bestTier && cost < bestCost)) {
+                best = i;
+                bestTier = tier;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 縦横比の誤差 (比の対数の差の絶対値)
+     */
+    static double aspectError(FrameSize size, FrameSize aspect) {
+        double ratio = (double)size.getWidth() / size.getHeight();
+        double target = (double)aspect.getWidth() / aspect.getHeight();
+        return Math.abs(Math.log(ratio / target));
+    }
+
+    private static double cost(StreamSizes streams, int index, long desiredPixels, FrameSize aspect) {
+        FrameSize size = streams.get(index);
+        double pixels = size.getArea();
+
+        double sizeCost;
+        if (pixels >= desiredPixels) {
+            sizeCost = (pixels / desiredPixels - 1) * OVERSIZE_WEIGHT;
+        }
+        else {
+            sizeCost = (desiredPixels / pixels - 1) * UNDERSIZE_WEIGHT;
+        }
+        return sizeCost + aspectError(size, aspect) * ASPECT_WEIGHT;
+    }
+
+    /**
+     * 縦横比が同じでストール時間の上限を満たす最大のJPEGを選ぶ (無ければ最大のもの)
+     */
+    private int chooseJpeg(StreamSizes streams, FrameSize aspect, long maxStallNanos) {
+        int max = streams.size() - 1;
+        if (maxStallNanos <= 0) return max;
+
+        for (int i = max; i >= 0; i--) {
+            if (streams.getStallDuration(i) <= maxStallNanos && aspectError(streams.get(i), aspect) <= _aspectTolerance) {
+                return i;
+            }
+        }
+        return max;
+    }
+}
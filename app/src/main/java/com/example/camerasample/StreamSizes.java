@@ -0,0 +1,152 @@
+package com.example.camerasample;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 1つの出力形式の出力サイズと、サイズ毎の最小フレーム間隔・ストール時間
+ *
+ * StreamConfigurationMap.getOutputMinFrameDuration()/getOutputStallDuration()の値を
+ * サイズと同じ並び (面積の昇順) で持つ。取得できなかった値は0 (不明) とする。
+ */
+public final class StreamSizes {
+
+    private static final int MAX_COUNT = 4096;
+
+    private final FrameSize[] _sizes;
+    private final long[] _minFrameDurations;
+    private final long[] _stallDurations;
+
+    private StreamSizes(FrameSize[] sizes, long[] minFrameDurations, long[] stallDurations) {
+        _sizes = sizes;
+        _minFrameDurations = minFrameDurations;
+        _stallDurations = stallDurations;
+    }
+
+    /**
+     * 面積の昇順に並べて生成する
+     * 間隔とストール時間はsizesと同じ並びで渡す (nullは全て不明)。渡した配列は変更しない。
+     */
+    public static StreamSizes create(FrameSize[] sizes, long[] minFrameDurations, long[] stallDurations) {
+        if (minFrameDurations != null && minFrameDurations.length != sizes.length) {
+            throw new IllegalArgumentException("minFrameDurations length " + minFrameDurations.length + " != " + sizes.length);
+        }
+        if (stallDurations != null && stallDurations.length != sizes.length) {
+            throw new IllegalArgumentException("stallDurations length " + stallDurations.length + " != " + sizes.length);
+        }
+
+        //面積の昇順に並べる (挿入ソート、件数は数十程度)
+        int count = sizes.length;
+        FrameSize[] sortedSizes = new FrameSize[count];
+        long[] sortedMinFrameDurations = new long[count];
+        long[] sortedStallDurations = new long[count];
+        CompareSizesByArea comparator = new CompareSizesByArea();
+        for (int i = 0; i < count; i++) {
+            int j = i;
+            while (j > 0 && comparator.compare(sortedSizes[j - 1], sizes[i]) > 0) {
+                sortedSizes[j] = sortedSizes[j - 1];
+                sortedMinFrameDurations[j] = sortedMinFrameDurations[j - 1];
+                sortedStallDurations[j] = sortedStallDurations[j - 1];
+                j--;
+            }
+            sortedSizes[j] = sizes[i];
+            sortedMinFrameDurations[j] = minFrameDurations != null ? minFrameDurations[i] : 0;
+            sortedStallDurations[j] = stallDurations != null ? stallDurations[i] : 0;
+        }
+        return new StreamSizes(sortedSizes, sortedMinFrameDurations, sortedStallDurations);
+    }
+
+    public int size() {
+        return _sizes.length;
+    }
+
+    public FrameSize get(int index) {
+        return _sizes[index];
+    }
+
+    /**
+     * 最大のサイズ (無ければnull)
+     */
+    public FrameSize getMax() {
+        return _sizes.length > 0 ? _sizes[_sizes.length - 1] : null;
+    }
+
+    /**
+     * 出力サイズ (面積の昇順、呼び出し側で変更しないこと)
+     */
+    public FrameSize[] getSizes() {
+        return _sizes;
+    }
+
+    /**
+     * 最小フレーム間隔 (ナノ秒、不明は0)
+     */
+    public long getMinFrameDuration(int index) {
+        return _minFrameDurations[index];
+    }
+
+    /**
+     * ストール時間 (ナノ秒、不明は0)
+     */
+    public long getStallDuration(int index) {
+        return _stallDurations[index];
+    }
+
+    /**
+     * サイズの位置 (無ければ-1)
+     */
+    public int indexOf(FrameSize size) {
+        for (int i = 0; i < _sizes.length; i++) {
+            if (_sizes[i].equals(size)) return i;
+        }
+        return -1;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(_sizes.length);
+        for (int i = 0; i < _sizes.length; i++) {
+            out.writeInt(_sizes[i].getWidth());
+            out.writeInt(_sizes[i].getHeight());
+            out.writeLong(_minFrameDurations[i]);
+            out.writeLong(_stallDurations[i]);
+        }
+    }
+
+    /**
+     * writeTo()で書き込んだものを読み込む (書き込み時に並べ替え済み)
+     */
+    public static StreamSizes readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("Invalid size count: " + count);
+        }
+
+        FrameSize[] sizes = new FrameSize[count];
+        long[] minFrameDurations = new long[count];
+        long[] stallDurations = new long[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = new FrameSize(in.readInt(), in.readInt());
+            minFrameDurations[i] = in.readLong();
+            stallDurations[i] = in.readLong();
+        }
+        return new StreamSizes(sizes, minFrameDurations, stallDurations);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof StreamSizes)) return false;
+
+        StreamSizes other = (StreamSizes)o;
+        return Arrays.equals(_sizes, other._sizes)
+                && Arrays.equals(_minFrameDurations, other._minFrameDurations)
+                && Arrays.equals(_stallDurations, other._stallDurations);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_sizes);
+    }
+}
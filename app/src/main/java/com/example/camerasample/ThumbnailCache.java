@@ -0,0 +1,253 @@
+package com.example.camerasample;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 撮影した写真のサムネイルのキャッシュ
+ *
+ * メモリ上のビットマップ (ByteLruCache) と、小さなJPEGを追記したファイル (ThumbnailStore) の2段で持つ。
+ * どちらにも無ければEXIFに埋め込まれたサムネイルか、縮小デコードしたものをJPEGにして保存する。
+ * 読み込みは専用のスレッドで行い、結果はUIスレッドへ通知する。
+ * メモリ上はパスで引き、UIスレッドではファイルを調べない (書き換えの確認はファイルのキーで行う)。
+ */
+public class ThumbnailCache {
+
+    /**
+     * 読み込み結果の通知 (UIスレッドから呼び出される)
+     */
+    public interface Callback {
+        void onThumbnail(@NonNull File file, @Nullable Bitmap thumbnail);
+    }
+
+    //サムネイルの長辺
+    public static final int THUMBNAIL_SIZE = 256;
+
+    private static final int JPEG_QUALITY = 80;
+    private static final String STORE_FILE = "thumbnails.bin";
+
+    private final ByteLruCache<String, Bitmap> _memoryCache;
+    private final ThumbnailStore _store;
+    private final ExecutorService _executor = Executors.newSingleThreadExecutor();
+    private final Handler _handler = new Handler(Looper.getMainLooper());
+
+    private int _exifThumbnails;
+    private int _decodedThumbnails;
+
+    /**
+     * @param memoryBytes メモリに保持するビットマップの合計の上限
+     * @param diskBytes ファイルに保持するJPEGの合計の上限
+     */
+    public ThumbnailCache(@NonNull File directory, long memoryBytes, long diskBytes) throws IOException {
+        _memoryCache = new ByteLruCache<>(memoryBytes, new ByteLruCache.Sizer<Bitmap>() {
+            @Override
+            public int sizeOf(Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        });
+        _store = new ThumbnailStore(new File(directory, STORE_FILE), diskBytes);
+    }
+
+    /**
+     * メモリ上にあるサムネイルを取得する (無ければnull)
+     */
+    @Nullable
+    public Bitmap getCached(@NonNull File file) {
+        return _memoryCache.get(file.getPath());
+    }
+
+    /**
+     * サムネイルを読み込む
+     * メモリ上にあればその場で通知し、無ければ専用のスレッドで読み込んでから通知する。
+     */
+    public void load(@NonNull final File file, @NonNull final Callback callback) {
+        Bitmap cached = _memoryCache.get(file.getPath());
+        if (cached != null) {
+            callback.onThumbnail(file, cached);
+            return;
+        }
+
+        _executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap thumbnail = loadInBackground(file);
+                _handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onThumbnail(file, thumbnail);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * メモリ不足の通知に応じてメモリ上のサムネイルを減らす (ファイルは残す)
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            _memoryCache.clear();
+        }
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            _memoryCache.trimToSize(_memoryCache.getMaxBytes() / 2);
+        }
+    }
+
+    /**
+     * 読み込み待ちのものを処理してからファイルを閉じる
+     */
+    public void close() {
+        _executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    _store.close();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        _executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "Thumbnails: memory=%d (%d bytes, hit=%d miss=%d evicted=%d) disk=%d (%d/%d bytes, hit=%d miss=%d compacted=%d) exif=%d decoded=%d",
+                _memoryCache.size(), _memoryCache.getCurrentBytes(), _memoryCache.getHits(), _memoryCache.getMisses(), _memoryCache.getEvictions(),
+                _store.size(), _store.getLiveBytes(), _store.getFileSize(), _store.getHits(), _store.getMisses(), _store.getCompactions(),
+                _exifThumbnails, _decodedThumbnails);
+    }
+
+    @Nullable
+    private Bitmap loadInBackground(@NonNull File file) {
+        //別の読み込みで保持されていないか
+        Bitmap thumbnail = _memoryCache.get(file.getPath());
+        if (thumbnail != null) return thumbnail;
+
+        String key = key(file);
+        try {
+            //ファイルにあればデコードのみ行う
+            ByteBuffer data = _store.get(key);
+            if (data != null) {
+                thumbnail = BitmapFactory.decodeStream(new ByteBufferInputStream(data));
+            }
+
+            //無ければ作って保存する
+            if (thumbnail == null) {
+                thumbnail = createThumbnail(file);
+                if (thumbnail == null) return null;
+
+                ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+                thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, jpeg);
+                _store.put(key, ByteBuffer.wrap(jpeg.toByteArray()));
+            }
+        }
+        catch (IOException e) {
+            Log.e(ThumbnailCache.class.getSimpleName(), "Failed to load thumbnail: " + file, e);
+            return null;
+        }
+
+        _memoryCache.put(file.getPath(), thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * サムネイルを作る (向きは補正済み)
+     * EXIFのサムネイルが十分な大きさであればそれを使い、無ければ縮小デコードする。
+     */
+    @Nullable
+    private Bitmap createThumbnail(@NonNull File file) throws IOException {
+        ExifInterface exif = new ExifInterface(file.getPath());
+        int rotation = toRotation(exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL));
+
+        Bitmap bitmap = null;
+        byte[] exifThumbnail = exif.getThumbnailBytes();
+        if (exifThumbnail != null) {
+            bitmap = BitmapFactory.decodeByteArray(exifThumbnail, 0, exifThumbnail.length);
+            if (bitmap != null && Math.max(bitmap.getWidth(), bitmap.getHeight()) < THUMBNAIL_SIZE / 2) {
+                //小さすぎるものは使わない
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+
+        if (bitmap != null) {
+            _exifThumbnails++;
+        }
+        else {
+            bitmap = decodeSampled(file);
+            if (bitmap == null) return null;
+            _decodedThumbnails++;
+        }
+        return scaleAndRotate(bitmap, rotation);
+    }
+
+    @Nullable
+    private static Bitmap decodeSampled(@NonNull File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = DecodeSizeCalculator.calculateSampleSize(options.outWidth, options.outHeight, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    @NonNull
+    private static Bitmap scaleAndRotate(@NonNull Bitmap bitmap, int rotation) {
+        float scale = Math.min(1.0f, (float)THUMBNAIL_SIZE / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        if (scale == 1.0f && rotation == 0) return bitmap;
+
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (transformed != bitmap) {
+            bitmap.recycle();
+        }
+        return transformed;
+    }
+
+    private static int toRotation(int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * ファイルに保持する際のキー (書き換えられたファイルは別のものとして扱う)
+     * ファイルを調べるので読み込み用のスレッドで呼び出す。
+     */
+    @NonNull
+    private static String key(@NonNull File file) {
+        return file.getName() + ":" + file.length() + ":" + file.lastModified();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.camerasample;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * サムネイルのファイル内の位置の索引と、最近使った順の追い出し
+ *
+ * キー毎にデータの位置と長さを持ち、有効なデータの合計 (getLiveBytes()) を数える。
+ * 置き換えたデータはファイルに残るので、ファイルの大きさとの差が詰め直せる量になる。
+ * 同期はThumbnailStoreで行う。
+ */
+public class ThumbnailIndex {
+
+    /**
+     * 1件のデータの位置
+     */
+    public static final class Entry {
+        private final String _key;
+        private long _offset;
+        private final int _length;
+
+        Entry(String key, long offset, int length) {
+            _key = key;
+            _offset = offset;
+            _length = length;
+        }
+
+        public String getKey() {
+            return _key;
+        }
+
+        /**
+         * データの先頭のファイル内の位置
+         */
+        public long getOffset() {
+            return _offset;
+        }
+
+        public int getLength() {
+            return _length;
+        }
+    }
+
+    //アクセス順
+    private final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long _liveBytes;
+
+    /**
+     * データの位置を登録する
+     * 同じキーがあれば置き換え、置き換えられたものを返す (無ければnull)。
+     */
+    public Entry put(String key, long offset, int length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid record: offset " + offset + ", length " + length);
+        }
+
+        Entry previous = _entries.put(key, new Entry(key, offset, length));
+        if (previous != null) {
+            _liveBytes -= previous._length;
+        }
+        _liveBytes += length;
+        return previous;
+    }
+
+    /**
+     * データの位置を取得する (無ければnull)
+     * 取得したものは最近使ったものになる。
+     */
+    public Entry get(String key) {
+        return _entries.get(key);
+    }
+
+    public boolean contains(String key) {
+        return _entries.containsKey(key);
+    }
+
+    public Entry remove(String key) {
+        Entry entry = _entries.remove(key);
+        if (entry != null) {
+            _liveBytes -= entry._length;
+        }
+        return entry;
+    }
+
+    /**
+     * 有効なデータの合計がmaxBytes以下になるまで、最も長く使われていないものから除く
+     *
+     * @return 除いた数
+     */
+    public int evictToSize(long maxBytes) {
+        int evicted = 0;
+        Iterator<Map.Entry<String, Entry>> iterator = _entries.entrySet().iterator();
+        while (_liveBytes > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            _liveBytes -= entry._length;
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * 全てのデータの位置を使われていない順に取得する (詰め直しに使う)
+     */
+    public List<Entry> entries() {
+        return new ArrayList<>(_entries.values());
+    }
+
+    /**
+     * 詰め直した後の位置を設定する (順序は変えない)
+     */
+    void relocate(Entry entry, long offset) {
+        entry._offset = offset;
+    }
+
+    public void clear() {
+        _entries.clear();
+        _liveBytes = 0;
+    }
+
+    public int size() {
+        return _entries.size();
+    }
+
+    /**
+     * 有効なデータの合計
+     */
+    public long getLiveBytes() {
+        return _liveBytes;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.camerasample;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * サムネイルのJPEGを1つのファイルへ追記して保持する
+ *
+ * 各レコードは (MAGIC, キーの長さ, データの長さ, キー, データ) の並びで、開く時に先頭から読んで索引を作る。
+ * 読み込みはファイルをメモリへマップして行い、データはコピーせずに返す。
+ * 有効なデータが上限を超えたら最も長く使われていないものから除き、有効なものだけを一時ファイルへ書き直して置き換える。
+ * 使われた順序はファイルには保存しないので、開き直した後は書き込んだ順を使われた順とする。
+ * 書き込み途中で終了した場合の末尾の壊れたレコードは開く時に切り捨てる。
+ */
+public class ThumbnailStore implements Closeable {
+
+    private static final int FILE_MAGIC = 0x54484d53;    //THMS
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+
+    private static final int RECORD_MAGIC = 0x54484d42;  //THMB
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private static final int MAX_KEY_LENGTH = 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset KEY_CHARSET = Charset.forName("UTF-8");
+
+    //上限を超えた時に減らす割合 (毎回詰め直さないよう余裕を持たせる)
+    private static final double TRIM_RATIO = 0.75;
+
+    private final File _file;
+    private final long _maxBytes;
+    private final ThumbnailIndex _index = new ThumbnailIndex();
+
+    private FileChannel _channel;
+    private long _fileSize;
+
+    //読み込み用のマップ (追記後は必要になった時にマップし直す)
+    private MappedByteBuffer _mapped;
+
+    private long _hits;
+    private long _misses;
+    private int _compactions;
+
+    /**
+     * ファイルを開いて索引を作る
+     * ファイルが無い場合や形式が異なる場合は空のファイルを作る。
+     *
+     * @param maxBytes 保持するデータの合計の上限
+     */
+    public ThumbnailStore(File file, long maxBytes) throws IOException {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+
+        _file = file;
+        _maxBytes = maxBytes;
+        open();
+    }
+
+    /**
+     * データを取得する (無ければnull)
+     * 返すのはマップしたファイルの読み取り専用の範囲で、次に書き込むまで使用できる。
+     */
+    public synchronized ByteBuffer get(String key) throws IOException {
+        ThumbnailIndex.Entry entry = _index.get(key);
+        if (entry == null) {
+            _misses++;
+            return null;
+        }
+        _hits++;
+
+        long end = entry.getOffset() + entry.getLength();
+        if (_mapped == null || _mapped.capacity() < end) {
+            _mapped = _channel.map(FileChannel.MapMode.READ_ONLY, 0, _fileSize);
+        }
+
+        ByteBuffer data = _mapped.duplicate();
+        data.position((int)entry.getOffset());
+        data.limit((int)end);
+        return data.slice();
+    }
+
+    public synchronized boolean contains(String key) {
+        return _index.contains(key);
+    }
+
+    /**
+     * データを追記する
+     * 同じキーのデータは置き換える。上限を超えたら古いものを除いて詰め直す。
+     */
+    public synchronized void put(String key, ByteBuffer data) throws IOException {
+        byte[] keyBytes = key.getBytes(KEY_CHARSET);
+        if (keyBytes.length > MAX_KEY_LENGTH) throw new IllegalArgumentException("Key too long: " + key);
+        int length = data.remaining();
+        if (length > _maxBytes) return;
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length);
+        header.putInt(RECORD_MAGIC);
+        header.putInt(keyBytes.length);
+        header.putInt(length);
+        header.put(keyBytes);
+        header.flip();
+
+        long dataOffset = _fileSize + header.remaining();
+        writeFully(_channel, new ByteBuffer[] { header, data.duplicate() }, _fileSize);
+        _fileSize = dataOffset + length;
+        _index.put(key, dataOffset, length);
+
+        if (_index.getLiveBytes() > _maxBytes) {
+            _index.evictToSize((long)(_maxBytes * TRIM_RATIO));
+            compact();
+        }
+        else if (_fileSize - FILE_HEADER_SIZE > _maxBytes * 2) {
+            //置き換えで無効になったデータが多ければ詰め直す
+            compact();
+        }
+    }
+
+    /**
+     * 有効なデータだけを書き直す
+     */
+    public synchronized void compact() throws IOException {
+        File tempFile = new File(_file.getPath() + TEMP_SUFFIX);
+        List<ThumbnailIndex.Entry> entries = _index.entries();
+        long[] offsets = new long[entries.size()];
+
+        try (FileChannel out = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = writeFileHeader(out);
+            for (int i = 0; i < entries.size(); i++) {
+                ThumbnailIndex.Entry entry = entries.get(i);
+                byte[] keyBytes = entry.getKey().getBytes(KEY_CHARSET);
+
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length);
+                header.putInt(RECORD_MAGIC);
+                header.putInt(keyBytes.length);
+                header.putInt(entry.getLength());
+                header.put(keyBytes);
+                header.flip();
+                position += writeFully(out, new ByteBuffer[] { header }, position);
+
+                //元のファイルからチャネル間で直接コピーする
+                long copied = 0;
+                while (copied < entry.getLength()) {
+                    copied += _channel.transferTo(entry.getOffset() + copied, entry.getLength() - copied, out.position(position + copied));
+                }
+                offsets[i] = position;
+                position += entry.getLength();
+            }
+            out.force(false);
+        }
+
+        //置き換えてから位置を更新する
+        _mapped = null;
+        _channel.close();
+        Files.move(tempFile.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        _channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        _fileSize = _channel.size();
+        for (int i = 0; i < entries.size(); i++) {
+            _index.relocate(entries.get(i), offsets[i]);
+        }
+        _compactions++;
+    }
+
+    public synchronized int size() {
+        return _index.size();
+    }
+
+    /**
+     * 有効なデータの合計
+     */
+    public synchronized long getLiveBytes() {
+        return _index.getLiveBytes();
+    }
+
+    public synchronized long getFileSize() {
+        return _fileSize;
+    }
+
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    public synchronized int getCompactions() {
+        return _compactions;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        _mapped = null;
+        _index.clear();
+        if (_channel != null) {
+            _channel.close();
+            _channel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        _channel = FileChannel.open(_file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = _channel.size();
+
+        //形式が異なるファイルは作り直す
+        if (size < FILE_HEADER_SIZE || !readFileHeader(size)) {
+            _channel.truncate(0);
+            _fileSize = writeFileHeader(_channel);
+            return;
+        }
+
+        //先頭から読んで索引を作る (壊れたレコード以降は切り捨てる)
+        _mapped = _channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long position = FILE_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            _mapped.position((int)position);
+            if (_mapped.getInt() != RECORD_MAGIC) break;
+            int keyLength = _mapped.getInt();
+            int length = _mapped.getInt();
+            if (keyLength < 0 || keyLength > MAX_KEY_LENGTH || length < 0) break;
+
+            long dataOffset = position + RECORD_HEADER_SIZE + keyLength;
+            if (dataOffset + length > size) break;
+
+            byte[] keyBytes = new byte[keyLength];
+            _mapped.get(keyBytes);
+            _index.put(new String(keyBytes, KEY_CHARSET), dataOffset, length);
+            position = dataOffset + length;
+        }
+        _mapped.position(0);
+
+        if (position < size) {
+            _mapped = null;
+            _channel.truncate(position);
+        }
+        _fileSize = position;
+    }
+
+    private boolean readFileHeader(long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (_channel.read(header, header.position()) < 0) return false;
+        }
+        header.flip();
+        return header.getInt() == FILE_MAGIC && header.getInt() == VERSION;
+    }
+
+    private static long writeFileHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(FILE_MAGIC);
+        header.putInt(VERSION);
+        header.flip();
+        return writeFully(channel, new ByteBuffer[] { header }, 0);
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer[] buffers, long position) throws IOException {
+        channel.position(position);
+        long written = 0;
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            written += channel.write(buffers);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.camerasample;
+
+/**
+ * ImageReaderから届く画像と、CaptureCallbackから届く撮影結果をセンサのタイムスタンプで対応付ける
+ *
+ * どちらが先に届いてもよく、両方が揃った時点でListenerへ渡す。
+ * 片方だけのものは最大capacity件まで待たせ、溢れたら最も古いものを捨てる。
+ * 捨てた画像はListenerへ返すので、受け取った側で解放する。
+ * Listenerはロックの外で、offerImage()/offerResult()を呼び出したスレッドから呼び出される。
+ */
+public class TimestampMatcher<I, R> {
+
+    /**
+     * 対応付けの結果
+     */
+    public interface Listener<I, R> {
+        /**
+         * 画像と撮影結果が揃った (画像の解放は受け取った側が行う)
+         */
+        void onMatched(long timestamp, I image, R result);
+
+        /**
+         * 撮影結果が届かないまま溢れた画像 (解放すること)
+         */
+        void onImageDropped(long timestamp, I image);
+    }
+
+    private final int _capacity;
+    private final Listener<I, R> _listener;
+
+    //待っているもの (順序は持たず、_size件を詰めて置く)
+    private final long[] _timestamps;
+    private final Object[] _images;
+    private final Object[] _results;
+    private int _size;
+
+    private int _maxBacklog;
+    private long _matchedCount;
+    private long _droppedImages;
+    private long _droppedResults;
+
+    public TimestampMatcher(int capacity, Listener<I, R> listener) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+
+        _capacity = capacity;
+        _listener = listener;
+        _timestamps = new long[capacity];
+        _images = new Object[capacity];
+        _results = new Object[capacity];
+    }
+
+    /**
+     * 画像を追加する
+     */
+    public void offerImage(long timestamp, I image) {
+        Object matchedResult = null;
+        long droppedTimestamp = 0;
+        Object droppedImage = null;
+
+        synchronized (this) {
+            int slot = find(timestamp);
+            if (slot >= 0 && _results[slot] != null) {
+                matchedResult = _results[slot];
+                remove(slot);
+                _matchedCount++;
+            }
+            else if (slot >= 0) {
+                //同じタイムスタンプの画像が再び届いた場合は古い方を捨てる
+                droppedTimestamp = timestamp;
+                droppedImage = _images[slot];
+                _images[slot] = image;
+                _droppedImages++;
+            }
+            else {
+                int oldest = insertSlot(timestamp);
+                if (oldest == -2) {
+                    //待っている中で最も古いものより古ければ保持しない
+                    droppedTimestamp = timestamp;
+                    droppedImage = image;
+                    _droppedImages++;
+                }
+                else {
+                    if (oldest >= 0) {
+                        droppedTimestamp = _timestamps[oldest];
+                        droppedImage = evict(oldest);
+                    }
+                    append(timestamp, image, null);
+                }
+            }
+        }
+
+        if (matchedResult != null) {
+            _listener.onMatched(timestamp, image, this.<R>cast(matchedResult));
+        }
+        if (droppedImage != null) {
+            _listener.onImageDropped(droppedTimestamp, this.<I>cast(droppedImage));
+        }
+    }
+
+    /**
+     * 撮影結果を追加する
+     */
+    public void offerResult(long timestamp, R result) {
+        Object matchedImage = null;
+        long droppedTimestamp = 0;
+        Object droppedImage = null;
+
+        synchronized (this) {
+            int slot = find(timestamp);
+            if (slot >= 0 && _images[slot] != null) {
+                matchedImage = _images[slot];
+                remove(slot);
+                _matchedCount++;
+            }
+            else if (slot >= 0) {
+                _results[slot] = result;
+            }
+            else {
+                int oldest = insertSlot(timestamp);
+                if (oldest == -2) {
+                    _droppedResults++;
+                }
+                else {
+                    if (oldest >= 0) {
+                        droppedTimestamp = _timestamps[oldest];
+                        droppedImage = evict(oldest);
+                    }
+                    append(timestamp, null, result);
+                }
+            }
+        }
+
+        if (matchedImage != null) {
+            _listener.onMatched(timestamp, this.<I>cast(matchedImage), result);
+        }
+        if (droppedImage != null) {
+            _listener.onImageDropped(droppedTimestamp, this.<I>cast(droppedImage));
+        }
+    }
+
+    /**
+     * 待っている全ての画像を捨てる (カメラを閉じる時に呼び出す)
+     */
+    public void clear() {
+        long[] timestamps;
+        Object[] images;
+        int count;
+        synchronized (this) {
+            count = _size;
+            timestamps = new long[count];
+            images = new Object[count];
+            for (int i = 0; i < count; i++) {
+                timestamps[i] = _timestamps[i];
+                images[i] = _images[i];
+                if (images[i] != null) {
+                    _droppedImages++;
+                }
+                _images[i] = null;
+                _results[i] = null;
+            }
+            _size = 0;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (images[i] != null) {
+                _listener.onImageDropped(timestamps[i], this.<I>cast(images[i]));
+            }
+        }
+    }
+
+    /**
+     * 対応付けを待っている数
+     */
+    public synchronized int getBacklog() {
+        return _size;
+    }
+
+    /**
+     * 待っている数の最大値
+     */
+    public synchronized int getMaxBacklog() {
+        return _maxBacklog;
+    }
+
+    public synchronized int getPendingImages() {
+        int count = 0;
+        for (int i = 0; i < _size; i++) {
+            if (_images[i] != null) count++;
+        }
+        return count;
+    }
+
+    public synchronized long getMatchedCount() {
+        return _matchedCount;
+    }
+
+    /**
+     * 撮影結果と対応付けられずに捨てた画像の数
+     */
+    public synchronized long getDroppedImages() {
+        return _droppedImages;
+    }
+
+    /**
+     * 画像と対応付けられずに捨てた撮影結果の数
+     */
+    public synchronized long getDroppedResults() {
+        return _droppedResults;
+    }
+
+    public int capacity() {
+        return _capacity;
+    }
+
+    private int find(long timestamp) {
+        for (int i = 0; i < _size; i++) {
+            if (_timestamps[i] == timestamp) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 追加する空きを用意する
+     * 満杯なら追い出す最も古いスロットを返し (-1は空きあり)、追加するものが最も古ければ-2を返す。
+     */
+    private int insertSlot(long timestamp) {
+        if (_size < _capacity) return -1;
+
+        int oldest = 0;
+        for (int i = 1; i < _size; i++) {
+            if (_timestamps[i] < _timestamps[oldest]) oldest = i;
+        }
+        return timestamp < _timestamps[oldest] ? -2 : oldest;
+    }
+
+    /**
+     * スロットを追い出し、捨てる画像を返す (無ければnull)
+     */
+    private Object evict(int slot) {
+        Object image = _images[slot];
+        if (image != null) {
+            _droppedImages++;
+        }
+        else {
+            _droppedResults++;
+        }
+        remove(slot);
+        return image;
+    }
+
+    private void append(long timestamp, Object image, Object result) {
+        _timestamps[_size] = timestamp;
+        _images[_size] = image;
+        _results[_size] = result;
+        _size++;
+        if (_size > _maxBacklog) {
+            _maxBacklog = _size;
+        }
+    }
+
+    private void remove(int slot) {
+        //最後のものを空いた位置へ移す
+        int last = _size - 1;
+        _timestamps[slot] = _timestamps[last];
+        _images[slot] = _images[last];
+        _results[slot] = _results[last];
+        _images[last] = null;
+        _results[last] = null;
+        _size--;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value) {
+        return (T)value;
+    }
+}
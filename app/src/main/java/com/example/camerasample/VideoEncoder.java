@@ -0,0 +1,35 @@
+package com.example.camerasample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 出力を取り出すためのエンコーダ (MediaCodecを抽象化したもの)
+ *
+ * 入力はSurfaceからカメラが直接書き込むので、ここでは出力の取り出しのみを扱う。
+ *
+ * @param <F> 出力形式 (MediaFormat)
+ */
+public interface VideoEncoder<F> {
+
+    //dequeueOutputBuffer()の結果 (MediaCodec.INFO_*と同じ値)
+    int INFO_TRY_AGAIN_LATER = -1;
+    int INFO_OUTPUT_FORMAT_CHANGED = -2;
+
+    /**
+     * 出力を取り出す
+     * 取り出せた場合はバッファの番号を返し、infoに情報を設定する。
+     */
+    int dequeueOutputBuffer(EncodedSample info, long timeoutUs);
+
+    ByteBuffer getOutputBuffer(int index);
+
+    void releaseOutputBuffer(int index);
+
+    F getOutputFormat();
+
+    /**
+     * 入力の終端を通知する
+     * 残りの出力の後にFLAG_END_OF_STREAMのサンプルが出力される。
+     */
+    void signalEndOfInputStream();
+}
@@ -0,0 +1,160 @@
+package com.example.camerasample;
+
+/**
+ * 録画のエンコードと分割の設定
+ */
+public final class VideoEncoderConfig {
+
+    public static final String MIME_AVC = "video/avc";
+    public static final String MIME_HEVC = "video/hevc";
+
+    public static final int DEFAULT_FRAME_RATE = 30;
+    public static final int DEFAULT_I_FRAME_INTERVAL_SECONDS = 1;
+    public static final int DEFAULT_QUEUE_CAPACITY = 30;
+
+    //画素あたりのビット数の目安 (HEVCは同じ画質をおよそ6割で得られる)
+    private static final double AVC_BITS_PER_PIXEL = 0.2;
+    private static final double HEVC_BITS_PER_PIXEL = 0.12;
+
+    //待ち行列の枠の大きさ (平均のフレームの大きさに対する倍率と下限)
+    private static final int SAMPLE_CAPACITY_FACTOR = 4;
+    private static final int MIN_SAMPLE_CAPACITY = 64 * 1024;
+
+    private final String _mime;
+    private final int _width;
+    private final int _height;
+    private int _frameRate = DEFAULT_FRAME_RATE;
+    private int _bitRate;
+    private int _iFrameIntervalSeconds = DEFAULT_I_FRAME_INTERVAL_SECONDS;
+    private long _segmentDurationUs;
+    private long _maxSegmentBytes;
+    private int _queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    public VideoEncoderConfig(String mime, int width, int height) {
+        if (!MIME_AVC.equals(mime) && !MIME_HEVC.equals(mime)) {
+            throw new IllegalArgumentException("Unsupported mime: " + mime);
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+
+        _mime = mime;
+        _width = width;
+        _height = height;
+    }
+
+    public VideoEncoderConfig setFrameRate(int frameRate) {
+        if (frameRate <= 0) throw new IllegalArgumentException("frameRate must be positive: " + frameRate);
+
+        _frameRate = frameRate;
+        return this;
+    }
+
+    /**
+     * ビットレート (0以下はサイズとフレームレートから求める)
+     */
+    public VideoEncoderConfig setBitRate(int bitRate) {
+        _bitRate = bitRate;
+        return this;
+    }
+
+    /**
+     * キーフレームの間隔 (GOP、秒)
+     */
+    public VideoEncoderConfig setIFrameIntervalSeconds(int iFrameIntervalSeconds) {
+        if (iFrameIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("iFrameIntervalSeconds must be positive: " + iFrameIntervalSeconds);
+        }
+
+        _iFrameIntervalSeconds = iFrameIntervalSeconds;
+        return this;
+    }
+
+    /**
+     * ファイルを分割する長さ (0は分割しない)
+     * 分割はキーフレームで行うので、キーフレームの間隔だけ長くなることがある。
+     */
+    public VideoEncoderConfig setSegmentDurationUs(long segmentDurationUs) {
+        _segmentDurationUs = segmentDurationUs;
+        return this;
+    }
+
+    /**
+     * ファイルを分割する大きさ (0は分割しない)
+     */
+    public VideoEncoderConfig setMaxSegmentBytes(long maxSegmentBytes) {
+        _maxSegmentBytes = maxSegmentBytes;
+        return this;
+    }
+
+    /**
+     * Muxerの書き込み待ちの最大数
+     */
+    public VideoEncoderConfig setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+
+        _queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public String getMime() {
+        return _mime;
+    }
+
+    public int getWidth() {
+        return _width;
+    }
+
+    public int getHeight() {
+        return _height;
+    }
+
+    public int getFrameRate() {
+        return _frameRate;
+    }
+
+    public int getBitRate() {
+        return _bitRate > 0 ? _bitRate : estimateBitRate(_mime, _width, _height, _frameRate);
+    }
+
+    public int getIFrameIntervalSeconds() {
+        return _iFrameIntervalSeconds;
+    }
+
+    public long getSegmentDurationUs() {
+        return _segmentDurationUs;
+    }
+
+    public long getMaxSegmentBytes() {
+        return _maxSegmentBytes;
+    }
+
+    public int getQueueCapacity() {
+        return _queueCapacity;
+    }
+
+    public long getFrameIntervalUs() {
+        return 1000000L / _frameRate;
+    }
+
+    /**
+     * 待ち行列の1枠の大きさ (キーフレームを収められるよう平均のフレームより大きくする)
+     */
+    public int getSampleCapacity() {
+        long average = (long)getBitRate() / 8 / _frameRate;
+        return (int)Math.max(MIN_SAMPLE_CAPACITY, Math.min(Integer.MAX_VALUE, average * SAMPLE_CAPACITY_FACTOR));
+    }
+
+    /**
+     * サイズとフレームレートからビットレートの目安を求める
+     */
+    public static int estimateBitRate(String mime, int width, int height, int frameRate) {
+        double bitsPerPixel = MIME_HEVC.equals(mime) ? HEVC_BITS_PER_PIXEL : AVC_BITS_PER_PIXEL;
+        return (int)Math.min(Integer.MAX_VALUE, (long)width * height * frameRate * bitsPerPixel);
+    }
+
+    @Override
+    public String toString() {
+        return _mime + " " + _width + "x" + _height + "@" + _frameRate + " " + getBitRate() / 1000 + "kbps gop=" + _iFrameIntervalSeconds + "s";
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.camerasample;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 録画 (エンコーダの出力の取り出しとファイルへの書き込み)
+ *
+ * 取り出しとMuxerへの書き込みはそれぞれ専用のスレッドで行い、EncodedSampleQueueで受け渡す。
+ * 書き込みが遅れてもエンコーダのバッファはすぐに返すので、カメラからの入力は止まらない。
+ * stop()で入力の終端を通知し、終端まで書き込んだらListenerへ通知する。
+ *
+ * @param <F> 出力形式 (MediaFormat)
+ */
+public class VideoRecorder<F> {
+
+    /**
+     * 録画の終了の通知 (書き込みスレッドから呼び出される、エンコーダの失敗は取り出しスレッドから)
+     */
+    public interface Listener {
+        /**
+         * 終端まで処理した (書き込みに失敗した場合も呼び出される)
+         */
+        void onFinished();
+
+        /**
+         * 取り出しか書き込みに失敗した (以降のサンプルは捨てる)
+         */
+        void onFailed(IOException e);
+    }
+
+    //取り出しの待ち時間
+    static final long DRAIN_TIMEOUT_US = 10000;
+
+    //終端の通知から終端が出力されるまでの最大時間
+    static final long STOP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final VideoEncoder<F> _encoder;
+    private final VideoEncoderConfig _config;
+    private final Listener _listener;
+    private final EncodedSampleQueue _queue;
+    private final EncoderDrainer<F> _drainer;
+    private final SegmentedMuxer<F> _muxer;
+
+    private final ExecutorService _drainExecutor;
+    private final ExecutorService _muxerExecutor;
+
+    //終端を通知した時刻 (0は未通知)
+    private volatile long _stopRequestedNanos;
+
+    private final AtomicLong _failedWrites = new AtomicLong();
+
+    public VideoRecorder(VideoEncoder<F> encoder, SampleMuxer.Factory<F> muxerFactory, VideoEncoderConfig config, Listener listener) {
+        _encoder = encoder;
+        _config = config;
+        _listener = listener;
+        _queue = new EncodedSampleQueue(config.getQueueCapacity(), config.getSampleCapacity());
+        _muxer = new SegmentedMuxer<>(muxerFactory, config.getSegmentDurationUs(), config.getMaxSegmentBytes());
+        _drainer = new EncoderDrainer<>(encoder, _queue, new EncoderDrainer.Listener<F>() {
+            @Override
+            public void onOutputFormat(F format) {
+                _muxer.setFormat(format);
+            }
+        }, config.getFrameIntervalUs());
+
+        _drainExecutor = Executors.newSingleThreadExecutor(createThreadFactory("VideoEncoderDrain"));
+        _muxerExecutor = Executors.newSingleThreadExecutor(createThreadFactory("VideoMuxer"));
+    }
+
+    /**
+     * 取り出しと書き込みを開始する
+     */
+    public void start() {
+        _muxerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeLoop();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        _drainExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    drainLoop();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        _drainExecutor.shutdown();
+        _muxerExecutor.shutdown();
+    }
+
+    /**
+     * 入力の終端を通知する
+     * 残りの出力を書き込んだらListener.onFinished()が呼び出される。
+     */
+    public void stop() {
+        if (_stopRequestedNanos != 0) return;
+
+        _stopRequestedNanos = System.nanoTime();
+        _encoder.signalEndOfInputStream();
+    }
+
+    /**
+     * 書き込みを終えるまで待つ
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!_drainExecutor.awaitTermination(timeout, unit)) return false;
+        return _muxerExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private void drainLoop() throws InterruptedException {
+        try {
+            while (!_drainer.drain(DRAIN_TIMEOUT_US)) {
+
+                //終端が出力されない場合は残りを諦めて終える
+                long stopRequested = _stopRequestedNanos;
+                if (stopRequested != 0 && System.nanoTime() - stopRequested > STOP_TIMEOUT_NANOS) return;
+            }
+        }
+        catch (RuntimeException e) {
+            //MediaCodecは失敗をIllegalStateException (CodecException) で通知する
+            _listener.onFailed(new IOException(e));
+        }
+        finally {
+            //どの場合も終端を渡し、書き込みスレッドを終わらせる (終端を渡し済みなら何もしない)
+            _drainer.endOfStream();
+        }
+    }
+
+    private void writeLoop() throws InterruptedException {
+        boolean failed = false;
+        try {
+            while (true) {
+                EncodedSample sample = _queue.take();
+                boolean endOfStream = sample.isEndOfStream();
+
+                //失敗した後も終端までは受け取り、取り出し側を待たせない
+                if (!failed) {
+                    try {
+                        _muxer.write(sample);
+                        if (endOfStream) {
+                            _muxer.finish();
+                        }
+                    }
+                    catch (IOException e) {
+                        failed = true;
+                        _failedWrites.incrementAndGet();
+                        _muxer.release();
+                        _listener.onFailed(e);
+                    }
+                    catch (RuntimeException e) {
+                        //MediaMuxerは書き込みの失敗をIllegalStateExceptionで通知する
+                        failed = true;
+                        _failedWrites.incrementAndGet();
+                        _muxer.release();
+                        _listener.onFailed(new IOException(e));
+                    }
+                }
+                else {
+                    _failedWrites.incrementAndGet();
+                }
+                _queue.recycle();
+
+                if (endOfStream) break;
+            }
+        }
+        finally {
+            //中断された場合も開いたままのファイルを解放する
+            _muxer.release();
+        }
+        _listener.onFinished();
+    }
+
+    public VideoEncoderConfig getConfig() {
+        return _config;
+    }
+
+    /**
+     * カメラがエンコーダの入力へフレームを送った (onCaptureCompletedから呼び出す)
+     */
+    public void onInputFrame() {
+        _drainer.onInputFrame();
+    }
+
+    /**
+     * エンコーダへ送ったがまだ出力されていないフレーム数
+     */
+    public long getEncoderQueueDepth() {
+        return _drainer.getEncoderQueueDepth();
+    }
+
+    /**
+     * 書き込み待ちのサンプル数
+     */
+    public int getMuxerQueueDepth() {
+        return _queue.getDepth();
+    }
+
+    public long getDroppedFrames() {
+        return _drainer.getDroppedFrames();
+    }
+
+    public EncoderDrainer<F> getDrainer() {
+        return _drainer;
+    }
+
+    /**
+     * 書き込めなかったサンプル数
+     */
+    public long getFailedWrites() {
+        return _failedWrites.get();
+    }
+
+    /**
+     * 書き終えたファイル数 (書き込みスレッドの終了後に参照する)
+     */
+    public int getFinishedSegments() {
+        return _muxer.getFinishedSegments();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "Video: %s in=%d out=%d key=%d bytes=%d encoder_queue=%d muxer_queue=%d/%d max=%d dropped=%d (queue=%d skipped=%d) failed=%d",
+                _config,
+                _drainer.getInputFrames(),
+                _drainer.getOutputFrames(),
+                _drainer.getKeyFrames(),
+                _drainer.getOutputBytes(),
+                getEncoderQueueDepth(),
+                _queue.getDepth(),
+                _queue.getCapacity(),
+                _queue.getMaxDepth(),
+                getDroppedFrames(),
+                _drainer.getQueueDroppedFrames(),
+                _drainer.getSkippedFrames(),
+                getFailedWrites());
+    }
+
+    private static ThreadFactory createThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name);
+            }
+        };
+    }
+}
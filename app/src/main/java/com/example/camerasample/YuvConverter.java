@@ -0,0 +1,264 @@
+package com.example.camerasample;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * YUV_420_888のフレームをARGB、グレースケール、NV21へ変換する
+ *
+ * Image.Planeのバッファをそのまま読み、行の間隔(rowStride)と画素の間隔(pixelStride)は任意でよい。
+ * U/Vが交互に並ぶNV21/NV12もpixelStrideが2のYUV_420_888として扱える。
+ * 出力先は呼び出し側が用意し、画素毎の確保は行わない。
+ * ForkJoinPoolを渡した場合は行単位で分割して並列に変換する。
+ *
+ * 色変換はJPEG(JFIF)と同じBT.601のフルレンジで、16ビットの固定小数点で計算する。
+ */
+public class YuvConverter {
+
+    /**
+     * 変換元の3つの面 (Image.Planeと同じ構成)
+     * 使い回せるよう値は変更可能にしている。
+     */
+    public static final class Planes {
+        int width;
+        int height;
+        ByteBuffer y;
+        int yRowStride;
+        int yPixelStride;
+        ByteBuffer u;
+        ByteBuffer v;
+        int uvRowStride;
+        int uvPixelStride;
+
+        public Planes set(int width, int height,
+                          ByteBuffer y, int yRowStride, int yPixelStride,
+                          ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Size must be positive.");
+            }
+
+            this.width = width;
+            this.height = height;
+            this.y = y;
+            this.yRowStride = yRowStride;
+            this.yPixelStride = yPixelStride;
+            this.u = u;
+            this.v = v;
+            this.uvRowStride = uvRowStride;
+            this.uvPixelStride = uvPixelStride;
+            return this;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    //変換係数 (x65536)
+    private static final int R_V = 91881;       //1.402
+    private static final int G_U = 22554;       //0.344136
+    private static final int G_V = 46802;       //0.714136
+    private static final int B_U = 116130;      //1.772
+    private static final int ROUND = 1 << 15;
+
+    //並列化する際の1タスクあたりの最小行数
+    private static final int MIN_ROWS_PER_TASK = 64;
+
+    //出力の種類
+    private static final int OUTPUT_ARGB = 0;
+    private static final int OUTPUT_GRAY = 1;
+
+    private final ForkJoinPool _pool;
+
+    /**
+     * 呼び出したスレッドで変換する
+     */
+    public YuvConverter() {
+        this(null);
+    }
+
+    /**
+     * poolで並列に変換する (nullの場合は呼び出したスレッドで変換する)
+     */
+    public YuvConverter(ForkJoinPool pool) {
+        _pool = pool;
+    }
+
+    /**
+     * NV21に必要なバイト数
+     */
+    public static int nv21Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * ARGB_8888 (Bitmap.setPixels()と同じ並び) へ変換する
+     */
+    public void toArgb(Planes src, int[] out) {
+        checkLength(out.length, src.width * src.height);
+        run(src, OUTPUT_ARGB, out, null);
+    }
+
+    /**
+     * 輝度のみ (1画素1バイト) へ変換する
+     */
+    public void toGray(Planes src, byte[] out) {
+        checkLength(out.length, src.width * src.height);
+        run(src, OUTPUT_GRAY, null, out);
+    }
+
+    /**
+     * NV21 (Y面の後にVUが交互に並ぶ) へ詰め替える
+     * android.graphics.YuvImageでJPEGへ変換する際に使う。
+     */
+    public void toNv21(Planes src, byte[] out) {
+        checkLength(out.length, nv21Size(src.width, src.height));
+
+        toGray(src, out);
+
+        int chromaWidth = (src.width + 1) / 2;
+        int chromaHeight = (src.height + 1) / 2;
+        int uBase = src.u.position();
+        int vBase = src.v.position();
+        int offset = src.width * src.height;
+        for (int row = 0; row < chromaHeight; row++) {
+            int uRow = uBase + row * src.uvRowStride;
+            int vRow = vBase + row * src.uvRowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int index = col * src.uvPixelStride;
+                out[offset++] = src.v.get(vRow + index);
+                out[offset++] = src.u.get(uRow + index);
+            }
+        }
+    }
+
+    private void run(Planes src, int output, int[] argb, byte[] gray) {
+        if (_pool == null || src.height < MIN_ROWS_PER_TASK * 2) {
+            convertRows(src, 0, src.height, output, argb, gray);
+            return;
+        }
+
+        _pool.invoke(new RowTask(src, 0, src.height, output, argb, gray));
+    }
+
+    /**
+     * 行を分割して変換するタスク
+     * 色差は2行で共有されるので、偶数行で分割する。
+     */
+    private static final class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Planes _src;
+        private final int _startRow;
+        private final int _endRow;
+        private final int _output;
+        private final int[] _argb;
+        private final byte[] _gray;
+
+        RowTask(Planes src, int startRow, int endRow, int output, int[] argb, byte[] gray) {
+            _src = src;
+            _startRow = startRow;
+            _endRow = endRow;
+            _output = output;
+            _argb = argb;
+            _gray = gray;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = _endRow - _startRow;
+            if (rows < MIN_ROWS_PER_TASK * 2) {
+                convertRows(_src, _startRow, _endRow, _output, _argb, _gray);
+                return;
+            }
+
+            int middle = _startRow + ((rows / 2) & ~1);
+            invokeAll(new RowTask(_src, _startRow, middle, _output, _argb, _gray),
+                    new RowTask(_src, middle, _endRow, _output, _argb, _gray));
+        }
+    }
+
+    private static void convertRows(Planes src, int startRow, int endRow, int output, int[] argb, byte[] gray) {
+        if (output == OUTPUT_GRAY) {
+            grayRows(src, startRow, endRow, gray);
+        }
+        else {
+            argbRows(src, startRow, endRow, argb);
+        }
+    }
+
+    private static void grayRows(Planes src, int startRow, int endRow, byte[] out) {
+        ByteBuffer yPlane = src.y;
+        int width = src.width;
+        int yBase = yPlane.position();
+        int yPixelStride = src.yPixelStride;
+
+        for (int row = startRow; row < endRow; row++) {
+            int yRow = yBase + row * src.yRowStride;
+            int offset = row * width;
+            for (int col = 0; col < width; col++) {
+                out[offset + col] = yPlane.get(yRow + col * yPixelStride);
+            }
+        }
+    }
+
+    private static void argbRows(Planes src, int startRow, int endRow, int[] out) {
+        ByteBuffer yPlane = src.y;
+        ByteBuffer uPlane = src.u;
+        ByteBuffer vPlane = src.v;
+        int width = src.width;
+        int yBase = yPlane.position();
+        int uBase = uPlane.position();
+        int vBase = vPlane.position();
+        int yPixelStride = src.yPixelStride;
+        int uvPixelStride = src.uvPixelStride;
+
+        for (int row = startRow; row < endRow; row++) {
+            int yRow = yBase + row * src.yRowStride;
+            int uvRow = (row >> 1) * src.uvRowStride;
+            int uRow = uBase + uvRow;
+            int vRow = vBase + uvRow;
+            int offset = row * width;
+
+            //色差は横2画素で共有されるので2画素ずつ変換する
+            for (int col = 0; col < width; col += 2) {
+                int uvIndex = (col >> 1) * uvPixelStride;
+                int u = (uPlane.get(uRow + uvIndex) & 0xff) - 128;
+                int v = (vPlane.get(vRow + uvIndex) & 0xff) - 128;
+                int rDiff = R_V * v + ROUND;
+                int gDiff = -G_U * u - G_V * v + ROUND;
+                int bDiff = B_U * u + ROUND;
+
+                int y0 = (yPlane.get(yRow + col * yPixelStride) & 0xff) << 16;
+                out[offset + col] = argb(y0, rDiff, gDiff, bDiff);
+
+                if (col + 1 < width) {
+                    int y1 = (yPlane.get(yRow + (col + 1) * yPixelStride) & 0xff) << 16;
+                    out[offset + col + 1] = argb(y1, rDiff, gDiff, bDiff);
+                }
+            }
+        }
+    }
+
+    private static int argb(int y, int rDiff, int gDiff, int bDiff) {
+        return 0xff000000
+                | clamp((y + rDiff) >> 16) << 16
+                | clamp((y + gDiff) >> 16) << 8
+                | clamp((y + bDiff) >> 16);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static void checkLength(int length, int required) {
+        if (length < required) {
+            throw new IllegalArgumentException("Output buffer is too small: " + length + " < " + required);
+        }
+    }
+}
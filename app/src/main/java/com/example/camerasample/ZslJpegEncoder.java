@@ -0,0 +1,88 @@
+package com.example.camerasample;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * ゼロシャッターラグで選んだYUV_420_888のフレームをJPEGへ変換する
+ *
+ * YuvImageはEXIFを書き込まないので、通常の撮影のJPEG_ORIENTATIONと同じ向きをEXIFへ書き加える。
+ * 変換用のバッファを使い回すので、同時に複数のスレッドから呼び出さないこと。
+ */
+public class ZslJpegEncoder {
+
+    private final int _quality;
+    private final YuvConverter _converter = new YuvConverter();
+    private final YuvConverter.Planes _planes = new YuvConverter.Planes();
+    private byte[] _nv21;
+
+    public ZslJpegEncoder(int quality) {
+        _quality = quality;
+    }
+
+    /**
+     * JPEGへ変換する
+     * 変換前のImageはNV21へ詰め替えた時点で閉じる。
+     *
+     * @param orientation 表示する際の時計回りの回転 (JPEG_ORIENTATIONと同じ値)
+     */
+    @NonNull
+    public JpegFrame encode(@NonNull Image image, int orientation) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long timestamp = image.getTimestamp();
+
+        byte[] nv21;
+        try {
+            nv21 = toNv21(image);
+        }
+        finally {
+            image.close();
+        }
+
+        YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(width * height / 4);
+        yuvImage.compressToJpeg(new Rect(0, 0, width, height), _quality, stream);
+
+        //向きをEXIFへ書き込む
+        ExifData exif = new ExifData()
+                .setOrientation(ExifData.toOrientation(orientation, false))
+                .setPixelSize(width, height);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream(stream.size() + 256);
+        ExifRewriter.rewrite(new ByteArrayInputStream(stream.toByteArray()), jpeg, exif);
+
+        return new JpegFrame(ByteBuffer.wrap(jpeg.toByteArray()), timestamp, null);
+    }
+
+    /**
+     * 行の間隔と画素の間隔を考慮してNV21(Y面の後にVUが交互に並ぶ)へ詰め替える
+     * 同じサイズが続く間は出力先を使い回す。
+     */
+    @NonNull
+    private byte[] toNv21(@NonNull Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+
+        int size = YuvConverter.nv21Size(width, height);
+        if (_nv21 == null || _nv21.length != size) {
+            _nv21 = new byte[size];
+        }
+
+        _planes.set(width, height,
+                planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride());
+        _converter.toNv21(_planes, _nv21);
+
+        return _nv21;
+    }
+}
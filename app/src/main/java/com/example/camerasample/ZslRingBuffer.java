@@ -0,0 +1,242 @@
+package com.example.camerasample;
+
+/**
+ * ゼロシャッターラグ用の直近フレームのリングバッファ
+ *
+ * ImageReaderから届くフレームと、CaptureCallbackから届く撮影結果を
+ * センサのタイムスタンプで対応付けて直近のcapacity件だけ保持する。
+ * どちらが先に届いてもよい。溢れた古いものはRecyclerへ返す。
+ * シャッター時はselect()でピントと露出が安定した最新のフレームを取り出す。
+ */
+public class ZslRingBuffer<F, R> {
+
+    /**
+     * 不要になったフレームの解放処理
+     */
+    public interface Recycler<F> {
+        void recycle(F frame);
+    }
+
+    /**
+     * 取り出したフレームと撮影結果
+     * フレームの解放は受け取った側が行う。
+     */
+    public static final class Entry<F, R> {
+        public final long timestamp;
+        public final F frame;
+        public final R result;
+        public final int afState;
+        public final int aeState;
+        public final int lensState;
+
+        Entry(long timestamp, F frame, R result, int afState, int aeState, int lensState) {
+            this.timestamp = timestamp;
+            this.frame = frame;
+            this.result = result;
+            this.afState = afState;
+            this.aeState = aeState;
+            this.lensState = lensState;
+        }
+    }
+
+    private final int _capacity;
+    private final Recycler<F> _recycler;
+
+    //スロット (_head が最も古い)
+    private final long[] _timestamps;
+    private final Object[] _frames;
+    private final Object[] _results;
+    private final boolean[] _hasResult;
+    private final int[] _afStates;
+    private final int[] _aeStates;
+    private final int[] _lensStates;
+    private int _head;
+    private int _size;
+
+    private long _evictedCount;
+
+    public ZslRingBuffer(int capacity, Recycler<F> recycler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+
+        _capacity = capacity;
+        _recycler = recycler;
+        _timestamps = new long[capacity];
+        _frames = new Object[capacity];
+        _results = new Object[capacity];
+        _hasResult = new boolean[capacity];
+        _afStates = new int[capacity];
+        _aeStates = new int[capacity];
+        _lensStates = new int[capacity];
+    }
+
+    /**
+     * フレームを追加する
+     */
+    public synchronized void addFrame(long timestamp, F frame) {
+        int slot = findOrInsert(timestamp);
+        if (slot < 0) {
+            //保持している中で最も古いものより古い場合は保持しない
+            recycle(frame);
+            return;
+        }
+
+        Object previous = _frames[slot];
+        _frames[slot] = frame;
+        if (previous != null && previous != frame) {
+            recycle(this.<F>cast(previous));
+        }
+    }
+
+    /**
+     * 撮影結果を追加する
+     */
+    public synchronized void addResult(long timestamp, R result, int afState, int aeState, int lensState) {
+        int slot = findOrInsert(timestamp);
+        if (slot < 0) return;
+
+        _results[slot] = result;
+        _hasResult[slot] = true;
+        _afStates[slot] = afState;
+        _aeStates[slot] = aeState;
+        _lensStates[slot] = lensState;
+    }
+
+    /**
+     * 指定時刻以前でピントと露出が安定した最新のフレームを取り出す
+     * フレームと撮影結果の両方が揃っているものが対象で、無い場合はnullを返す。
+     */
+    public synchronized Entry<F, R> select(long shutterTimestamp) {
+        for (int i = _size - 1; i >= 0; i--) {
+            int slot = slot(i);
+            if (_timestamps[slot] > shutterTimestamp) continue;
+            if (_frames[slot] == null || !_hasResult[slot]) continue;
+            if (!isSharp(slot)) continue;
+
+            Entry<F, R> entry = new Entry<>(_timestamps[slot], this.<F>cast(_frames[slot]), this.<R>cast(_results[slot]),
+                    _afStates[slot], _aeStates[slot], _lensStates[slot]);
+            _frames[slot] = null;
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * 全てのフレームを解放する
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < _size; i++) {
+            clearSlot(slot(i));
+        }
+        _head = 0;
+        _size = 0;
+    }
+
+    public synchronized int size() {
+        return _size;
+    }
+
+    public int capacity() {
+        return _capacity;
+    }
+
+    /**
+     * 溢れて解放したフレーム数
+     */
+    public synchronized long getEvictedCount() {
+        return _evictedCount;
+    }
+
+    private boolean isSharp(int slot) {
+        //レンズが動いている間のフレームはぶれているので使用しない
+        if (_lensStates[slot] == ControlState.LENS_MOVING) return false;
+
+        boolean focused = _afStates[slot] == ControlState.UNKNOWN || ControlState.isFocused(_afStates[slot]);
+        boolean exposed = _aeStates[slot] == ControlState.UNKNOWN || ControlState.isExposureConverged(_aeStates[slot]);
+        return focused && exposed;
+    }
+
+    /**
+     * タイムスタンプのスロットを探し、無ければ時刻順の位置に追加する
+     * 満杯なら最も古いものを追い出す。追加できない場合は-1を返す。
+     */
+    private int findOrInsert(long timestamp) {
+
+        //新しいものほど後ろにあるので後ろから探す
+        int index = _size;
+        for (int i = _size - 1; i >= 0; i--) {
+            long current = _timestamps[slot(i)];
+            if (current == timestamp) return slot(i);
+            if (current < timestamp) break;
+            index = i;
+        }
+
+        if (_size == _capacity) {
+            if (index == 0) return -1;
+
+            evictOldest();
+            index--;
+        }
+
+        //挿入位置より後ろを1つずらす
+        for (int i = _size; i > index; i--) {
+            moveSlot(slot(i - 1), slot(i));
+        }
+        _size++;
+
+        int slot = slot(index);
+        _timestamps[slot] = timestamp;
+        _frames[slot] = null;
+        _results[slot] = null;
+        _hasResult[slot] = false;
+        _afStates[slot] = ControlState.UNKNOWN;
+        _aeStates[slot] = ControlState.UNKNOWN;
+        _lensStates[slot] = ControlState.UNKNOWN;
+        return slot;
+    }
+
+    private void evictOldest() {
+        if (_frames[_head] != null) {
+            _evictedCount++;
+        }
+        clearSlot(_head);
+        _head = (_head + 1) % _capacity;
+        _size--;
+    }
+
+    private void clearSlot(int slot) {
+        Object frame = _frames[slot];
+        _frames[slot] = null;
+        _results[slot] = null;
+        _hasResult[slot] = false;
+        if (frame != null) {
+            recycle(this.<F>cast(frame));
+        }
+    }
+
+    private void moveSlot(int from, int to) {
+        _timestamps[to] = _timestamps[from];
+        _frames[to] = _frames[from];
+        _results[to] = _results[from];
+        _hasResult[to] = _hasResult[from];
+        _afStates[to] = _afStates[from];
+        _aeStates[to] = _aeStates[from];
+        _lensStates[to] = _lensStates[from];
+    }
+
+    private int slot(int index) {
+        return (_head + index) % _capacity;
+    }
+
+    private void recycle(F frame) {
+        if (_recycler != null && frame != null) {
+            _recycler.recycle(frame);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value) {
+        return (T)value;
+    }
+}
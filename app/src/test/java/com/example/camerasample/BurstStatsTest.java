@@ -0,0 +1,78 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 連写の集計のテスト
+ */
+public class BurstStatsTest {
+
+    @Test
+    public void onFrame_computesSustainedFps() {
+        BurstStats stats = new BurstStats();
+        stats.start(5);
+
+        //33.3ms間隔 (30fps)
+        long timestamp = 1000000000L;
+        for (int i = 0; i < 4; i++) {
+            assertFalse(stats.onFrame(timestamp));
+            timestamp += 33333333L;
+        }
+        assertTrue(stats.onFrame(timestamp));
+
+        assertEquals(5, stats.getReceived());
+        assertEquals(0, stats.getDropped());
+        assertEquals(30.0, stats.getFramesPerSecond(), 0.01);
+        assertFalse(stats.isActive());
+    }
+
+    @Test
+    public void onDropped_countsTowardsCompletion() {
+        BurstStats stats = new BurstStats();
+        stats.start(3);
+
+        assertFalse(stats.onFrame(0));
+        assertFalse(stats.onDropped());
+        assertTrue(stats.isActive());
+        assertTrue(stats.onFrame(100000000L));
+
+        assertEquals(2, stats.getReceived());
+        assertEquals(1, stats.getDropped());
+        assertEquals(10.0, stats.getFramesPerSecond(), 0.01);
+    }
+
+    @Test
+    public void start_resetsCurrentBurstButKeepsTotalDropped() {
+        BurstStats stats = new BurstStats();
+        stats.start(2);
+        stats.onDropped();
+        stats.onDropped();
+
+        stats.start(2);
+        assertEquals(0, stats.getDropped());
+        assertEquals(2, stats.getTotalDropped());
+        assertEquals(0.0, stats.getFramesPerSecond(), 0.0);
+    }
+
+    @Test
+    public void onFrame_ignoredAfterBurstCompleted() {
+        BurstStats stats = new BurstStats();
+        stats.start(1);
+
+        assertTrue(stats.onFrame(0));
+        assertFalse(stats.onFrame(1000));
+        assertFalse(stats.onDropped());
+        assertEquals(1, stats.getReceived());
+    }
+
+    @Test
+    public void onFrame_ignoredWithoutBurst() {
+        BurstStats stats = new BurstStats();
+
+        assertFalse(stats.onFrame(0));
+        assertFalse(stats.onDropped());
+        assertEquals(0, stats.getTotalDropped());
+    }
+}
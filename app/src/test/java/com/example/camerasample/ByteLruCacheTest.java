@@ -0,0 +1,80 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * バイト数で上限を決めるキャッシュのテスト
+ */
+public class ByteLruCacheTest {
+
+    //文字列の長さを大きさとする
+    private static ByteLruCache<String, String> createCache(long maxBytes) {
+        return new ByteLruCache<>(maxBytes, new ByteLruCache.Sizer<String>() {
+            @Override
+            public int sizeOf(String value) {
+                return value.length();
+            }
+        });
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        ByteLruCache<String, String> cache = createCache(10);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+
+        //aを使ってからcを入れるとbが捨てられる
+        assertEquals("aaaa", cache.get("a"));
+        cache.put("c", "cccc");
+
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(8, cache.getCurrentBytes());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void put_replacesSameKey() {
+        ByteLruCache<String, String> cache = createCache(10);
+        cache.put("a", "aaaa");
+        cache.put("a", "aa");
+
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getCurrentBytes());
+        assertEquals("aa", cache.get("a"));
+    }
+
+    @Test
+    public void put_rejectsValueLargerThanMax() {
+        ByteLruCache<String, String> cache = createCache(4);
+        cache.put("a", "aa");
+
+        //大きすぎる値は保持せず、同じキーの古い値も残さない
+        assertFalse(cache.put("a", "aaaaa"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void trimToSize_keepsMostRecent() {
+        ByteLruCache<String, String> cache = createCache(100);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, "0123456789");
+        }
+
+        cache.trimToSize(30);
+
+        assertEquals(3, cache.size());
+        assertNotNull(cache.get("key9"));
+        assertNull(cache.get("key6"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getCurrentBytes());
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * カメラの一覧とレンズの選択のテスト
+ */
+public class CameraCatalogTest {
+
+    static CameraConfig createConfig(String cameraId, int facing, float fieldOfView, String... physicalCameraIds) {
+        StreamSizes sizes = StreamSizes.create(new FrameSize[] { new FrameSize(1920, 1080), new FrameSize(640, 480) }, null, null);
+        return new CameraConfigBuilder()
+                .setCameraId(cameraId)
+                .setFlashSupported(true)
+                .setTimestampRealtime(true)
+                .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_FULL)
+                .setJpegStreams(sizes)
+                .setPreviewStreams(sizes)
+                .setYuvStreams(sizes)
+                .setLens(new CameraLens(facing, fieldOfView, physicalCameraIds))
+                .build();
+    }
+
+    //背面 (論理カメラ)、前面、背面の広角、背面の望遠
+    static CameraCatalog createCatalog() {
+        return CameraCatalog.create(new CameraConfig[] {
+                createConfig("0", CameraLens.FACING_BACK, 66f, "2", "3"),
+                createConfig("1", CameraLens.FACING_FRONT, 78f),
+                createConfig("4", CameraLens.FACING_BACK, 110f),
+                createConfig("5", CameraLens.FACING_BACK, 30f),
+        }, new CameraConfig[] {
+                createConfig("2", CameraLens.FACING_BACK, 66f),
+                createConfig("3", CameraLens.FACING_BACK, 112f),
+        });
+    }
+
+    @Test
+    public void computeFieldOfView_wideLensIsWider() {
+        float normal = CameraLens.computeFieldOfView(4.38f, 5.6f);
+        float wide = CameraLens.computeFieldOfView(1.8f, 5.6f);
+
+        assertEquals(Math.toDegrees(2 * Math.atan(5.6 / (2 * 4.38))), normal, 1e-3);
+        assertTrue(wide > normal * CameraCatalog.WIDE_FIELD_OF_VIEW_RATIO);
+        assertEquals(0, CameraLens.computeFieldOfView(0, 5.6f), 0);
+    }
+
+    @Test
+    public void select_picksFirstCameraForFacing() {
+        CameraCatalog catalog = createCatalog();
+
+        assertEquals("1", catalog.select(CameraCatalog.LENS_FRONT).getCameraId());
+        assertTrue(catalog.select(CameraCatalog.LENS_FRONT).isMirrored());
+        assertEquals("0", catalog.select(CameraCatalog.LENS_BACK).getCameraId());
+        assertFalse(catalog.select(CameraCatalog.LENS_BACK).isMirrored());
+    }
+
+    @Test
+    public void select_wideIsWidestBackCamera() {
+        CameraCatalog.Selection wide = createCatalog().select(CameraCatalog.LENS_WIDE);
+
+        //物理カメラ (3) は単独で開けないので選ばない
+        assertEquals(CameraCatalog.LENS_WIDE, wide.lens);
+        assertEquals("4", wide.getCameraId());
+    }
+
+    @Test
+    public void select_noWideWhenFieldOfViewIsClose() {
+        CameraCatalog catalog = CameraCatalog.create(new CameraConfig[] {
+                createConfig("0", CameraLens.FACING_BACK, 66f),
+                createConfig("2", CameraLens.FACING_BACK, 70f),
+        }, new CameraConfig[0]);
+
+        assertNull(catalog.select(CameraCatalog.LENS_WIDE));
+        assertArrayEquals(new int[] { CameraCatalog.LENS_BACK }, catalog.getAvailableLenses());
+    }
+
+    @Test
+    public void select_noWideWhenFieldOfViewIsUnknown() {
+        CameraCatalog catalog = CameraCatalog.create(new CameraConfig[] {
+                createConfig("0", CameraLens.FACING_BACK, 0),
+                createConfig("2", CameraLens.FACING_BACK, 110f),
+        }, new CameraConfig[0]);
+
+        assertNull(catalog.select(CameraCatalog.LENS_WIDE));
+    }
+
+    @Test
+    public void selectOrDefault_fallsBackToAvailableLens() {
+        CameraCatalog catalog = CameraCatalog.create(new CameraConfig[] {
+                createConfig("0", CameraLens.FACING_BACK, 66f),
+        }, new CameraConfig[0]);
+
+        assertEquals(CameraCatalog.LENS_BACK, catalog.selectOrDefault(CameraCatalog.LENS_FRONT).lens);
+
+        CameraCatalog external = CameraCatalog.create(new CameraConfig[] {
+                createConfig("10", CameraLens.FACING_EXTERNAL, 60f),
+        }, new CameraConfig[0]);
+        assertEquals("10", external.selectOrDefault(CameraCatalog.LENS_WIDE).getCameraId());
+    }
+
+    @Test
+    public void nextLens_cyclesAvailableLenses() {
+        CameraCatalog catalog = createCatalog();
+
+        assertEquals(CameraCatalog.LENS_BACK, catalog.nextLens(CameraCatalog.LENS_FRONT));
+        assertEquals(CameraCatalog.LENS_WIDE, catalog.nextLens(CameraCatalog.LENS_BACK));
+        assertEquals(CameraCatalog.LENS_FRONT, catalog.nextLens(CameraCatalog.LENS_WIDE));
+
+        CameraCatalog single = CameraCatalog.create(new CameraConfig[] {
+                createConfig("1", CameraLens.FACING_FRONT, 78f),
+        }, new CameraConfig[0]);
+        assertEquals(CameraCatalog.LENS_FRONT, single.nextLens(CameraCatalog.LENS_FRONT));
+    }
+
+    @Test
+    public void find_includesPhysicalCameras() {
+        CameraCatalog catalog = createCatalog();
+
+        assertTrue(catalog.get(0).getLens().isLogicalMultiCamera());
+        assertTrue(catalog.get(0).getLens().hasPhysicalCamera("3"));
+        assertEquals(112f, catalog.find("3").getLens().getFieldOfView(), 0);
+        assertNull(catalog.find("9"));
+    }
+
+    @Test
+    public void writeTo_readFromRoundTrip() throws IOException {
+        CameraCatalog catalog = createCatalog();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        catalog.writeTo(new DataOutputStream(bytes));
+
+        CameraCatalog read = CameraCatalog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(catalog, read);
+        assertEquals(2, read.getPhysicalCameras().length);
+        assertArrayEquals(new String[] { "2", "3" }, read.get(0).getLens().getPhysicalCameraIds());
+        assertEquals("4", read.select(CameraCatalog.LENS_WIDE).getCameraId());
+    }
+
+    @Test
+    public void readFrom_otherVersionReturnsNull() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(CameraCatalog.VERSION + 1);
+
+        assertNull(CameraCatalog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_rejectsEmpty() {
+        CameraCatalog.create(new CameraConfig[0], new CameraConfig[0]);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.camerasample;
+
+/**
+ * テスト用のカメラの設定の生成
+ *
+ * 指定しなかった項目は、ハードウェアレベルはLEGACY、フレーム間隔は不明、
+ * フレームレートの範囲・高速度撮影・RAWは無し、レンズはCameraLens.DEFAULTとする。
+ */
+class CameraConfigBuilder {
+
+    private static final StreamSizes EMPTY = StreamSizes.create(new FrameSize[0], null, null);
+
+    private String _cameraId = "0";
+    private int _sensorOrientation = 90;
+    private boolean _flashSupported;
+    private boolean _timestampRealtime;
+    private int _hardwareLevel = StreamCombinations.HARDWARE_LEVEL_LEGACY;
+    private StreamSizes _jpegStreams = EMPTY;
+    private StreamSizes _previewStreams = EMPTY;
+    private StreamSizes _yuvStreams = EMPTY;
+    private FpsRange[] _aeFpsRanges = new FpsRange[0];
+    private HighSpeedConfiguration[] _highSpeedConfigurations = new HighSpeedConfiguration[0];
+    private StreamSizes _rawStreams = EMPTY;
+    private CameraLens _lens = CameraLens.DEFAULT;
+
+    CameraConfigBuilder setCameraId(String cameraId) {
+        _cameraId = cameraId;
+        return this;
+    }
+
+    CameraConfigBuilder setSensorOrientation(int sensorOrientation) {
+        _sensorOrientation = sensorOrientation;
+        return this;
+    }
+
+    CameraConfigBuilder setFlashSupported(boolean flashSupported) {
+        _flashSupported = flashSupported;
+        return this;
+    }
+
+    CameraConfigBuilder setTimestampRealtime(boolean timestampRealtime) {
+        _timestampRealtime = timestampRealtime;
+        return this;
+    }
+
+    CameraConfigBuilder setHardwareLevel(int hardwareLevel) {
+        _hardwareLevel = hardwareLevel;
+        return this;
+    }
+
+    CameraConfigBuilder setJpegStreams(StreamSizes jpegStreams) {
+        _jpegStreams = jpegStreams;
+        return this;
+    }
+
+    /**
+     * フレーム間隔が不明なJPEGのサイズ
+     */
+    CameraConfigBuilder setJpegSizes(FrameSize... sizes) {
+        return setJpegStreams(StreamSizes.create(sizes, null, null));
+    }
+
+    CameraConfigBuilder setPreviewStreams(StreamSizes previewStreams) {
+        _previewStreams = previewStreams;
+        return this;
+    }
+
+    CameraConfigBuilder setPreviewSizes(FrameSize... sizes) {
+        return setPreviewStreams(StreamSizes.create(sizes, null, null));
+    }
+
+    CameraConfigBuilder setYuvStreams(StreamSizes yuvStreams) {
+        _yuvStreams = yuvStreams;
+        return this;
+    }
+
+    CameraConfigBuilder setYuvSizes(FrameSize... sizes) {
+        return setYuvStreams(StreamSizes.create(sizes, null, null));
+    }
+
+    CameraConfigBuilder setAeFpsRanges(FpsRange... aeFpsRanges) {
+        _aeFpsRanges = aeFpsRanges;
+        return this;
+    }
+
+    CameraConfigBuilder setHighSpeedConfigurations(HighSpeedConfiguration... highSpeedConfigurations) {
+        _highSpeedConfigurations = highSpeedConfigurations;
+        return this;
+    }
+
+    CameraConfigBuilder setRawStreams(StreamSizes rawStreams) {
+        _rawStreams = rawStreams;
+        return this;
+    }
+
+    CameraConfigBuilder setLens(CameraLens lens) {
+        _lens = lens;
+        return this;
+    }
+
+    CameraConfig build() {
+        return CameraConfig.create(_cameraId, _sensorOrientation, _flashSupported, _timestampRealtime, _hardwareLevel,
+                _jpegStreams, _previewStreams, _yuvStreams, _aeFpsRanges, _highSpeedConfigurations, _rawStreams, _lens);
+    }
+}
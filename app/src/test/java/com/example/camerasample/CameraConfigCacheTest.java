@@ -0,0 +1,259 @@
+package com.example.camerasample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * カメラの設定とその保持のテスト
+ */
+public class CameraConfigCacheTest {
+
+    private static final String FINGERPRINT = "google/device/device:10/QQ1A/1234:user/release-keys";
+
+    private File _directory;
+    private File _file;
+
+    @Before
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("camera-config").toFile();
+        _file = new File(_directory, "camera_config");
+    }
+
+    @After
+    public void tearDown() {
+        JpegFileWriterTest.deleteRecursively(_directory);
+    }
+
+    private static CameraConfig createConfig() {
+        return new CameraConfigBuilder()
+                .setCameraId("1")
+                .setSensorOrientation(270)
+                .setTimestampRealtime(true)
+                .setJpegSizes(new FrameSize(1920, 1080), new FrameSize(4032, 3024), new FrameSize(640, 480))
+                .setPreviewSizes(new FrameSize(1920, 1080), new FrameSize(320, 240), new FrameSize(1280, 720))
+                .setYuvSizes(new FrameSize(640, 480), new FrameSize(4032, 3024))
+                .build();
+    }
+
+    private static CameraCatalog createCatalog() {
+        return CameraCatalog.create(new CameraConfig[] { createConfig() }, new CameraConfig[0]);
+    }
+
+    @Test
+    public void create_sortsSizesByArea() {
+        CameraConfig config = createConfig();
+
+        assertEquals(new FrameSize(4032, 3024), config.getMaxJpegSize());
+        assertArrayEquals(new FrameSize[] { new FrameSize(320, 240), new FrameSize(1280, 720), new FrameSize(1920, 1080) },
+                config.getPreviewSizes());
+    }
+
+    @Test
+    public void create_keepsDurationsWithSortedSizes() {
+        CameraConfig config = new CameraConfigBuilder()
+                .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_FULL)
+                .setJpegStreams(StreamSizes.create(new FrameSize[] { new FrameSize(4032, 3024), new FrameSize(1920, 1080) },
+                        new long[] { 50000000L, 33333333L }, new long[] { 300000000L, 100000000L }))
+                .setPreviewStreams(StreamSizes.create(new FrameSize[] { new FrameSize(1280, 720), new FrameSize(640, 480) },
+                        new long[] { 16666666L, 8333333L }, null))
+                .build();
+
+        StreamSizes jpeg = config.getJpegStreams();
+        assertEquals(new FrameSize(1920, 1080), jpeg.get(0));
+        assertEquals(33333333L, jpeg.getMinFrameDuration(0));
+        assertEquals(100000000L, jpeg.getStallDuration(0));
+        assertEquals(300000000L, jpeg.getStallDuration(jpeg.indexOf(config.getMaxJpegSize())));
+        assertEquals(8333333L, config.getPreviewStreams().getMinFrameDuration(0));
+        assertEquals(0, config.getPreviewStreams().getStallDuration(1));
+        assertEquals(StreamCombinations.HARDWARE_LEVEL_FULL, config.getHardwareLevel());
+    }
+
+    @Test
+    public void writeTo_roundTripsDurations() throws IOException {
+        CameraConfig config = new CameraConfigBuilder()
+                .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_3)
+                .setJpegStreams(StreamSizes.create(new FrameSize[] { new FrameSize(4032, 3024) }, new long[] { 50000000L }, new long[] { 300000000L }))
+                .setPreviewStreams(StreamSizes.create(new FrameSize[] { new FrameSize(1280, 720) }, new long[] { 16666666L }, null))
+                .setYuvStreams(StreamSizes.create(new FrameSize[] { new FrameSize(640, 480) }, new long[] { 8333333L }, null))
+                .build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        config.writeTo(new DataOutputStream(bytes));
+
+        CameraConfig read = CameraConfig.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(config, read);
+        assertEquals(300000000L, read.getJpegStreams().getStallDuration(0));
+        assertEquals(StreamCombinations.HARDWARE_LEVEL_3, read.getHardwareLevel());
+    }
+
+    @Test
+    public void writeTo_roundTripsFpsRanges() throws IOException {
+        FpsRange[] aeFpsRanges = { new FpsRange(15, 30), new FpsRange(30, 30), new FpsRange(7, 30) };
+        HighSpeedConfiguration[] highSpeedConfigurations = {
+                new HighSpeedConfiguration(new FrameSize(1280, 720), new FpsRange(30, 120)),
+                new HighSpeedConfiguration(new FrameSize(1280, 720), new FpsRange(120, 120)),
+        };
+        CameraConfig config = new CameraConfigBuilder()
+                .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_FULL)
+                .setJpegSizes(new FrameSize(4032, 3024))
+                .setPreviewSizes(new FrameSize(1280, 720))
+                .setAeFpsRanges(aeFpsRanges)
+                .setHighSpeedConfigurations(highSpeedConfigurations)
+                .build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        config.writeTo(new DataOutputStream(bytes));
+
+        CameraConfig read = CameraConfig.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(config, read);
+        assertArrayEquals(aeFpsRanges, read.getAeFpsRanges());
+        assertArrayEquals(highSpeedConfigurations, read.getHighSpeedConfigurations());
+    }
+
+    @Test
+    public void writeTo_roundTripsRawStreams() throws IOException {
+        StreamSizes rawStreams = StreamSizes.create(new FrameSize[] { new FrameSize(4032, 3024) },
+                new long[] { 50000000L }, new long[] { 0 });
+        CameraConfig config = new CameraConfigBuilder()
+                .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_FULL)
+                .setJpegSizes(new FrameSize(4032, 3024))
+                .setPreviewSizes(new FrameSize(1280, 720))
+                .setRawStreams(rawStreams)
+                .build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        config.writeTo(new DataOutputStream(bytes));
+
+        CameraConfig read = CameraConfig.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(config, read);
+        assertTrue(read.isRawSupported());
+        assertEquals(rawStreams, read.getRawStreams());
+        assertFalse(createConfig().isRawSupported());
+    }
+
+    @Test
+    public void create_withoutFpsRangesIsEmpty() {
+        CameraConfig config = createConfig();
+
+        assertEquals(0, config.getAeFpsRanges().length);
+        assertEquals(0, config.getHighSpeedConfigurations().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_rejectsMismatchedDurations() {
+        StreamSizes.create(new FrameSize[] { new FrameSize(640, 480) }, new long[2], null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_rejectsNoJpegSizes() {
+        new CameraConfigBuilder().setFlashSupported(true).build();
+    }
+
+    @Test
+    public void writeTo_roundTrips() throws IOException {
+        CameraConfig config = createConfig();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        config.writeTo(new DataOutputStream(bytes));
+
+        CameraConfig read = CameraConfig.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(config, read);
+        assertTrue(read.isTimestampRealtime());
+        assertFalse(read.isFlashSupported());
+    }
+
+    @Test
+    public void readFrom_otherVersionReturnsNull() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(CameraConfig.VERSION + 1);
+
+        assertNull(CameraConfig.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void get_emptyIsMiss() {
+        CameraConfigCache cache = new CameraConfigCache(_file, FINGERPRINT);
+
+        assertNull(cache.get());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void put_thenGetFromMemory() {
+        CameraConfigCache cache = new CameraConfigCache(_file, FINGERPRINT);
+        CameraCatalog catalog = createCatalog();
+        cache.put(catalog);
+
+        assertSame(catalog, cache.get());
+        assertEquals(1, cache.getMemoryHits());
+    }
+
+    @Test
+    public void get_readsFileWrittenByPreviousProcess() {
+        new CameraConfigCache(_file, FINGERPRINT).put(createCatalog());
+
+        //新しいプロセスを想定
+        CameraConfigCache cache = new CameraConfigCache(_file, FINGERPRINT);
+
+        assertEquals(createCatalog(), cache.get());
+        assertEquals(1, cache.getDiskHits());
+        assertNotNull(cache.get());
+        assertEquals(1, cache.getMemoryHits());
+        assertFalse(new File(_file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void peek_doesNotReadFile() {
+        new CameraConfigCache(_file, FINGERPRINT).put(createCatalog());
+
+        CameraConfigCache cache = new CameraConfigCache(_file, FINGERPRINT);
+
+        assertNull(cache.peek());
+        assertEquals(0, cache.getDiskHits());
+        assertNotNull(cache.get());
+        assertSame(cache.get(), cache.peek());
+        assertEquals(2, cache.getMemoryHits());
+    }
+
+    @Test
+    public void get_ignoresFileFromOtherBuild() {
+        new CameraConfigCache(_file, FINGERPRINT).put(createCatalog());
+
+        CameraConfigCache cache = new CameraConfigCache(_file, FINGERPRINT + ".update");
+
+        assertNull(cache.get());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void get_corruptFileIsMiss() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(_file)) {
+            out.write(new byte[] { 0, 3, 'a', 'b' });
+        }
+
+        assertNull(new CameraConfigCache(_file, FINGERPRINT).get());
+    }
+
+    @Test
+    public void invalidate_removesMemoryAndFile() {
+        CameraConfigCache cache = new CameraConfigCache(_file, FINGERPRINT);
+        cache.put(createCatalog());
+        cache.invalidate();
+
+        assertNull(cache.get());
+        assertFalse(_file.exists());
+        assertNull(new CameraConfigCache(_file, FINGERPRINT).get());
+    }
+}
@@ -0,0 +1,458 @@
+package com.example.camerasample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * カメラの開閉の管理のテスト
+ */
+public class CameraLifecycleControllerTest {
+
+    //execute()された処理を手動で実行するExecutor
+    private static class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown) throw new RejectedExecutionException();
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    //CameraDeviceの代わり
+    private static class FakeDevice {
+        final int id;
+        final AtomicInteger closeCount = new AtomicInteger();
+
+        FakeDevice(int id) {
+            this.id = id;
+        }
+
+        boolean isClosed() {
+            return closeCount.get() > 0;
+        }
+    }
+
+    //open()の結果を手動で返すBackend
+    private static class ManualBackend implements CameraLifecycleController.Backend<FakeDevice> {
+        final List<CameraLifecycleController.OpenCallback<FakeDevice>> callbacks = new ArrayList<>();
+        final List<FakeDevice> closed = new ArrayList<>();
+
+        @Override
+        public void open(String cameraId, CameraLifecycleController.OpenCallback<FakeDevice> callback) {
+            callbacks.add(callback);
+        }
+
+        @Override
+        public void close(FakeDevice device) {
+            device.closeCount.incrementAndGet();
+            closed.add(device);
+        }
+    }
+
+    //Listenerへの通知を文字列で記録する
+    private static class RecordingListener implements CameraLifecycleController.Listener<FakeDevice> {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onOpened(FakeDevice device, int generation) {
+            events.add("opened:" + device.id + ":" + generation);
+        }
+
+        @Override
+        public void onClosed(int generation) {
+            events.add("closed:" + generation);
+        }
+
+        @Override
+        public void onDisconnected(int generation) {
+            events.add("disconnected:" + generation);
+        }
+
+        @Override
+        public void onError(int generation, int error) {
+            events.add("error:" + generation + ":" + error);
+        }
+    }
+
+    private ManualExecutor _executor;
+    private ManualBackend _backend;
+    private RecordingListener _listener;
+    private CameraLifecycleController<FakeDevice> _controller;
+
+    @Before
+    public void setUp() {
+        _executor = new ManualExecutor();
+        _backend = new ManualBackend();
+        _listener = new RecordingListener();
+        _controller = new CameraLifecycleController<>(_executor, _backend, _listener);
+    }
+
+    @Test
+    public void open_doesNotRunOnCallerThread() {
+        int generation = _controller.open("0");
+
+        assertEquals(1, generation);
+        assertTrue(_backend.callbacks.isEmpty());
+        assertEquals(1, _executor.tasks.size());
+    }
+
+    @Test
+    public void open_notifiesOpenedDevice() {
+        int generation = _controller.open("0");
+        _executor.runAll();
+        _backend.callbacks.get(0).onOpened(new FakeDevice(1));
+        _executor.runAll();
+
+        assertEquals(Collections.singletonList("opened:1:" + generation), _listener.events);
+        assertEquals(1, _controller.getOpenCount());
+        assertEquals(0, _controller.getCloseCount());
+    }
+
+    @Test
+    public void close_closesDeviceBeforeRelease() {
+        final FakeDevice device = new FakeDevice(1);
+        final AtomicBoolean closedBeforeRelease = new AtomicBoolean();
+
+        int generation = _controller.open("0");
+        _executor.runAll();
+        _backend.callbacks.get(0).onOpened(device);
+        _executor.runAll();
+
+        _controller.close(new Runnable() {
+            @Override
+            public void run() {
+                closedBeforeRelease.set(device.isClosed());
+            }
+        });
+        assertFalse(device.isClosed());
+        _executor.runAll();
+
+        assertTrue(closedBeforeRelease.get());
+        assertEquals(1, device.closeCount.get());
+        assertEquals("closed:" + generation, _listener.events.get(1));
+    }
+
+    @Test
+    public void rapidPauseResume_opensOnlyLatestRequest() {
+        final AtomicInteger released = new AtomicInteger();
+        Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                released.incrementAndGet();
+            }
+        };
+
+        _controller.open("0");
+        _controller.close(release);
+        _controller.open("0");
+        _controller.close(release);
+        int generation = _controller.open("0");
+        _executor.runAll();
+
+        assertEquals(1, _backend.callbacks.size());
+        assertEquals(2, _controller.getStaleCount());
+        assertEquals(2, released.get());
+
+        _backend.callbacks.get(0).onOpened(new FakeDevice(1));
+        _executor.runAll();
+        assertEquals(Collections.singletonList("opened:1:" + generation), _listener.events);
+    }
+
+    @Test
+    public void closeWhileOpening_closesDeviceWhenOpened() {
+        FakeDevice device = new FakeDevice(1);
+
+        _controller.open("0");
+        _executor.runAll();
+        _controller.close(null);
+        _executor.runAll();
+
+        _backend.callbacks.get(0).onOpened(device);
+        _executor.runAll();
+
+        assertEquals(1, device.closeCount.get());
+        assertTrue(_listener.events.isEmpty());
+        assertEquals(1, _controller.getStaleCount());
+    }
+
+    @Test
+    public void openWhileOpening_waitsForPreviousDevice() {
+        FakeDevice stale = new FakeDevice(1);
+        FakeDevice current = new FakeDevice(2);
+
+        _controller.open("0");
+        _executor.runAll();
+        _controller.close(null);
+        int generation = _controller.open("1");
+        _executor.runAll();
+
+        //前のカメラが開き終わるまで次は開かない
+        assertEquals(1, _backend.callbacks.size());
+
+        _backend.callbacks.get(0).onOpened(stale);
+        _executor.runAll();
+        assertTrue(stale.isClosed());
+        assertEquals(2, _backend.callbacks.size());
+
+        _backend.callbacks.get(1).onOpened(current);
+        _executor.runAll();
+        assertFalse(current.isClosed());
+        assertEquals(Collections.singletonList("opened:2:" + generation), _listener.events);
+    }
+
+    @Test
+    public void openWhileOpened_closesPreviousDevice() {
+        FakeDevice first = new FakeDevice(1);
+
+        int firstGeneration = _controller.open("0");
+        _executor.runAll();
+        _backend.callbacks.get(0).onOpened(first);
+        _executor.runAll();
+
+        _controller.open("1");
+        _executor.runAll();
+
+        assertTrue(first.isClosed());
+        assertEquals("closed:" + firstGeneration, _listener.events.get(1));
+        assertEquals(2, _backend.callbacks.size());
+    }
+
+    @Test
+    public void openFailure_notifiesError() {
+        int generation = _controller.open("0");
+        _executor.runAll();
+        _backend.callbacks.get(0).onError(null, CameraLifecycleController.ERROR_OPEN_FAILED);
+        _executor.runAll();
+
+        assertEquals(Collections.singletonList("error:" + generation + ":" + CameraLifecycleController.ERROR_OPEN_FAILED), _listener.events);
+        assertTrue(_backend.closed.isEmpty());
+
+        //失敗後も開き直せる
+        _controller.open("0");
+        _executor.runAll();
+        assertEquals(2, _backend.callbacks.size());
+    }
+
+    @Test
+    public void disconnected_closesDeviceOnce() {
+        FakeDevice device = new FakeDevice(1);
+
+        int generation = _controller.open("0");
+        _executor.runAll();
+        _backend.callbacks.get(0).onOpened(device);
+        _executor.runAll();
+
+        _backend.callbacks.get(0).onDisconnected(device);
+        _backend.callbacks.get(0).onError(device, 4);
+        _executor.runAll();
+        _controller.close(null);
+        _executor.runAll();
+
+        assertEquals(1, device.closeCount.get());
+        assertEquals("disconnected:" + generation, _listener.events.get(1));
+        assertEquals(2, _listener.events.size());
+    }
+
+    @Test
+    public void staleError_isNotNotified() {
+        FakeDevice device = new FakeDevice(1);
+
+        _controller.open("0");
+        _executor.runAll();
+        _controller.close(null);
+        _executor.runAll();
+
+        _backend.callbacks.get(0).onError(device, 4);
+        _executor.runAll();
+
+        assertEquals(1, device.closeCount.get());
+        assertTrue(_listener.events.isEmpty());
+    }
+
+    @Test
+    public void openedAfterShutdown_closesDeviceImmediately() {
+        FakeDevice device = new FakeDevice(1);
+
+        _controller.open("0");
+        _executor.runAll();
+        _executor.shutdown = true;
+
+        _backend.callbacks.get(0).onOpened(device);
+
+        assertEquals(1, device.closeCount.get());
+        assertTrue(_listener.events.isEmpty());
+
+        //終了後の要求は捨てる
+        _controller.open("0");
+        assertEquals(1, _backend.callbacks.size());
+        assertEquals(1, _controller.getStaleCount());
+    }
+
+    //別スレッドで遅れて結果を返すBackend (一部は失敗や切断を起こす)
+    private static class AsyncBackend implements CameraLifecycleController.Backend<FakeDevice> {
+        final ScheduledExecutorService hal = Executors.newScheduledThreadPool(3);
+        final Random random = new Random(1234);
+        final List<FakeDevice> devices = Collections.synchronizedList(new ArrayList<FakeDevice>());
+        final AtomicInteger nextId = new AtomicInteger();
+        final AtomicInteger inUse = new AtomicInteger();
+        final AtomicInteger maxInUse = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        @Override
+        public void open(String cameraId, final CameraLifecycleController.OpenCallback<FakeDevice> callback) {
+            //open()はコントローラのスレッドからのみ呼ばれる
+            int used = inUse.incrementAndGet();
+            if (used > maxInUse.get()) {
+                maxInUse.set(used);
+            }
+
+            final int outcome;
+            final long delayMicros;
+            synchronized (random) {
+                outcome = random.nextInt(20);
+                delayMicros = random.nextInt(500);
+            }
+
+            pending.incrementAndGet();
+            hal.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (outcome == 0) {
+                            //開けなかった
+                            inUse.decrementAndGet();
+                            callback.onError(null, CameraLifecycleController.ERROR_OPEN_FAILED);
+                            return;
+                        }
+
+                        FakeDevice device = new FakeDevice(nextId.incrementAndGet());
+                        devices.add(device);
+                        if (outcome == 1) {
+                            callback.onError(device, 4);
+                            return;
+                        }
+                        callback.onOpened(device);
+                        if (outcome == 2) {
+                            callback.onDisconnected(device);
+                        }
+                    }
+                    finally {
+                        pending.decrementAndGet();
+                    }
+                }
+            }, delayMicros, TimeUnit.MICROSECONDS);
+        }
+
+        @Override
+        public void close(FakeDevice device) {
+            if (device.closeCount.incrementAndGet() != 1) {
+                failure.compareAndSet(null, "device " + device.id + " closed twice");
+                return;
+            }
+            inUse.decrementAndGet();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void rapidRotation_doesNotLeakOrDeadlock() throws Exception {
+        final AsyncBackend backend = new AsyncBackend();
+        ExecutorService cameraExecutor = Executors.newSingleThreadExecutor();
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final AtomicInteger released = new AtomicInteger();
+
+        final CameraLifecycleController<FakeDevice> controller = new CameraLifecycleController<>(cameraExecutor, backend, new CameraLifecycleController.Listener<FakeDevice>() {
+            @Override
+            public void onOpened(FakeDevice device, int generation) {
+                opened.incrementAndGet();
+                if (device.isClosed()) {
+                    failure.compareAndSet(null, "closed device " + device.id + " notified as opened");
+                }
+            }
+
+            @Override
+            public void onClosed(int generation) { }
+
+            @Override
+            public void onDisconnected(int generation) { }
+
+            @Override
+            public void onError(int generation, int error) { }
+        });
+        Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                released.incrementAndGet();
+            }
+        };
+
+        //画面回転のたびにonPause/onResumeが呼ばれる
+        Random random = new Random(42);
+        int rotations = 2000;
+        for (int i = 0; i < rotations; i++) {
+            controller.open("0");
+            if (random.nextInt(4) == 0) {
+                Thread.sleep(0, random.nextInt(200000));
+            }
+            controller.close(release);
+        }
+
+        //HALのスレッドとカメラのスレッドが共に落ち着くまで待つ
+        //(カメラのスレッドの処理から次のopen()が呼ばれることがある)
+        do {
+            while (backend.pending.get() != 0) {
+                Thread.sleep(1);
+            }
+            cameraExecutor.submit(new Runnable() {
+                @Override
+                public void run() { }
+            }).get(10, TimeUnit.SECONDS);
+        } while (backend.pending.get() != 0);
+        backend.hal.shutdown();
+        assertTrue(backend.hal.awaitTermination(10, TimeUnit.SECONDS));
+        cameraExecutor.shutdown();
+        assertTrue(cameraExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertNull(failure.get());
+        assertNull(backend.failure.get());
+        assertEquals(rotations, released.get());
+
+        //全てのカメラが閉じられ、同時に開いたのは1つまで
+        assertEquals(0, backend.inUse.get());
+        assertEquals(1, backend.maxInUse.get());
+        for (FakeDevice device : backend.devices) {
+            assertEquals("device " + device.id, 1, device.closeCount.get());
+        }
+        assertEquals(backend.devices.size(), controller.getCloseCount());
+        assertTrue(opened.get() <= controller.getOpenCount());
+        assertTrue(controller.getStaleCount() > 0);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 撮影要求の保持のテスト
+ */
+public class CaptureRequestCacheTest {
+
+    //CaptureRequestの値
+    private static final int AE_MODE_ON = 1;
+    private static final int AE_MODE_ON_AUTO_FLASH = 2;
+    private static final int AF_MODE_CONTINUOUS_VIDEO = 3;
+    private static final int AF_MODE_CONTINUOUS_PICTURE = 4;
+
+    //生成した要求を文字列で表す
+    private static class CountingFactory implements CaptureRequestCache.Factory<String> {
+        final List<String> created = new ArrayList<>();
+        boolean failing;
+        Runnable onCreate;
+
+        @Override
+        public String create(int kind, int aeMode, int jpegOrientation, int afMode) {
+            if (onCreate != null) onCreate.run();
+            if (failing) return null;
+
+            String request = CaptureRequestCache.getKindName(kind) + "/" + aeMode + "/" + jpegOrientation + "/" + afMode;
+            created.add(request);
+            return new String(request);
+        }
+    }
+
+    @Test
+    public void get_sameSettingsReturnsSameRequest() {
+        CountingFactory factory = new CountingFactory();
+        CaptureRequestCache<String> cache = new CaptureRequestCache<>(factory);
+
+        String first = cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON_AUTO_FLASH, 270, AF_MODE_CONTINUOUS_PICTURE);
+        String second = cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON_AUTO_FLASH, 270, AF_MODE_CONTINUOUS_PICTURE);
+
+        assertEquals("still/2/270/4", first);
+        assertSame(first, second);
+        assertEquals(1, factory.created.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void get_eachSettingIsPartOfKey() {
+        CountingFactory factory = new CountingFactory();
+        CaptureRequestCache<String> cache = new CaptureRequestCache<>(factory);
+
+        cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON_AUTO_FLASH, 270, AF_MODE_CONTINUOUS_PICTURE);
+        cache.get(CaptureRequestCache.KIND_BURST, AE_MODE_ON_AUTO_FLASH, 270, AF_MODE_CONTINUOUS_PICTURE);
+        cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON, 270, AF_MODE_CONTINUOUS_PICTURE);
+        cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON_AUTO_FLASH, 90, AF_MODE_CONTINUOUS_PICTURE);
+        cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON_AUTO_FLASH, 270, AF_MODE_CONTINUOUS_VIDEO);
+
+        assertEquals(5, factory.created.size());
+        assertEquals(5, cache.size());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void get_orientationIgnoredForPreviewAndTriggers() {
+        CountingFactory factory = new CountingFactory();
+        CaptureRequestCache<String> cache = new CaptureRequestCache<>(factory);
+
+        String trigger = cache.get(CaptureRequestCache.KIND_AF_TRIGGER, AE_MODE_ON, 90, AF_MODE_CONTINUOUS_PICTURE);
+
+        //画面が回転してもトリガーは作り直さない
+        assertSame(trigger, cache.get(CaptureRequestCache.KIND_AF_TRIGGER, AE_MODE_ON, 270, AF_MODE_CONTINUOUS_PICTURE));
+        assertEquals("af_trigger/1/0/4", trigger);
+        assertFalse(CaptureRequestCache.usesJpegOrientation(CaptureRequestCache.KIND_PREVIEW));
+        assertTrue(CaptureRequestCache.usesJpegOrientation(CaptureRequestCache.KIND_VIDEO_SNAPSHOT));
+    }
+
+    @Test
+    public void prebuild_thenGetHits() {
+        CountingFactory factory = new CountingFactory();
+        CaptureRequestCache<String> cache = new CaptureRequestCache<>(factory);
+        int[] kinds = {
+                CaptureRequestCache.KIND_AF_TRIGGER,
+                CaptureRequestCache.KIND_PRECAPTURE,
+                CaptureRequestCache.KIND_CANCEL,
+                CaptureRequestCache.KIND_STILL,
+        };
+        cache.prebuild(kinds, AE_MODE_ON, 90, AF_MODE_CONTINUOUS_PICTURE);
+
+        for (int kind : kinds) {
+            assertNotNull(cache.get(kind, AE_MODE_ON, 90, AF_MODE_CONTINUOUS_PICTURE));
+        }
+        assertEquals(4, factory.created.size());
+        assertEquals(4, cache.getHits());
+    }
+
+    @Test
+    public void invalidate_rebuildsRequests() {
+        CountingFactory factory = new CountingFactory();
+        CaptureRequestCache<String> cache = new CaptureRequestCache<>(factory);
+        String before = cache.get(CaptureRequestCache.KIND_PREVIEW, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE);
+
+        //セッションを作り直した
+        cache.invalidate();
+
+        assertEquals(0, cache.size());
+        assertNotSame(before, cache.get(CaptureRequestCache.KIND_PREVIEW, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE));
+        assertEquals(2, factory.created.size());
+    }
+
+    @Test
+    public void invalidateDuringCreateDoesNotKeepStaleRequest() {
+        final CountingFactory factory = new CountingFactory();
+        final CaptureRequestCache<String> cache = new CaptureRequestCache<>(factory);
+        factory.onCreate = new Runnable() {
+            @Override
+            public void run() {
+                //生成中に別のスレッドがセッションを作り直した
+                factory.onCreate = null;
+                cache.invalidate();
+            }
+        };
+
+        assertNotNull(cache.get(CaptureRequestCache.KIND_PREVIEW, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void get_failedCreateIsNotKept() {
+        CountingFactory factory = new CountingFactory();
+        factory.failing = true;
+        CaptureRequestCache<String> cache = new CaptureRequestCache<>(factory);
+
+        assertNull(cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE));
+        assertEquals(0, cache.size());
+
+        factory.failing = false;
+        assertNotNull(cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE));
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() {
+        CountingFactory factory = new CountingFactory();
+        CaptureRequestCache<String> cache = new CaptureRequestCache<>(factory, 2);
+        String still = cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE);
+        cache.get(CaptureRequestCache.KIND_PREVIEW, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE);
+
+        //静止画を最近使ったので、プレビューが捨てられる
+        assertSame(still, cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE));
+        cache.get(CaptureRequestCache.KIND_CANCEL, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE);
+
+        assertEquals(2, cache.size());
+        assertSame(still, cache.get(CaptureRequestCache.KIND_STILL, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE));
+        cache.get(CaptureRequestCache.KIND_PREVIEW, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE);
+        assertEquals(4, factory.created.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void get_rejectsUnknownKind() {
+        new CaptureRequestCache<>(new CountingFactory()).get(CaptureRequestCache.KIND_COUNT, AE_MODE_ON, 0, AF_MODE_CONTINUOUS_PICTURE);
+    }
+}
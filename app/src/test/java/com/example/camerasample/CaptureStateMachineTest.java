@@ -0,0 +1,201 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 3Aの状態遷移のテスト
+ * 実機で記録したAF/AEの状態の並びを再生して確認する。
+ */
+public class CaptureStateMachineTest {
+
+    private static final long TIMEOUT = 1000000000L;
+    private static final long CAPTURE_TIMEOUT = 5000000000L;
+    private static final long FRAME = 33333333L;
+
+    private static final int U = ControlState.UNKNOWN;
+
+    /**
+     * {AF, AE}の並びを1フレームずつ入力し、各フレームの処理を返す
+     */
+    private static int[] replay(CaptureStateMachine machine, int[][] sequence, long start) {
+        int[] actions = new int[sequence.length];
+        for (int i = 0; i < sequence.length; i++) {
+            actions[i] = machine.onResult(sequence[i][0], sequence[i][1], start + (i + 1) * FRAME);
+        }
+        return actions;
+    }
+
+    @Test
+    public void preview_isIdleAndIgnoresResults() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+
+        assertTrue(machine.isIdle());
+        assertEquals(CaptureStateMachine.ACTION_NONE,
+                machine.onResult(ControlState.AF_FOCUSED_LOCKED, ControlState.AE_CONVERGED, Long.MAX_VALUE));
+        assertEquals(CaptureStateMachine.STATE_PREVIEW, machine.getState());
+    }
+
+    @Test
+    public void lock_capturesWhenFocusedAndConverged() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        assertTrue(machine.startLock(0));
+
+        int[] actions = replay(machine, new int[][] {
+                { ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED },
+                { ControlState.AF_ACTIVE_SCAN, ControlState.AE_CONVERGED },
+                { ControlState.AF_ACTIVE_SCAN, ControlState.AE_CONVERGED },
+                { ControlState.AF_FOCUSED_LOCKED, ControlState.AE_CONVERGED },
+                { ControlState.AF_FOCUSED_LOCKED, ControlState.AE_CONVERGED },
+        }, 0);
+
+        assertArrayEquals(new int[] { 0, 0, 0, CaptureStateMachine.ACTION_CAPTURE, 0 }, actions);
+        assertEquals(CaptureStateMachine.STATE_PICTURE_TAKEN, machine.getState());
+        assertTrue(machine.isIdle());
+    }
+
+    @Test
+    public void lock_runsPrecaptureWithFlash() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        machine.startLock(0);
+
+        int[] actions = replay(machine, new int[][] {
+                { ControlState.AF_ACTIVE_SCAN, ControlState.AE_SEARCHING },
+                { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_FLASH_REQUIRED },
+                { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_FLASH_REQUIRED },
+                { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_PRECAPTURE },
+                { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_PRECAPTURE },
+                { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_CONVERGED },
+        }, 0);
+
+        assertArrayEquals(new int[] {
+                0,
+                CaptureStateMachine.ACTION_RUN_PRECAPTURE,
+                0,
+                0,
+                0,
+                CaptureStateMachine.ACTION_CAPTURE,
+        }, actions);
+    }
+
+    @Test
+    public void lock_withoutAutoFocusCapturesImmediately() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        machine.startLock(0);
+
+        int[] actions = replay(machine, new int[][] {
+                { U, U },
+                { U, U },
+        }, 0);
+
+        //撮影は1度だけ
+        assertArrayEquals(new int[] { CaptureStateMachine.ACTION_CAPTURE, 0 }, actions);
+    }
+
+    @Test
+    public void precapture_withoutAeStateMovesOn() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        machine.startLock(0);
+
+        int[] actions = replay(machine, new int[][] {
+                { ControlState.AF_FOCUSED_LOCKED, ControlState.AE_SEARCHING },
+                { ControlState.AF_FOCUSED_LOCKED, U },
+                { ControlState.AF_FOCUSED_LOCKED, U },
+        }, 0);
+
+        assertArrayEquals(new int[] {
+                CaptureStateMachine.ACTION_RUN_PRECAPTURE,
+                0,
+                CaptureStateMachine.ACTION_CAPTURE,
+        }, actions);
+    }
+
+    @Test
+    public void waitingLock_timesOutInsteadOfHanging() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        machine.startLock(0);
+
+        //AFがスキャンを続けたまま収束しない
+        int frames = (int)(TIMEOUT / FRAME) + 5;
+        int[][] sequence = new int[frames][];
+        for (int i = 0; i < frames; i++) {
+            sequence[i] = new int[] { ControlState.AF_ACTIVE_SCAN, ControlState.AE_SEARCHING };
+        }
+        int[] actions = replay(machine, sequence, 0);
+
+        int captureFrame = -1;
+        for (int i = 0; i < actions.length; i++) {
+            if (actions[i] == CaptureStateMachine.ACTION_CAPTURE) {
+                assertEquals("capture must happen only once", -1, captureFrame);
+                captureFrame = i;
+            }
+        }
+        assertEquals(TIMEOUT / FRAME, captureFrame);
+        assertEquals(1, machine.getTimeoutCount());
+        assertEquals(CaptureStateMachine.STATE_PICTURE_TAKEN, machine.getState());
+    }
+
+    @Test
+    public void waitingPrecapture_timesOutWhenAeNeverStarts() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        machine.startLock(0);
+
+        assertEquals(CaptureStateMachine.ACTION_RUN_PRECAPTURE,
+                machine.onResult(ControlState.AF_FOCUSED_LOCKED, ControlState.AE_SEARCHING, FRAME));
+
+        //事前測光が始まらず収束済みのまま
+        assertEquals(CaptureStateMachine.ACTION_NONE,
+                machine.onResult(ControlState.AF_FOCUSED_LOCKED, ControlState.AE_CONVERGED, FRAME + TIMEOUT));
+        assertEquals(CaptureStateMachine.ACTION_CAPTURE,
+                machine.onResult(ControlState.AF_FOCUSED_LOCKED, ControlState.AE_CONVERGED, FRAME + TIMEOUT + 1));
+    }
+
+    @Test
+    public void startLock_rejectedWhileCapturing() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+
+        assertTrue(machine.startLock(0));
+        assertFalse(machine.startLock(FRAME));
+
+        machine.onResult(ControlState.AF_FOCUSED_LOCKED, ControlState.AE_CONVERGED, FRAME);
+        assertFalse(machine.startLock(2 * FRAME));
+
+        machine.reset();
+        assertTrue(machine.startLock(3 * FRAME));
+    }
+
+    @Test
+    public void startLock_retriesWhenCaptureNeverCompletes() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        machine.startLock(0);
+        machine.onResult(ControlState.AF_FOCUSED_LOCKED, ControlState.AE_CONVERGED, FRAME);
+        assertEquals(CaptureStateMachine.STATE_PICTURE_TAKEN, machine.getState());
+
+        //撮影の完了が通知されないまま時間制限を超えた
+        assertFalse(machine.startLock(FRAME + CAPTURE_TIMEOUT));
+        assertTrue(machine.startLock(FRAME + CAPTURE_TIMEOUT + 1));
+        assertEquals(CaptureStateMachine.STATE_WAITING_LOCK, machine.getState());
+        assertEquals(1, machine.getTimeoutCount());
+    }
+
+    @Test
+    public void startLock_retriesWhenResultsStop() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        machine.startLock(0);
+
+        //撮影結果が届かず待ち状態のまま
+        assertFalse(machine.startLock(TIMEOUT));
+        assertTrue(machine.startLock(TIMEOUT + 1));
+        assertEquals(CaptureStateMachine.STATE_WAITING_LOCK, machine.getState());
+    }
+
+    @Test
+    public void onResult_unexpectedValuesAreTreatedAsNotConverged() {
+        CaptureStateMachine machine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        machine.startLock(0);
+
+        assertEquals(CaptureStateMachine.ACTION_NONE, machine.onResult(42, 42, FRAME));
+        assertEquals(CaptureStateMachine.STATE_WAITING_LOCK, machine.getState());
+    }
+}
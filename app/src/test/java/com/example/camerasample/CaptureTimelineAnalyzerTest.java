@@ -0,0 +1,172 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 撮影結果の記録の解析のテスト
+ */
+public class CaptureTimelineAnalyzerTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    private static void recordFrame(CaptureTimeline timeline, long frameNumber, long timestamp, int afState, int aeState) {
+        timeline.record(frameNumber, timestamp, FRAME_NANOS, 10000000L, 100, afState, aeState, ControlState.AWB_CONVERGED);
+    }
+
+    //30fpsで安定して届くフレーム
+    private static CaptureTimeline createSteady(int frames) {
+        CaptureTimeline timeline = new CaptureTimeline(frames);
+        for (int i = 0; i < frames; i++) {
+            recordFrame(timeline, i, i * FRAME_NANOS, ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED);
+        }
+        return timeline;
+    }
+
+    @Test
+    public void analyze_steadyStream() {
+        CaptureTimelineAnalyzer.Summary summary = CaptureTimelineAnalyzer.analyze(createSteady(90).snapshot());
+
+        assertEquals(90, summary.frames);
+        assertEquals(30.0, summary.meanFps, 0.01);
+        assertEquals(30.0, summary.rollingFps, 0.01);
+        assertEquals(30.0, summary.minRollingFps, 0.01);
+        assertEquals(0, summary.droppedFrames);
+        assertEquals(FRAME_NANOS, summary.maxGapNanos);
+        assertEquals(0, summary.missingResults);
+        assertEquals(0, summary.timeToConvergenceNanos);
+        assertEquals(0, summary.reconvergenceCount);
+    }
+
+    @Test
+    public void analyze_emptyTimeline() {
+        CaptureTimelineAnalyzer.Summary summary = CaptureTimelineAnalyzer.analyze(new CaptureTimeline(4).snapshot());
+
+        assertEquals(0, summary.frames);
+        assertEquals(-1, summary.timeToConvergenceNanos);
+        assertNotNull(summary.toString());
+    }
+
+    @Test
+    public void countDroppedFrames_fromTimestampGaps() {
+        CaptureTimeline timeline = new CaptureTimeline(64);
+        long timestamp = 0;
+        for (int i = 0; i < 40; i++) {
+            //10番目の後に2フレーム、20番目の後に1フレーム抜ける
+            if (i == 11) timestamp += 2 * FRAME_NANOS;
+            if (i == 21) timestamp += FRAME_NANOS;
+            recordFrame(timeline, i, timestamp, ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED);
+            timestamp += FRAME_NANOS;
+        }
+
+        CaptureTimeline.Snapshot snapshot = timeline.snapshot();
+
+        assertEquals(3, CaptureTimelineAnalyzer.countDroppedFrames(snapshot));
+        assertEquals(3 * FRAME_NANOS, CaptureTimelineAnalyzer.analyze(snapshot).maxGapNanos);
+    }
+
+    @Test
+    public void countDroppedFrames_usesMedianWithoutFrameDuration() {
+        CaptureTimeline timeline = new CaptureTimeline(16);
+        long[] timestamps = { 0, 10, 20, 30, 70, 80, 90 };
+        for (int i = 0; i < timestamps.length; i++) {
+            timeline.record(i, timestamps[i], 0, 0, 0, ControlState.UNKNOWN, ControlState.UNKNOWN, ControlState.UNKNOWN);
+        }
+
+        assertEquals(3, CaptureTimelineAnalyzer.countDroppedFrames(timeline.snapshot()));
+    }
+
+    @Test
+    public void countDroppedFrames_longerFrameDurationIsNotDrop() {
+        //露出が長く、センサ側でフレーム間隔が延びた場合は抜けとしない
+        CaptureTimeline timeline = new CaptureTimeline(16);
+        for (int i = 0; i < 10; i++) {
+            timeline.record(i, i * 2 * FRAME_NANOS, 2 * FRAME_NANOS, 2 * FRAME_NANOS, 3200,
+                    ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED, ControlState.AWB_CONVERGED);
+        }
+
+        CaptureTimelineAnalyzer.Summary summary = CaptureTimelineAnalyzer.analyze(timeline.snapshot());
+
+        assertEquals(0, summary.droppedFrames);
+        assertEquals(10, summary.exposureLimitedFrames);
+        assertEquals(15.0, summary.meanFps, 0.01);
+    }
+
+    @Test
+    public void analyze_missingResultsFromFrameNumbers() {
+        CaptureTimeline timeline = new CaptureTimeline(16);
+        long[] frameNumbers = { 1, 2, 5, 6, 8 };
+        for (int i = 0; i < frameNumbers.length; i++) {
+            recordFrame(timeline, frameNumbers[i], i * FRAME_NANOS, ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED);
+        }
+
+        assertEquals(3, CaptureTimelineAnalyzer.analyze(timeline.snapshot()).missingResults);
+    }
+
+    @Test
+    public void computeRollingFps_dropsDuringStall() {
+        CaptureTimeline timeline = new CaptureTimeline(128);
+        long timestamp = 0;
+        for (int i = 0; i < 90; i++) {
+            //60番目の後に0.5秒止まる
+            if (i == 60) timestamp += 500000000L;
+            recordFrame(timeline, i, timestamp, ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED);
+            timestamp += FRAME_NANOS;
+        }
+
+        CaptureTimeline.Snapshot snapshot = timeline.snapshot();
+        double[] fps = CaptureTimelineAnalyzer.computeRollingFps(snapshot, CaptureTimelineAnalyzer.DEFAULT_WINDOW_NANOS);
+
+        assertEquals(0, fps[0], 0);
+        assertEquals(30.0, fps[59], 0.01);
+        assertTrue(fps[60] < 20);
+        assertTrue(CaptureTimelineAnalyzer.analyze(snapshot).minRollingFps < 20);
+    }
+
+    @Test
+    public void getTimeToConvergence_firstConvergedFrame() {
+        CaptureTimeline timeline = new CaptureTimeline(32);
+        for (int i = 0; i < 20; i++) {
+            int afState = i < 8 ? ControlState.AF_PASSIVE_SCAN : ControlState.AF_PASSIVE_FOCUSED;
+            int aeState = i < 12 ? ControlState.AE_SEARCHING : ControlState.AE_CONVERGED;
+            recordFrame(timeline, i, 1000 + i * FRAME_NANOS, afState, aeState);
+        }
+
+        assertEquals(12 * FRAME_NANOS, CaptureTimelineAnalyzer.getTimeToConvergence(timeline.snapshot()));
+    }
+
+    @Test
+    public void getTimeToConvergence_neverConverged() {
+        CaptureTimeline timeline = new CaptureTimeline(8);
+        for (int i = 0; i < 5; i++) {
+            recordFrame(timeline, i, i * FRAME_NANOS, ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_SEARCHING);
+        }
+
+        assertEquals(-1, CaptureTimelineAnalyzer.getTimeToConvergence(timeline.snapshot()));
+    }
+
+    @Test
+    public void analyze_countsReconvergence() {
+        CaptureTimeline timeline = new CaptureTimeline(64);
+        for (int i = 0; i < 40; i++) {
+            //10から14番目と30番目で露出が外れる
+            boolean searching = (i >= 10 && i < 15) || i == 30;
+            recordFrame(timeline, i, i * FRAME_NANOS, ControlState.AF_PASSIVE_FOCUSED,
+                    searching ? ControlState.AE_SEARCHING : ControlState.AE_CONVERGED);
+        }
+
+        CaptureTimelineAnalyzer.Summary summary = CaptureTimelineAnalyzer.analyze(timeline.snapshot());
+
+        assertEquals(2, summary.reconvergenceCount);
+        assertEquals(5 * FRAME_NANOS, summary.maxReconvergenceNanos);
+    }
+
+    @Test
+    public void is3aConverged_fixedFocusAndMissingStates() {
+        assertTrue(CaptureTimelineAnalyzer.is3aConverged(ControlState.AF_INACTIVE, ControlState.AE_LOCKED, ControlState.AWB_LOCKED));
+        assertTrue(CaptureTimelineAnalyzer.is3aConverged(ControlState.UNKNOWN, ControlState.AE_CONVERGED, ControlState.UNKNOWN));
+        assertFalse(CaptureTimelineAnalyzer.is3aConverged(ControlState.AF_PASSIVE_SCAN, ControlState.AE_CONVERGED, ControlState.AWB_CONVERGED));
+        assertFalse(CaptureTimelineAnalyzer.is3aConverged(ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED, ControlState.AWB_SEARCHING));
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * 撮影結果の記録のテスト
+ */
+public class CaptureTimelineTest {
+
+    private static final long FRAME_NANOS = 33333333L;
+
+    static void recordFrame(CaptureTimeline timeline, long frameNumber, long timestamp) {
+        timeline.record(frameNumber, timestamp, FRAME_NANOS, 10000000L, 100 + (int)frameNumber,
+                ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED, ControlState.AWB_CONVERGED);
+    }
+
+    @Test
+    public void snapshot_returnsFramesInOrder() {
+        CaptureTimeline timeline = new CaptureTimeline(8);
+        for (int i = 0; i < 3; i++) {
+            recordFrame(timeline, i, i * FRAME_NANOS);
+        }
+
+        CaptureTimeline.Snapshot snapshot = timeline.snapshot();
+
+        assertEquals(3, snapshot.size());
+        assertEquals(2 * FRAME_NANOS, snapshot.getTimestamp(2));
+        assertEquals(102, snapshot.getSensitivity(2));
+        assertEquals(FRAME_NANOS, snapshot.getFrameDuration(0));
+        assertEquals(ControlState.AWB_CONVERGED, snapshot.getAwbState(1));
+    }
+
+    @Test
+    public void record_overwritesOldestWhenFull() {
+        CaptureTimeline timeline = new CaptureTimeline(4);
+        for (int i = 0; i < 10; i++) {
+            recordFrame(timeline, i, i * FRAME_NANOS);
+        }
+
+        CaptureTimeline.Snapshot snapshot = timeline.snapshot();
+
+        assertEquals(4, snapshot.size());
+        assertEquals(10, snapshot.getRecordedCount());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(6 + i, snapshot.getFrameNumber(i));
+        }
+    }
+
+    @Test
+    public void record_keepsUnknownState() {
+        CaptureTimeline timeline = new CaptureTimeline(4);
+        timeline.record(1, FRAME_NANOS, 0, 0, 0, ControlState.UNKNOWN, ControlState.AE_PRECAPTURE, ControlState.UNKNOWN);
+
+        CaptureTimeline.Snapshot snapshot = timeline.snapshot();
+
+        assertEquals(ControlState.UNKNOWN, snapshot.getAfState(0));
+        assertEquals(ControlState.AE_PRECAPTURE, snapshot.getAeState(0));
+    }
+
+    @Test
+    public void clear_keepsRecordedCount() {
+        CaptureTimeline timeline = new CaptureTimeline(4);
+        recordFrame(timeline, 0, 0);
+        timeline.clear();
+        recordFrame(timeline, 1, FRAME_NANOS);
+
+        assertEquals(1, timeline.size());
+        assertEquals(1, timeline.snapshot().getFrameNumber(0));
+        assertEquals(2, timeline.getRecordedCount());
+    }
+
+    @Test
+    public void record_doesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean)threads;
+        if (!allocation.isThreadAllocatedMemorySupported()) return;
+
+        CaptureTimeline timeline = new CaptureTimeline(64);
+        for (int i = 0; i < 10000; i++) {
+            recordFrame(timeline, i, i * FRAME_NANOS);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocation.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            recordFrame(timeline, i, i * FRAME_NANOS);
+        }
+        long allocated = allocation.getThreadAllocatedBytes(threadId) - before;
+
+        //計測自体の割り当て分は許容する
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    @Test
+    public void writeCsv_writesHeaderAndIntervals() throws IOException {
+        CaptureTimeline timeline = new CaptureTimeline(4);
+        recordFrame(timeline, 7, 1000);
+        recordFrame(timeline, 8, 1000 + FRAME_NANOS);
+
+        StringBuilder csv = new StringBuilder();
+        timeline.snapshot().writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("frame_number,timestamp_ns,interval_ns"));
+        assertEquals("7,1000,0,33333333,10000000,107,2,2,2", lines[1]);
+        assertEquals("8," + (1000 + FRAME_NANOS) + "," + FRAME_NANOS + ",33333333,10000000,108,2,2,2", lines[2]);
+    }
+
+    @Test
+    public void writeTo_readFromRoundTrip() throws IOException {
+        CaptureTimeline timeline = new CaptureTimeline(4);
+        for (int i = 0; i < 6; i++) {
+            recordFrame(timeline, i, i * FRAME_NANOS);
+        }
+        timeline.record(6, 6 * FRAME_NANOS, 0, 0, 0, ControlState.UNKNOWN, ControlState.UNKNOWN, ControlState.UNKNOWN);
+        CaptureTimeline.Snapshot snapshot = timeline.snapshot();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(new DataOutputStream(bytes));
+        CaptureTimeline.Snapshot read = CaptureTimeline.Snapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        //ヘッダとフレーム毎の39バイト
+        assertEquals(20 + 4 * 39, bytes.size());
+        assertEquals(7, read.getRecordedCount());
+        assertEquals(snapshot.size(), read.size());
+        for (int i = 0; i < read.size(); i++) {
+            assertEquals(snapshot.getFrameNumber(i), read.getFrameNumber(i));
+            assertEquals(snapshot.getTimestamp(i), read.getTimestamp(i));
+            assertEquals(snapshot.getSensitivity(i), read.getSensitivity(i));
+            assertEquals(snapshot.getAfState(i), read.getAfState(i));
+        }
+        assertEquals(ControlState.UNKNOWN, read.getAeState(3));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsOtherData() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(0x12345678);
+
+        CaptureTimeline.Snapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * 色の変換表 (.cube) のテスト
+ */
+public class CubeLutTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    //色を反転する2x2x2の表
+    private static final String INVERT_CUBE =
+            "# comment\n"
+            + "TITLE \"Invert\"\n"
+            + "LUT_3D_SIZE 2\n"
+            + "\n"
+            + "1 1 1\n"
+            + "0 1 1\n"
+            + "1 0 1\n"
+            + "0 0 1\n"
+            + "1 1 0\n"
+            + "0 1 0\n"
+            + "1 0 0\n"
+            + "0 0 0\n";
+
+    private static CubeLut read(String text) throws IOException {
+        return CubeLut.read(new StringReader(text));
+    }
+
+    @Test
+    public void read_parsesHeaderAndValues() throws IOException {
+        CubeLut lut = read(INVERT_CUBE);
+
+        assertEquals("Invert", lut.getTitle());
+        assertEquals(2, lut.getSize());
+
+        //赤が最も速く変わる
+        assertEquals(0, lut.getValue(1, 0, 0, 0), 0);
+        assertEquals(1, lut.getValue(1, 0, 0, 1), 0);
+        assertEquals(0, lut.getValue(0, 0, 1, 2), 0);
+    }
+
+    @Test
+    public void sample_interpolatesTrilinearly() throws IOException {
+        CubeLut lut = read(INVERT_CUBE);
+        float[] color = new float[3];
+
+        lut.sample(0.25f, 0.5f, 0.75f, color);
+
+        assertArrayEquals(new float[] { 0.75f, 0.5f, 0.25f }, color, EPSILON);
+    }
+
+    @Test
+    public void sample_identityKeepsColor() {
+        CubeLut lut = CubeLut.identity(17);
+        float[] color = new float[3];
+
+        lut.sample(0.123f, 0.456f, 0.789f, color);
+
+        assertArrayEquals(new float[] { 0.123f, 0.456f, 0.789f }, color, EPSILON);
+    }
+
+    @Test
+    public void sample_clampsOutsideDomain() throws IOException {
+        CubeLut lut = read("DOMAIN_MIN 0 0 0\nDOMAIN_MAX 2 2 2\n" + INVERT_CUBE);
+        float[] color = new float[3];
+
+        lut.sample(1, -1, 3, color);
+
+        //範囲の中央と端
+        assertArrayEquals(new float[] { 0.5f, 1, 0 }, color, EPSILON);
+    }
+
+    @Test
+    public void read_acceptsResolveInputRange() throws IOException {
+        CubeLut lut = read("LUT_3D_INPUT_RANGE 0 4\n" + INVERT_CUBE);
+
+        assertEquals(0, lut.getDomainMin(1), 0);
+        assertEquals(4, lut.getDomainMax(2), 0);
+    }
+
+    @Test
+    public void read_rejectsWrongValueCount() {
+        try {
+            read("LUT_3D_SIZE 2\n0 0 0\n1 1 1\n");
+            fail();
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Expected 8"));
+        }
+    }
+
+    @Test
+    public void read_rejectsInvalidInput() {
+        String[] invalid = {
+                "0 0 0\nLUT_3D_SIZE 2\n",
+                "LUT_1D_SIZE 1024\n",
+                "LUT_3D_SIZE 1\n0 0 0\n",
+                "LUT_3D_SIZE 2\n0 0\n",
+                "LUT_3D_SIZE 2\n0 0 x\n",
+                "LUT_3D_SIZE 2\n0 0 NaN\n",
+                "TITLE \"empty\"\n",
+                "DOMAIN_MIN 1 1 1\nDOMAIN_MAX 0 0 0\n" + INVERT_CUBE,
+                INVERT_CUBE + "0 0 0\n",
+        };
+        for (String text : invalid) {
+            try {
+                read(text);
+                fail("Accepted: " + text);
+            }
+            catch (IOException e) {
+                //期待どおり
+            }
+        }
+    }
+
+    @Test
+    public void writeTexture_placesBlueSlicesSideBySide() throws IOException {
+        CubeLut lut = read(INVERT_CUBE);
+        assertEquals(4, lut.getTextureWidth());
+        assertEquals(2, lut.getTextureHeight());
+
+        ByteBuffer pixels = ByteBuffer.allocate(lut.getTextureWidth() * lut.getTextureHeight() * 4);
+        lut.writeTexture(pixels);
+
+        //画素 (b * size + r, g) が格子 (r, g, b)
+        for (int g = 0; g < 2; g++) {
+            for (int b = 0; b < 2; b++) {
+                for (int r = 0; r < 2; r++) {
+                    int offset = (g * lut.getTextureWidth() + b * 2 + r) * 4;
+                    for (int channel = 0; channel < 3; channel++) {
+                        assertEquals(Math.round(lut.getValue(r, g, b, channel) * 255), pixels.get(offset + channel) & 0xff);
+                    }
+                    assertEquals(0xff, pixels.get(offset + 3) & 0xff);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void writeTexture_clampsOutOfRangeValues() throws IOException {
+        CubeLut lut = read("LUT_3D_SIZE 2\n" + "-0.5 1.5 0.5\n" + repeat("0 0 0\n", 7));
+        ByteBuffer pixels = ByteBuffer.allocate(lut.getTextureWidth() * lut.getTextureHeight() * 4);
+
+        lut.writeTexture(pixels);
+
+        assertEquals(0, pixels.get(0) & 0xff);
+        assertEquals(255, pixels.get(1) & 0xff);
+        assertEquals(128, pixels.get(2) & 0xff);
+    }
+
+    @Test
+    public void resample_keepsInterpolatedColors() throws IOException {
+        CubeLut lut = read(INVERT_CUBE);
+        CubeLut resampled = lut.resample(5);
+        float[] expected = new float[3];
+        float[] actual = new float[3];
+
+        assertEquals(5, resampled.getSize());
+        assertSame(lut, lut.resample(2));
+
+        //線形な表は格子を変えても同じ値になる
+        lut.sample(0.3f, 0.6f, 0.9f, expected);
+        resampled.sample(0.3f, 0.6f, 0.9f, actual);
+        assertArrayEquals(expected, actual, EPSILON);
+    }
+
+    @Test
+    public void load_readsFile() throws IOException {
+        File directory = Files.createTempDirectory("lut").toFile();
+        try {
+            File file = new File(directory, "invert.cube");
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(INVERT_CUBE.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8));
+            }
+            finally {
+                out.close();
+            }
+
+            assertEquals(2, CubeLut.load(file).getSize());
+        }
+        finally {
+            JpegFileWriterTest.deleteRecursively(directory);
+        }
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 表示用デコードサイズ計算のテスト
+ */
+public class DecodeSizeCalculatorTest {
+
+    @Test
+    public void calculate_downsamplesToView() {
+        //4032x3024を1080x810へ
+        DecodeSizeCalculator.Result result = DecodeSizeCalculator.calculate(4032, 3024, 0, 1080, 1920);
+
+        assertEquals(2, result.sampleSize);
+        assertEquals(2016, result.sampledWidth);
+        assertEquals(1512, result.sampledHeight);
+        assertEquals(1080, result.targetWidth);
+        assertEquals(810, result.targetHeight);
+        assertTrue(result.needsScale());
+    }
+
+    @Test
+    public void calculate_rotated90UsesSwappedBounds() {
+        //センサが90度回転している場合は3024x4032として縦長の表示先に合わせる
+        DecodeSizeCalculator.Result result = DecodeSizeCalculator.calculate(4032, 3024, 90, 1080, 1920);
+
+        assertEquals(2, result.sampleSize);
+        assertEquals(1440, result.targetWidth);
+        assertEquals(1080, result.targetHeight);
+    }
+
+    @Test
+    public void calculate_rotated270MatchesRotated90() {
+        DecodeSizeCalculator.Result rotated90 = DecodeSizeCalculator.calculate(4000, 3000, 90, 720, 1280);
+        DecodeSizeCalculator.Result rotated270 = DecodeSizeCalculator.calculate(4000, 3000, 270, 720, 1280);
+
+        assertEquals(rotated90.toString(), rotated270.toString());
+        assertEquals(960, rotated270.targetWidth);
+        assertEquals(720, rotated270.targetHeight);
+    }
+
+    @Test
+    public void calculate_rotated180DoesNotSwap() {
+        DecodeSizeCalculator.Result result = DecodeSizeCalculator.calculate(4000, 3000, 180, 1000, 1000);
+
+        assertEquals(1000, result.targetWidth);
+        assertEquals(750, result.targetHeight);
+    }
+
+    @Test
+    public void calculate_oddAspectRatioKeepsRatio() {
+        //パノラマのような極端な比率と奇数サイズ
+        DecodeSizeCalculator.Result result = DecodeSizeCalculator.calculate(9001, 1501, 0, 1080, 1920);
+
+        assertEquals(8, result.sampleSize);
+        assertEquals(1126, result.sampledWidth);
+        assertEquals(188, result.sampledHeight);
+        assertEquals(1080, result.targetWidth);
+        assertEquals(180, result.targetHeight);
+        assertTrue(result.targetHeight <= 1920);
+    }
+
+    @Test
+    public void calculate_sampledSizeNeverBelowTarget() {
+        int[][] sources = { { 4032, 3024 }, { 3264, 2448 }, { 4000, 1800 }, { 1234, 4321 }, { 640, 479 } };
+        int[] rotations = { 0, 90, 180, 270 };
+
+        for (int[] source : sources) {
+            for (int rotation : rotations) {
+                DecodeSizeCalculator.Result result = DecodeSizeCalculator.calculate(source[0], source[1], rotation, 720, 1280);
+
+                assertTrue(result.toString(), result.sampledWidth >= result.targetWidth);
+                assertTrue(result.toString(), result.sampledHeight >= result.targetHeight);
+
+                int viewWidth = DecodeSizeCalculator.isSwapped(rotation) ? 1280 : 720;
+                int viewHeight = DecodeSizeCalculator.isSwapped(rotation) ? 720 : 1280;
+                assertTrue(result.toString(), result.targetWidth <= viewWidth);
+                assertTrue(result.toString(), result.targetHeight <= viewHeight);
+            }
+        }
+    }
+
+    @Test
+    public void calculate_smallImageIsNotUpscaled() {
+        DecodeSizeCalculator.Result result = DecodeSizeCalculator.calculate(640, 480, 90, 1080, 1920);
+
+        assertEquals(1, result.sampleSize);
+        assertEquals(640, result.targetWidth);
+        assertEquals(480, result.targetHeight);
+        assertFalse(result.needsScale());
+    }
+
+    @Test
+    public void calculate_unknownViewSizeDecodesFullSize() {
+        DecodeSizeCalculator.Result result = DecodeSizeCalculator.calculate(4032, 3024, 90, 0, 0);
+
+        assertEquals(1, result.sampleSize);
+        assertEquals(4032, result.targetWidth);
+        assertEquals(3024, result.targetHeight);
+    }
+
+    @Test
+    public void calculateSampleSize_isPowerOfTwo() {
+        assertEquals(1, DecodeSizeCalculator.calculateSampleSize(1000, 1000, 600, 600));
+        assertEquals(2, DecodeSizeCalculator.calculateSampleSize(1000, 1000, 500, 500));
+        assertEquals(4, DecodeSizeCalculator.calculateSampleSize(1000, 1000, 200, 200));
+        assertEquals(8, DecodeSizeCalculator.calculateSampleSize(4032, 3024, 300, 300));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void calculate_rejectsInvalidRotation() {
+        DecodeSizeCalculator.calculate(100, 100, 45, 10, 10);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.camerasample;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * エンコーダの出力の取り出しのテスト
+ */
+public class EncoderDrainerTest {
+
+    private static final long FRAME_US = 33333;
+    private static final int SAMPLE_SIZE = 1000;
+
+    private FakeVideoEncoder _encoder;
+    private final List<String> _formats = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        _encoder = new FakeVideoEncoder(1024, 64 * 1024);
+        _formats.clear();
+    }
+
+    private EncoderDrainer<String> createDrainer(EncodedSampleQueue queue) {
+        return new EncoderDrainer<>(_encoder, queue, new EncoderDrainer.Listener<String>() {
+            @Override
+            public void onOutputFormat(String format) {
+                _formats.add(format);
+            }
+        }, FRAME_US);
+    }
+
+    @Test
+    public void drain_copiesSamplesAndReleasesBuffers() throws InterruptedException {
+        EncodedSampleQueue queue = new EncodedSampleQueue(8, 4096);
+        EncoderDrainer<String> drainer = createDrainer(queue);
+        _encoder.addFormatChange();
+        _encoder.addFrames(3, 0, FRAME_US, 30, SAMPLE_SIZE);
+
+        assertFalse(drainer.drain(0));
+
+        assertEquals(1, _formats.size());
+        assertEquals(3, queue.getDepth());
+        assertEquals(3, _encoder.getReleased());
+        EncodedSample first = queue.take();
+        assertTrue(first.isKeyFrame());
+        assertEquals(SAMPLE_SIZE, first.getSize());
+        assertEquals(0, first.getOffset());
+        assertEquals(1, first.getData().get(0));  //出力の番号 (0番は形式の変更)
+        assertEquals(3, drainer.getOutputFrames());
+        assertEquals(3L * SAMPLE_SIZE, drainer.getOutputBytes());
+        assertEquals(1, drainer.getKeyFrames());
+    }
+
+    @Test
+    public void drain_skipsCodecConfig() throws InterruptedException {
+        EncodedSampleQueue queue = new EncodedSampleQueue(8, 4096);
+        EncoderDrainer<String> drainer = createDrainer(queue);
+        _encoder.addFormatChange();
+        _encoder.addSample(30, 0, EncodedSample.FLAG_CODEC_CONFIG);
+        _encoder.addSample(SAMPLE_SIZE, 0, EncodedSample.FLAG_KEY_FRAME);
+
+        drainer.drain(0);
+
+        assertEquals(1, queue.getDepth());
+        assertEquals(2, _encoder.getReleased());
+        assertEquals(1, drainer.getOutputFrames());
+    }
+
+    @Test
+    public void drain_endOfStreamIsQueued() throws InterruptedException {
+        EncodedSampleQueue queue = new EncodedSampleQueue(8, 4096);
+        EncoderDrainer<String> drainer = createDrainer(queue);
+        _encoder.addFormatChange();
+        _encoder.addFrames(2, 0, FRAME_US, 30, SAMPLE_SIZE);
+        _encoder.signalEndOfInputStream();
+
+        assertTrue(drainer.drain(0));
+        assertTrue(drainer.drain(0));
+
+        assertEquals(3, queue.getDepth());
+        queue.recycle();
+        queue.recycle();
+        assertTrue(queue.take().isEndOfStream());
+    }
+
+    @Test
+    public void drain_queueFullDropsUntilKeyFrame() throws InterruptedException {
+        EncodedSampleQueue queue = new EncodedSampleQueue(2, 4096);
+        EncoderDrainer<String> drainer = createDrainer(queue);
+        _encoder.addFormatChange();
+
+        //キーフレームは5フレーム毎、書き込みが止まっている
+        _encoder.addFrames(4, 0, FRAME_US, 5, SAMPLE_SIZE);
+        drainer.drain(0);
+
+        //2つ受け付けた後は捨て続ける
+        assertEquals(2, queue.getDepth());
+        assertEquals(2, drainer.getQueueDroppedFrames());
+
+        //空いてもキーフレームまでは受け付けない
+        queue.recycle();
+        queue.recycle();
+        _encoder.addSample(SAMPLE_SIZE, 4 * FRAME_US, 0);
+        _encoder.addSample(SAMPLE_SIZE, 5 * FRAME_US, EncodedSample.FLAG_KEY_FRAME);
+        _encoder.addSample(SAMPLE_SIZE, 6 * FRAME_US, 0);
+        drainer.drain(0);
+
+        assertEquals(3, drainer.getQueueDroppedFrames());
+        assertEquals(2, queue.getDepth());
+        assertTrue(queue.take().isKeyFrame());
+        assertEquals(3, drainer.getDroppedFrames());
+        assertEquals(2, queue.getMaxDepth());
+    }
+
+    @Test
+    public void drain_countsPresentationTimeGapsAsSkipped() throws InterruptedException {
+        EncoderDrainer<String> drainer = createDrainer(new EncodedSampleQueue(8, 4096));
+        _encoder.addFormatChange();
+        _encoder.addSample(SAMPLE_SIZE, 0, EncodedSample.FLAG_KEY_FRAME);
+        _encoder.addSample(SAMPLE_SIZE, FRAME_US, 0);
+
+        //2フレーム抜けた
+        _encoder.addSample(SAMPLE_SIZE, 4 * FRAME_US, 0);
+
+        //多少の揺らぎは数えない
+        _encoder.addSample(SAMPLE_SIZE, 5 * FRAME_US + FRAME_US / 3, 0);
+
+        drainer.drain(0);
+
+        assertEquals(2, drainer.getSkippedFrames());
+        assertEquals(0, drainer.getQueueDroppedFrames());
+    }
+
+    @Test
+    public void getEncoderQueueDepth_inputMinusOutput() throws InterruptedException {
+        EncoderDrainer<String> drainer = createDrainer(new EncodedSampleQueue(8, 4096));
+        for (int i = 0; i < 5; i++) {
+            drainer.onInputFrame();
+        }
+        _encoder.addFormatChange();
+        _encoder.addFrames(3, 0, FRAME_US, 30, SAMPLE_SIZE);
+
+        drainer.drain(0);
+
+        assertEquals(5, drainer.getInputFrames());
+        assertEquals(2, drainer.getEncoderQueueDepth());
+    }
+
+    @Test
+    public void endOfStream_queuesMarker() throws InterruptedException {
+        EncodedSampleQueue queue = new EncodedSampleQueue(2, 4096);
+        EncoderDrainer<String> drainer = createDrainer(queue);
+
+        drainer.endOfStream();
+
+        assertTrue(drainer.drain(0));
+        assertTrue(queue.take().isEndOfStream());
+        assertEquals(0, queue.take().getSize());
+    }
+
+    @Test
+    public void copyFrom_growsForLargeKeyFrame() {
+        EncodedSample slot = new EncodedSample(16);
+        EncodedSample info = new EncodedSample();
+        ByteBuffer src = ByteBuffer.allocate(100);
+        src.put(10, (byte)7);
+        src.position(3);
+        info.set(10, 50, 1000, EncodedSample.FLAG_KEY_FRAME);
+
+        slot.copyFrom(src, info);
+
+        assertTrue(slot.getCapacity() >= 50);
+        assertEquals(50, slot.getData().remaining());
+        assertEquals(7, slot.getData().get(0));
+        assertEquals(0, slot.getOffset());
+        assertEquals(1000, slot.getPresentationTimeUs());
+
+        //元のバッファの位置は変えない
+        assertEquals(3, src.position());
+        assertEquals(100, src.limit());
+    }
+
+    @Test
+    public void drain_doesNotAllocatePerFrame() throws InterruptedException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        EncodedSampleQueue queue = new EncodedSampleQueue(4, 4096);
+        EncoderDrainer<String> drainer = createDrainer(queue);
+        long threadId = Thread.currentThread().getId();
+
+        //十分に実行してから計測する
+        long allocated = 0;
+        for (int round = 0; round < 3; round++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 250; i++) {
+                _encoder.rewind();
+                _encoder.addFrames(4, i * 4 * FRAME_US, FRAME_US, 1, SAMPLE_SIZE);
+                drainer.drain(0);
+                for (int j = 0; j < 4; j++) {
+                    queue.take();
+                    queue.recycle();
+                }
+            }
+            allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        }
+
+        //1000フレームで計測自体の割り当て程度に収まる
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        assertEquals(0, drainer.getDroppedFrames());
+    }
+}
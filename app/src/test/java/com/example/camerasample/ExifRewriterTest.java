@@ -0,0 +1,230 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * EXIFの書き換えのテスト (セグメントを並べた合成のJPEGを使う)
+ */
+public class ExifRewriterTest {
+
+    private static final byte[] SOI = { (byte)0xff, (byte)0xd8 };
+    private static final byte[] EOI = { (byte)0xff, (byte)0xd9 };
+
+    //JFIF
+    private static final byte[] APP0 = segment(0xe0, new byte[] { 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0 });
+
+    //量子化テーブル (中身はテストで使わない)
+    private static final byte[] DQT = segment(0xdb, filled(65, 7));
+
+    //SOF0 (8bit、高さ3024、幅4032、3成分)
+    private static final byte[] SOF0 = segment(0xc0, new byte[] {
+            8, 0x0b, (byte)0xd0, 0x0f, (byte)0xc0, 3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1 });
+
+    private static final byte[] SOS = segment(0xda, new byte[] { 3, 1, 0, 2, 0x11, 3, 0x11, 0, 0x3f, 0 });
+
+    //圧縮データ (詰め物の0xff00とリスタートマーカーを含む)
+    private static final byte[] SCAN = { 0x12, (byte)0xff, 0x00, 0x34, (byte)0xff, (byte)0xd0, 0x56, (byte)0xff, 0x00 };
+
+    //リトルエンディアンでOrientation=6だけを持つEXIF
+    private static final byte[] OLD_EXIF = segment(0xe1, new byte[] {
+            'E', 'x', 'i', 'f', 0, 0,
+            'I', 'I', 0x2a, 0, 8, 0, 0, 0,
+            1, 0,
+            0x12, 0x01, 3, 0, 1, 0, 0, 0, 6, 0, 0, 0,
+            0, 0, 0, 0 });
+
+    //XMP (EXIFではないAPP1)
+    private static final byte[] XMP = segment(0xe1, "http://ns.adobe.com/xap/1.0/\0<x/>".getBytes());
+
+    @Test
+    public void rewrite_replacesExifAndKeepsOtherSegments() throws IOException {
+        byte[] jpeg = concat(SOI, APP0, OLD_EXIF, DQT, SOF0, SOS, SCAN, EOI);
+        ExifData exif = createExif();
+
+        byte[] output = rewrite(jpeg, exif);
+
+        //SOIの直後に新しいEXIF、続いて古いEXIFを除いた残りがそのまま並ぶ
+        byte[] expected = concat(SOI, segment(0xe1, exif.toApp1Payload()), APP0, DQT, SOF0, SOS, SCAN, EOI);
+        assertArrayEquals(expected, output);
+    }
+
+    @Test
+    public void rewrite_insertsExifWhenMissing() throws IOException {
+        byte[] jpeg = concat(SOI, DQT, SOF0, SOS, SCAN, EOI);
+        ExifData exif = createExif();
+
+        byte[] output = rewrite(jpeg, exif);
+
+        assertArrayEquals(concat(SOI, segment(0xe1, exif.toApp1Payload()), DQT, SOF0, SOS, SCAN, EOI), output);
+    }
+
+    @Test
+    public void rewrite_keepsNonExifApp1() throws IOException {
+        byte[] jpeg = concat(SOI, XMP, OLD_EXIF, SOF0, SOS, SCAN, EOI);
+        ExifData exif = createExif();
+
+        byte[] output = rewrite(jpeg, exif);
+
+        assertArrayEquals(concat(SOI, segment(0xe1, exif.toApp1Payload()), XMP, SOF0, SOS, SCAN, EOI), output);
+    }
+
+    @Test
+    public void rewrite_skipsFillBytesBeforeMarker() throws IOException {
+        byte[] fill = { (byte)0xff, (byte)0xff };
+        byte[] jpeg = concat(SOI, fill, OLD_EXIF, SOF0, SOS, SCAN, EOI);
+
+        byte[] output = rewrite(jpeg, createExif());
+
+        //詰め物は除かれ、マーカーは1つの0xffで始まる
+        ExifRewriter.JpegInfo info = ExifRewriter.readInfo(ByteBuffer.wrap(output));
+        assertEquals(4032, info.width);
+        assertEquals(3024, info.height);
+        assertTrue(endsWith(output, concat(SOF0, SOS, SCAN, EOI)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rewrite_rejectsNonJpeg() throws IOException {
+        rewrite(new byte[] { (byte)0x89, 'P', 'N', 'G' }, createExif());
+    }
+
+    @Test(expected = IOException.class)
+    public void rewrite_rejectsTruncatedSegment() throws IOException {
+        byte[] jpeg = concat(SOI, APP0, DQT);
+        rewrite(Arrays.copyOf(jpeg, jpeg.length - 10), createExif());
+    }
+
+    @Test
+    public void readInfo_readsSizeAndLittleEndianOrientation() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(concat(SOI, APP0, OLD_EXIF, DQT, SOF0, SOS, SCAN, EOI));
+
+        ExifRewriter.JpegInfo info = ExifRewriter.readInfo(buffer);
+
+        assertEquals(4032, info.width);
+        assertEquals(3024, info.height);
+        assertEquals(ExifData.ORIENTATION_ROTATE_90, info.orientation);
+
+        //位置は変更しない
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void readInfo_withoutExifIsUndefined() throws IOException {
+        ExifRewriter.JpegInfo info = ExifRewriter.readInfo(ByteBuffer.wrap(concat(SOI, APP0, SOF0, SOS, SCAN, EOI)));
+
+        assertEquals(ExifData.ORIENTATION_UNDEFINED, info.orientation);
+    }
+
+    @Test
+    public void readInfo_roundTripsWrittenOrientation() throws IOException {
+        byte[] jpeg = concat(SOI, OLD_EXIF, SOF0, SOS, SCAN, EOI);
+
+        for (int orientation = ExifData.ORIENTATION_NORMAL; orientation <= ExifData.ORIENTATION_ROTATE_270; orientation++) {
+            byte[] output = rewrite(jpeg, createExif().setOrientation(orientation));
+            assertEquals(orientation, ExifRewriter.readInfo(ByteBuffer.wrap(output)).orientation);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readInfo_withoutSofFails() throws IOException {
+        ExifRewriter.readInfo(ByteBuffer.wrap(concat(SOI, APP0, SOS, SCAN, EOI)));
+    }
+
+    @Test
+    public void toApp1Payload_writesBigEndianTiff() {
+        byte[] payload = createExif().toApp1Payload();
+
+        assertArrayEquals(ExifData.EXIF_HEADER, Arrays.copyOf(payload, 6));
+        ByteBuffer tiff = ByteBuffer.wrap(payload, 6, payload.length - 6).slice();
+        assertEquals(0x4d4d, tiff.getShort(0));
+        assertEquals(42, tiff.getShort(2));
+        assertEquals(8, tiff.getInt(4));
+
+        //IFDのタグは昇順に並ぶ
+        int count = tiff.getShort(8) & 0xffff;
+        int previous = -1;
+        for (int i = 0; i < count; i++) {
+            int tag = tiff.getShort(10 + i * 12) & 0xffff;
+            assertTrue(tag > previous);
+            previous = tag;
+        }
+    }
+
+    @Test
+    public void toOrientation_mapsRotationAndMirror() {
+        assertEquals(ExifData.ORIENTATION_NORMAL, ExifData.toOrientation(0, false));
+        assertEquals(ExifData.ORIENTATION_ROTATE_90, ExifData.toOrientation(90, false));
+        assertEquals(ExifData.ORIENTATION_ROTATE_180, ExifData.toOrientation(180, false));
+        assertEquals(ExifData.ORIENTATION_ROTATE_270, ExifData.toOrientation(-90, false));
+        assertEquals(ExifData.ORIENTATION_FLIP_HORIZONTAL, ExifData.toOrientation(0, true));
+        assertEquals(ExifData.ORIENTATION_TRANSPOSE, ExifData.toOrientation(90, true));
+        assertEquals(ExifData.ORIENTATION_FLIP_VERTICAL, ExifData.toOrientation(180, true));
+        assertEquals(ExifData.ORIENTATION_TRANSVERSE, ExifData.toOrientation(270, true));
+
+        for (int orientation = ExifData.ORIENTATION_NORMAL; orientation <= ExifData.ORIENTATION_ROTATE_270; orientation++) {
+            assertEquals(orientation, ExifData.toOrientation(ExifData.toDegrees(orientation), ExifData.isMirrored(orientation)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setOrientation_rejectsUndefined() {
+        new ExifData().setOrientation(ExifData.ORIENTATION_UNDEFINED);
+    }
+
+    private static ExifData createExif() {
+        return new ExifData()
+                .setOrientation(ExifData.ORIENTATION_ROTATE_90)
+                .setMake("Example")
+                .setModel("Camera Sample")
+                .setDateTime("2020:01:02 03:04:05", "678")
+                .setExposureTimeNanos(16666666)
+                .setFNumber(1.8f)
+                .setIso(400)
+                .setFocalLength(4.38f)
+                .setFlashFired(false)
+                .setPixelSize(4032, 3024);
+    }
+
+    private static byte[] rewrite(byte[] jpeg, ExifData exif) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = ExifRewriter.rewrite(new ByteArrayInputStream(jpeg), out, exif);
+        assertEquals(out.size(), written);
+        return out.toByteArray();
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        byte[] segment = new byte[4 + payload.length];
+        segment[0] = (byte)0xff;
+        segment[1] = (byte)marker;
+        segment[2] = (byte)((payload.length + 2) >> 8);
+        segment[3] = (byte)(payload.length + 2);
+        System.arraycopy(payload, 0, segment, 4, payload.length);
+        return segment;
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte)value);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean endsWith(byte[] bytes, byte[] suffix) {
+        if (suffix.length > bytes.length) return false;
+        return Arrays.equals(Arrays.copyOfRange(bytes, bytes.length - suffix.length, bytes.length), suffix);
+    }
+}
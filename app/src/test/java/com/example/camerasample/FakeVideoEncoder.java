@@ -0,0 +1,145 @@
+package com.example.camerasample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MediaCodecの代わりのエンコーダ (出力形式は文字列)
+ *
+ * 加えた出力を順に返す。取り出し中は生成を行わない (割り当ての計測に使うため)。
+ * 出力バッファの先頭には出力の番号の下位8ビットを書き込む。
+ */
+class FakeVideoEncoder implements VideoEncoder<String> {
+
+    static final String FORMAT = "video/avc 1280x720";
+
+    private static final int KIND_FORMAT = 0;
+    private static final int KIND_SAMPLE = 1;
+    private static final int KIND_FAILURE = 2;
+
+    private final ByteBuffer _buffer;
+    private final int[] _kinds;
+    private final int[] _sizes;
+    private final long[] _presentationTimesUs;
+    private final int[] _flags;
+    private int _count;
+    private int _next;
+
+    private int _outstanding;
+    private int _released;
+    private boolean _endOfStreamOnSignal = true;
+    private boolean _endOfStreamSignaled;
+
+    FakeVideoEncoder(int capacity, int maxSampleSize) {
+        _buffer = ByteBuffer.allocateDirect(maxSampleSize);
+        _kinds = new int[capacity];
+        _sizes = new int[capacity];
+        _presentationTimesUs = new long[capacity];
+        _flags = new int[capacity];
+    }
+
+    synchronized void addFormatChange() {
+        add(KIND_FORMAT, 0, 0, 0);
+    }
+
+    synchronized void addSample(int size, long presentationTimeUs, int flags) {
+        add(KIND_SAMPLE, size, presentationTimeUs, flags);
+    }
+
+    /**
+     * 取り出し時にMediaCodecのエラーと同じくIllegalStateExceptionを投げる
+     */
+    synchronized void addFailure() {
+        add(KIND_FAILURE, 0, 0, 0);
+    }
+
+    /**
+     * intervalUs毎のフレームをgopFrames毎にキーフレームとして加える
+     */
+    synchronized void addFrames(int count, long startUs, long intervalUs, int gopFrames, int size) {
+        for (int i = 0; i < count; i++) {
+            add(KIND_SAMPLE, size, startUs + i * intervalUs, i % gopFrames == 0 ? EncodedSample.FLAG_KEY_FRAME : 0);
+        }
+    }
+
+    /**
+     * 終端を通知されても終端を出力しない (エンコーダが止まった場合)
+     */
+    synchronized void setEndOfStreamOnSignal(boolean endOfStreamOnSignal) {
+        _endOfStreamOnSignal = endOfStreamOnSignal;
+    }
+
+    private void add(int kind, int size, long presentationTimeUs, int flags) {
+        _kinds[_count] = kind;
+        _sizes[_count] = size;
+        _presentationTimesUs[_count] = presentationTimeUs;
+        _flags[_count] = flags;
+        _count++;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized int dequeueOutputBuffer(EncodedSample info, long timeoutUs) {
+        if (_next == _count && timeoutUs > 0) {
+            try {
+                wait(Math.max(1, timeoutUs / 1000));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (_next == _count) return INFO_TRY_AGAIN_LATER;
+
+        int index = _next++;
+        if (_kinds[index] == KIND_FORMAT) return INFO_OUTPUT_FORMAT_CHANGED;
+        if (_kinds[index] == KIND_FAILURE) throw new IllegalStateException("codec error");
+
+        if (_outstanding != 0) throw new IllegalStateException("Previous buffer is not released");
+        _outstanding = 1;
+        _buffer.clear();
+        _buffer.put(0, (byte)index);
+        info.set(0, _sizes[index], _presentationTimesUs[index], _flags[index]);
+        return index;
+    }
+
+    @Override
+    public synchronized ByteBuffer getOutputBuffer(int index) {
+        return _buffer;
+    }
+
+    @Override
+    public synchronized void releaseOutputBuffer(int index) {
+        if (_outstanding == 0) throw new IllegalStateException("No buffer to release");
+        _outstanding = 0;
+        _released++;
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public synchronized void signalEndOfInputStream() {
+        _endOfStreamSignaled = true;
+        if (_endOfStreamOnSignal) {
+            long last = _count > 0 ? _presentationTimesUs[_count - 1] : 0;
+            add(KIND_SAMPLE, 0, last, EncodedSample.FLAG_END_OF_STREAM);
+        }
+    }
+
+    synchronized int getReleased() {
+        return _released;
+    }
+
+    synchronized boolean isEndOfStreamSignaled() {
+        return _endOfStreamSignaled;
+    }
+
+    /**
+     * 取り出し済みの出力を忘れる (割り当ての計測で繰り返し使う)
+     */
+    synchronized void rewind() {
+        _count = 0;
+        _next = 0;
+    }
+}
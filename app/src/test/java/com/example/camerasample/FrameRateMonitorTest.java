@@ -0,0 +1,139 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * フレームレートの計測のテスト
+ */
+public class FrameRateMonitorTest {
+
+    private static final long SECOND = 1000000000L;
+    //30フレームでちょうど1秒を越えるよう切り上げる
+    private static final long FRAME_30FPS = SECOND / 30 + 1;
+
+    //開始時刻 (センサのタイムスタンプは0から始まらない)
+    private static final long START = 123456789000L;
+
+    @Test
+    public void onFrame_steady30fps() {
+        FrameRateMonitor monitor = new FrameRateMonitor();
+
+        FrameRateMonitor.Window window = null;
+        for (int i = 0; i <= 30; i++) {
+            FrameRateMonitor.Window completed = monitor.onFrame(START + i * FRAME_30FPS);
+            if (completed != null) window = completed;
+        }
+
+        assertNotNull(window);
+        assertEquals(30, window.getFrames());
+        assertEquals(30.0, window.getFps(), 0.001);
+        assertEquals(FRAME_30FPS, window.getMeanIntervalNanos(), 1);
+        assertEquals(0.0, window.getJitterNanos(), 1);
+        assertEquals(FRAME_30FPS, window.getMaxIntervalNanos());
+    }
+
+    @Test
+    public void onFrame_reportsOncePerWindow() {
+        FrameRateMonitor monitor = new FrameRateMonitor();
+
+        int windows = 0;
+        for (int i = 0; i <= 90; i++) {
+            if (monitor.onFrame(START + i * FRAME_30FPS) != null) windows++;
+        }
+
+        assertEquals(3, windows);
+        assertEquals(3, monitor.getWindowCount());
+    }
+
+    @Test
+    public void onFrame_jitterFromAlternatingIntervals() {
+        FrameRateMonitor monitor = new FrameRateMonitor();
+
+        //20msと40msを交互に繰り返す (平均30ms、標準偏差10ms)
+        long timestamp = START;
+        FrameRateMonitor.Window window = null;
+        for (int i = 0; window == null; i++) {
+            window = monitor.onFrame(timestamp);
+            timestamp += (i % 2 == 0) ? 20000000L : 40000000L;
+        }
+
+        assertEquals(30000000.0, window.getMeanIntervalNanos(), 1000000.0);
+        assertEquals(10000000.0, window.getJitterNanos(), 500000.0);
+        assertEquals(40000000L, window.getMaxIntervalNanos());
+    }
+
+    @Test
+    public void onFrame_dropToLowFrameRate() {
+        FrameRateMonitor monitor = new FrameRateMonitor();
+
+        //最初の1秒は30fps、次の1秒は暗所で15fps
+        long timestamp = START;
+        for (int i = 0; i < 30; i++) {
+            monitor.onFrame(timestamp);
+            timestamp += FRAME_30FPS;
+        }
+        for (int i = 0; i <= 15; i++) {
+            monitor.onFrame(timestamp);
+            timestamp += SECOND / 15;
+        }
+
+        assertEquals(15.0, monitor.getLastWindow().getFps(), 1.0);
+        assertEquals(15.0, monitor.getMinFps(), 1.0);
+    }
+
+    @Test
+    public void onFrame_stallReportsEmptyWindows() {
+        FrameRateMonitor monitor = new FrameRateMonitor();
+        monitor.onFrame(START);
+
+        //3秒間届かなかった
+        monitor.onFrame(START + 3 * SECOND + 1);
+
+        assertEquals(3, monitor.getWindowCount());
+        assertEquals(0.0, monitor.getMinFps(), 0.0);
+    }
+
+    @Test
+    public void onFrame_ignoresNonIncreasingTimestamps() {
+        FrameRateMonitor monitor = new FrameRateMonitor();
+        monitor.onFrame(START + FRAME_30FPS);
+
+        assertNull(monitor.onFrame(START + FRAME_30FPS));
+        assertNull(monitor.onFrame(START));
+        assertEquals(0, monitor.getIntervals().getCount());
+    }
+
+    @Test
+    public void reset_startsNewWindow() {
+        FrameRateMonitor monitor = new FrameRateMonitor();
+        monitor.onFrame(START);
+        monitor.reset();
+
+        //作り直したセッションの時刻は前のセッションの間隔として扱わない
+        assertNull(monitor.onFrame(START + 10 * SECOND));
+        assertEquals(0, monitor.getWindowCount());
+    }
+
+    @Test
+    public void dump_printsLastWindow() {
+        FrameRateMonitor monitor = new FrameRateMonitor();
+        for (int i = 0; i <= 30; i++) {
+            monitor.onFrame(START + i * FRAME_30FPS);
+        }
+        StringWriter out = new StringWriter();
+
+        monitor.dump("  ", new PrintWriter(out));
+
+        assertTrue(out.toString(), out.toString().startsWith("  Frame rate: last=30.0 fps (30 frames)"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNonPositiveWindow() {
+        new FrameRateMonitor(0);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static com.example.camerasample.FrameRatePolicy.*;
+import static org.junit.Assert.*;
+
+/**
+ * フレームレートの方針のテスト
+ */
+public class FrameRatePolicyTest {
+
+    //一般的な機器のCONTROL_AE_AVAILABLE_TARGET_FPS_RANGES
+    private static final FpsRange[] TYPICAL = {
+            new FpsRange(15, 15),
+            new FpsRange(7, 30),
+            new FpsRange(15, 30),
+            new FpsRange(24, 24),
+            new FpsRange(30, 30),
+    };
+
+    //可変の範囲しか持たない機器
+    private static final FpsRange[] VARIABLE_ONLY = {
+            new FpsRange(10, 30),
+            new FpsRange(15, 30),
+    };
+
+    private static final FrameSize BOUND_1080P = new FrameSize(1920, 1080);
+
+    private static final HighSpeedConfiguration[] HIGH_SPEED = {
+            new HighSpeedConfiguration(new FrameSize(1920, 1080), new FpsRange(30, 120)),
+            new HighSpeedConfiguration(new FrameSize(1920, 1080), new FpsRange(120, 120)),
+            new HighSpeedConfiguration(new FrameSize(1280, 720), new FpsRange(30, 240)),
+            new HighSpeedConfiguration(new FrameSize(1280, 720), new FpsRange(240, 240)),
+            new HighSpeedConfiguration(new FrameSize(3840, 2160), new FpsRange(120, 120)),
+    };
+
+    @Test
+    public void choose_fixedHighPrefersFixedMaximum() {
+        assertEquals(new FpsRange(30, 30), choose(TYPICAL, PROFILE_FIXED_HIGH, 30));
+    }
+
+    @Test
+    public void choose_fixedHighWithoutFixedRangeUsesHighestLower() {
+        assertEquals(new FpsRange(15, 30), choose(VARIABLE_ONLY, PROFILE_FIXED_HIGH, 30));
+    }
+
+    @Test
+    public void choose_lowLightPrefersLowestLower() {
+        assertEquals(new FpsRange(7, 30), choose(TYPICAL, PROFILE_LOW_LIGHT, 30));
+    }
+
+    @Test
+    public void choose_powerSavingPrefersLowestUpper() {
+        assertEquals(new FpsRange(15, 15), choose(TYPICAL, PROFILE_POWER_SAVING, 30));
+        assertEquals(new FpsRange(10, 30), choose(VARIABLE_ONLY, PROFILE_POWER_SAVING, 30));
+    }
+
+    @Test
+    public void choose_powerSavingKeepsMinimumFps() {
+        FpsRange[] ranges = { new FpsRange(5, 5), new FpsRange(10, 10), new FpsRange(30, 30) };
+
+        //下限を満たすものが無ければ最も高いもの
+        assertEquals(new FpsRange(30, 30), choose(ranges, PROFILE_POWER_SAVING, 0));
+        assertEquals(new FpsRange(10, 10), choose(ranges, PROFILE_POWER_SAVING, 15));
+    }
+
+    @Test
+    public void choose_capsByOutputFrameRate() {
+        //出力が24fpsまでしか保てなければ30fpsの範囲は選ばない
+        assertEquals(new FpsRange(24, 24), choose(TYPICAL, PROFILE_FIXED_HIGH, 24));
+        assertEquals(new FpsRange(15, 15), choose(TYPICAL, PROFILE_LOW_LIGHT, 20));
+    }
+
+    @Test
+    public void choose_noRangeWithinCapUsesAll() {
+        assertEquals(new FpsRange(15, 30), choose(VARIABLE_ONLY, PROFILE_FIXED_HIGH, 20));
+    }
+
+    @Test
+    public void choose_noCapWhenZero() {
+        FpsRange[] ranges = { new FpsRange(30, 30), new FpsRange(60, 60) };
+
+        assertEquals(new FpsRange(60, 60), choose(ranges, PROFILE_FIXED_HIGH, 0));
+    }
+
+    @Test
+    public void choose_emptyReturnsNull() {
+        assertNull(choose(new FpsRange[0], PROFILE_FIXED_HIGH, 30));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void choose_rejectsUnknownProfile() {
+        choose(TYPICAL, 99, 30);
+    }
+
+    @Test
+    public void chooseHighSpeed_prefersFixedRangeWithinBound() {
+        HighSpeedConfiguration chosen = chooseHighSpeed(HIGH_SPEED, 120, BOUND_1080P);
+
+        assertEquals(new FrameSize(1920, 1080), chosen.getSize());
+        assertEquals(new FpsRange(120, 120), chosen.getFpsRange());
+    }
+
+    @Test
+    public void chooseHighSpeed_240() {
+        HighSpeedConfiguration chosen = chooseHighSpeed(HIGH_SPEED, 240, BOUND_1080P);
+
+        assertEquals(new FrameSize(1280, 720), chosen.getSize());
+        assertEquals(new FpsRange(240, 240), chosen.getFpsRange());
+    }
+
+    @Test
+    public void chooseHighSpeed_unsupportedReturnsNull() {
+        assertNull(chooseHighSpeed(HIGH_SPEED, 480, BOUND_1080P));
+        assertNull(chooseHighSpeed(HIGH_SPEED, 240, new FrameSize(640, 480)));
+        assertNull(chooseHighSpeed(new HighSpeedConfiguration[0], 120, BOUND_1080P));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fpsRange_rejectsInverted() {
+        new FpsRange(30, 15);
+    }
+}
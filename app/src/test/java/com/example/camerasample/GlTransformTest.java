@@ -0,0 +1,129 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * GLで描画する際の頂点の変換行列のテスト
+ */
+public class GlTransformTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    private static float[] map(float[] matrix, float... points) {
+        float[] mapped = points.clone();
+        GlTransform.mapPoints(matrix, mapped);
+        return mapped;
+    }
+
+    @Test
+    public void getNaturalSize_swapsForPortraitSensor() {
+        assertEquals(1080, GlTransform.getNaturalWidth(1920, 1080, 90));
+        assertEquals(1920, GlTransform.getNaturalHeight(1920, 1080, 270));
+        assertEquals(1920, GlTransform.getNaturalWidth(1920, 1080, 0));
+    }
+
+    @Test
+    public void computeMvp_sameAspectIsIdentity() {
+        float[] matrix = new float[16];
+        GlTransform.computeMvp(1080, 1920, 1080, 1920, 0, false, GlTransform.SCALE_FILL, matrix);
+
+        float[] identity = new float[16];
+        GlTransform.setIdentity(identity);
+        assertArrayEquals(identity, matrix, EPSILON);
+    }
+
+    @Test
+    public void computeMvp_fillCropsLongerSide() {
+        float[] matrix = new float[16];
+
+        //縦長の画像 (9:16) を縦長の画面 (9:20) へ: 高さを合わせ、左右がはみ出す
+        GlTransform.computeMvp(1080, 2400, 1080, 1920, 0, false, GlTransform.SCALE_FILL, matrix);
+
+        float[] corners = map(matrix, -1, -1, 1, 1);
+        assertEquals(-1.25f, corners[0], EPSILON);
+        assertEquals(-1, corners[1], EPSILON);
+        assertEquals(1.25f, corners[2], EPSILON);
+        assertEquals(1, corners[3], EPSILON);
+    }
+
+    @Test
+    public void computeMvp_fitLeavesMargin() {
+        float[] matrix = new float[16];
+        GlTransform.computeMvp(1080, 2400, 1080, 1920, 0, false, GlTransform.SCALE_FIT, matrix);
+
+        assertArrayEquals(new float[] { -1, -0.8f, 1, 0.8f }, map(matrix, -1, -1, 1, 1), EPSILON);
+    }
+
+    @Test
+    public void computeMvp_mirrorFlipsHorizontally() {
+        float[] matrix = new float[16];
+        GlTransform.computeMvp(1080, 1920, 1080, 1920, 0, true, GlTransform.SCALE_FILL, matrix);
+
+        assertArrayEquals(new float[] { 1, -1, -1, 1 }, map(matrix, -1, -1, 1, 1), EPSILON);
+    }
+
+    @Test
+    public void computeMvp_rotatesCounterClockwise() {
+        float[] matrix = new float[16];
+
+        //縦長の画像を90度回転して横長の画面を埋める
+        GlTransform.computeMvp(1920, 1080, 1080, 1920, 90, false, GlTransform.SCALE_FILL, matrix);
+
+        //右 (1, 0) は上 (0, 1) へ、上は左へ写る
+        assertArrayEquals(new float[] { 0, 1, -1, 0 }, map(matrix, 1, 0, 0, 1), EPSILON);
+        assertEquals(0, matrix[0], 0);
+        assertEquals(0, matrix[5], 0);
+    }
+
+    @Test
+    public void computeMvp_mirrorAppliesAfterRotation() {
+        float[] matrix = new float[16];
+        GlTransform.computeMvp(1920, 1080, 1080, 1920, 270, true, GlTransform.SCALE_FILL, matrix);
+
+        //右は下へ回転し、左右反転では変わらない。上は右へ回転し、左右反転で左になる
+        assertArrayEquals(new float[] { 0, -1, -1, 0 }, map(matrix, 1, 0, 0, 1), EPSILON);
+    }
+
+    @Test
+    public void computeMvp_upsideDown() {
+        float[] matrix = new float[16];
+        GlTransform.computeMvp(1080, 1920, 1080, 1920, -180, false, GlTransform.SCALE_FILL, matrix);
+
+        assertArrayEquals(new float[] { 1, 1, -1, -1 }, map(matrix, -1, -1, 1, 1), EPSILON);
+    }
+
+    @Test
+    public void computeMvp_emptyViewIsIdentity() {
+        float[] matrix = new float[16];
+        GlTransform.computeMvp(0, 0, 1080, 1920, 90, true, GlTransform.SCALE_FILL, matrix);
+
+        float[] identity = new float[16];
+        GlTransform.setIdentity(identity);
+        assertArrayEquals(identity, matrix, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void computeMvp_rejectsNonRightAngle() {
+        GlTransform.computeMvp(1080, 1920, 1080, 1920, 45, false, GlTransform.SCALE_FILL, new float[16]);
+    }
+
+    @Test
+    public void getEncoderRotationDegrees_undoesOrientationHint() {
+        //背面カメラ (センサ90度) を縦持ちで録画: 縦長の画像を横長のエンコーダへ90度回転して書き、再生時に戻す
+        int hint = OrientationMath.getJpegOrientation(0, 90);
+        int rotation = GlTransform.getEncoderRotationDegrees(0, hint);
+        assertEquals(90, rotation);
+
+        float[] matrix = new float[16];
+        GlTransform.computeMvp(1920, 1080, 1080, 1920, rotation, false, GlTransform.SCALE_FILL, matrix);
+        float[] corners = map(matrix, -1, -1, 1, 1);
+        assertEquals(1, Math.abs(corners[0]), EPSILON);
+        assertEquals(1, Math.abs(corners[1]), EPSILON);
+
+        //横持ちでは画面と同じ回転と再生時の回転の合計
+        assertEquals((90 + OrientationMath.getJpegOrientation(1, 90)) % 360,
+                GlTransform.getEncoderRotationDegrees(1, OrientationMath.getJpegOrientation(1, 90)));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.camerasample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * JPEG保存処理に待ち行列を超える数の写真を続けて渡すテスト
+ * 受け付けられなかった写真を再試行すれば全て保存されることを確認する。
+ * MB/sと遅延のp99はbenchmarkモジュールのJpegFileWriterBenchmarkで計測する。
+ */
+public class JpegFileWriterBenchmarkTest {
+
+    private static final int FRAME_SIZE = 2 * 1024 * 1024;
+    private static final int FRAME_COUNT = 48;
+    private static final int QUEUE_CAPACITY = 8;
+
+    private File _directory;
+
+    @Before
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("jpeg-writer-bench").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        JpegFileWriterTest.deleteRecursively(_directory);
+    }
+
+    @Test
+    public void throughput() throws Exception {
+        final long[] latencies = new long[FRAME_COUNT];
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        JpegFileWriter writer = new JpegFileWriter(_directory, QUEUE_CAPACITY, new JpegFileWriter.Listener() {
+            @Override
+            public void onWritten(File file, int size, long latencyNanos) {
+                latencies[completed.getAndIncrement()] = latencyNanos;
+            }
+
+            @Override
+            public void onFailed(File file, IOException e) {
+                //書き込みスレッドでの失敗はここでは報告されないので、記録してテストのスレッドで確認する
+                failure.compareAndSet(null, e);
+            }
+        });
+
+        ByteBuffer source = JpegFileWriterTest.toDirectBuffer(JpegFileWriterTest.createContent(FRAME_SIZE, 5));
+
+        //待ち行列が空くまで再試行する (カメラ側では受け付けられなければ撮影ボタンを無効にする)
+        int retries = 0;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            JpegFrame frame = new JpegFrame(source.duplicate(), i, null);
+            while (!writer.submit(frame, "IMG_" + i + ".jpg")) {
+                retries++;
+                Thread.sleep(1);
+            }
+            frame.release();
+        }
+        assertTrue(writer.shutdown(60, TimeUnit.SECONDS));
+
+        assertNull(failure.get());
+
+        assertEquals(FRAME_COUNT, writer.getWrittenCount());
+        assertEquals((long)FRAME_SIZE * FRAME_COUNT, writer.getWrittenBytes());
+        assertEquals(retries, writer.getRejectedCount());
+        assertEquals(0, writer.getFailedCount());
+        assertEquals(FRAME_COUNT, completed.get());
+        for (long latency : latencies) {
+            assertTrue(latency > 0);
+        }
+    }
+}
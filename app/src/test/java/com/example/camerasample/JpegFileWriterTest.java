@@ -0,0 +1,154 @@
+package com.example.camerasample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * JPEG保存処理のテスト
+ */
+public class JpegFileWriterTest {
+
+    private File _directory;
+
+    @Before
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("jpeg-writer").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(_directory);
+    }
+
+    @Test
+    public void submit_writesContentAndReleasesFrame() throws Exception {
+        byte[] content = createContent(64 * 1024, 7);
+        final AtomicInteger closed = new AtomicInteger();
+        JpegFrame frame = new JpegFrame(toDirectBuffer(content), 0, new JpegFrame.Releaser() {
+            @Override
+            public void release() {
+                closed.incrementAndGet();
+            }
+        });
+
+        JpegFileWriter writer = new JpegFileWriter(_directory, 4, null);
+        assertTrue(writer.submit(frame, "a.jpg"));
+        frame.release();
+        assertTrue(writer.shutdown(10, TimeUnit.SECONDS));
+
+        File file = new File(_directory, "a.jpg");
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertFalse(new File(_directory, "a.jpg.tmp").exists());
+        assertEquals(1, closed.get());
+        assertEquals(1, writer.getWrittenCount());
+        assertEquals(content.length, writer.getWrittenBytes());
+    }
+
+    @Test
+    public void submit_rejectsWithoutBlockingWhenQueueIsFull() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        JpegFileWriter writer = new JpegFileWriter(_directory, 1, new JpegFileWriter.Listener() {
+            @Override
+            public void onWritten(File file, int size, long latencyNanos) {
+                started.countDown();
+                try {
+                    proceed.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onFailed(File file, IOException e) {
+            }
+        });
+
+        final AtomicInteger closed = new AtomicInteger();
+        JpegFrame.Releaser releaser = new JpegFrame.Releaser() {
+            @Override
+            public void release() {
+                closed.incrementAndGet();
+            }
+        };
+
+        //1枚目は書き込み中、2枚目は待ち行列、3枚目は受け付けられない
+        JpegFrame first = new JpegFrame(toDirectBuffer(createContent(16, 1)), 0, releaser);
+        assertTrue(writer.submit(first, "1.jpg"));
+        first.release();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        JpegFrame second = new JpegFrame(toDirectBuffer(createContent(16, 2)), 0, releaser);
+        assertTrue(writer.submit(second, "2.jpg"));
+        second.release();
+
+        JpegFrame third = new JpegFrame(toDirectBuffer(createContent(16, 3)), 0, releaser);
+        long start = System.nanoTime();
+        assertFalse(writer.submit(third, "3.jpg"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+        third.release();
+
+        assertEquals(1, writer.getRejectedCount());
+        assertEquals(1, writer.getQueueDepth());
+        assertEquals(1, closed.get());
+
+        proceed.countDown();
+        assertTrue(writer.shutdown(10, TimeUnit.SECONDS));
+
+        assertEquals(3, closed.get());
+        assertTrue(new File(_directory, "2.jpg").exists());
+        assertFalse(new File(_directory, "3.jpg").exists());
+    }
+
+    @Test
+    public void submit_replacesExistingFileAtomically() throws Exception {
+        File file = new File(_directory, "same.jpg");
+        Files.write(file.toPath(), createContent(1024, 9));
+
+        byte[] content = createContent(2048, 3);
+        JpegFrame frame = new JpegFrame(toDirectBuffer(content), 0, null);
+        JpegFileWriter writer = new JpegFileWriter(_directory, 1, null);
+        writer.submit(frame, "same.jpg");
+        frame.release();
+        assertTrue(writer.shutdown(10, TimeUnit.SECONDS));
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(1, _directory.list().length);
+    }
+
+    static byte[] createContent(int size, int seed) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte)(i * 31 + seed);
+        }
+        return content;
+    }
+
+    static ByteBuffer toDirectBuffer(byte[] content) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+        return buffer;
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JpegFrameの所有権と、配信から保存・デコードまでフレームをコピーしないことの確認
+ */
+public class JpegFrameTest {
+
+    private static final int FRAME_SIZE = 4 * 1024 * 1024;
+
+    @Test
+    public void release_closesOnLastReference() {
+        final AtomicInteger closed = new AtomicInteger();
+        JpegFrame frame = new JpegFrame(ByteBuffer.allocateDirect(16), 0, new JpegFrame.Releaser() {
+            @Override
+            public void release() {
+                closed.incrementAndGet();
+            }
+        });
+
+        frame.retain();
+        frame.release();
+        assertEquals(0, closed.get());
+        assertFalse(frame.isReleased());
+
+        frame.release();
+        assertEquals(1, closed.get());
+        assertTrue(frame.isReleased());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getBuffer_failsAfterRelease() {
+        JpegFrame frame = new JpegFrame(ByteBuffer.allocateDirect(16), 0, null);
+        frame.release();
+        frame.getBuffer();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retain_failsAfterRelease() {
+        JpegFrame frame = new JpegFrame(ByteBuffer.allocateDirect(16), 0, null);
+        frame.release();
+        frame.retain();
+    }
+
+    @Test
+    public void getBuffer_isIndependentPerConsumer() {
+        ByteBuffer source = ByteBuffer.allocateDirect(4);
+        source.put(new byte[] { 1, 2, 3, 4 }).flip();
+        JpegFrame frame = new JpegFrame(source, 0, null);
+
+        ByteBuffer first = frame.getBuffer();
+        first.get();
+        first.get();
+
+        ByteBuffer second = frame.getBuffer();
+        assertEquals(4, second.remaining());
+        assertEquals(1, second.get());
+        assertTrue(second.isReadOnly());
+    }
+
+    @Test
+    public void dispatcher_releasesAfterAllConsumers() {
+        final AtomicInteger closed = new AtomicInteger();
+        final JpegFrame[] held = new JpegFrame[1];
+
+        JpegFrameDispatcher dispatcher = new JpegFrameDispatcher();
+        dispatcher.addConsumer(new JpegFrameDispatcher.Consumer() {
+            @Override
+            public void onJpegFrame(JpegFrame frame) {
+                held[0] = frame.retain();
+            }
+        });
+        dispatcher.addConsumer(new JpegFrameDispatcher.Consumer() {
+            @Override
+            public void onJpegFrame(JpegFrame frame) {
+                assertEquals(0, closed.get());
+            }
+        });
+
+        dispatcher.dispatch(new JpegFrame(ByteBuffer.allocateDirect(16), 0, new JpegFrame.Releaser() {
+            @Override
+            public void release() {
+                closed.incrementAndGet();
+            }
+        }));
+        assertEquals(0, closed.get());
+
+        held[0].release();
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void allocation_dispatchToWriterAndDecoderDoesNotCopyFrame() throws Exception {
+        final com.sun.management.ThreadMXBean threadBean = allocationBean();
+        assumeTrue(threadBean != null);
+
+        File directory = Files.createTempDirectory("jpeg-frame").toFile();
+        final Semaphore written = new Semaphore(0);
+        final AtomicLong writerThreadId = new AtomicLong();
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        final JpegFileWriter writer = new JpegFileWriter(directory, 2, new JpegFileWriter.Listener() {
+            @Override
+            public void onWritten(File file, int size, long latencyNanos) {
+                writerThreadId.set(Thread.currentThread().getId());
+                written.release();
+            }
+
+            @Override
+            public void onFailed(File file, IOException e) {
+                failure.compareAndSet(null, e);
+                written.release();
+            }
+        });
+
+        //カメラと同じ配信先 (保存処理と、ストリームで読み出すデコーダ)
+        final byte[] scratch = new byte[16 * 1024];
+        final AtomicInteger decodedBytes = new AtomicInteger();
+        JpegFrameDispatcher dispatcher = new JpegFrameDispatcher();
+        dispatcher.addConsumer(new JpegFrameDispatcher.Consumer() {
+            @Override
+            public void onJpegFrame(JpegFrame frame) {
+                assertTrue(writer.submit(frame, "IMG_" + frame.getTimestamp() + ".jpg"));
+            }
+        });
+        dispatcher.addConsumer(new JpegFrameDispatcher.Consumer() {
+            @Override
+            public void onJpegFrame(JpegFrame frame) {
+                decodedBytes.set(readAll(frame, scratch));
+            }
+        });
+
+        ByteBuffer imageBuffer = ByteBuffer.allocateDirect(FRAME_SIZE);
+        final AtomicInteger closed = new AtomicInteger();
+        JpegFrame.Releaser releaser = new JpegFrame.Releaser() {
+            @Override
+            public void release() {
+                closed.incrementAndGet();
+            }
+        };
+
+        try {
+            //ウォームアップ (書き込みスレッドを確定させる)
+            dispatcher.dispatch(new JpegFrame(imageBuffer.duplicate(), 0, releaser));
+            written.acquire();
+
+            long threadId = Thread.currentThread().getId();
+            long dispatchBefore = threadBean.getThreadAllocatedBytes(threadId);
+            long writerBefore = threadBean.getThreadAllocatedBytes(writerThreadId.get());
+
+            dispatcher.dispatch(new JpegFrame(imageBuffer.duplicate(), 1, releaser));
+            long dispatchBytes = threadBean.getThreadAllocatedBytes(threadId) - dispatchBefore;
+            written.acquire();
+            long writerBytes = threadBean.getThreadAllocatedBytes(writerThreadId.get()) - writerBefore;
+
+            assertNull(failure.get());
+            assertEquals(FRAME_SIZE, decodedBytes.get());
+            assertEquals(FRAME_SIZE, new File(directory, "IMG_1.jpg").length());
+            assertTrue("dispatch allocated " + dispatchBytes + " bytes", dispatchBytes < FRAME_SIZE / 64);
+            assertTrue("writer allocated " + writerBytes + " bytes", writerBytes < FRAME_SIZE / 64);
+        }
+        finally {
+            assertTrue(writer.shutdown(10, TimeUnit.SECONDS));
+            JpegFileWriterTest.deleteRecursively(directory);
+        }
+
+        //書き込みを終えた時点で両方のフレームが解放されている
+        assertEquals(2, closed.get());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)bean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()) return null;
+
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        return allocationBean;
+    }
+
+    private static int readAll(JpegFrame frame, byte[] scratch) {
+        int total = 0;
+        try (InputStream stream = frame.openStream()) {
+            int count;
+            while ((count = stream.read(scratch, 0, scratch.length)) > 0) {
+                total += count;
+            }
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * アップロード用のJPEGの変換内容のテスト
+ */
+public class JpegTransformPlanTest {
+
+    @Test
+    public void plan_skipsReencodeWithoutPixelChange() {
+        JpegTransformPlan plan = JpegTransformPlan.plan(4032, 3024, ExifData.ORIENTATION_NORMAL, false, 0, true);
+
+        assertFalse(plan.reencode);
+        assertEquals(4032, plan.outputWidth);
+        assertEquals(3024, plan.outputHeight);
+        assertEquals(ExifData.ORIENTATION_NORMAL, plan.outputOrientation);
+    }
+
+    @Test
+    public void plan_keepsPixelsAndWritesOrientationWhenNotBaked() {
+        //回転と反転はEXIFだけで表す
+        JpegTransformPlan plan = JpegTransformPlan.plan(4032, 3024, ExifData.ORIENTATION_ROTATE_90, true, 0, false);
+
+        assertFalse(plan.reencode);
+        assertEquals(4032, plan.outputWidth);
+        assertEquals(3024, plan.outputHeight);
+        assertEquals(ExifData.ORIENTATION_TRANSPOSE, plan.outputOrientation);
+    }
+
+    @Test
+    public void plan_bakesRotationAndSwapsSize() {
+        JpegTransformPlan plan = JpegTransformPlan.plan(4032, 3024, ExifData.ORIENTATION_ROTATE_90, true, 0, true);
+
+        assertTrue(plan.reencode);
+        assertEquals(1, plan.sampleSize);
+        assertEquals(90, plan.rotation);
+        assertTrue(plan.mirror);
+        assertEquals(3024, plan.outputWidth);
+        assertEquals(4032, plan.outputHeight);
+        assertEquals(ExifData.ORIENTATION_NORMAL, plan.outputOrientation);
+    }
+
+    @Test
+    public void plan_mirrorCancelsMirroredOrientation() {
+        //左右反転済みの向きをさらに反転すると回転なしになる
+        JpegTransformPlan plan = JpegTransformPlan.plan(4032, 3024, ExifData.ORIENTATION_FLIP_HORIZONTAL, true, 0, true);
+
+        assertFalse(plan.reencode);
+        assertEquals(ExifData.ORIENTATION_NORMAL, plan.outputOrientation);
+    }
+
+    @Test
+    public void plan_capsLongSideWithSampleSize() {
+        JpegTransformPlan plan = JpegTransformPlan.plan(4032, 3024, ExifData.ORIENTATION_NORMAL, false, 1000, false);
+
+        assertTrue(plan.reencode);
+        assertEquals(4, plan.sampleSize);
+        assertEquals(1000, plan.scaledWidth);
+        assertEquals(750, plan.scaledHeight);
+        assertEquals(1000, plan.outputWidth);
+        assertEquals(750, plan.outputHeight);
+        assertEquals(ExifData.ORIENTATION_NORMAL, plan.outputOrientation);
+    }
+
+    @Test
+    public void plan_resizeWithoutBakeKeepsOrientation() {
+        JpegTransformPlan plan = JpegTransformPlan.plan(4032, 3024, ExifData.ORIENTATION_ROTATE_270, false, 2048, false);
+
+        assertTrue(plan.reencode);
+        assertEquals(1, plan.sampleSize);
+        assertEquals(0, plan.rotation);
+        assertEquals(2048, plan.outputWidth);
+        assertEquals(1536, plan.outputHeight);
+        assertEquals(ExifData.ORIENTATION_ROTATE_270, plan.outputOrientation);
+    }
+
+    @Test
+    public void plan_doesNotUpscale() {
+        JpegTransformPlan plan = JpegTransformPlan.plan(640, 480, ExifData.ORIENTATION_UNDEFINED, false, 2048, true);
+
+        assertFalse(plan.reencode);
+        assertEquals(640, plan.outputWidth);
+        assertEquals(ExifData.ORIENTATION_NORMAL, plan.outputOrientation);
+    }
+}
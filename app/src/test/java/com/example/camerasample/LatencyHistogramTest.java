@@ -0,0 +1,116 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 処理時間の分布のテスト
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketIndex_isContinuousAndMonotonic() {
+        int previous = LatencyHistogram.bucketIndex(0);
+        for (long value = 1; value < 1 << 20; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(LatencyHistogram.lowestValue(index) <= value);
+            assertTrue(LatencyHistogram.highestValue(index) >= value);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void bucketIndex_relativeErrorWithinThreePercent() {
+        for (long value = 64; value < LatencyHistogram.MAX_VALUE; value = value * 3 / 2 + 7) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long width = LatencyHistogram.highestValue(index) - LatencyHistogram.lowestValue(index) + 1;
+            assertTrue(value + " width " + width, width <= value / 32 + 1);
+        }
+    }
+
+    @Test
+    public void snapshot_emptyReturnsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void getValueAtPercentile_uniformMilliseconds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100, snapshot.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), snapshot.getMin());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getMax());
+        assertEquals(50.5e6, snapshot.getMean(), 1);
+        assertEquals(50e6, snapshot.getValueAtPercentile(50), 50e6 * 0.03);
+        assertEquals(95e6, snapshot.getValueAtPercentile(95), 95e6 * 0.03);
+        assertEquals(99e6, snapshot.getValueAtPercentile(99), 99e6 * 0.03);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void record_clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void record_concurrentWritersLoseNothing() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 8;
+        final int perThread = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        //スレッド毎に1〜1000マイクロ秒を一様に記録する
+                        histogram.record(((i + offset) % 1000 + 1) * 1000L);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(threads * perThread, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500500, snapshot.getMean(), 1);
+        assertEquals(500000, snapshot.getValueAtPercentile(50), 500000 * 0.03);
+        assertEquals(990000, snapshot.getValueAtPercentile(99), 990000 * 0.03);
+    }
+}
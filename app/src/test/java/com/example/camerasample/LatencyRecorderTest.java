@@ -0,0 +1,153 @@
+package com.example.camerasample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 段階毎の処理時間の記録のテスト
+ */
+public class LatencyRecorderTest {
+
+    private long _now;
+    private final List<String> _traces = new ArrayList<>();
+    private LatencyRecorder _recorder;
+
+    @Before
+    public void setUp() {
+        _now = 1000;
+        _recorder = new LatencyRecorder(new LatencyRecorder.Clock() {
+            @Override
+            public long nanoTime() {
+                return _now;
+            }
+        }, new LatencyRecorder.Tracer() {
+            @Override
+            public void begin(String stageName, int cookie) {
+                _traces.add("begin " + stageName);
+            }
+
+            @Override
+            public void end(String stageName, int cookie) {
+                _traces.add("end " + stageName);
+            }
+        });
+    }
+
+    @Test
+    public void stop_recordsElapsedSinceStart() {
+        _recorder.start(LatencyRecorder.STAGE_SHUTTER_TO_DISPLAY);
+        _now += 250;
+
+        assertEquals(250, _recorder.stop(LatencyRecorder.STAGE_SHUTTER_TO_DISPLAY));
+        assertEquals(1, _recorder.snapshot(LatencyRecorder.STAGE_SHUTTER_TO_DISPLAY).getCount());
+        assertEquals(250, _recorder.snapshot(LatencyRecorder.STAGE_SHUTTER_TO_DISPLAY).getMax());
+    }
+
+    @Test
+    public void stop_onlyFirstStopIsRecorded() {
+        _recorder.start(LatencyRecorder.STAGE_CAPTURE_TO_RESULT);
+        _now += 10;
+        _recorder.stop(LatencyRecorder.STAGE_CAPTURE_TO_RESULT);
+        _now += 10;
+
+        assertEquals(-1, _recorder.stop(LatencyRecorder.STAGE_CAPTURE_TO_RESULT));
+        assertEquals(1, _recorder.snapshot(LatencyRecorder.STAGE_CAPTURE_TO_RESULT).getCount());
+    }
+
+    @Test
+    public void start_restartEndsPreviousTrace() {
+        _recorder.start(LatencyRecorder.STAGE_DECODE);
+        _recorder.start(LatencyRecorder.STAGE_DECODE);
+        _recorder.stop(LatencyRecorder.STAGE_DECODE);
+
+        assertEquals(4, _traces.size());
+        assertEquals("begin decode", _traces.get(0));
+        assertEquals("end decode", _traces.get(1));
+        assertEquals("begin decode", _traces.get(2));
+        assertEquals("end decode", _traces.get(3));
+        assertEquals(1, _recorder.snapshot(LatencyRecorder.STAGE_DECODE).getCount());
+    }
+
+    @Test
+    public void start_atClockZeroIsStillStarted() {
+        _now = 0;
+        _recorder.start(LatencyRecorder.STAGE_DECODE);
+        _now = 100;
+
+        assertEquals(99, _recorder.stop(LatencyRecorder.STAGE_DECODE));
+    }
+
+    @Test
+    public void recordSince_usesSensorTimestamp() {
+        long sensorTimestamp = _now;
+        _now += 33000000;
+
+        assertEquals(33000000, _recorder.recordSince(LatencyRecorder.STAGE_SENSOR_TO_IMAGE, sensorTimestamp));
+        assertTrue(_traces.isEmpty());
+    }
+
+    @Test
+    public void dump_listsEveryStage() {
+        _recorder.record(LatencyRecorder.STAGE_DECODE, TimeUnit.MILLISECONDS.toNanos(12));
+        StringWriter out = new StringWriter();
+        _recorder.dump("  ", new PrintWriter(out));
+
+        String text = out.toString();
+        for (int stage = 0; stage < LatencyRecorder.STAGE_COUNT; stage++) {
+            assertTrue(text.contains(LatencyRecorder.getStageName(stage)));
+        }
+        assertTrue(text, text.contains("p50=12.00"));
+    }
+
+    @Test
+    public void record_concurrentStagesAreIndependent() throws Exception {
+        final LatencyRecorder recorder = new LatencyRecorder(new LatencyRecorder.Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+        });
+        final int perThread = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(LatencyRecorder.STAGE_COUNT * 2);
+
+        for (int t = 0; t < LatencyRecorder.STAGE_COUNT * 2; t++) {
+            final int stage = t % LatencyRecorder.STAGE_COUNT;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        recorder.record(stage, (stage + 1) * 1000L);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        for (int stage = 0; stage < LatencyRecorder.STAGE_COUNT; stage++) {
+            LatencyHistogram.Snapshot snapshot = recorder.snapshot(stage);
+            assertEquals(2 * perThread, snapshot.getCount());
+            assertEquals((stage + 1) * 1000L, snapshot.getMin());
+            assertEquals((stage + 1) * 1000L, snapshot.getMax());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.camerasample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 解析用フレームの受け渡しのテスト
+ */
+public class LatestFrameDispatcherTest {
+
+    //execute()された処理を手動で実行するExecutor
+    private static class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown) throw new RejectedExecutionException();
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static final LatencyRecorder.Clock CLOCK = new LatencyRecorder.Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private ManualExecutor _executor;
+    private List<Integer> _analyzed;
+    private List<Integer> _recycled;
+    private LatestFrameDispatcher<Integer> _dispatcher;
+
+    @Before
+    public void setUp() {
+        _executor = new ManualExecutor();
+        _analyzed = new ArrayList<>();
+        _recycled = new ArrayList<>();
+        _dispatcher = new LatestFrameDispatcher<>(_executor, new LatestFrameDispatcher.FrameAnalyzer<Integer>() {
+            @Override
+            public void analyze(Integer frame, long timestampNanos) {
+                assertEquals(frame * 1000L, timestampNanos);
+                _analyzed.add(frame);
+            }
+        }, new LatestFrameDispatcher.Recycler<Integer>() {
+            @Override
+            public void recycle(Integer frame) {
+                _recycled.add(frame);
+            }
+        }, CLOCK);
+    }
+
+    @Test
+    public void offer_analyzesAndRecyclesFrame() {
+        _dispatcher.offer(1, 1000);
+        _executor.runAll();
+
+        assertEquals(Collections.singletonList(1), _analyzed);
+        assertEquals(Collections.singletonList(1), _recycled);
+        assertEquals(1, _dispatcher.getAnalyzedCount());
+        assertEquals(0, _dispatcher.getDroppedCount());
+        assertEquals(1, _dispatcher.getAnalyzeLatency().getCount());
+    }
+
+    @Test
+    public void offer_keepsOnlyLatestWhileBusy() {
+        for (int i = 1; i <= 5; i++) {
+            _dispatcher.offer(i, i * 1000L);
+        }
+
+        //依頼は1つだけ
+        assertEquals(1, _executor.tasks.size());
+        _executor.runAll();
+
+        assertEquals(Collections.singletonList(5), _analyzed);
+        assertEquals(5, _recycled.size());
+        assertEquals(5, _dispatcher.getOfferedCount());
+        assertEquals(4, _dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void offer_duringAnalysisIsPickedUpBySameTask() {
+        final AtomicReference<LatestFrameDispatcher<Integer>> holder = new AtomicReference<>();
+        final List<Integer> analyzed = new ArrayList<>();
+        holder.set(new LatestFrameDispatcher<>(_executor, new LatestFrameDispatcher.FrameAnalyzer<Integer>() {
+            @Override
+            public void analyze(Integer frame, long timestampNanos) {
+                analyzed.add(frame);
+                if (frame == 1) {
+                    //解析中に次のフレームが届く
+                    holder.get().offer(2, 2000);
+                }
+            }
+        }, new LatestFrameDispatcher.Recycler<Integer>() {
+            @Override
+            public void recycle(Integer frame) { }
+        }, CLOCK));
+
+        holder.get().offer(1, 1000);
+        _executor.runAll();
+
+        assertEquals(2, analyzed.size());
+        assertEquals(0, holder.get().getDroppedCount());
+    }
+
+    @Test
+    public void offer_afterShutdownRecyclesFrame() {
+        _executor.shutdown = true;
+        _dispatcher.offer(1, 1000);
+
+        assertTrue(_analyzed.isEmpty());
+        assertEquals(Collections.singletonList(1), _recycled);
+        assertEquals(1, _dispatcher.getDroppedCount());
+
+        //停止後も再びoffer()できる
+        _executor.shutdown = false;
+        _dispatcher.offer(2, 2000);
+        _executor.runAll();
+        assertEquals(Collections.singletonList(2), _analyzed);
+    }
+
+    @Test
+    public void clear_recyclesPendingFrame() {
+        _dispatcher.offer(1, 1000);
+        _dispatcher.clear();
+        _executor.runAll();
+
+        assertTrue(_analyzed.isEmpty());
+        assertEquals(Collections.singletonList(1), _recycled);
+    }
+
+    @Test
+    public void analyze_failureStillRecycles() {
+        LatestFrameDispatcher<Integer> dispatcher = new LatestFrameDispatcher<>(_executor, new LatestFrameDispatcher.FrameAnalyzer<Integer>() {
+            @Override
+            public void analyze(Integer frame, long timestampNanos) {
+                throw new IllegalStateException("closed");
+            }
+        }, new LatestFrameDispatcher.Recycler<Integer>() {
+            @Override
+            public void recycle(Integer frame) {
+                _recycled.add(frame);
+            }
+        }, CLOCK);
+
+        dispatcher.offer(1, 1000);
+        _executor.runAll();
+
+        assertEquals(1, dispatcher.getFailedCount());
+        assertEquals(Collections.singletonList(1), _recycled);
+    }
+
+    @Test
+    public void offer_neverBlocksProducerAndRecyclesEveryFrame() throws Exception {
+        //解析が遅くても、全てのフレームが解析されるか捨てられ、必ず解放される
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AtomicInteger recycled = new AtomicInteger();
+        final AtomicInteger analyzed = new AtomicInteger();
+        final CountDownLatch slow = new CountDownLatch(1);
+        LatestFrameDispatcher<Integer> dispatcher = new LatestFrameDispatcher<>(executor, new LatestFrameDispatcher.FrameAnalyzer<Integer>() {
+            @Override
+            public void analyze(Integer frame, long timestampNanos) {
+                try {
+                    slow.await(1, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                analyzed.incrementAndGet();
+            }
+        }, new LatestFrameDispatcher.Recycler<Integer>() {
+            @Override
+            public void recycle(Integer frame) {
+                recycled.incrementAndGet();
+            }
+        }, CLOCK);
+
+        int frames = 2000;
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            dispatcher.offer(i, i);
+        }
+        long offerNanos = System.nanoTime() - start;
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        //解析1枚(1ms)の間に全てoffer()が終わる程度に速い
+        assertTrue("offer took " + offerNanos + " ns", offerNanos < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(frames, recycled.get());
+        assertEquals(frames, dispatcher.getAnalyzedCount() + dispatcher.getDroppedCount());
+        assertTrue(dispatcher.getDroppedCount() > 0);
+        assertEquals(analyzed.get(), dispatcher.getAnalyzedCount());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * レンズの切り替えと事前の準備のテスト
+ */
+public class LensSwitcherTest {
+
+    private static final long LAYOUT = LensSwitcher.layoutKey(1080, 2280, 0);
+
+    @Test
+    public void layoutKey_differsByRotationAndSize() {
+        assertNotEquals(LAYOUT, LensSwitcher.layoutKey(1080, 2280, 1));
+        assertNotEquals(LAYOUT, LensSwitcher.layoutKey(2280, 1080, 0));
+        assertEquals(LAYOUT, LensSwitcher.layoutKey(1080, 2280, 0));
+    }
+
+    @Test
+    public void switchToNext_cyclesLenses() {
+        LensSwitcher<String> switcher = new LensSwitcher<>();
+        switcher.setCatalog(CameraCatalogTest.createCatalog(), CameraCatalog.LENS_FRONT);
+
+        assertEquals(CameraCatalog.LENS_BACK, switcher.switchToNext().lens);
+        assertEquals(CameraCatalog.LENS_WIDE, switcher.switchToNext().lens);
+        assertEquals(CameraCatalog.LENS_FRONT, switcher.switchToNext().lens);
+        assertEquals(3, switcher.getSwitchCount());
+    }
+
+    @Test
+    public void switchToNext_singleLensDoesNothing() {
+        LensSwitcher<String> switcher = new LensSwitcher<>();
+        switcher.setCatalog(CameraCatalog.create(new CameraConfig[] {
+                CameraCatalogTest.createConfig("1", CameraLens.FACING_FRONT, 78f),
+        }, new CameraConfig[0]), CameraCatalog.LENS_BACK);
+
+        assertEquals(CameraCatalog.LENS_FRONT, switcher.getCurrent().lens);
+        assertNull(switcher.getNext());
+        assertNull(switcher.switchToNext());
+        assertEquals(0, switcher.getSwitchCount());
+    }
+
+    @Test
+    public void takePrepared_returnsOutputsForSwitchedLens() {
+        LensSwitcher<String> switcher = new LensSwitcher<>();
+        switcher.setCatalog(CameraCatalogTest.createCatalog(), CameraCatalog.LENS_FRONT);
+
+        assertTrue(switcher.putPrepared(CameraCatalog.LENS_BACK, LAYOUT, "back"));
+        assertTrue(switcher.isNextPrepared(LAYOUT));
+        switcher.switchToNext();
+
+        assertEquals("back", switcher.takePrepared(LAYOUT));
+        assertEquals(1, switcher.getPreparedHits());
+
+        //取り出したものは保持しない
+        assertNull(switcher.takePrepared(LAYOUT));
+        assertEquals(1, switcher.getPreparedMisses());
+    }
+
+    @Test
+    public void takePrepared_otherLayoutIsMiss() {
+        LensSwitcher<String> switcher = new LensSwitcher<>();
+        switcher.setCatalog(CameraCatalogTest.createCatalog(), CameraCatalog.LENS_FRONT);
+        switcher.putPrepared(CameraCatalog.LENS_BACK, LAYOUT, "back");
+
+        //準備した後に画面が回転した
+        assertFalse(switcher.isNextPrepared(LensSwitcher.layoutKey(1080, 2280, 1)));
+        switcher.switchToNext();
+
+        assertNull(switcher.takePrepared(LensSwitcher.layoutKey(1080, 2280, 1)));
+        assertEquals(1, switcher.getPreparedMisses());
+    }
+
+    @Test
+    public void putPrepared_ignoresStaleLens() {
+        LensSwitcher<String> switcher = new LensSwitcher<>();
+        switcher.setCatalog(CameraCatalogTest.createCatalog(), CameraCatalog.LENS_FRONT);
+
+        //準備している間に背面へ切り替えられた
+        switcher.switchToNext();
+
+        assertFalse(switcher.putPrepared(CameraCatalog.LENS_BACK, LAYOUT, "back"));
+        assertFalse(switcher.isNextPrepared(LAYOUT));
+    }
+
+    @Test
+    public void clearCatalog_dropsSelectionAndPrepared() {
+        LensSwitcher<String> switcher = new LensSwitcher<>();
+        switcher.setCatalog(CameraCatalogTest.createCatalog(), CameraCatalog.LENS_BACK);
+        switcher.putPrepared(CameraCatalog.LENS_WIDE, LAYOUT, "wide");
+        switcher.clearCatalog();
+
+        assertNull(switcher.getCurrent());
+        assertNull(switcher.getNext());
+        assertFalse(switcher.isNextPrepared(LAYOUT));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 輝度の統計のテスト
+ */
+public class LumaStatisticsTest {
+
+    @Test
+    public void mean_ignoresRowPadding() {
+        //4x2、行の末尾に2バイトの余白 (値255)
+        ByteBuffer plane = ByteBuffer.wrap(new byte[] {
+                10, 20, 30, 40, (byte)255, (byte)255,
+                50, 60, 70, (byte)200, (byte)255, (byte)255,
+        });
+
+        assertEquals((10 + 20 + 30 + 40 + 50 + 60 + 70 + 200) / 8.0,
+                LumaStatistics.mean(plane, 4, 2, 6, 1, 1), 1e-9);
+    }
+
+    @Test
+    public void mean_samplesEveryStepPixels() {
+        ByteBuffer plane = ByteBuffer.wrap(new byte[] {
+                100, 0, 100, 0,
+                0, 0, 0, 0,
+                100, 0, (byte)220, 0,
+        });
+
+        assertEquals((100 + 100 + 100 + 220) / 4.0, LumaStatistics.mean(plane, 4, 3, 4, 1, 2), 1e-9);
+    }
+
+    @Test
+    public void mean_respectsPixelStrideAndPosition() {
+        ByteBuffer plane = ByteBuffer.wrap(new byte[] { 99, 10, 0, 30, 0 });
+        plane.position(1);
+
+        assertEquals(20.0, LumaStatistics.mean(plane, 2, 1, 4, 2, 1), 1e-9);
+        assertEquals(1, plane.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mean_rejectsZeroStep() {
+        LumaStatistics.mean(ByteBuffer.allocate(1), 1, 1, 1, 1, 0);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 回転と向きの計算のテスト
+ */
+public class OrientationMathTest {
+
+    @Test
+    public void getJpegOrientation_matchesOrientationTable() {
+        //前面カメラ (センサ270度)
+        assertEquals(270, OrientationMath.getJpegOrientation(0, 270));
+        assertEquals(180, OrientationMath.getJpegOrientation(1, 270));
+        assertEquals(90, OrientationMath.getJpegOrientation(2, 270));
+        assertEquals(0, OrientationMath.getJpegOrientation(3, 270));
+
+        //背面カメラ (センサ90度)
+        assertEquals(90, OrientationMath.getJpegOrientation(0, 90));
+        assertEquals(0, OrientationMath.getJpegOrientation(1, 90));
+    }
+
+    @Test
+    public void isDimensionSwapped_portraitWithLandscapeSensor() {
+        assertTrue(OrientationMath.isDimensionSwapped(0, 90));
+        assertTrue(OrientationMath.isDimensionSwapped(2, 270));
+        assertFalse(OrientationMath.isDimensionSwapped(1, 90));
+        assertFalse(OrientationMath.isDimensionSwapped(3, 270));
+        assertTrue(OrientationMath.isDimensionSwapped(1, 0));
+        assertFalse(OrientationMath.isDimensionSwapped(0, 180));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void isDimensionSwapped_rejectsInvalidRotation() {
+        OrientationMath.isDimensionSwapped(4, 90);
+    }
+
+    @Test
+    public void toDegrees_convertsSurfaceRotation() {
+        assertEquals(0, OrientationMath.toDegrees(0));
+        assertEquals(90, OrientationMath.toDegrees(1));
+        assertEquals(180, OrientationMath.toDegrees(2));
+        assertEquals(270, OrientationMath.toDegrees(3));
+    }
+}
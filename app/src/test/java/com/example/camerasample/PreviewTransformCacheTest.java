@@ -0,0 +1,89 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * プレビュー表示の変換行列の保持のテスト
+ */
+public class PreviewTransformCacheTest {
+
+    @Test
+    public void get_returnsComputedTransform() {
+        PreviewTransformCache cache = new PreviewTransformCache();
+        float[] expected = new float[9];
+        PreviewTransform.compute(1080, 1920, 1920, 1080, 270, 1, true, expected);
+
+        assertArrayEquals(expected, cache.get(1080, 1920, 1920, 1080, 270, 1, true), 0.0f);
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void get_sameTupleReturnsSameArray() {
+        PreviewTransformCache cache = new PreviewTransformCache();
+        float[] first = cache.get(1080, 1920, 1920, 1080, 270, 0, true);
+        float[] second = cache.get(1080, 1920, 1920, 1080, 270, 0, true);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void get_anyDifferenceInTupleMisses() {
+        PreviewTransformCache cache = new PreviewTransformCache(16);
+        float[] base = cache.get(1080, 1920, 1920, 1080, 270, 0, true);
+
+        assertNotSame(base, cache.get(1080, 1920, 1920, 1080, 270, 2, true));
+        assertNotSame(base, cache.get(1080, 1800, 1920, 1080, 270, 0, true));
+        assertNotSame(base, cache.get(1080, 1920, 1280, 720, 270, 0, true));
+        assertNotSame(base, cache.get(1080, 1920, 1920, 1080, 90, 0, true));
+        assertNotSame(base, cache.get(1080, 1920, 1920, 1080, 270, 0, false));
+        assertEquals(6, cache.getMisses());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() {
+        PreviewTransformCache cache = new PreviewTransformCache(2);
+        float[] rotation0 = cache.get(1080, 1920, 1920, 1080, 270, 0, true);
+        cache.get(1920, 1080, 1920, 1080, 270, 1, true);
+
+        //0度を使ったので1度目に追加した90度が捨てられる
+        assertSame(rotation0, cache.get(1080, 1920, 1920, 1080, 270, 0, true));
+        cache.get(1080, 1920, 1920, 1080, 270, 2, true);
+        assertSame(rotation0, cache.get(1080, 1920, 1920, 1080, 270, 0, true));
+
+        int misses = cache.getMisses();
+        cache.get(1920, 1080, 1920, 1080, 270, 1, true);
+        assertEquals(misses + 1, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void get_evictedTupleGetsNewArray() {
+        PreviewTransformCache cache = new PreviewTransformCache(1);
+        float[] first = cache.get(1080, 1920, 1920, 1080, 270, 0, true);
+        float[] second = cache.get(1080, 1920, 1920, 1080, 270, 2, true);
+
+        //配列を使い回さないので、参照の比較で変化を判定できる
+        assertNotSame(first, second);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void clear_removesAllEntries() {
+        PreviewTransformCache cache = new PreviewTransformCache();
+        float[] first = cache.get(1080, 1920, 1920, 1080, 270, 0, true);
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNotSame(first, cache.get(1080, 1920, 1920, 1080, 270, 0, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNonPositiveCapacity() {
+        new PreviewTransformCache(0);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * プレビュー表示の変換行列のテスト
+ */
+public class PreviewTransformTest {
+
+    private static final float EPSILON = 1e-3f;
+
+    private static float[] map(float[] matrix, float... points) {
+        float[] mapped = points.clone();
+        PreviewTransform.mapPoints(matrix, mapped);
+        return mapped;
+    }
+
+    @Test
+    public void compute_portraitMirrorsHorizontally() {
+        float[] matrix = new float[9];
+        PreviewTransform.compute(1080, 1920, 1920, 1080, 270, 0, matrix);
+
+        assertArrayEquals(new float[] { 1080, 0, 0, 1920, 540, 960 },
+                map(matrix, 0, 0, 1080, 1920, 540, 960), EPSILON);
+    }
+
+    @Test
+    public void compute_withoutMirrorKeepsOrientation() {
+        float[] matrix = new float[9];
+        PreviewTransform.compute(1080, 1920, 1920, 1080, 270, 0, false, matrix);
+
+        assertArrayEquals(new float[] { 0, 0, 1080, 1920 },
+                map(matrix, 0, 0, 1080, 1920), EPSILON);
+    }
+
+    @Test
+    public void compute_defaultsToMirror() {
+        float[] expected = new float[9];
+        PreviewTransform.compute(1080, 1920, 1920, 1080, 270, 2, true, expected);
+        float[] matrix = new float[9];
+        PreviewTransform.compute(1080, 1920, 1920, 1080, 270, 2, matrix);
+
+        assertArrayEquals(expected, matrix, 0.0f);
+    }
+
+    @Test
+    public void compute_upsideDownRotatesAroundCenter() {
+        float[] matrix = new float[9];
+        PreviewTransform.compute(1080, 1920, 1920, 1080, 270, 2, matrix);
+
+        //鏡面反転の後に180度回転するので上下反転になる
+        assertArrayEquals(new float[] { 0, 1920, 1080, 0 },
+                map(matrix, 0, 0, 1080, 1920), EPSILON);
+    }
+
+    @Test
+    public void compute_landscapeRotatesBufferIntoView() {
+        float[] matrix = new float[9];
+        PreviewTransform.compute(1920, 1080, 1920, 1080, 90, 1, matrix);
+
+        //表示先の角はバッファを-90度回転した位置へ写る
+        assertArrayEquals(new float[] { 0, 1080, 1920, 0, 960, 540 },
+                map(matrix, 0, 0, 1920, 1080, 960, 540), EPSILON);
+    }
+
+    @Test
+    public void compute_reverseLandscapeRotatesOtherWay() {
+        float[] matrix = new float[9];
+        PreviewTransform.compute(1920, 1080, 1920, 1080, 90, 3, matrix);
+
+        assertArrayEquals(new float[] { 1920, 0, 0, 1080 },
+                map(matrix, 0, 0, 1920, 1080), EPSILON);
+    }
+
+    @Test
+    public void postRotate_snapsRightAnglesToExactValues() {
+        float[] matrix = new float[9];
+        PreviewTransform.setIdentity(matrix);
+        PreviewTransform.postRotate(matrix, 90, 0, 0);
+
+        assertEquals(0.0f, matrix[PreviewTransform.MSCALE_X], 0.0f);
+        assertEquals(-1.0f, matrix[PreviewTransform.MSKEW_X], 0.0f);
+        assertEquals(1.0f, matrix[PreviewTransform.MSKEW_Y], 0.0f);
+        assertEquals(0.0f, matrix[PreviewTransform.MSCALE_Y], 0.0f);
+    }
+
+    @Test
+    public void preScaleAndPostScale_differInOrder() {
+        float[] pre = new float[9];
+        PreviewTransform.setIdentity(pre);
+        PreviewTransform.postRotate(pre, 90, 0, 0);
+        PreviewTransform.preScale(pre, 2, 1, 0, 0);
+
+        float[] post = new float[9];
+        PreviewTransform.setIdentity(post);
+        PreviewTransform.postRotate(post, 90, 0, 0);
+        PreviewTransform.postScale(post, 2, 1, 0, 0);
+
+        //先に拡大してから回転 / 回転してから拡大
+        assertArrayEquals(new float[] { 0, 2 }, map(pre, 1, 0), EPSILON);
+        assertArrayEquals(new float[] { 0, 1 }, map(post, 1, 0), EPSILON);
+    }
+
+    @Test
+    public void setRectToRect_fillsDestination() {
+        float[] matrix = new float[9];
+        PreviewTransform.setRectToRect(matrix, 0, 0, 100, 50, 10, 20, 210, 70);
+
+        assertArrayEquals(new float[] { 10, 20, 210, 70 }, map(matrix, 0, 0, 100, 50), EPSILON);
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.camerasample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 分割したファイルへの書き込みのテスト
+ */
+public class SegmentedMuxerTest {
+
+    private static final long FRAME_US = 33333;
+    private static final int GOP_FRAMES = 30;
+
+    //書き込まれたサンプルの表示時刻を記録するMuxer
+    static class RecordingMuxer implements SampleMuxer<String> {
+        final int segmentIndex;
+        final List<Long> presentationTimesUs = new ArrayList<>();
+        String format;
+        boolean started;
+        boolean stopped;
+        boolean released;
+
+        RecordingMuxer(int segmentIndex) {
+            this.segmentIndex = segmentIndex;
+        }
+
+        @Override
+        public int addTrack(String format) {
+            this.format = format;
+            return 0;
+        }
+
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        @Override
+        public void writeSampleData(int track, ByteBuffer data, EncodedSample info) {
+            if (!started || stopped) throw new IllegalStateException("Muxer is not started");
+            if (presentationTimesUs.isEmpty() && !info.isKeyFrame()) throw new IllegalStateException("First sample must be a key frame");
+            presentationTimesUs.add(info.getPresentationTimeUs());
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    private final List<RecordingMuxer> _muxers = new ArrayList<>();
+    private final SampleMuxer.Factory<String> _factory = new SampleMuxer.Factory<String>() {
+        @Override
+        public SampleMuxer<String> create(int segmentIndex) {
+            RecordingMuxer muxer = new RecordingMuxer(segmentIndex);
+            _muxers.add(muxer);
+            return muxer;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        _muxers.clear();
+    }
+
+    private static EncodedSample frame(int index) {
+        EncodedSample sample = new EncodedSample(16);
+        sample.set(0, 16, index * FRAME_US, index % GOP_FRAMES == 0 ? EncodedSample.FLAG_KEY_FRAME : 0);
+        return sample;
+    }
+
+    private static void writeFrames(SegmentedMuxer<String> muxer, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            muxer.write(frame(i));
+        }
+    }
+
+    @Test
+    public void write_singleSegmentWithoutLimits() throws IOException {
+        SegmentedMuxer<String> muxer = new SegmentedMuxer<>(_factory, 0, 0);
+        muxer.setFormat(FakeVideoEncoder.FORMAT);
+
+        writeFrames(muxer, 0, 100);
+        muxer.finish();
+
+        assertEquals(1, _muxers.size());
+        assertEquals(100, _muxers.get(0).presentationTimesUs.size());
+        assertEquals(FakeVideoEncoder.FORMAT, _muxers.get(0).format);
+        assertTrue(_muxers.get(0).stopped);
+        assertTrue(_muxers.get(0).released);
+        assertEquals(1, muxer.getFinishedSegments());
+    }
+
+    @Test
+    public void write_splitsAtKeyFrameAfterDuration() throws IOException {
+        //0.5秒毎に分割したいが、キーフレームは1秒毎
+        SegmentedMuxer<String> muxer = new SegmentedMuxer<>(_factory, 500000, 0);
+        muxer.setFormat(FakeVideoEncoder.FORMAT);
+
+        writeFrames(muxer, 0, 90);
+        muxer.finish();
+
+        assertEquals(3, _muxers.size());
+        for (int i = 0; i < 3; i++) {
+            RecordingMuxer segment = _muxers.get(i);
+            assertEquals(i, segment.segmentIndex);
+            assertEquals(GOP_FRAMES, segment.presentationTimesUs.size());
+            assertEquals(i * GOP_FRAMES * FRAME_US, (long)segment.presentationTimesUs.get(0));
+            assertTrue(segment.stopped);
+        }
+        assertEquals(90, muxer.getWrittenSamples());
+    }
+
+    @Test
+    public void write_splitsBySize() throws IOException {
+        SegmentedMuxer<String> muxer = new SegmentedMuxer<>(_factory, 0, 16 * GOP_FRAMES);
+        muxer.setFormat(FakeVideoEncoder.FORMAT);
+
+        writeFrames(muxer, 0, 61);
+
+        assertEquals(3, _muxers.size());
+        assertTrue(_muxers.get(1).stopped);
+        assertFalse(_muxers.get(2).stopped);
+    }
+
+    @Test
+    public void write_skipsUntilFirstKeyFrame() throws IOException {
+        SegmentedMuxer<String> muxer = new SegmentedMuxer<>(_factory, 0, 0);
+        muxer.setFormat(FakeVideoEncoder.FORMAT);
+
+        writeFrames(muxer, 25, 35);
+
+        assertEquals(5, muxer.getSkippedSamples());
+        assertEquals(5, _muxers.get(0).presentationTimesUs.size());
+    }
+
+    @Test
+    public void write_ignoresEmptySamples() throws IOException {
+        SegmentedMuxer<String> muxer = new SegmentedMuxer<>(_factory, 0, 0);
+        EncodedSample endOfStream = new EncodedSample();
+        endOfStream.set(0, 0, 0, EncodedSample.FLAG_END_OF_STREAM);
+
+        muxer.write(endOfStream);
+        muxer.finish();
+
+        assertTrue(_muxers.isEmpty());
+    }
+
+    @Test
+    public void release_releasesOpenSegmentWithoutCountingIt() throws IOException {
+        SegmentedMuxer<String> muxer = new SegmentedMuxer<>(_factory, 0, 0);
+        muxer.setFormat(FakeVideoEncoder.FORMAT);
+
+        writeFrames(muxer, 0, 10);
+        muxer.release();
+        muxer.release();
+
+        assertEquals(1, _muxers.size());
+        assertTrue(_muxers.get(0).stopped);
+        assertTrue(_muxers.get(0).released);
+        assertEquals(0, muxer.getFinishedSegments());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void write_withoutFormatFails() throws IOException {
+        SegmentedMuxer<String> muxer = new SegmentedMuxer<>(_factory, 0, 0);
+
+        muxer.write(frame(0));
+    }
+}
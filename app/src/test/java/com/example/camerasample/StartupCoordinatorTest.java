@@ -0,0 +1,137 @@
+package com.example.camerasample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * カメラ起動の段取りのテスト
+ */
+public class StartupCoordinatorTest {
+
+    private static final int GENERATION = 1;
+
+    private StartupCoordinator _coordinator;
+
+    @Before
+    public void setUp() {
+        _coordinator = new StartupCoordinator();
+    }
+
+    @Test
+    public void createSession_doesNotWaitForSurface() {
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onOutputsReady(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_CREATE_SESSION, _coordinator.onCameraOpened(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onSessionConfigured(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_START_PREVIEW, _coordinator.onSurfaceReady(GENERATION));
+    }
+
+    @Test
+    public void startPreview_afterSurfaceAlreadyReady() {
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onSurfaceReady(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onCameraOpened(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_CREATE_SESSION, _coordinator.onOutputsReady(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_START_PREVIEW, _coordinator.onSessionConfigured(GENERATION));
+    }
+
+    @Test
+    public void actions_areIssuedOnlyOnce() {
+        _coordinator.onOutputsReady(GENERATION);
+        _coordinator.onCameraOpened(GENERATION);
+        _coordinator.onSurfaceReady(GENERATION);
+        _coordinator.onSessionConfigured(GENERATION);
+
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onCameraOpened(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onSurfaceReady(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onSessionConfigured(GENERATION));
+    }
+
+    @Test
+    public void reset_startsOver() {
+        _coordinator.onOutputsReady(GENERATION);
+        _coordinator.onCameraOpened(GENERATION);
+        _coordinator.reset(GENERATION + 1);
+
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onCameraOpened(GENERATION + 2));
+        assertEquals(StartupCoordinator.ACTION_CREATE_SESSION, _coordinator.onOutputsReady(GENERATION + 2));
+    }
+
+    @Test
+    public void reset_ignoresCameraOpenedByStaleGeneration() {
+        //開いた直後に閉じ、次に開くまでの間に古いカメラの通知が届く
+        int closed = GENERATION + 1;
+        int reopened = GENERATION + 2;
+        _coordinator.reset(closed);
+
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onCameraOpened(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onSessionConfigured(GENERATION));
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onOutputsReady(reopened));
+
+        //次に開いたカメラでセッションを作成する
+        assertEquals(StartupCoordinator.ACTION_CREATE_SESSION, _coordinator.onCameraOpened(reopened));
+        //開く要求より前に準備できたSurfaceは閉じた世代で通知される
+        assertEquals(StartupCoordinator.ACTION_NONE, _coordinator.onSurfaceReady(closed));
+        assertEquals(StartupCoordinator.ACTION_START_PREVIEW, _coordinator.onSessionConfigured(reopened));
+    }
+
+    @Test
+    public void concurrentNotifications_issueEachActionOnce() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            final StartupCoordinator coordinator = new StartupCoordinator();
+            final AtomicInteger created = new AtomicInteger();
+            final AtomicInteger started = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+
+            //カメラのスレッドとUIスレッドからの通知を想定
+            Runnable[] events = {
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            count(coordinator.onCameraOpened(GENERATION), created, started);
+                        }
+                    },
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            count(coordinator.onOutputsReady(GENERATION), created, started);
+                            count(coordinator.onSurfaceReady(GENERATION), created, started);
+                        }
+                    },
+            };
+            for (final Runnable event : events) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        }
+                        catch (InterruptedException e) {
+                            return;
+                        }
+                        event.run();
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+            assertEquals(1, created.get());
+            count(coordinator.onSessionConfigured(GENERATION), created, started);
+            assertEquals(1, started.get());
+        }
+    }
+
+    private static void count(int actions, AtomicInteger created, AtomicInteger started) {
+        if ((actions & StartupCoordinator.ACTION_CREATE_SESSION) != 0) created.incrementAndGet();
+        if ((actions & StartupCoordinator.ACTION_START_PREVIEW) != 0) started.incrementAndGet();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.camerasample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * カメラ起動の経過時間の記録のテスト
+ */
+public class StartupTraceTest {
+
+    private long _now;
+    private final List<String> _traces = new ArrayList<>();
+    private StartupTrace _trace;
+
+    @Before
+    public void setUp() {
+        _trace = new StartupTrace(new LatencyRecorder.Clock() {
+            @Override
+            public long nanoTime() {
+                return _now;
+            }
+        }, new LatencyRecorder.Tracer() {
+            @Override
+            public void begin(String stageName, int cookie) {
+                _traces.add("begin " + stageName + " " + cookie);
+            }
+
+            @Override
+            public void end(String stageName, int cookie) {
+                _traces.add("end " + stageName + " " + cookie);
+            }
+        });
+    }
+
+    @Test
+    public void mark_recordsElapsedSinceBegin() {
+        _now = 1000;
+        _trace.begin();
+        _now = 6000;
+
+        assertEquals(5000, _trace.mark(StartupTrace.CAMERA_OPENED));
+        assertEquals(5000, _trace.getElapsed(StartupTrace.CAMERA_OPENED));
+        assertEquals(-1, _trace.getElapsed(StartupTrace.FIRST_FRAME));
+    }
+
+    @Test
+    public void mark_onlyFirstTimePerStartup() {
+        _trace.begin();
+        _now = 10;
+        _trace.mark(StartupTrace.SURFACE_READY);
+        _now = 20;
+
+        assertEquals(-1, _trace.mark(StartupTrace.SURFACE_READY));
+        assertEquals(10, _trace.getElapsed(StartupTrace.SURFACE_READY));
+        assertEquals(1, _trace.snapshot(StartupTrace.SURFACE_READY).getCount());
+    }
+
+    @Test
+    public void firstFrame_endsStartup() {
+        _trace.begin();
+        _now = 100;
+        _trace.mark(StartupTrace.FIRST_FRAME);
+
+        assertFalse(_trace.isActive());
+        assertEquals(-1, _trace.mark(StartupTrace.CAMERA_OPENED));
+        assertEquals("begin camera_startup 1", _traces.get(0));
+        assertEquals("end camera_startup 1", _traces.get(1));
+    }
+
+    @Test
+    public void begin_abandonsUnfinishedStartup() {
+        _trace.begin();
+        _trace.begin();
+
+        assertEquals(3, _traces.size());
+        assertEquals("end camera_startup 1", _traces.get(1));
+        assertEquals("begin camera_startup 2", _traces.get(2));
+    }
+
+    @Test
+    public void begin_clearsPreviousRunButKeepsHistogram() {
+        _trace.begin();
+        _now = 30;
+        _trace.mark(StartupTrace.FIRST_FRAME);
+
+        _trace.begin();
+
+        assertEquals(-1, _trace.getElapsed(StartupTrace.FIRST_FRAME));
+        assertEquals(1, _trace.snapshot(StartupTrace.FIRST_FRAME).getCount());
+    }
+
+    @Test
+    public void dump_listsEveryMilestone() {
+        _trace.begin();
+        _now = 2000000;
+        _trace.mark(StartupTrace.CONFIG_READY);
+        StringWriter out = new StringWriter();
+        _trace.dump("", new PrintWriter(out));
+
+        String text = out.toString();
+        for (int milestone = 0; milestone < StartupTrace.MILESTONE_COUNT; milestone++) {
+            assertTrue(text.contains(StartupTrace.getMilestoneName(milestone)));
+        }
+        assertTrue(text, text.contains("last=    2.00"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static com.example.camerasample.StreamCombinations.*;
+import static org.junit.Assert.*;
+
+/**
+ * 保証された出力の組み合わせのテスト
+ */
+public class StreamCombinationsTest {
+
+    private static final FrameSize PREVIEW_BOUND = new FrameSize(1920, 1080);
+    private static final FrameSize RECORD_BOUND = new FrameSize(3840, 2160);
+
+    private static boolean guaranteed(int level, int... streams) {
+        int[] formats = new int[streams.length / 2];
+        int[] sizeClasses = new int[streams.length / 2];
+        for (int i = 0; i < formats.length; i++) {
+            formats[i] = streams[i * 2];
+            sizeClasses[i] = streams[i * 2 + 1];
+        }
+        return isGuaranteed(level, formats, sizeClasses);
+    }
+
+    @Test
+    public void isGuaranteed_legacyPreviewYuvJpeg() {
+        assertTrue(guaranteed(HARDWARE_LEVEL_LEGACY, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM));
+
+        //順序は問わない
+        assertTrue(guaranteed(HARDWARE_LEVEL_LEGACY, FORMAT_JPEG, SIZE_MAXIMUM, FORMAT_YUV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_PREVIEW));
+    }
+
+    @Test
+    public void isGuaranteed_smallerSizesAndSubsets() {
+        assertTrue(guaranteed(HARDWARE_LEVEL_LEGACY, FORMAT_PRIV, SIZE_VGA, FORMAT_JPEG, SIZE_RECORD));
+        assertTrue(guaranteed(HARDWARE_LEVEL_LEGACY, FORMAT_YUV, SIZE_VGA));
+        assertTrue(guaranteed(HARDWARE_LEVEL_LEGACY));
+    }
+
+    @Test
+    public void isGuaranteed_fourStreamsAreNeverGuaranteedWithoutRaw() {
+        for (int level : new int[] { HARDWARE_LEVEL_LEGACY, HARDWARE_LEVEL_LIMITED, HARDWARE_LEVEL_FULL, HARDWARE_LEVEL_3 }) {
+            assertFalse(guaranteed(level, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_VGA, FORMAT_JPEG, SIZE_MAXIMUM));
+        }
+    }
+
+    @Test
+    public void isGuaranteed_higherLevelsInheritLowerTables() {
+        //YUV PREVIEW + YUV PREVIEW + JPEG MAXIMUMはLIMITEDから
+        assertFalse(guaranteed(HARDWARE_LEVEL_LEGACY, FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM));
+        assertTrue(guaranteed(HARDWARE_LEVEL_LIMITED, FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM));
+        assertTrue(guaranteed(HARDWARE_LEVEL_FULL, FORMAT_YUV, SIZE_PREVIEW, FORMAT_YUV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM));
+
+        //PRIV PREVIEW + YUV MAXIMUMはFULLから
+        assertFalse(guaranteed(HARDWARE_LEVEL_LIMITED, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_MAXIMUM));
+        assertTrue(guaranteed(HARDWARE_LEVEL_FULL, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_MAXIMUM));
+        assertTrue(guaranteed(HARDWARE_LEVEL_3, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_YUV, SIZE_MAXIMUM));
+    }
+
+    @Test
+    public void isGuaranteed_level3WithRaw() {
+        assertTrue(guaranteed(HARDWARE_LEVEL_3, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_VGA, FORMAT_JPEG, SIZE_MAXIMUM, FORMAT_RAW, SIZE_MAXIMUM));
+        assertFalse(guaranteed(HARDWARE_LEVEL_FULL, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_RAW, SIZE_MAXIMUM));
+    }
+
+    @Test
+    public void isGuaranteed_rawCapabilityAddsRawTable() {
+        int[] formats = { FORMAT_PRIV, FORMAT_JPEG, FORMAT_RAW };
+        int[] sizeClasses = { SIZE_PREVIEW, SIZE_MAXIMUM, SIZE_MAXIMUM };
+
+        assertFalse(isGuaranteed(HARDWARE_LEVEL_LIMITED, false, formats, sizeClasses));
+        assertTrue(isGuaranteed(HARDWARE_LEVEL_LIMITED, true, formats, sizeClasses));
+
+        //ゼロシャッターラグのYUVを加えた4つは保証されない
+        assertFalse(isGuaranteed(HARDWARE_LEVEL_FULL, true,
+                new int[] { FORMAT_PRIV, FORMAT_YUV, FORMAT_JPEG, FORMAT_RAW },
+                new int[] { SIZE_PREVIEW, SIZE_PREVIEW, SIZE_MAXIMUM, SIZE_MAXIMUM }));
+    }
+
+    @Test
+    public void isGuaranteed_externalIsTreatedAsLegacy() {
+        assertFalse(guaranteed(HARDWARE_LEVEL_EXTERNAL, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_RECORD));
+        assertTrue(guaranteed(HARDWARE_LEVEL_LIMITED, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_PRIV, SIZE_RECORD));
+        assertTrue(guaranteed(HARDWARE_LEVEL_EXTERNAL, FORMAT_PRIV, SIZE_PREVIEW, FORMAT_JPEG, SIZE_MAXIMUM));
+    }
+
+    @Test
+    public void classify_usesBounds() {
+        assertEquals(SIZE_VGA, classify(new FrameSize(640, 480), PREVIEW_BOUND, RECORD_BOUND));
+        assertEquals(SIZE_PREVIEW, classify(new FrameSize(640, 640), PREVIEW_BOUND, RECORD_BOUND));
+        assertEquals(SIZE_PREVIEW, classify(new FrameSize(1920, 1080), PREVIEW_BOUND, RECORD_BOUND));
+        assertEquals(SIZE_RECORD, classify(new FrameSize(1440, 1440), PREVIEW_BOUND, RECORD_BOUND));
+        assertEquals(SIZE_MAXIMUM, classify(new FrameSize(4032, 3024), PREVIEW_BOUND, RECORD_BOUND));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void isGuaranteed_rejectsMismatchedArrays() {
+        isGuaranteed(HARDWARE_LEVEL_FULL, new int[] { FORMAT_PRIV }, new int[0]);
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 出力サイズの決定のテスト
+ *
+ * 機器から取得した設定 (出力サイズ、最小フレーム間隔、ストール時間、ハードウェアレベル) と同じ形の
+ * 設定を用意し、表示先とフレームレートの組毎に期待する結果を表にして確かめる。
+ */
+public class StreamNegotiatorTest {
+
+    private static final long FPS_60 = 16666666L;
+    private static final long FPS_30 = 33333333L;
+    private static final long FPS_20 = 50000000L;
+    private static final long FPS_15 = 66666666L;
+
+    private static final FrameSize BOUND_1080P = new FrameSize(1920, 1080);
+    private static final FrameSize BOUND_VGA = new FrameSize(640, 480);
+
+    /**
+     * 出力サイズと最小フレーム間隔、ストール時間の組の並びから生成する
+     */
+    private static StreamSizes streams(long[][] rows) {
+        FrameSize[] sizes = new FrameSize[rows.length];
+        long[] minFrameDurations = new long[rows.length];
+        long[] stallDurations = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            sizes[i] = new FrameSize((int)rows[i][0], (int)rows[i][1]);
+            minFrameDurations[i] = rows[i][2];
+            stallDurations[i] = rows[i][3];
+        }
+        return StreamSizes.create(sizes, minFrameDurations, stallDurations);
+    }
+
+    //LEGACY、4:3から僅かにずれたセンサ (4208x3120)、全て30fps
+    private static final CameraConfig LEGACY_4208 = new CameraConfigBuilder()
+            .setCameraId("1")
+            .setSensorOrientation(270)
+            .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_LEGACY)
+            .setJpegStreams(streams(new long[][] {
+                    { 4208, 3120, FPS_15, 900000000L }, { 3264, 2448, FPS_20, 500000000L },
+                    { 1920, 1080, FPS_30, 200000000L }, { 640, 480, FPS_30, 50000000L } }))
+            .setPreviewStreams(streams(new long[][] {
+                    { 1920, 1080, FPS_30, 0 }, { 1440, 1080, FPS_30, 0 }, { 1280, 960, FPS_30, 0 },
+                    { 1280, 720, FPS_30, 0 }, { 960, 720, FPS_30, 0 }, { 640, 480, FPS_30, 0 }, { 320, 240, FPS_30, 0 } }))
+            .setYuvStreams(streams(new long[][] {
+                    { 4208, 3120, FPS_15, 0 }, { 1920, 1080, FPS_30, 0 }, { 1440, 1080, FPS_30, 0 },
+                    { 1280, 960, FPS_30, 0 }, { 640, 480, FPS_30, 0 }, { 320, 240, FPS_30, 0 } }))
+            .build();
+
+    //FULL、4:3、720p以下のみ60fps
+    private static final CameraConfig FULL_4032 = new CameraConfigBuilder()
+            .setCameraId("1")
+            .setSensorOrientation(270)
+            .setFlashSupported(true)
+            .setTimestampRealtime(true)
+            .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_FULL)
+            .setJpegStreams(streams(new long[][] {
+                    { 4032, 3024, FPS_30, 300000000L }, { 2016, 1512, FPS_30, 80000000L }, { 1280, 960, FPS_30, 30000000L } }))
+            .setPreviewStreams(streams(new long[][] {
+                    { 4032, 3024, FPS_30, 0 }, { 1920, 1080, FPS_30, 0 }, { 1440, 1080, FPS_30, 0 },
+                    { 1280, 960, FPS_60, 0 }, { 1280, 720, FPS_60, 0 }, { 800, 600, FPS_60, 0 }, { 640, 480, FPS_60, 0 } }))
+            .setYuvStreams(streams(new long[][] {
+                    { 4032, 3024, FPS_30, 0 }, { 1440, 1080, FPS_30, 0 }, { 1280, 960, FPS_60, 0 },
+                    { 800, 600, FPS_60, 0 }, { 640, 480, FPS_60, 0 }, { 320, 240, FPS_60, 0 } }))
+            .build();
+
+    //LIMITED、16:9、小さいYUVは20fpsまで
+    private static final CameraConfig LIMITED_16X9 = new CameraConfigBuilder()
+            .setCameraId("1")
+            .setTimestampRealtime(true)
+            .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_LIMITED)
+            .setJpegStreams(streams(new long[][] { { 4160, 2340, FPS_30, 400000000L }, { 1920, 1080, FPS_30, 100000000L } }))
+            .setPreviewStreams(streams(new long[][] {
+                    { 1920, 1080, FPS_30, 0 }, { 1440, 1080, FPS_30, 0 }, { 1280, 720, FPS_30, 0 }, { 640, 360, FPS_30, 0 } }))
+            .setYuvStreams(streams(new long[][] {
+                    { 1920, 1080, FPS_30, 0 }, { 1280, 720, FPS_30, 0 }, { 640, 480, FPS_20, 0 }, { 640, 360, FPS_20, 0 } }))
+            .build();
+
+    //設定, 表示先の幅, 高さ, fps, ゼロシャッターラグ, 解析の上限, 期待するプレビュー, ゼロシャッターラグ, 解析, JPEG, 保証
+    private static final Object[][] CASES = {
+            //縦持ちの全画面 (1080x1920をセンサの向きへ)
+            //PRIV + JPEG + YUV + YUVは保証されないので解析を外す
+            { LEGACY_4208, 1920, 1080, 30, true, BOUND_VGA, "1440x1080", "1440x1080", null, "4208x3120", true },
+            { LEGACY_4208, 1920, 1080, 30, true, null, "1440x1080", "1440x1080", null, "4208x3120", true },
+            { LEGACY_4208, 1920, 1080, 30, false, null, "1440x1080", null, null, "4208x3120", true },
+            //小さな表示先
+            { LEGACY_4208, 800, 600, 30, false, null, "960x720", null, null, "4208x3120", true },
+            //60fpsでは720p相当まで落とす
+            { FULL_4032, 1920, 1080, 60, true, BOUND_VGA, "1280x960", "1280x960", null, "4032x3024", true },
+            { FULL_4032, 1920, 1080, 30, true, BOUND_VGA, "1440x1080", "1440x1080", null, "4032x3024", true },
+            { FULL_4032, 1920, 1080, 60, true, null, "1280x960", "1280x960", null, "4032x3024", true },
+            //解析を加えると30fpsを保てないので外す
+            { LIMITED_16X9, 2340, 1080, 30, true, BOUND_VGA, "1920x1080", "1920x1080", null, "4160x2340", true },
+            //解析だけであれば20fpsまで落ちるが使う
+            { LIMITED_16X9, 2340, 1080, 30, false, BOUND_VGA, "1920x1080", null, null, "4160x2340", true },
+            { LIMITED_16X9, 1280, 720, 30, false, null, "1280x720", null, null, "4160x2340", true },
+    };
+
+    private static String toString(FrameSize size) {
+        return size != null ? size.toString() : null;
+    }
+
+    @Test
+    public void negotiate_recordedConfigs() {
+        StreamNegotiator negotiator = new StreamNegotiator();
+
+        for (int i = 0; i < CASES.length; i++) {
+            Object[] row = CASES[i];
+            StreamNegotiator.Request request = new StreamNegotiator.Request((Integer)row[1], (Integer)row[2], BOUND_1080P)
+                    .setTargetFps((Integer)row[3])
+                    .setZsl((Boolean)row[4])
+                    .setAnalysisBound((FrameSize)row[5]);
+
+            StreamNegotiator.Result result = negotiator.negotiate((CameraConfig)row[0], request);
+
+            String message = "case " + i + ": " + result;
+            assertEquals(message, row[6], toString(result.getPreviewSize()));
+            assertEquals(message, row[7], toString(result.getZslSize()));
+            assertEquals(message, row[8], toString(result.getAnalysisSize()));
+            assertEquals(message, row[9], toString(result.getJpegSize()));
+            assertEquals(message, row[10], result.isGuaranteed());
+        }
+    }
+
+    @Test
+    public void negotiate_rawDropsStreamsUntilGuaranteed() {
+        CameraConfig config = new CameraConfigBuilder()
+                .setCameraId("1")
+                .setSensorOrientation(270)
+                .setFlashSupported(true)
+                .setTimestampRealtime(true)
+                .setHardwareLevel(StreamCombinations.HARDWARE_LEVEL_FULL)
+                .setJpegStreams(FULL_4032.getJpegStreams())
+                .setPreviewStreams(FULL_4032.getPreviewStreams())
+                .setYuvStreams(FULL_4032.getYuvStreams())
+                .setRawStreams(streams(new long[][] { { 4032, 3024, FPS_30, 300000000L } }))
+                .build();
+        StreamNegotiator negotiator = new StreamNegotiator();
+
+        StreamNegotiator.Result result = negotiator.negotiate(config,
+                new StreamNegotiator.Request(1920, 1080, BOUND_1080P).setTargetFps(60).setZsl(true).setAnalysisBound(BOUND_VGA).setRaw(true));
+
+        //PRIV PREVIEW + JPEG MAXIMUM + RAW MAXIMUMにする
+        assertEquals(new FrameSize(4032, 3024), result.getRawSize());
+        assertNull(result.getZslSize());
+        assertNull(result.getAnalysisSize());
+        assertTrue(result.isGuaranteed());
+        assertEquals(FPS_60, result.getFrameDurationNanos());
+
+        //RAWの機能が無ければ要求しても加えない
+        result = negotiator.negotiate(FULL_4032, new StreamNegotiator.Request(1920, 1080, BOUND_1080P).setZsl(true).setRaw(true));
+        assertNull(result.getRawSize());
+        assertNotNull(result.getZslSize());
+    }
+
+    @Test
+    public void negotiate_sustainsTargetFrameRate() {
+        StreamNegotiator negotiator = new StreamNegotiator();
+
+        StreamNegotiator.Result result = negotiator.negotiate(FULL_4032,
+                new StreamNegotiator.Request(1920, 1080, BOUND_1080P).setTargetFps(60).setZsl(true).setAnalysisBound(BOUND_VGA));
+
+        assertEquals(FPS_60, result.getFrameDurationNanos());
+        assertEquals(60.0, result.getSustainedFps(), 0.01);
+    }
+
+    @Test
+    public void negotiate_toleratesAspectRounding() {
+        //1440*3120/4208は1080にならないので、縦横比の完全一致では見つからない
+        assertNotEquals(1080, 1440 * 3120 / 4208);
+
+        StreamNegotiator.Result result = new StreamNegotiator().negotiate(LEGACY_4208,
+                new StreamNegotiator.Request(1920, 1080, BOUND_1080P));
+        assertEquals(new FrameSize(1440, 1080), result.getPreviewSize());
+    }
+
+    @Test
+    public void negotiate_limitsStillStall() {
+        StreamNegotiator.Result result = new StreamNegotiator().negotiate(FULL_4032,
+                new StreamNegotiator.Request(1920, 1080, BOUND_1080P).setMaxStillStallNanos(100000000L));
+
+        assertEquals(new FrameSize(2016, 1512), result.getJpegSize());
+        assertEquals(80000000L, result.getStillStallNanos());
+    }
+
+    @Test
+    public void negotiate_unknownDurationsKeepAreaChoice() {
+        //フレーム間隔が不明な設定では縦横比と画素数だけで選ぶ
+        CameraConfig config = new CameraConfigBuilder()
+                .setJpegSizes(new FrameSize(4000, 3000))
+                .setPreviewSizes(new FrameSize(1920, 1080), new FrameSize(1440, 1080), new FrameSize(1024, 768))
+                .setYuvSizes(new FrameSize(640, 480))
+                .build();
+
+        StreamNegotiator.Result result = new StreamNegotiator().negotiate(config,
+                new StreamNegotiator.Request(1920, 1080, BOUND_1080P).setZsl(true));
+
+        assertEquals(new FrameSize(1440, 1080), result.getPreviewSize());
+        assertEquals(new FrameSize(640, 480), result.getZslSize());
+        assertEquals(0, result.getFrameDurationNanos());
+    }
+
+    @Test
+    public void negotiate_viewSizeWhenNoPreviewSizes() {
+        CameraConfig config = new CameraConfigBuilder().setJpegSizes(new FrameSize(4000, 3000)).build();
+
+        StreamNegotiator.Result result = new StreamNegotiator().negotiate(config,
+                new StreamNegotiator.Request(1280, 720, BOUND_1080P));
+
+        assertEquals(new FrameSize(1280, 720), result.getPreviewSize());
+        assertFalse(result.isGuaranteed());
+    }
+
+    @Test
+    public void aspectError_isSymmetric() {
+        double wider = StreamNegotiator.aspectError(new FrameSize(1920, 1080), new FrameSize(4, 3));
+        double narrower = StreamNegotiator.aspectError(new FrameSize(4, 3), new FrameSize(1920, 1080));
+
+        assertEquals(wider, narrower, 1e-12);
+        assertEquals(0.0, StreamNegotiator.aspectError(new FrameSize(1440, 1080), new FrameSize(4032, 3024)), 1e-12);
+    }
+}
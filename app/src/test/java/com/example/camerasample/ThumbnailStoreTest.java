@@ -0,0 +1,184 @@
+package com.example.camerasample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * サムネイルの索引と保存ファイルのテスト
+ */
+public class ThumbnailStoreTest {
+
+    private File _directory;
+    private File _file;
+
+    @Before
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("thumbnails").toFile();
+        _file = new File(_directory, "thumbnails.bin");
+    }
+
+    @After
+    public void tearDown() {
+        JpegFileWriterTest.deleteRecursively(_directory);
+    }
+
+    //先頭のバイトで区別できるデータ
+    private static ByteBuffer createData(int first, int length) {
+        byte[] data = new byte[length];
+        data[0] = (byte)first;
+        data[length - 1] = (byte)(first + 1);
+        return ByteBuffer.wrap(data);
+    }
+
+    private static void assertData(int first, int length, ByteBuffer data) {
+        assertNotNull(data);
+        assertEquals(length, data.remaining());
+        assertEquals((byte)first, data.get(data.position()));
+        assertEquals((byte)(first + 1), data.get(data.limit() - 1));
+    }
+
+    @Test
+    public void index_tracksLiveBytesAndEvictsLeastRecentlyUsed() {
+        ThumbnailIndex index = new ThumbnailIndex();
+        index.put("a", 8, 100);
+        index.put("b", 108, 200);
+        index.put("c", 308, 300);
+        assertNotNull(index.put("a", 608, 50));
+        assertEquals(550, index.getLiveBytes());
+
+        //b, c, a の順に使われていない
+        index.get("b");
+        List<ThumbnailIndex.Entry> entries = index.entries();
+        assertEquals("c", entries.get(0).getKey());
+        assertEquals("b", entries.get(2).getKey());
+
+        assertEquals(1, index.evictToSize(300));
+        assertFalse(index.contains("c"));
+        assertEquals(250, index.getLiveBytes());
+        assertEquals(608, index.get("a").getOffset());
+    }
+
+    @Test
+    public void get_returnsWrittenData() throws IOException {
+        try (ThumbnailStore store = new ThumbnailStore(_file, 1 << 20)) {
+            store.put("a", createData(1, 100));
+            store.put("b", createData(2, 2000));
+
+            assertData(1, 100, store.get("a"));
+            assertData(2, 2000, store.get("b"));
+            assertNull(store.get("c"));
+            assertEquals(2, store.getHits());
+            assertEquals(1, store.getMisses());
+        }
+    }
+
+    @Test
+    public void open_rebuildsIndexFromFile() throws IOException {
+        try (ThumbnailStore store = new ThumbnailStore(_file, 1 << 20)) {
+            store.put("a", createData(1, 100));
+            store.put("b", createData(2, 200));
+            store.put("a", createData(3, 300));
+        }
+
+        //置き換えたデータは後のものが有効になる
+        try (ThumbnailStore store = new ThumbnailStore(_file, 1 << 20)) {
+            assertEquals(2, store.size());
+            assertEquals(500, store.getLiveBytes());
+            assertData(3, 300, store.get("a"));
+            assertData(2, 200, store.get("b"));
+        }
+    }
+
+    @Test
+    public void open_truncatesTornRecord() throws IOException {
+        long validSize;
+        try (ThumbnailStore store = new ThumbnailStore(_file, 1 << 20)) {
+            store.put("a", createData(1, 100));
+            validSize = store.getFileSize();
+            store.put("b", createData(2, 200));
+        }
+
+        //書き込み途中で終了した状態にする
+        try (RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+            file.setLength(validSize + 50);
+        }
+
+        try (ThumbnailStore store = new ThumbnailStore(_file, 1 << 20)) {
+            assertEquals(1, store.size());
+            assertEquals(validSize, store.getFileSize());
+            assertEquals(validSize, _file.length());
+            assertData(1, 100, store.get("a"));
+
+            //切り捨てた後に続けて書き込める
+            store.put("c", createData(4, 100));
+            assertData(4, 100, store.get("c"));
+        }
+    }
+
+    @Test
+    public void open_recreatesUnknownFile() throws IOException {
+        Files.write(_file.toPath(), "not a thumbnail file".getBytes("UTF-8"));
+
+        try (ThumbnailStore store = new ThumbnailStore(_file, 1 << 20)) {
+            assertEquals(0, store.size());
+            store.put("a", createData(1, 100));
+            assertData(1, 100, store.get("a"));
+        }
+    }
+
+    @Test
+    public void put_overLimitEvictsAndCompacts() throws IOException {
+        try (ThumbnailStore store = new ThumbnailStore(_file, 10000)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("key" + i, createData(i, 1000));
+            }
+            assertEquals(0, store.getCompactions());
+
+            //key0を使ってから上限を超えると、key1から除かれる
+            assertData(0, 1000, store.get("key0"));
+            store.put("key10", createData(10, 1000));
+
+            assertEquals(1, store.getCompactions());
+            assertTrue(store.getLiveBytes() <= 7500);
+            assertTrue(store.contains("key0"));
+            assertTrue(store.contains("key10"));
+            assertFalse(store.contains("key1"));
+            assertData(0, 1000, store.get("key0"));
+            assertData(10, 1000, store.get("key10"));
+            assertEquals(_file.length(), store.getFileSize());
+            assertFalse(new File(_file.getPath() + ".tmp").exists());
+        }
+
+        //詰め直したファイルを開き直しても同じ内容になる
+        try (ThumbnailStore store = new ThumbnailStore(_file, 10000)) {
+            assertData(0, 1000, store.get("key0"));
+            assertData(10, 1000, store.get("key10"));
+            assertFalse(store.contains("key1"));
+        }
+    }
+
+    @Test
+    public void put_replacingManyTimesCompacts() throws IOException {
+        try (ThumbnailStore store = new ThumbnailStore(_file, 10000)) {
+            for (int i = 0; i < 30; i++) {
+                store.put("a", createData(i, 1000));
+            }
+
+            //無効なデータが上限の2倍を超えない
+            assertTrue(store.getCompactions() > 0);
+            assertTrue(store.getFileSize() < 2 * 10000 + 2000);
+            assertEquals(1, store.size());
+            assertData(29, 1000, store.get("a"));
+        }
+    }
+}
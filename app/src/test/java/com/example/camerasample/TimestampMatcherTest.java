@@ -0,0 +1,139 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 画像と撮影結果の対応付けのテスト
+ */
+public class TimestampMatcherTest {
+
+    private final List<String> _matched = new ArrayList<>();
+    private final List<String> _dropped = new ArrayList<>();
+
+    private TimestampMatcher<String, String> createMatcher(int capacity) {
+        return new TimestampMatcher<>(capacity, new TimestampMatcher.Listener<String, String>() {
+            @Override
+            public void onMatched(long timestamp, String image, String result) {
+                _matched.add(timestamp + ":" + image + "+" + result);
+            }
+
+            @Override
+            public void onImageDropped(long timestamp, String image) {
+                _dropped.add(image);
+            }
+        });
+    }
+
+    @Test
+    public void offer_matchesInEitherOrder() {
+        TimestampMatcher<String, String> matcher = createMatcher(4);
+
+        matcher.offerImage(100, "image100");
+        matcher.offerResult(200, "result200");
+        matcher.offerResult(100, "result100");
+        matcher.offerImage(200, "image200");
+
+        assertEquals(Arrays.asList("100:image100+result100", "200:image200+result200"), _matched);
+        assertEquals(0, matcher.getBacklog());
+        assertEquals(2, matcher.getMaxBacklog());
+        assertEquals(2, matcher.getMatchedCount());
+    }
+
+    @Test
+    public void offer_matchesOutOfOrderArrival() {
+        TimestampMatcher<String, String> matcher = createMatcher(4);
+
+        //連写で画像と撮影結果が別々の順で届く
+        matcher.offerImage(300, "image300");
+        matcher.offerImage(100, "image100");
+        matcher.offerResult(200, "result200");
+        matcher.offerResult(300, "result300");
+        matcher.offerImage(200, "image200");
+        matcher.offerResult(100, "result100");
+
+        assertEquals(Arrays.asList("300:image300+result300", "200:image200+result200", "100:image100+result100"), _matched);
+        assertTrue(_dropped.isEmpty());
+        assertEquals(3, matcher.getMaxBacklog());
+    }
+
+    @Test
+    public void offer_evictsOldestWhenFull() {
+        TimestampMatcher<String, String> matcher = createMatcher(2);
+
+        matcher.offerImage(100, "image100");
+        matcher.offerResult(200, "result200");
+        matcher.offerImage(300, "image300");
+
+        //最も古い画像が捨てられ、解放のために返される
+        assertEquals(Arrays.asList("image100"), _dropped);
+        assertEquals(2, matcher.getBacklog());
+        assertEquals(1, matcher.getPendingImages());
+        assertEquals(1, matcher.getDroppedImages());
+
+        //次に古い撮影結果が捨てられる
+        matcher.offerImage(400, "image400");
+        assertEquals(1, matcher.getDroppedResults());
+
+        //捨てた後に届いた撮影結果は対応付けられない
+        matcher.offerResult(100, "result100");
+        assertEquals(2, matcher.getDroppedResults());
+        assertTrue(_matched.isEmpty());
+
+        matcher.offerResult(300, "result300");
+        assertEquals(Arrays.asList("300:image300+result300"), _matched);
+    }
+
+    @Test
+    public void offer_rejectsOlderThanBacklogWhenFull() {
+        TimestampMatcher<String, String> matcher = createMatcher(2);
+
+        matcher.offerImage(200, "image200");
+        matcher.offerImage(300, "image300");
+        matcher.offerImage(100, "image100");
+
+        assertEquals(Arrays.asList("image100"), _dropped);
+        assertEquals(2, matcher.getPendingImages());
+    }
+
+    @Test
+    public void offerImage_replacesDuplicateTimestamp() {
+        TimestampMatcher<String, String> matcher = createMatcher(2);
+
+        matcher.offerImage(100, "first");
+        matcher.offerImage(100, "second");
+        matcher.offerResult(100, "result");
+
+        assertEquals(Arrays.asList("first"), _dropped);
+        assertEquals(Arrays.asList("100:second+result"), _matched);
+    }
+
+    @Test
+    public void clear_dropsPendingImages() {
+        TimestampMatcher<String, String> matcher = createMatcher(4);
+
+        matcher.offerImage(100, "image100");
+        matcher.offerResult(200, "result200");
+        matcher.offerImage(300, "image300");
+        matcher.clear();
+
+        assertEquals(2, _dropped.size());
+        assertTrue(_dropped.containsAll(Arrays.asList("image100", "image300")));
+        assertEquals(0, matcher.getBacklog());
+
+        //再び使える
+        matcher.offerImage(200, "image200");
+        matcher.offerResult(200, "result200");
+        assertEquals(Arrays.asList("200:image200+result200"), _matched);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroCapacity() {
+        createMatcher(0);
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 録画のテスト (偽のエンコーダとMuxerで取り出しから書き込みまでを通す)
+ */
+public class VideoRecorderTest {
+
+    //フレーム間隔が割り切れるフレームレート
+    private static final int FRAME_RATE = 25;
+    private static final long FRAME_US = 1000000 / FRAME_RATE;
+
+    //書き込まれたサンプルの先頭のバイトを記録するMuxer
+    private static class RecordingMuxer implements SampleMuxer<String> {
+        final List<Integer> firstBytes = Collections.synchronizedList(new ArrayList<Integer>());
+        final long writeDelayMillis;
+        volatile int failAtSample = -1;
+        volatile boolean stopped;
+        volatile boolean released;
+
+        RecordingMuxer(long writeDelayMillis) {
+            this.writeDelayMillis = writeDelayMillis;
+        }
+
+        @Override
+        public int addTrack(String format) {
+            return 0;
+        }
+
+        @Override
+        public void start() { }
+
+        @Override
+        public void writeSampleData(int track, ByteBuffer data, EncodedSample info) {
+            if (writeDelayMillis > 0) {
+                try {
+                    Thread.sleep(writeDelayMillis);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (firstBytes.size() == failAtSample) throw new IllegalStateException("writeSampleData failed");
+            firstBytes.add(data.get(0) & 0xff);
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    private static class Result implements VideoRecorder.Listener {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+
+        @Override
+        public void onFinished() {
+            finished.countDown();
+        }
+
+        @Override
+        public void onFailed(IOException e) {
+            failure.set(e);
+        }
+    }
+
+    private static VideoEncoderConfig createConfig() {
+        return new VideoEncoderConfig(VideoEncoderConfig.MIME_AVC, 1280, 720)
+                .setFrameRate(FRAME_RATE)
+                .setIFrameIntervalSeconds(1)
+                .setSegmentDurationUs(1000000);
+    }
+
+    @Test
+    public void stop_writesAllFramesInSegments() throws InterruptedException {
+        FakeVideoEncoder encoder = new FakeVideoEncoder(256, 4096);
+        final List<RecordingMuxer> muxers = Collections.synchronizedList(new ArrayList<RecordingMuxer>());
+        Result result = new Result();
+        VideoRecorder<String> recorder = new VideoRecorder<>(encoder, new SampleMuxer.Factory<String>() {
+            @Override
+            public SampleMuxer<String> create(int segmentIndex) {
+                RecordingMuxer muxer = new RecordingMuxer(0);
+                muxers.add(muxer);
+                return muxer;
+            }
+        }, createConfig().setQueueCapacity(4 * FRAME_RATE), result);
+
+        //偽のエンコーダは全てのフレームを一度に出力するので、待ち行列は全て収まる大きさにする
+        recorder.start();
+        encoder.addFormatChange();
+        encoder.addFrames(3 * FRAME_RATE, 0, FRAME_US, FRAME_RATE, 1000);
+        recorder.stop();
+
+        assertTrue(result.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(recorder.awaitFinished(5, TimeUnit.SECONDS));
+        assertNull(result.failure.get());
+        assertTrue(encoder.isEndOfStreamSignaled());
+        assertEquals(3, muxers.size());
+        assertEquals(3, recorder.getFinishedSegments());
+        for (int i = 0; i < 3; i++) {
+            RecordingMuxer muxer = muxers.get(i);
+            assertTrue(muxer.stopped);
+            assertEquals(FRAME_RATE, muxer.firstBytes.size());
+
+            //出力の番号 (0番は形式の変更) が順に書き込まれている
+            assertEquals(1 + i * FRAME_RATE, (int)muxer.firstBytes.get(0));
+        }
+        assertEquals(0, recorder.getDroppedFrames());
+        assertEquals(0, recorder.getMuxerQueueDepth());
+    }
+
+    @Test
+    public void slowMuxerDropsFramesWithoutBlockingEncoder() throws InterruptedException {
+        FakeVideoEncoder encoder = new FakeVideoEncoder(256, 4096);
+        final RecordingMuxer muxer = new RecordingMuxer(20);
+        Result result = new Result();
+        VideoRecorder<String> recorder = new VideoRecorder<>(encoder, new SampleMuxer.Factory<String>() {
+            @Override
+            public SampleMuxer<String> create(int segmentIndex) {
+                return muxer;
+            }
+        }, createConfig().setSegmentDurationUs(0).setQueueCapacity(4), result);
+
+        recorder.start();
+        encoder.addFormatChange();
+        encoder.addFrames(60, 0, FRAME_US, 10, 1000);
+        recorder.stop();
+
+        assertTrue(result.finished.await(10, TimeUnit.SECONDS));
+
+        //全ての出力バッファ (終端を含む) はすぐに返している
+        assertEquals(61, encoder.getReleased());
+        assertTrue(recorder.getDroppedFrames() > 0);
+        assertEquals(60, muxer.firstBytes.size() + recorder.getDroppedFrames());
+    }
+
+    @Test
+    public void muxerFailureStillFinishes() throws InterruptedException {
+        FakeVideoEncoder encoder = new FakeVideoEncoder(256, 4096);
+        Result result = new Result();
+        VideoRecorder<String> recorder = new VideoRecorder<>(encoder, new SampleMuxer.Factory<String>() {
+            @Override
+            public SampleMuxer<String> create(int segmentIndex) throws IOException {
+                throw new IOException("disk full");
+            }
+        }, createConfig(), result);
+
+        recorder.start();
+        encoder.addFormatChange();
+        encoder.addFrames(FRAME_RATE, 0, FRAME_US, FRAME_RATE, 1000);
+        recorder.stop();
+
+        assertTrue(result.finished.await(5, TimeUnit.SECONDS));
+        assertEquals("disk full", result.failure.get().getMessage());
+
+        //終端までの全てのサンプルを受け取って捨てている
+        assertEquals(FRAME_RATE + 1, recorder.getFailedWrites());
+    }
+
+    @Test
+    public void muxerWriteFailureReleasesMuxer() throws InterruptedException {
+        FakeVideoEncoder encoder = new FakeVideoEncoder(256, 4096);
+        final RecordingMuxer muxer = new RecordingMuxer(0);
+        muxer.failAtSample = 3;
+        Result result = new Result();
+        VideoRecorder<String> recorder = new VideoRecorder<>(encoder, new SampleMuxer.Factory<String>() {
+            @Override
+            public SampleMuxer<String> create(int segmentIndex) {
+                return muxer;
+            }
+        }, createConfig(), result);
+
+        recorder.start();
+        encoder.addFormatChange();
+        encoder.addFrames(10, 0, FRAME_US, FRAME_RATE, 1000);
+        recorder.stop();
+
+        assertTrue(result.finished.await(5, TimeUnit.SECONDS));
+        assertNotNull(result.failure.get());
+        assertEquals(3, muxer.firstBytes.size());
+        assertTrue(muxer.released);
+    }
+
+    @Test
+    public void encoderFailureStillFinishes() throws InterruptedException {
+        FakeVideoEncoder encoder = new FakeVideoEncoder(256, 4096);
+        final RecordingMuxer muxer = new RecordingMuxer(0);
+        Result result = new Result();
+        VideoRecorder<String> recorder = new VideoRecorder<>(encoder, new SampleMuxer.Factory<String>() {
+            @Override
+            public SampleMuxer<String> create(int segmentIndex) {
+                return muxer;
+            }
+        }, createConfig(), result);
+
+        recorder.start();
+        encoder.addFormatChange();
+        encoder.addFrames(5, 0, FRAME_US, FRAME_RATE, 1000);
+        encoder.addFailure();
+
+        //stop()を呼ばなくても終端が渡され、書き込んだファイルは閉じる
+        assertTrue(result.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(recorder.awaitFinished(5, TimeUnit.SECONDS));
+        assertEquals("codec error", result.failure.get().getCause().getMessage());
+        assertEquals(5, muxer.firstBytes.size());
+        assertTrue(muxer.stopped);
+        assertTrue(muxer.released);
+    }
+
+    @Test
+    public void stop_withoutEndOfStreamTimesOut() throws InterruptedException {
+        FakeVideoEncoder encoder = new FakeVideoEncoder(256, 4096);
+        encoder.setEndOfStreamOnSignal(false);
+        final RecordingMuxer muxer = new RecordingMuxer(0);
+        Result result = new Result();
+        VideoRecorder<String> recorder = new VideoRecorder<>(encoder, new SampleMuxer.Factory<String>() {
+            @Override
+            public SampleMuxer<String> create(int segmentIndex) {
+                return muxer;
+            }
+        }, createConfig(), result);
+
+        recorder.start();
+        encoder.addFormatChange();
+        encoder.addFrames(10, 0, FRAME_US, FRAME_RATE, 1000);
+        recorder.stop();
+
+        assertTrue(result.finished.await(VideoRecorder.STOP_TIMEOUT_NANOS / 1000000 + 5000, TimeUnit.MILLISECONDS));
+        assertEquals(10, muxer.firstBytes.size());
+        assertTrue(muxer.stopped);
+    }
+
+    @Test
+    public void config_estimatesBitRateAndSampleCapacity() {
+        VideoEncoderConfig avc = new VideoEncoderConfig(VideoEncoderConfig.MIME_AVC, 1920, 1080);
+        VideoEncoderConfig hevc = new VideoEncoderConfig(VideoEncoderConfig.MIME_HEVC, 1920, 1080);
+
+        assertEquals(12441600, avc.getBitRate());
+        assertTrue(hevc.getBitRate() < avc.getBitRate());
+        assertEquals(5000000, avc.setBitRate(5000000).getBitRate());
+        assertTrue(avc.getSampleCapacity() >= 5000000 / 8 / 30);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void config_rejectsUnknownMime() {
+        new VideoEncoderConfig("video/x-vnd.on2.vp8", 1280, 720);
+    }
+}
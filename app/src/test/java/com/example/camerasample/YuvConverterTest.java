@@ -0,0 +1,281 @@
+package com.example.camerasample;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * YUVの変換のテスト
+ */
+public class YuvConverterTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void tearDownClass() {
+        POOL.shutdown();
+    }
+
+    /**
+     * 面毎に分かれたYUV (I420)
+     */
+    private static class Yuv {
+        final int width;
+        final int height;
+        final byte[] y;
+        final byte[] u;
+        final byte[] v;
+
+        Yuv(int width, int height) {
+            this.width = width;
+            this.height = height;
+            y = new byte[width * height];
+            u = new byte[chromaWidth() * chromaHeight()];
+            v = new byte[chromaWidth() * chromaHeight()];
+        }
+
+        int chromaWidth() {
+            return (width + 1) / 2;
+        }
+
+        int chromaHeight() {
+            return (height + 1) / 2;
+        }
+
+        static Yuv random(int width, int height, long seed) {
+            Yuv yuv = new Yuv(width, height);
+            Random random = new Random(seed);
+            random.nextBytes(yuv.y);
+            random.nextBytes(yuv.u);
+            random.nextBytes(yuv.v);
+            return yuv;
+        }
+
+        //行末に余白を付けたI420 (pixelStride 1)
+        YuvConverter.Planes toI420(int padding) {
+            int yRowStride = width + padding;
+            int uvRowStride = chromaWidth() + padding;
+            ByteBuffer yBuffer = ByteBuffer.allocateDirect(yRowStride * height);
+            ByteBuffer uBuffer = ByteBuffer.allocateDirect(uvRowStride * chromaHeight());
+            ByteBuffer vBuffer = ByteBuffer.allocateDirect(uvRowStride * chromaHeight());
+            fill(yBuffer, yRowStride);
+            for (int row = 0; row < chromaHeight(); row++) {
+                for (int col = 0; col < chromaWidth(); col++) {
+                    uBuffer.put(row * uvRowStride + col, u[row * chromaWidth() + col]);
+                    vBuffer.put(row * uvRowStride + col, v[row * chromaWidth() + col]);
+                }
+            }
+            return new YuvConverter.Planes().set(width, height, yBuffer, yRowStride, 1, uBuffer, vBuffer, uvRowStride, 1);
+        }
+
+        //VUが交互に並ぶNV21、またはUVが交互に並ぶNV12 (pixelStride 2、U/Vは同じメモリを1バイトずらして参照する)
+        YuvConverter.Planes toInterleaved(boolean vFirst, int padding) {
+            int yRowStride = width + padding;
+            int uvRowStride = chromaWidth() * 2 + padding;
+            ByteBuffer yBuffer = ByteBuffer.allocateDirect(yRowStride * height);
+            ByteBuffer uvBuffer = ByteBuffer.allocateDirect(uvRowStride * chromaHeight());
+            fill(yBuffer, yRowStride);
+            for (int row = 0; row < chromaHeight(); row++) {
+                for (int col = 0; col < chromaWidth(); col++) {
+                    int index = row * uvRowStride + col * 2;
+                    uvBuffer.put(index, vFirst ? v[row * chromaWidth() + col] : u[row * chromaWidth() + col]);
+                    uvBuffer.put(index + 1, vFirst ? u[row * chromaWidth() + col] : v[row * chromaWidth() + col]);
+                }
+            }
+            ByteBuffer first = uvBuffer.duplicate();
+            ByteBuffer second = uvBuffer.duplicate();
+            second.position(1);
+            second = second.slice();
+            return new YuvConverter.Planes().set(width, height, yBuffer, yRowStride, 1,
+                    vFirst ? second : first, vFirst ? first : second, uvRowStride, 2);
+        }
+
+        private void fill(ByteBuffer yBuffer, int yRowStride) {
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    yBuffer.put(row * yRowStride + col, y[row * width + col]);
+                }
+            }
+        }
+
+        //浮動小数点で計算した期待値
+        int expectedArgb(int col, int row) {
+            int yy = y[row * width + col] & 0xff;
+            int uu = (u[(row / 2) * chromaWidth() + col / 2] & 0xff) - 128;
+            int vv = (v[(row / 2) * chromaWidth() + col / 2] & 0xff) - 128;
+            int r = clamp(Math.round(yy + 1.402 * vv));
+            int g = clamp(Math.round(yy - 0.344136 * uu - 0.714136 * vv));
+            int b = clamp(Math.round(yy + 1.772 * uu));
+            return 0xff000000 | r << 16 | g << 8 | b;
+        }
+
+        private static int clamp(long value) {
+            return (int)Math.max(0, Math.min(255, value));
+        }
+    }
+
+    private static void assertArgbNear(int expected, int actual, String message) {
+        for (int shift = 0; shift <= 24; shift += 8) {
+            int e = (expected >>> shift) & 0xff;
+            int a = (actual >>> shift) & 0xff;
+            assertTrue(message + String.format(" expected %08x but was %08x", expected, actual), Math.abs(e - a) <= 1);
+        }
+    }
+
+    @Test
+    public void toArgb_goldenColors() {
+        //2x2の色差ブロック毎に1色 {Y, U, V, ARGB}
+        int[][] golden = {
+                { 0, 128, 128, 0xff000000 },        //黒
+                { 255, 128, 128, 0xffffffff },      //白
+                { 128, 128, 128, 0xff808080 },      //灰
+                { 76, 85, 255, 0xfffe0000 },        //赤
+                { 150, 44, 21, 0xff00ff01 },        //緑
+                { 29, 255, 107, 0xff0000ff },       //青
+        };
+        Yuv yuv = new Yuv(golden.length * 2, 2);
+        for (int i = 0; i < golden.length; i++) {
+            for (int row = 0; row < 2; row++) {
+                yuv.y[row * yuv.width + i * 2] = (byte)golden[i][0];
+                yuv.y[row * yuv.width + i * 2 + 1] = (byte)golden[i][0];
+            }
+            yuv.u[i] = (byte)golden[i][1];
+            yuv.v[i] = (byte)golden[i][2];
+        }
+
+        int[] out = new int[yuv.width * yuv.height];
+        new YuvConverter().toArgb(yuv.toI420(0), out);
+
+        for (int i = 0; i < golden.length; i++) {
+            assertArgbNear(golden[i][3], out[i * 2], "color " + i);
+            assertArgbNear(golden[i][3], out[yuv.width + i * 2 + 1], "color " + i);
+        }
+    }
+
+    @Test
+    public void toArgb_matchesReferenceForAllLayouts() {
+        //奇数サイズで端の色差の扱いも確認する
+        Yuv yuv = Yuv.random(37, 23, 1);
+        YuvConverter.Planes[] layouts = {
+                yuv.toI420(0), yuv.toI420(13), yuv.toInterleaved(true, 0), yuv.toInterleaved(false, 7),
+        };
+
+        for (int layout = 0; layout < layouts.length; layout++) {
+            int[] out = new int[yuv.width * yuv.height];
+            new YuvConverter().toArgb(layouts[layout], out);
+            for (int row = 0; row < yuv.height; row++) {
+                for (int col = 0; col < yuv.width; col++) {
+                    assertArgbNear(yuv.expectedArgb(col, row), out[row * yuv.width + col],
+                            "layout " + layout + " (" + col + ", " + row + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void toArgb_parallelMatchesSequential() {
+        Yuv yuv = Yuv.random(640, 481, 2);
+        YuvConverter.Planes planes = yuv.toInterleaved(true, 64);
+
+        int[] sequential = new int[yuv.width * yuv.height];
+        int[] parallel = new int[yuv.width * yuv.height];
+        new YuvConverter().toArgb(planes, sequential);
+        new YuvConverter(POOL).toArgb(planes, parallel);
+
+        assertArrayEquals(sequential, parallel);
+    }
+
+    @Test
+    public void toGray_copiesLumaOnly() {
+        Yuv yuv = Yuv.random(33, 17, 3);
+        byte[] out = new byte[yuv.width * yuv.height];
+
+        new YuvConverter(POOL).toGray(yuv.toI420(5), out);
+
+        assertArrayEquals(yuv.y, out);
+    }
+
+    @Test
+    public void toNv21_fromEveryLayout() {
+        Yuv yuv = Yuv.random(16, 10, 4);
+        byte[] expected = new byte[YuvConverter.nv21Size(yuv.width, yuv.height)];
+        System.arraycopy(yuv.y, 0, expected, 0, yuv.y.length);
+        for (int i = 0; i < yuv.u.length; i++) {
+            expected[yuv.y.length + i * 2] = yuv.v[i];
+            expected[yuv.y.length + i * 2 + 1] = yuv.u[i];
+        }
+
+        YuvConverter.Planes[] layouts = { yuv.toI420(3), yuv.toInterleaved(true, 0), yuv.toInterleaved(false, 2) };
+        for (YuvConverter.Planes planes : layouts) {
+            byte[] out = new byte[expected.length];
+            new YuvConverter().toNv21(planes, out);
+            assertArrayEquals(expected, out);
+        }
+    }
+
+    @Test
+    public void toArgb_respectsBufferPosition() {
+        Yuv yuv = Yuv.random(8, 4, 5);
+        YuvConverter.Planes planes = yuv.toI420(0);
+        int[] expected = new int[32];
+        new YuvConverter().toArgb(planes, expected);
+
+        //先頭に余分なバイトがあるバッファで位置をずらしても同じ結果になる
+        ByteBuffer shifted = ByteBuffer.allocate(planes.y.capacity() + 3);
+        shifted.position(3);
+        for (int i = 0; i < planes.y.capacity(); i++) {
+            shifted.put(3 + i, planes.y.get(i));
+        }
+        int[] out = new int[32];
+        new YuvConverter().toArgb(new YuvConverter.Planes().set(8, 4, shifted, 8, 1, planes.u, planes.v, 4, 1), out);
+
+        assertArrayEquals(expected, out);
+        assertEquals(3, shifted.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toArgb_rejectsShortOutput() {
+        new YuvConverter().toArgb(Yuv.random(4, 4, 6).toI420(0), new int[15]);
+    }
+
+    @Test
+    public void toArgb_doesNotAllocatePerFrame() {
+        com.sun.management.ThreadMXBean bean = allocationBean();
+        assumeTrue(bean != null);
+
+        Yuv yuv = Yuv.random(320, 240, 7);
+        YuvConverter.Planes planes = yuv.toInterleaved(true, 0);
+        YuvConverter converter = new YuvConverter();
+        int[] out = new int[yuv.width * yuv.height];
+        for (int i = 0; i < 20; i++) {
+            converter.toArgb(planes, out);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10; i++) {
+            converter.toArgb(planes, out);
+        }
+        long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)bean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()) return null;
+
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        return allocationBean;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.camerasample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * ゼロシャッターラグ用リングバッファのテスト
+ */
+public class ZslRingBufferTest {
+
+    private final List<String> _recycled = new ArrayList<>();
+
+    private ZslRingBuffer<String, String> createBuffer(int capacity) {
+        return new ZslRingBuffer<>(capacity, new ZslRingBuffer.Recycler<String>() {
+            @Override
+            public void recycle(String frame) {
+                _recycled.add(frame);
+            }
+        });
+    }
+
+    private static void addSharp(ZslRingBuffer<String, String> buffer, long timestamp) {
+        buffer.addResult(timestamp, "result" + timestamp,
+                ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED, ControlState.LENS_STATIONARY);
+    }
+
+    @Test
+    public void select_pairsFrameWithResultInEitherOrder() {
+        ZslRingBuffer<String, String> buffer = createBuffer(4);
+
+        buffer.addFrame(100, "frame100");
+        addSharp(buffer, 100);
+        addSharp(buffer, 200);
+        buffer.addFrame(200, "frame200");
+
+        ZslRingBuffer.Entry<String, String> entry = buffer.select(Long.MAX_VALUE);
+        assertEquals(200, entry.timestamp);
+        assertEquals("frame200", entry.frame);
+        assertEquals("result200", entry.result);
+
+        entry = buffer.select(Long.MAX_VALUE);
+        assertEquals("frame100", entry.frame);
+        assertEquals("result100", entry.result);
+
+        assertNull(buffer.select(Long.MAX_VALUE));
+        assertTrue(_recycled.isEmpty());
+    }
+
+    @Test
+    public void addFrame_wrapsAroundAndEvictsOldest() {
+        ZslRingBuffer<String, String> buffer = createBuffer(3);
+
+        for (long timestamp = 1; timestamp <= 7; timestamp++) {
+            buffer.addFrame(timestamp, "frame" + timestamp);
+            addSharp(buffer, timestamp);
+        }
+
+        assertEquals(3, buffer.size());
+        assertEquals(Arrays.asList("frame1", "frame2", "frame3", "frame4"), _recycled);
+        assertEquals(4, buffer.getEvictedCount());
+
+        assertEquals("frame7", buffer.select(Long.MAX_VALUE).frame);
+        assertEquals("frame6", buffer.select(Long.MAX_VALUE).frame);
+        assertEquals("frame5", buffer.select(Long.MAX_VALUE).frame);
+    }
+
+    @Test
+    public void addFrame_olderThanBufferIsRecycledImmediately() {
+        ZslRingBuffer<String, String> buffer = createBuffer(2);
+
+        buffer.addFrame(10, "frame10");
+        buffer.addFrame(20, "frame20");
+        buffer.addFrame(5, "frame5");
+
+        assertEquals(Arrays.asList("frame5"), _recycled);
+        assertEquals(2, buffer.size());
+    }
+
+    @Test
+    public void addResult_outOfOrderKeepsTimestampOrder() {
+        ZslRingBuffer<String, String> buffer = createBuffer(4);
+
+        addSharp(buffer, 300);
+        addSharp(buffer, 100);
+        addSharp(buffer, 200);
+        buffer.addFrame(200, "frame200");
+        buffer.addFrame(100, "frame100");
+        buffer.addFrame(300, "frame300");
+
+        assertEquals("frame300", buffer.select(Long.MAX_VALUE).frame);
+        assertEquals("frame200", buffer.select(Long.MAX_VALUE).frame);
+        assertEquals("frame100", buffer.select(Long.MAX_VALUE).frame);
+    }
+
+    @Test
+    public void select_skipsUnconvergedAndMovingLens() {
+        ZslRingBuffer<String, String> buffer = createBuffer(8);
+
+        buffer.addFrame(100, "sharp");
+        addSharp(buffer, 100);
+
+        buffer.addFrame(200, "scanning");
+        buffer.addResult(200, "r", ControlState.AF_PASSIVE_SCAN, ControlState.AE_CONVERGED, ControlState.LENS_STATIONARY);
+
+        buffer.addFrame(300, "moving");
+        buffer.addResult(300, "r", ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED, ControlState.LENS_MOVING);
+
+        buffer.addFrame(400, "searching");
+        buffer.addResult(400, "r", ControlState.AF_FOCUSED_LOCKED, ControlState.AE_SEARCHING, ControlState.LENS_STATIONARY);
+
+        buffer.addFrame(500, "unpaired");
+
+        assertEquals("sharp", buffer.select(Long.MAX_VALUE).frame);
+        assertNull(buffer.select(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void select_ignoresFramesAfterShutter() {
+        ZslRingBuffer<String, String> buffer = createBuffer(4);
+
+        buffer.addFrame(100, "before");
+        addSharp(buffer, 100);
+        buffer.addFrame(200, "after");
+        addSharp(buffer, 200);
+
+        assertEquals("before", buffer.select(150).frame);
+    }
+
+    @Test
+    public void clear_recyclesAllFrames() {
+        ZslRingBuffer<String, String> buffer = createBuffer(4);
+
+        buffer.addFrame(1, "frame1");
+        buffer.addFrame(2, "frame2");
+        addSharp(buffer, 3);
+        buffer.clear();
+
+        assertEquals(0, buffer.size());
+        assertEquals(Arrays.asList("frame1", "frame2"), _recycled);
+    }
+}
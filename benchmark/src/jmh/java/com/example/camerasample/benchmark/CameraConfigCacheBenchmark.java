@@ -0,0 +1,106 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.CameraCatalog;
+import com.example.camerasample.CameraConfig;
+import com.example.camerasample.CameraConfigCache;
+import com.example.camerasample.CameraLens;
+import com.example.camerasample.FpsRange;
+import com.example.camerasample.FrameSize;
+import com.example.camerasample.HighSpeedConfiguration;
+import com.example.camerasample.StreamCombinations;
+import com.example.camerasample.StreamNegotiator;
+import com.example.camerasample.StreamSizes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 起動時のカメラ設定の取得
+ *
+ * cold: 出力サイズの一覧から設定を求めてファイルへ保存する (初回起動)
+ * warmDisk: 新しいプロセスでファイルから読み込む (2回目以降の起動)
+ * warmMemory: 同じプロセス内で再開した場合
+ * CameraManagerへの問い合わせ自体はJVMでは計測できないので含まない。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CameraConfigCacheBenchmark {
+
+    private static final String FINGERPRINT = "google/device/device:10/QQ1A/1234:user/release-keys";
+    private static final FrameSize PREVIEW_BOUND = new FrameSize(1920, 1080);
+    private static final StreamNegotiator NEGOTIATOR = new StreamNegotiator();
+
+    private File _directory;
+    private File _file;
+    private CameraConfigCache _warmCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("camera-config-benchmark").toFile();
+        _file = new File(_directory, "camera_config");
+
+        _warmCache = new CameraConfigCache(_file, FINGERPRINT);
+        _warmCache.put(createCatalog());
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = _directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        _directory.delete();
+    }
+
+    private static CameraConfig createConfig(String cameraId, int facing, float fieldOfView) {
+        StreamSizes sizes = StreamSizes.create(DeviceSizes.PREVIEW_SIZES, null, null);
+        return CameraConfig.create(cameraId, 270, false, true, StreamCombinations.HARDWARE_LEVEL_LEGACY, sizes, sizes, sizes,
+                new FpsRange[0], new HighSpeedConfiguration[0], StreamSizes.create(new FrameSize[0], null, null),
+                new CameraLens(facing, fieldOfView, new String[0]));
+    }
+
+    //前面、背面、広角の3つのカメラがある機器
+    private static CameraCatalog createCatalog() {
+        return CameraCatalog.create(new CameraConfig[] {
+                createConfig("0", CameraLens.FACING_BACK, 66f),
+                createConfig("1", CameraLens.FACING_FRONT, 78f),
+                createConfig("2", CameraLens.FACING_BACK, 110f),
+        }, new CameraConfig[0]);
+    }
+
+    @Benchmark
+    public FrameSize cold() {
+        CameraCatalog catalog = createCatalog();
+        new CameraConfigCache(_file, FINGERPRINT).put(catalog);
+        return choosePreview(catalog);
+    }
+
+    @Benchmark
+    public FrameSize warmDisk() {
+        return choosePreview(new CameraConfigCache(_file, FINGERPRINT).get());
+    }
+
+    @Benchmark
+    public FrameSize warmMemory() {
+        return choosePreview(_warmCache.get());
+    }
+
+    private static FrameSize choosePreview(CameraCatalog catalog) {
+        CameraConfig config = catalog.selectOrDefault(CameraCatalog.LENS_FRONT).config;
+        return NEGOTIATOR.negotiate(config, new StreamNegotiator.Request(1920, 1080, PREVIEW_BOUND)).getPreviewSize();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.CaptureStateMachine;
+import com.example.camerasample.ControlState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 3Aの状態遷移の1フレームあたりの処理時間
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CaptureStateMachineBenchmark {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+    private static final long CAPTURE_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+    private static final long FRAME = 33333333L;
+
+    //フラッシュ撮影時に記録した{AF, AE}の並び
+    private static final int[][] FLASH_SEQUENCE = {
+            { ControlState.AF_ACTIVE_SCAN, ControlState.AE_SEARCHING },
+            { ControlState.AF_ACTIVE_SCAN, ControlState.AE_SEARCHING },
+            { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_FLASH_REQUIRED },
+            { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_FLASH_REQUIRED },
+            { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_PRECAPTURE },
+            { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_PRECAPTURE },
+            { ControlState.AF_NOT_FOCUSED_LOCKED, ControlState.AE_CONVERGED },
+    };
+
+    private CaptureStateMachine _previewMachine;
+    private CaptureStateMachine _captureMachine;
+    private long _now;
+
+    @Setup
+    public void setUp() {
+        _previewMachine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+        _captureMachine = new CaptureStateMachine(TIMEOUT, CAPTURE_TIMEOUT);
+    }
+
+    /**
+     * プレビュー中の1フレーム (何もしないことを確認する)
+     */
+    @Benchmark
+    public boolean previewFrame() {
+        return _previewMachine.isIdle();
+    }
+
+    /**
+     * プレビュー中にonResult()まで呼び出した場合の1フレーム
+     */
+    @Benchmark
+    public int previewOnResult() {
+        _now += FRAME;
+        return _previewMachine.onResult(ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED, _now);
+    }
+
+    /**
+     * フラッシュ撮影1回分の並びを再生する (ロック開始から撮影まで)
+     */
+    @Benchmark
+    public int flashCaptureSequence() {
+        _captureMachine.reset();
+        _captureMachine.startLock(_now);
+
+        int actions = 0;
+        for (int[] frame : FLASH_SEQUENCE) {
+            _now += FRAME;
+            actions += _captureMachine.onResult(frame[0], frame[1], _now);
+        }
+        return actions;
+    }
+}
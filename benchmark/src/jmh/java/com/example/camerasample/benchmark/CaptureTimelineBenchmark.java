@@ -0,0 +1,61 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.CaptureTimeline;
+import com.example.camerasample.CaptureTimelineAnalyzer;
+import com.example.camerasample.ControlState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 撮影結果の記録と解析
+ *
+ * record: フレーム1枚あたりの記録時間 (onCaptureCompletedで毎フレーム呼び出す)
+ * analyze: 満杯の記録の複製と解析 (dumpsysで呼び出す)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CaptureTimelineBenchmark {
+
+    //30fpsのフレーム間隔
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 30;
+
+    private CaptureTimeline _timeline;
+    private CaptureTimeline _fullTimeline;
+    private long _frameNumber;
+    private long _timestamp;
+
+    @Setup
+    public void setUp() {
+        _timeline = new CaptureTimeline();
+        _fullTimeline = new CaptureTimeline();
+        for (int i = 0; i < _fullTimeline.getCapacity(); i++) {
+            //100フレーム毎に1フレーム抜ける
+            long timestamp = (i + i / 100) * FRAME_INTERVAL_NANOS;
+            _fullTimeline.record(i, timestamp, FRAME_INTERVAL_NANOS, FRAME_INTERVAL_NANOS / 2, 400,
+                    ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED, ControlState.AWB_CONVERGED);
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        _frameNumber++;
+        _timestamp += FRAME_INTERVAL_NANOS;
+        _timeline.record(_frameNumber, _timestamp, FRAME_INTERVAL_NANOS, FRAME_INTERVAL_NANOS / 2, 400,
+                ControlState.AF_PASSIVE_FOCUSED, ControlState.AE_CONVERGED, ControlState.AWB_CONVERGED);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object analyze() {
+        return CaptureTimelineAnalyzer.analyze(_fullTimeline.snapshot());
+    }
+}
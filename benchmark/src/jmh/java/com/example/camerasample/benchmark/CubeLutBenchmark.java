@@ -0,0 +1,65 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.CubeLut;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 色の変換表の読み込みとテクスチャへの詰め込み (GLのスレッドで行う処理)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CubeLutBenchmark {
+
+    //一般的な格子の数
+    @Param({ "17", "33", "65" })
+    public int size;
+
+    private String _cube;
+    private CubeLut _lut;
+    private ByteBuffer _pixels;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("TITLE \"benchmark\"\n");
+        builder.append("LUT_3D_SIZE ").append(size).append('\n');
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    builder.append(String.format(Locale.US, "%.6f %.6f %.6f\n",
+                            r / (float)(size - 1), g / (float)(size - 1), b / (float)(size - 1)));
+                }
+            }
+        }
+        _cube = builder.toString();
+        _lut = CubeLut.identity(size);
+        _pixels = ByteBuffer.allocateDirect(_lut.getTextureWidth() * _lut.getTextureHeight() * 4);
+    }
+
+    @Benchmark
+    public CubeLut read() throws IOException {
+        return CubeLut.read(new StringReader(_cube));
+    }
+
+    @Benchmark
+    public ByteBuffer writeTexture() {
+        _pixels.clear();
+        _lut.writeTexture(_pixels);
+        return _pixels;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.FrameSize;
+
+/**
+ * 計測に使用する出力サイズの一覧
+ */
+final class DeviceSizes {
+
+    //SurfaceTextureの出力サイズの例 (4:3センサの機器)
+    static final FrameSize[] PREVIEW_SIZES = {
+            new FrameSize(4032, 3024), new FrameSize(4000, 3000), new FrameSize(3840, 2160),
+            new FrameSize(3264, 2448), new FrameSize(3200, 2400), new FrameSize(2976, 2976),
+            new FrameSize(2592, 1944), new FrameSize(2688, 1512), new FrameSize(2048, 1536),
+            new FrameSize(1920, 1080), new FrameSize(1600, 1200), new FrameSize(1440, 1080),
+            new FrameSize(1280, 960), new FrameSize(1280, 768), new FrameSize(1280, 720),
+            new FrameSize(1024, 768), new FrameSize(800, 600), new FrameSize(864, 480),
+            new FrameSize(800, 480), new FrameSize(720, 480), new FrameSize(640, 480),
+            new FrameSize(640, 360), new FrameSize(352, 288), new FrameSize(320, 240),
+            new FrameSize(176, 144),
+    };
+
+    static final FrameSize JPEG_SIZE = new FrameSize(4032, 3024);
+
+    private DeviceSizes() { }
+}
@@ -0,0 +1,99 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.EncodedSample;
+import com.example.camerasample.EncodedSampleQueue;
+import com.example.camerasample.EncoderDrainer;
+import com.example.camerasample.VideoEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * エンコーダの出力1フレームあたりの取り出し時間 (待ち行列へのコピーを含む)
+ * -prof gcでフレーム毎の割り当てが無いことも確認する。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EncoderDrainerBenchmark {
+
+    private static final long FRAME_US = 33333;
+
+    //1フレームずつ出力するエンコーダ
+    private static class OneFrameEncoder implements VideoEncoder<Object> {
+        final ByteBuffer buffer;
+        int size;
+        long presentationTimeUs;
+        boolean available;
+
+        OneFrameEncoder(int size) {
+            this.size = size;
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+
+        @Override
+        public int dequeueOutputBuffer(EncodedSample info, long timeoutUs) {
+            if (!available) return INFO_TRY_AGAIN_LATER;
+
+            available = false;
+            info.set(0, size, presentationTimeUs, EncodedSample.FLAG_KEY_FRAME);
+            return 0;
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(int index) {
+            return buffer;
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index) { }
+
+        @Override
+        public Object getOutputFormat() {
+            return null;
+        }
+
+        @Override
+        public void signalEndOfInputStream() { }
+    }
+
+    //フレームの大きさ (1080p 30fpsの平均的なPフレームとキーフレーム)
+    @Param({ "50000", "400000" })
+    public int frameSize;
+
+    private OneFrameEncoder _encoder;
+    private EncodedSampleQueue _queue;
+    private EncoderDrainer<Object> _drainer;
+
+    @Setup
+    public void setUp() {
+        _encoder = new OneFrameEncoder(frameSize);
+        _queue = new EncodedSampleQueue(4, frameSize);
+        _drainer = new EncoderDrainer<>(_encoder, _queue, new EncoderDrainer.Listener<Object>() {
+            @Override
+            public void onOutputFormat(Object format) { }
+        }, FRAME_US);
+    }
+
+    @Benchmark
+    public int drainOneFrame() throws InterruptedException {
+        _encoder.presentationTimeUs += FRAME_US;
+        _encoder.available = true;
+        _drainer.drain(0);
+
+        //Muxerのスレッドの代わりにすぐ返す
+        EncodedSample sample = _queue.take();
+        int size = sample.getSize();
+        _queue.recycle();
+        return size;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.ExifData;
+import com.example.camerasample.ExifRewriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 再エンコードしない場合のEXIFの書き換えの時間 (12MP程度のJPEGを想定)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExifRewriterBenchmark {
+
+    //圧縮データの大きさ
+    private static final int SCAN_BYTES = 4 * 1024 * 1024;
+
+    //書き込んだバイトを捨てる出力先
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    };
+
+    private byte[] _jpeg;
+    private ExifData _exif;
+
+    @Setup
+    public void setUp() {
+        //SOI, APP1 (カメラのEXIFとサムネイル程度), SOF0, SOS, 圧縮データ, EOI
+        byte[] exif = new byte[32 * 1024];
+        exif[0] = 'E';
+        exif[1] = 'x';
+        exif[2] = 'i';
+        exif[3] = 'f';
+        byte[] sof = { 8, 0x0b, (byte)0xd0, 0x0f, (byte)0xc0, 3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1 };
+        byte[] sos = { 3, 1, 0, 2, 0x11, 3, 0x11, 0, 0x3f, 0 };
+        byte[] scan = new byte[SCAN_BYTES];
+        new Random(1).nextBytes(scan);
+        for (int i = 0; i < scan.length; i++) {
+            //マーカーが現れないようにする
+            if (scan[i] == (byte)0xff) scan[i] = 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 4 + exif.length + 4 + sof.length + 4 + sos.length + scan.length + 2);
+        buffer.put((byte)0xff).put((byte)0xd8);
+        putSegment(buffer, 0xe1, exif);
+        putSegment(buffer, 0xc0, sof);
+        putSegment(buffer, 0xda, sos);
+        buffer.put(scan);
+        buffer.put((byte)0xff).put((byte)0xd9);
+        _jpeg = buffer.array();
+
+        _exif = new ExifData()
+                .setOrientation(ExifData.ORIENTATION_ROTATE_90)
+                .setMake("Example")
+                .setModel("Camera Sample")
+                .setDateTime("2020:01:02 03:04:05", "678")
+                .setExposureTimeNanos(16666666)
+                .setFNumber(1.8f)
+                .setIso(400)
+                .setFocalLength(4.38f)
+                .setPixelSize(4032, 3024);
+    }
+
+    @Benchmark
+    public long rewrite() throws IOException {
+        return ExifRewriter.rewrite(new ByteArrayInputStream(_jpeg), NULL_OUTPUT, _exif);
+    }
+
+    @Benchmark
+    public int readInfo() throws IOException {
+        return ExifRewriter.readInfo(ByteBuffer.wrap(_jpeg)).width;
+    }
+
+    private static void putSegment(ByteBuffer buffer, int marker, byte[] payload) {
+        buffer.put((byte)0xff).put((byte)marker).putShort((short)(payload.length + 2)).put(payload);
+    }
+}
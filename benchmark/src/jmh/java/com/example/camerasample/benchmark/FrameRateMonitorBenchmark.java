@@ -0,0 +1,41 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.FrameRateMonitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * フレーム1枚あたりの計測時間 (240fpsのonCaptureCompletedで呼び出しても問題無いか確認する)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameRateMonitorBenchmark {
+
+    //240fpsのフレーム間隔
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 240;
+
+    private FrameRateMonitor _monitor;
+    private long _timestamp;
+
+    @Setup
+    public void setUp() {
+        _monitor = new FrameRateMonitor();
+        _timestamp = 1000000000L;
+    }
+
+    @Benchmark
+    public Object onFrame() {
+        //間隔を少しずつ揺らす
+        _timestamp += FRAME_INTERVAL_NANOS + (_timestamp & 0xffff);
+        return _monitor.onFrame(_timestamp);
+    }
+}
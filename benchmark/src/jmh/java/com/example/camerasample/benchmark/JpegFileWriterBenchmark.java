@@ -0,0 +1,134 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.JpegFileWriter;
+import com.example.camerasample.JpegFrame;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * JPEG保存処理のスループットと遅延 (一時ディレクトリへ書き込む)
+ *
+ * burst: 待ち行列を超える枚数を続けて予約し、全て書き終えるまで (bytesが書き込んだバイト数/秒)
+ * single: 1枚を予約してから書き終えるまで (p50/p99はSampleTimeの分布から読む)
+ */
+@State(Scope.Thread)
+public class JpegFileWriterBenchmark {
+
+    private static final int FRAME_SIZE = 2 * 1024 * 1024;
+    private static final int BURST_COUNT = 16;
+    private static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * 書き込んだバイト数 (1秒あたりで出力される)
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    private File _directory;
+    private JpegFileWriter _writer;
+    private ByteBuffer _source;
+
+    //書き終えた枚数と書き込みスレッドで起きた失敗 (計測するスレッドで確認する)
+    private final Semaphore _written = new Semaphore(0);
+    private final AtomicReference<IOException> _failure = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("jpeg-writer-bench").toFile();
+        _writer = new JpegFileWriter(_directory, QUEUE_CAPACITY, new JpegFileWriter.Listener() {
+            @Override
+            public void onWritten(File file, int size, long latencyNanos) {
+                _written.release();
+            }
+
+            @Override
+            public void onFailed(File file, IOException e) {
+                _failure.compareAndSet(null, e);
+                _written.release();
+            }
+        });
+
+        //圧縮済みのデータに近い、偏りの無い内容にする
+        _source = ByteBuffer.allocateDirect(FRAME_SIZE);
+        int value = 5;
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            value = value * 1103515245 + 12345;
+            _source.put(i, (byte)(value >>> 16));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        _writer.shutdown(60, TimeUnit.SECONDS);
+        File[] files = _directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        _directory.delete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void burst(Bytes bytes) throws IOException, InterruptedException {
+        //受け付けられなければ1枚書き終えるのを待って再試行する (カメラ側では撮影ボタンを無効にする)
+        int pending = 0;
+        for (int i = 0; i < BURST_COUNT; i++) {
+            JpegFrame frame = new JpegFrame(_source.duplicate(), i, null);
+            while (!_writer.submit(frame, "IMG_" + i + ".jpg")) {
+                _written.acquire();
+                pending--;
+            }
+            frame.release();
+            pending++;
+        }
+        _written.acquire(pending);
+        checkFailure();
+        bytes.bytes += (long)FRAME_SIZE * BURST_COUNT;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void single() throws IOException, InterruptedException {
+        JpegFrame frame = new JpegFrame(_source.duplicate(), 0, null);
+        boolean submitted = _writer.submit(frame, "IMG_single.jpg");
+        frame.release();
+        if (!submitted) throw new IllegalStateException("Writer queue is full");
+
+        _written.acquire();
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException failure = _failure.get();
+        if (failure != null) throw failure;
+    }
+}
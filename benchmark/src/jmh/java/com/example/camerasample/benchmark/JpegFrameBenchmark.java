@@ -0,0 +1,63 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.JpegFrame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 撮影したJPEGの受け渡し
+ * byte[]へコピーする従来の処理と、JpegFrameからストリームとして読む処理を比べる。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JpegFrameBenchmark {
+
+    @Param({ "1048576", "4194304" })
+    public int frameSize;
+
+    private ByteBuffer _imageBuffer;
+    private final byte[] _scratch = new byte[16 * 1024];
+
+    @Setup
+    public void setUp() {
+        _imageBuffer = ByteBuffer.allocateDirect(frameSize);
+        for (int i = 0; i < frameSize; i++) {
+            _imageBuffer.put(i, (byte)i);
+        }
+    }
+
+    @Benchmark
+    public byte[] copyToHeap() {
+        ByteBuffer buffer = _imageBuffer.duplicate();
+        byte[] imageBytes = new byte[buffer.remaining()];
+        buffer.get(imageBytes);
+        return imageBytes;
+    }
+
+    @Benchmark
+    public int streamFromFrame() throws IOException {
+        JpegFrame frame = new JpegFrame(_imageBuffer.duplicate(), 0, null);
+        int total = 0;
+        try (InputStream stream = frame.openStream()) {
+            int count;
+            while ((count = stream.read(_scratch, 0, _scratch.length)) > 0) {
+                total += count;
+            }
+        }
+        frame.release();
+        return total;
+    }
+}
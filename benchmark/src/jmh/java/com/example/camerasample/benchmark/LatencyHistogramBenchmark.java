@@ -0,0 +1,60 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.LatencyHistogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 処理時間の記録1件あたりの時間 (撮影経路に入れても問題無いか確認する)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LatencyHistogramBenchmark {
+
+    private LatencyHistogram _histogram;
+
+    @Setup
+    public void setUp() {
+        _histogram = new LatencyHistogram();
+    }
+
+    @State(Scope.Thread)
+    public static class Values {
+        long value = 1000000;
+    }
+
+    /**
+     * 単一スレッドからの記録
+     */
+    @Benchmark
+    @Threads(1)
+    public void recordSingleThread(Values values) {
+        values.value = values.value * 31 % 100000007 + 1;
+        _histogram.record(values.value);
+    }
+
+    /**
+     * カメラ、デコード、UIスレッドを想定した4スレッドからの同時記録
+     */
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Values values) {
+        values.value = values.value * 31 % 100000007 + 1;
+        _histogram.record(values.value);
+    }
+
+    @Benchmark
+    public long snapshotP99() {
+        return _histogram.snapshot().getValueAtPercentile(99);
+    }
+}
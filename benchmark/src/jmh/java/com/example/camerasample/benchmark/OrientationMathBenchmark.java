@@ -0,0 +1,35 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.OrientationMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 画面の回転とセンサの向きの計算
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrientationMathBenchmark {
+
+    private int _rotation;
+
+    @Benchmark
+    public int jpegOrientation() {
+        _rotation = (_rotation + 1) & 3;
+        return OrientationMath.getJpegOrientation(_rotation, 270);
+    }
+
+    @Benchmark
+    public boolean dimensionSwapped() {
+        _rotation = (_rotation + 1) & 3;
+        return OrientationMath.isDimensionSwapped(_rotation, 90);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.PreviewTransform;
+import com.example.camerasample.PreviewTransformCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * プレビュー表示の変換行列の計算
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PreviewTransformBenchmark {
+
+    @Param({ "0", "1", "2", "3" })
+    public int displayRotation;
+
+    private final float[] _values = new float[9];
+
+    //4方向とも保持済みの状態で引く
+    private final PreviewTransformCache _cache = new PreviewTransformCache();
+
+    @Benchmark
+    public float[] compute() {
+        PreviewTransform.compute(1080, 1920, 1920, 1080, 270, displayRotation, _values);
+        return _values;
+    }
+
+    @Benchmark
+    public float[] cached() {
+        return _cache.get(1080, 1920, 1920, 1080, 270, displayRotation, true);
+    }
+}
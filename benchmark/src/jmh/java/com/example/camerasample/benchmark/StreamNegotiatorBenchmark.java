@@ -0,0 +1,61 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.CameraConfig;
+import com.example.camerasample.CameraLens;
+import com.example.camerasample.FpsRange;
+import com.example.camerasample.FrameSize;
+import com.example.camerasample.HighSpeedConfiguration;
+import com.example.camerasample.StreamCombinations;
+import com.example.camerasample.StreamNegotiator;
+import com.example.camerasample.StreamSizes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 出力サイズの決定
+ *
+ * negotiate: フレーム間隔と保証された組み合わせを考慮した決定
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StreamNegotiatorBenchmark {
+
+    private static final FrameSize PREVIEW_BOUND = new FrameSize(1920, 1080);
+    private static final FrameSize ANALYSIS_BOUND = new FrameSize(640, 480);
+
+    private final CameraConfig _config = createConfig();
+    private final StreamNegotiator _negotiator = new StreamNegotiator();
+
+    /**
+     * 1080pを超えるサイズは30fps未満とした設定
+     */
+    private static CameraConfig createConfig() {
+        FrameSize[] sizes = DeviceSizes.PREVIEW_SIZES;
+        long[] minFrameDurations = new long[sizes.length];
+        long[] stallDurations = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            minFrameDurations[i] = sizes[i].getArea() > 1920 * 1080 ? 50000000L : 33333333L;
+            stallDurations[i] = sizes[i].getArea() * 20;
+        }
+        return CameraConfig.create("1", 270, false, true, StreamCombinations.HARDWARE_LEVEL_LIMITED,
+                StreamSizes.create(sizes, minFrameDurations, stallDurations),
+                StreamSizes.create(sizes, minFrameDurations, null),
+                StreamSizes.create(sizes, minFrameDurations, null),
+                new FpsRange[0], new HighSpeedConfiguration[0], StreamSizes.create(new FrameSize[0], null, null), CameraLens.DEFAULT);
+    }
+
+    @Benchmark
+    public StreamNegotiator.Result negotiate() {
+        return _negotiator.negotiate(_config, new StreamNegotiator.Request(1920, 1080, PREVIEW_BOUND)
+                .setZsl(true)
+                .setAnalysisBound(ANALYSIS_BOUND));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.ByteLruCache;
+import com.example.camerasample.ThumbnailIndex;
+import com.example.camerasample.ThumbnailStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * サムネイルの検索と追加の時間 (一覧をスクロールする間に呼び出しても問題無いか確認する)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ThumbnailCacheBenchmark {
+
+    //保持するサムネイルの数と1枚の大きさ (256pxのJPEG程度)
+    private static final int COUNT = 1000;
+    private static final int THUMBNAIL_BYTES = 12 * 1024;
+
+    private String[] _keys;
+    private ByteLruCache<String, byte[]> _memoryCache;
+    private ThumbnailIndex _index;
+    private ThumbnailStore _store;
+    private File _file;
+    private ByteBuffer _data;
+    private int _next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _keys = new String[COUNT * 2];
+        for (int i = 0; i < _keys.length; i++) {
+            _keys[i] = "IMG_20200101_120000_" + i + ".jpg:3145728:1577847600000";
+        }
+
+        //全てが収まる大きさにする
+        _memoryCache = new ByteLruCache<>((long)COUNT * THUMBNAIL_BYTES, new ByteLruCache.Sizer<byte[]>() {
+            @Override
+            public int sizeOf(byte[] value) {
+                return value.length;
+            }
+        });
+        _index = new ThumbnailIndex();
+        _file = Files.createTempFile("thumbnails", ".bin").toFile();
+        _store = new ThumbnailStore(_file, (long)COUNT * THUMBNAIL_BYTES * 2);
+        _data = ByteBuffer.wrap(new byte[THUMBNAIL_BYTES]);
+
+        for (int i = 0; i < COUNT; i++) {
+            _memoryCache.put(_keys[i], new byte[THUMBNAIL_BYTES]);
+            _index.put(_keys[i], (long)i * THUMBNAIL_BYTES, THUMBNAIL_BYTES);
+            _store.put(_keys[i], _data);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        _store.close();
+        Files.delete(_file.toPath());
+    }
+
+    private String nextKey() {
+        _next = (_next + 7) % COUNT;
+        return _keys[_next];
+    }
+
+    @Benchmark
+    public Object memoryGet() {
+        return _memoryCache.get(nextKey());
+    }
+
+    @Benchmark
+    public Object indexGet() {
+        return _index.get(nextKey());
+    }
+
+    @Benchmark
+    public Object indexPut() {
+        //置き換えなので件数は変わらない
+        String key = nextKey();
+        return _index.put(key, 0, THUMBNAIL_BYTES);
+    }
+
+    @Benchmark
+    public int storeGet() throws IOException {
+        //マップしたファイルから読み出す (コピーしない)
+        ByteBuffer data = _store.get(nextKey());
+        return data.get(data.limit() - 1);
+    }
+
+    @Benchmark
+    public void storePut() throws IOException {
+        //追記 (上限を超えたら詰め直しも含む)
+        _data.rewind();
+        _store.put(_keys[COUNT + (_next++ % COUNT)], _data);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.camerasample.benchmark;
+
+import com.example.camerasample.YuvConverter;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * YUVの変換速度
+ * pixelsの値が1マイクロ秒あたりの画素数、つまりメガピクセル/秒になる。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConverterBenchmark {
+
+    //解析用、プレビュー、ゼロシャッターラグ用のサイズ
+    @Param({ "640x480", "1920x1080", "4032x3024" })
+    public String size;
+
+    //I420: 面毎に分かれている、NV21: VUが交互に並ぶ
+    @Param({ "I420", "NV21" })
+    public String layout;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    /**
+     * 変換した画素数
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Pixels {
+        public long pixels;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            pixels = 0;
+        }
+    }
+
+    private ForkJoinPool _pool;
+    private YuvConverter _converter;
+    private YuvConverter.Planes _planes;
+    private int[] _argb;
+    private byte[] _gray;
+    private byte[] _nv21;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+
+        _pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        _converter = new YuvConverter(parallel ? _pool : null);
+
+        Random random = new Random(1);
+        ByteBuffer y = ByteBuffer.allocateDirect(width * height);
+        fill(y, random);
+        if (layout.equals("NV21")) {
+            ByteBuffer vu = ByteBuffer.allocateDirect(width * height / 2);
+            fill(vu, random);
+            ByteBuffer u = vu.duplicate();
+            u.position(1);
+            _planes = new YuvConverter.Planes().set(width, height, y, width, 1, u.slice(), vu, width, 2);
+        }
+        else {
+            ByteBuffer u = ByteBuffer.allocateDirect(width * height / 4);
+            ByteBuffer v = ByteBuffer.allocateDirect(width * height / 4);
+            fill(u, random);
+            fill(v, random);
+            _planes = new YuvConverter.Planes().set(width, height, y, width, 1, u, v, width / 2, 1);
+        }
+
+        _argb = new int[width * height];
+        _gray = new byte[width * height];
+        _nv21 = new byte[YuvConverter.nv21Size(width, height)];
+    }
+
+    @TearDown
+    public void tearDown() {
+        _pool.shutdown();
+    }
+
+    @Benchmark
+    public int[] toArgb(Pixels counter) {
+        _converter.toArgb(_planes, _argb);
+        counter.pixels += _argb.length;
+        return _argb;
+    }
+
+    @Benchmark
+    public byte[] toGray(Pixels counter) {
+        _converter.toGray(_planes, _gray);
+        counter.pixels += _gray.length;
+        return _gray;
+    }
+
+    @Benchmark
+    public byte[] toNv21(Pixels counter) {
+        _converter.toNv21(_planes, _nv21);
+        counter.pixels += _gray.length;
+        return _nv21;
+    }
+
+    private static void fill(ByteBuffer buffer, Random random) {
+        byte[] bytes = new byte[buffer.capacity()];
+        random.nextBytes(bytes);
+        buffer.put(bytes);
+        buffer.clear();
+    }
+}